@@ -0,0 +1,89 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BPlugsTree2的三种建树方式：逐条insert、insertAll按批插入、bulkLoad从排好序的数据构建
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchInsertBenchmark {
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    private KeyDistribution distribution;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private List<List<Map.Entry<Long, Long>>> batches;
+
+    private List<Map.Entry<Long, Long>> sorted;
+
+    @Setup
+    public void setup() {
+        long[] keys = distribution.insertKeys(keyCount, 42);
+        batches = new ArrayList<>();
+        TreeMap<Long, Long> unique = new TreeMap<>();
+        for (int from = 0; from < keyCount; from += batchSize) {
+            List<Map.Entry<Long, Long>> batch = new ArrayList<>(batchSize);
+            for (int i = from; i < Math.min(keyCount, from + batchSize); i++) {
+                batch.add(new AbstractMap.SimpleImmutableEntry<>(keys[i], keys[i]));
+                unique.put(keys[i], keys[i]);
+            }
+            batches.add(batch);
+        }
+        sorted = new ArrayList<>(unique.entrySet());
+    }
+
+    @Benchmark
+    public BPlugsTree2<Long, Long> insert() {
+        BPlugsTree2<Long, Long> tree = new BPlugsTree2<>(m);
+        for (List<Map.Entry<Long, Long>> batch : batches) {
+            for (Map.Entry<Long, Long> entry : batch) {
+                tree.insert(entry.getKey(), entry.getValue());
+            }
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public BPlugsTree2<Long, Long> insertAll() {
+        BPlugsTree2<Long, Long> tree = new BPlugsTree2<>(m);
+        for (List<Map.Entry<Long, Long>> batch : batches) {
+            tree.insertAll(batch);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public BPlugsTree2<Long, Long> bulkLoad() {
+        return BPlugsTree2.bulkLoad(m, sorted.iterator(), 1);
+    }
+}
@@ -0,0 +1,72 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 删除全部数据，每次测量之前重新构建一棵满的树，构建的时间不算在里面
+ * BPlugsTree连续删除大量数据的时候resetKey会栈溢出，不参与比较
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeleteBenchmark {
+
+    @Param({SortedStore.B_PLUGS_TREE2, SortedStore.B_PLUGS_TREE2_LAZY_DELETE,
+            SortedStore.OFF_HEAP_B_PLUS_TREE, SortedStore.TREE_MAP,
+            SortedStore.CONCURRENT_SKIP_LIST_MAP})
+    private String impl;
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    private KeyDistribution distribution;
+
+    private Long[] keys;
+
+    private SortedStore store;
+
+    @Setup(Level.Trial)
+    public void setupKeys() {
+        long[] generated = distribution.insertKeys(keyCount, 42);
+        keys = new Long[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = generated[i];
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        store = SortedStore.create(impl, m);
+        for (long k : KeyDistribution.RANDOM.insertKeys(keyCount, 43)) {
+            store.put(k, k);
+        }
+    }
+
+    @Benchmark
+    public SortedStore deleteAll() {
+        for (Long k : keys) {
+            store.delete(k);
+        }
+        return store;
+    }
+}
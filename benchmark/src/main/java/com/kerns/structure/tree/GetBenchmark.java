@@ -0,0 +1,77 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单点查询，树里面是随机顺序插入的keyCount条数据，查询的key按照分布生成
+ * getMissing查询的key都不存在，比较布隆过滤器挡掉查找的效果
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({SortedStore.B_PLUGS_TREE, SortedStore.B_PLUGS_TREE2, SortedStore.B_PLUGS_TREE2_BLOOM_FILTER,
+            SortedStore.OFF_HEAP_B_PLUS_TREE,
+            SortedStore.TREE_MAP, SortedStore.CONCURRENT_SKIP_LIST_MAP})
+    private String impl;
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    private KeyDistribution distribution;
+
+    private SortedStore store;
+
+    private Long[] probes;
+
+    private Long[] missingProbes;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        store = SortedStore.create(impl, m);
+        for (long k : KeyDistribution.RANDOM.insertKeys(keyCount, 42)) {
+            store.put(k, k);
+        }
+        long[] generated = distribution.probeKeys(PROBES, keyCount, 7);
+        probes = new Long[PROBES];
+        missingProbes = new Long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = generated[i];
+            missingProbes[i] = generated[i] + keyCount;
+        }
+    }
+
+    @Benchmark
+    public Long get() {
+        return store.get(probes[index++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public Long getMissing() {
+        return store.get(missingProbes[index++ & (PROBES - 1)]);
+    }
+}
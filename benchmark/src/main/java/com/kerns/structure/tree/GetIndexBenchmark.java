@@ -0,0 +1,74 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点内查找：Node.getIndex的二分查找和从头开始的顺序查找比较，节点是装满的叶子节点
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetIndexBenchmark {
+
+    private static final int PROBES = 1 << 12;
+
+    @Param({"8", "16", "64", "128", "256"})
+    private int m;
+
+    private BPlugsTree2.Leaf<Long, Long> leaf;
+
+    private Long[] probes;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        leaf = new BPlugsTree2.Leaf<>(m, null, null);
+        for (long k = 0; k < m - 1; k++) {
+            leaf.insert(k * 2, k, false);
+        }
+        Random random = new Random(5);
+        probes = new Long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = (long) random.nextInt(2 * m);
+        }
+    }
+
+    @Benchmark
+    public int binarySearch() {
+        return leaf.getIndex(probes[index++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public int linearSearch() {
+        Long k = probes[index++ & (PROBES - 1)];
+        Comparable[] keys = leaf.keys;
+        int size = leaf.size;
+        for (int i = 0; i < size; i++) {
+            int compare = k.compareTo((Long) keys[i]);
+            if (compare == 0) {
+                return i;
+            }
+            if (compare < 0) {
+                return ~i;
+            }
+        }
+        return ~size;
+    }
+}
@@ -0,0 +1,64 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从空树开始插入keyCount条数据，按照顺序、随机、Zipfian三种分布
+ * m只对b+树有效，只测某个实现的时候用 -p impl=BPlugsTree2
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InsertBenchmark {
+
+    @Param({SortedStore.B_PLUGS_TREE, SortedStore.B_PLUGS_TREE2, SortedStore.B_PLUGS_TREE2_APPEND_SPLIT,
+            SortedStore.BUFFERED_B_PLUGS_TREE, SortedStore.OFF_HEAP_B_PLUS_TREE, SortedStore.RED_BLACK_TREE, SortedStore.TREE_MAP,
+            SortedStore.CONCURRENT_SKIP_LIST_MAP})
+    private String impl;
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    private KeyDistribution distribution;
+    /**
+     * 提前装箱，不把装箱算到插入里面
+     */
+    private Long[] keys;
+
+    @Setup
+    public void setup() {
+        long[] generated = distribution.insertKeys(keyCount, 42);
+        keys = new Long[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = generated[i];
+        }
+    }
+
+    @Benchmark
+    public SortedStore insert() {
+        SortedStore store = SortedStore.create(impl, m);
+        for (Long k : keys) {
+            store.put(k, k);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,124 @@
+package com.kerns.structure.tree;
+
+import java.util.Random;
+
+/**
+ * 基准测试使用的key的分布
+ */
+public enum KeyDistribution {
+    /**
+     * 0到keyCount-1依次递增
+     */
+    SEQUENTIAL,
+    /**
+     * 插入的时候是0到keyCount-1打乱顺序，查询的时候均匀随机
+     */
+    RANDOM,
+    /**
+     * 少数key被频繁访问，theta=0.99，和YCSB一样把热点打散到整个key空间
+     */
+    ZIPFIAN;
+
+    private static final double THETA = 0.99;
+
+    /**
+     * 插入用的key，SEQUENTIAL和RANDOM不重复，ZIPFIAN会有大量重复的key变成覆盖
+     *
+     * @param keyCount
+     * @param seed
+     * @return
+     */
+    long[] insertKeys(int keyCount, long seed) {
+        long[] keys = new long[keyCount];
+        Random random = new Random(seed);
+        switch (this) {
+            case SEQUENTIAL:
+                for (int i = 0; i < keyCount; i++) {
+                    keys[i] = i;
+                }
+                break;
+            case RANDOM:
+                for (int i = 0; i < keyCount; i++) {
+                    keys[i] = i;
+                }
+                for (int i = keyCount - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    long tmp = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = tmp;
+                }
+                break;
+            default:
+                fillZipfian(keys, keyCount, random);
+        }
+        return keys;
+    }
+
+    /**
+     * 查询用的key，都在[0,keyCount)之间
+     *
+     * @param count
+     * @param keyCount
+     * @param seed
+     * @return
+     */
+    long[] probeKeys(int count, int keyCount, long seed) {
+        long[] keys = new long[count];
+        Random random = new Random(seed);
+        switch (this) {
+            case SEQUENTIAL:
+                for (int i = 0; i < count; i++) {
+                    keys[i] = i % keyCount;
+                }
+                break;
+            case RANDOM:
+                for (int i = 0; i < count; i++) {
+                    keys[i] = random.nextInt(keyCount);
+                }
+                break;
+            default:
+                fillZipfian(keys, keyCount, random);
+        }
+        return keys;
+    }
+
+    /**
+     * Gray等人的算法，参考 Quickly Generating Billion-Record Synthetic Databases
+     */
+    private static void fillZipfian(long[] keys, int keyCount, Random random) {
+        double zetan = zeta(keyCount);
+        double zeta2 = zeta(2);
+        double alpha = 1 / (1 - THETA);
+        double eta = (1 - Math.pow(2.0 / keyCount, 1 - THETA)) / (1 - zeta2 / zetan);
+        for (int i = 0; i < keys.length; i++) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            long rank;
+            if (uz < 1) {
+                rank = 0;
+            } else if (uz < 1 + Math.pow(0.5, THETA)) {
+                rank = 1;
+            } else {
+                rank = (long) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+            }
+            keys[i] = Math.floorMod(mix(rank), keyCount);
+        }
+    }
+
+    private static double zeta(long n) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, THETA);
+        }
+        return sum;
+    }
+
+    /**
+     * 把相邻的排名打散，热点不集中在同一个叶子节点
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
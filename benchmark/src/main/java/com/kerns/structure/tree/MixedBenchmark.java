@@ -0,0 +1,80 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读写混合，writePercent的操作是覆盖写，其余是单点查询
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MixedBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({SortedStore.B_PLUGS_TREE, SortedStore.B_PLUGS_TREE2, SortedStore.B_PLUGS_TREE2_LAZY_DELETE,
+            SortedStore.OFF_HEAP_B_PLUS_TREE, SortedStore.TREE_MAP, SortedStore.CONCURRENT_SKIP_LIST_MAP})
+    private String impl;
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    private KeyDistribution distribution;
+
+    @Param({"10", "50"})
+    private int writePercent;
+
+    private SortedStore store;
+
+    private Long[] probes;
+
+    private boolean[] writes;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        store = SortedStore.create(impl, m);
+        for (long k : KeyDistribution.RANDOM.insertKeys(keyCount, 42)) {
+            store.put(k, k);
+        }
+        long[] generated = distribution.probeKeys(PROBES, keyCount, 7);
+        probes = new Long[PROBES];
+        writes = new boolean[PROBES];
+        Random random = new Random(11);
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = generated[i];
+            writes[i] = random.nextInt(100) < writePercent;
+        }
+    }
+
+    @Benchmark
+    public Long mixed() {
+        int i = index++ & (PROBES - 1);
+        if (writes[i]) {
+            store.put(probes[i], probes[i]);
+            return null;
+        }
+        return store.get(probes[i]);
+    }
+}
@@ -0,0 +1,67 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 范围查询，从随机的位置开始按顺序读scanLength条数据
+ * BPlugsTree和RedBlackTree没有范围查询
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    private static final int PROBES = 1 << 12;
+
+    @Param({SortedStore.B_PLUGS_TREE2, SortedStore.OFF_HEAP_B_PLUS_TREE, SortedStore.TREE_MAP,
+            SortedStore.CONCURRENT_SKIP_LIST_MAP})
+    private String impl;
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    @Param({"10", "1000"})
+    private int scanLength;
+
+    private SortedStore store;
+
+    private Long[] starts;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        store = SortedStore.create(impl, m);
+        for (long k : KeyDistribution.RANDOM.insertKeys(keyCount, 42)) {
+            store.put(k, k);
+        }
+        long[] generated = KeyDistribution.RANDOM.probeKeys(PROBES, keyCount, 7);
+        starts = new Long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            starts[i] = generated[i];
+        }
+    }
+
+    @Benchmark
+    public long scan() {
+        return store.scan(starts[index++ & (PROBES - 1)], scanLength);
+    }
+}
@@ -0,0 +1,273 @@
+package com.kerns.structure.tree;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 把各个树的接口统一起来，同一个基准测试方法可以跑不同的实现
+ * 实现不支持的操作抛出UnsupportedOperationException，对应的基准测试不应该包含这个实现
+ */
+interface SortedStore {
+
+    String B_PLUGS_TREE = "BPlugsTree";
+
+    String B_PLUGS_TREE2 = "BPlugsTree2";
+
+    String B_PLUGS_TREE2_LAZY_DELETE = "BPlugsTree2LazyDelete";
+
+    String B_PLUGS_TREE2_APPEND_SPLIT = "BPlugsTree2AppendSplit";
+
+    String B_PLUGS_TREE2_BLOOM_FILTER = "BPlugsTree2BloomFilter";
+
+    String BUFFERED_B_PLUGS_TREE = "BufferedBPlugsTree";
+
+    String OFF_HEAP_B_PLUS_TREE = "OffHeapBPlusTree";
+
+    String RED_BLACK_TREE = "RedBlackTree";
+
+    String TREE_MAP = "TreeMap";
+
+    String CONCURRENT_SKIP_LIST_MAP = "ConcurrentSkipListMap";
+
+    void put(Long k, Long v);
+
+    Long get(Long k);
+
+    void delete(Long k);
+
+    /**
+     * 从from开始按顺序遍历count条数据
+     *
+     * @param from
+     * @param count
+     * @return key之和，返回给JMH防止遍历被优化掉
+     */
+    long scan(Long from, int count);
+
+    /**
+     * @param impl 上面的实现名称
+     * @param m    b+树的阶数，其他实现忽略
+     * @return
+     */
+    static SortedStore create(String impl, int m) {
+        switch (impl) {
+            case B_PLUGS_TREE:
+                return new BPlugsTreeStore(m);
+            case B_PLUGS_TREE2:
+                return new BPlugsTree2Store(TreeConfig.ofOrder(m), false);
+            case B_PLUGS_TREE2_LAZY_DELETE:
+                return new BPlugsTree2Store(TreeConfig.ofOrder(m), true);
+            case B_PLUGS_TREE2_APPEND_SPLIT:
+                return new BPlugsTree2Store(TreeConfig.ofOrder(m).withSplitPolicy(TreeConfig.SplitPolicy.APPEND),
+                        false);
+            case B_PLUGS_TREE2_BLOOM_FILTER:
+                return new BPlugsTree2Store(TreeConfig.ofOrder(m).withBloomFilter(0.01), false);
+            case BUFFERED_B_PLUGS_TREE:
+                return new BufferedStore(m);
+            case OFF_HEAP_B_PLUS_TREE:
+                return new OffHeapStore(m);
+            case RED_BLACK_TREE:
+                return new RedBlackTreeStore();
+            case TREE_MAP:
+                return new MapStore(new TreeMap<>());
+            case CONCURRENT_SKIP_LIST_MAP:
+                return new MapStore(new ConcurrentSkipListMap<>());
+            default:
+                throw new IllegalArgumentException("unknown implementation: " + impl);
+        }
+    }
+
+    final class BPlugsTreeStore implements SortedStore {
+
+        private final BPlugsTree<Long, Long> tree;
+
+        BPlugsTreeStore(int m) {
+            tree = new BPlugsTree<>(m);
+        }
+
+        @Override
+        public void put(Long k, Long v) {
+            tree.insert(k, v);
+        }
+
+        @Override
+        public Long get(Long k) {
+            return tree.get(k);
+        }
+
+        @Override
+        public void delete(Long k) {
+            tree.delete(k);
+        }
+
+        @Override
+        public long scan(Long from, int count) {
+            throw new UnsupportedOperationException("BPlugsTree has no range scan");
+        }
+    }
+
+    final class BPlugsTree2Store implements SortedStore {
+
+        private final BPlugsTree2<Long, Long> tree;
+
+        BPlugsTree2Store(TreeConfig config, boolean lazyDelete) {
+            tree = new BPlugsTree2<>(config);
+            tree.setLazyDelete(lazyDelete);
+        }
+
+        @Override
+        public void put(Long k, Long v) {
+            tree.insert(k, v);
+        }
+
+        @Override
+        public Long get(Long k) {
+            return tree.get(k);
+        }
+
+        @Override
+        public void delete(Long k) {
+            tree.delete(k);
+        }
+
+        @Override
+        public long scan(Long from, int count) {
+            long sum = 0;
+            BPlugsTree2.Cursor<Long, Long> cursor = tree.scan(from, true, null, true);
+            for (int i = 0; i < count && cursor.hasNext(); i++) {
+                sum += cursor.next();
+            }
+            return sum;
+        }
+    }
+
+    final class OffHeapStore implements SortedStore {
+
+        private final OffHeapBPlusTree<Long, Long> tree;
+
+        OffHeapStore(int m) {
+            tree = new OffHeapBPlusTree<>(m, FixedCodec.LONG, FixedCodec.LONG);
+        }
+
+        @Override
+        public void put(Long k, Long v) {
+            tree.insert(k, v);
+        }
+
+        @Override
+        public Long get(Long k) {
+            return tree.get(k);
+        }
+
+        @Override
+        public void delete(Long k) {
+            tree.delete(k);
+        }
+
+        @Override
+        public long scan(Long from, int count) {
+            long sum = 0;
+            OffHeapBPlusTree.Cursor<Long, Long> cursor = tree.scan(from, true, null, true);
+            for (int i = 0; i < count && cursor.hasNext(); i++) {
+                sum += cursor.next();
+            }
+            return sum;
+        }
+    }
+
+    final class BufferedStore implements SortedStore {
+
+        private final BufferedBPlugsTree<Long, Long> tree;
+
+        /**
+         * 缓冲区放m*8条消息
+         */
+        BufferedStore(int m) {
+            tree = new BufferedBPlugsTree<>(m, m << 3);
+        }
+
+        @Override
+        public void put(Long k, Long v) {
+            tree.insert(k, v);
+        }
+
+        @Override
+        public Long get(Long k) {
+            return tree.get(k);
+        }
+
+        @Override
+        public void delete(Long k) {
+            tree.delete(k);
+        }
+
+        @Override
+        public long scan(Long from, int count) {
+            throw new UnsupportedOperationException("BufferedBPlugsTree has no range scan");
+        }
+    }
+
+    final class RedBlackTreeStore implements SortedStore {
+
+        private final RedBlackTree<Long> tree = new RedBlackTree<>();
+
+        @Override
+        public void put(Long k, Long v) {
+            tree.insert(k);
+        }
+
+        @Override
+        public Long get(Long k) {
+            throw new UnsupportedOperationException("RedBlackTree only supports insert");
+        }
+
+        @Override
+        public void delete(Long k) {
+            throw new UnsupportedOperationException("RedBlackTree only supports insert");
+        }
+
+        @Override
+        public long scan(Long from, int count) {
+            throw new UnsupportedOperationException("RedBlackTree only supports insert");
+        }
+    }
+
+    final class MapStore implements SortedStore {
+
+        private final NavigableMap<Long, Long> map;
+
+        MapStore(NavigableMap<Long, Long> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void put(Long k, Long v) {
+            map.put(k, v);
+        }
+
+        @Override
+        public Long get(Long k) {
+            return map.get(k);
+        }
+
+        @Override
+        public void delete(Long k) {
+            map.remove(k);
+        }
+
+        @Override
+        public long scan(Long from, int count) {
+            long sum = 0;
+            int i = 0;
+            for (Map.Entry<Long, Long> entry : map.tailMap(from, true).entrySet()) {
+                if (i++ == count) {
+                    break;
+                }
+                sum += entry.getKey();
+            }
+            return sum;
+        }
+    }
+}
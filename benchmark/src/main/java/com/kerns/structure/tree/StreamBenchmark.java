@@ -0,0 +1,55 @@
+package com.kerns.structure.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全树聚合，对比BPlugsTree2顺序流和并行流
+ * 并行流在非叶子节点的子树边界上拆分，需要多核机器才能看到加速
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamBenchmark {
+
+    @Param({"16", "64", "128"})
+    private int m;
+
+    @Param({"1000000"})
+    private int keyCount;
+
+    private BPlugsTree2<Long, Long> tree;
+
+    @Setup
+    public void setup() {
+        tree = new BPlugsTree2<>(m);
+        for (long k : KeyDistribution.RANDOM.insertKeys(keyCount, 42)) {
+            tree.insert(k, k);
+        }
+    }
+
+    @Benchmark
+    public long sequential() {
+        return tree.stream().mapToLong(Map.Entry::getValue).sum();
+    }
+
+    @Benchmark
+    public long parallel() {
+        return tree.stream().parallel().mapToLong(Map.Entry::getValue).sum();
+    }
+}
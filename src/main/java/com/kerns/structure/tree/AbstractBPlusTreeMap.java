@@ -0,0 +1,734 @@
+package com.kerns.structure.tree;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * b+树上的NavigableMap，参考TreeMap的NavigableSubMap
+ * <p>
+ * 整个map和subMap/headMap/tailMap/descendingMap返回的视图是同一个类，只是边界和方向不同，
+ * 视图不复制数据，所有的读写都直接落到同一棵树上，遍历的时候沿着叶子节点走。
+ * 子类只需要提供单点的读写删除和一个区间上的游标。
+ * key按照自然顺序排序，key和value都不能为null。
+ *
+ * @param <K>
+ * @param <V>
+ */
+abstract class AbstractBPlusTreeMap<K extends Comparable, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    /**
+     * 下限，为null说明没有下限
+     */
+    final K lo;
+
+    final boolean loInclusive;
+    /**
+     * 上限，为null说明没有上限
+     */
+    final K hi;
+
+    final boolean hiInclusive;
+
+    final boolean descending;
+
+    private transient KeySet keySet;
+
+    private transient EntrySet entrySet;
+
+    private transient Values values;
+
+    AbstractBPlusTreeMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+    /**
+     * 树上的游标，next()返回key，getValue()返回这个key对应的value
+     */
+    interface Cursor<K, V> {
+
+        boolean hasNext();
+
+        K next();
+
+        V getValue();
+    }
+
+    abstract V doGet(K k);
+
+    /**
+     * @return 原来的value
+     */
+    abstract V doPut(K k, V v);
+
+    /**
+     * @return 被删除的value
+     */
+    abstract V doRemove(K k);
+
+    /**
+     * [low,high]之间的游标，descending的时候从high开始往low走
+     *
+     * @param low           为null的时候没有下限
+     * @param lowInclusive
+     * @param high          为null的时候没有上限
+     * @param highInclusive
+     * @param descending
+     * @return
+     */
+    abstract Cursor<K, V> cursor(K low, boolean lowInclusive, K high, boolean highInclusive, boolean descending);
+
+    /**
+     * 同一棵树上的另一个视图
+     */
+    abstract AbstractBPlusTreeMap<K, V> newView(K lo, boolean loInclusive, K hi, boolean hiInclusive,
+                                                boolean descending);
+
+    /**
+     * 视图里的数据个数，默认遍历一次，子类有更快的方式的时候覆盖
+     *
+     * @return
+     */
+    @Override
+    public int size() {
+        int count = 0;
+        for (Cursor<K, V> cursor = cursor(); cursor.hasNext(); cursor.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !cursor().hasNext();
+    }
+
+    @Override
+    public V get(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        return inRange(k) ? doGet(k) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException key不在视图的范围内
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        checkInRange(key);
+        return doPut(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        return inRange(k) ? doRemove(k) : null;
+    }
+
+    /**
+     * 通过迭代器一条一条删除，视图上只删除视图范围内的数据
+     */
+    @Override
+    public void clear() {
+        Iterator<K> iterator = new KeyIterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return descending ? absHigher(key) : absLower(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(lowerEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return descending ? absCeiling(key) : absFloor(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return descending ? absFloor(key) : absCeiling(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return descending ? absLower(key) : absHigher(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return descending ? absHighest() : absLowest();
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return descending ? absLowest() : absHighest();
+    }
+
+    @Override
+    public K firstKey() {
+        return keyOrThrow(firstEntry());
+    }
+
+    @Override
+    public K lastKey() {
+        return keyOrThrow(lastEntry());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return poll(firstEntry());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return poll(lastEntry());
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return newView(lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        KeySet set = keySet;
+        return set != null ? set : (keySet = new KeySet());
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet set = entrySet;
+        return set != null ? set : (entrySet = new EntrySet());
+    }
+
+    /**
+     * 遍历value的时候不创建Entry对象
+     *
+     * @return
+     */
+    @Override
+    public Collection<V> values() {
+        Values collection = values;
+        return collection != null ? collection : (values = new Values());
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        Objects.requireNonNull(fromKey);
+        Objects.requireNonNull(toKey);
+        return descending ? view(toKey, toInclusive, fromKey, fromInclusive)
+                : view(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        Objects.requireNonNull(toKey);
+        return descending ? view(toKey, inclusive, null, false) : view(null, false, toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        Objects.requireNonNull(fromKey);
+        return descending ? view(null, false, fromKey, inclusive) : view(fromKey, inclusive, null, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * 按照自然顺序在当前视图里再截取一段
+     *
+     * @param low  为null的时候使用当前的下限
+     * @param high 为null的时候使用当前的上限
+     */
+    private AbstractBPlusTreeMap<K, V> view(K low, boolean lowInclusive, K high, boolean highInclusive) {
+        if (low != null && !inRange(low, lowInclusive)) {
+            throw new IllegalArgumentException("fromKey out of range: " + low);
+        }
+        if (high != null && !inRange(high, highInclusive)) {
+            throw new IllegalArgumentException("toKey out of range: " + high);
+        }
+        if (low != null && high != null && low.compareTo(high) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        if (low == null) {
+            low = lo;
+            lowInclusive = loInclusive;
+        }
+        if (high == null) {
+            high = hi;
+            highInclusive = hiInclusive;
+        }
+        return newView(low, lowInclusive, high, highInclusive, descending);
+    }
+
+    /**
+     * 整个视图按照视图方向的游标
+     */
+    Cursor<K, V> cursor() {
+        return cursor(lo, loInclusive, hi, hiInclusive, descending);
+    }
+
+    boolean tooLow(K k) {
+        if (lo == null) {
+            return false;
+        }
+        int compare = k.compareTo(lo);
+        return compare < 0 || (compare == 0 && !loInclusive);
+    }
+
+    boolean tooHigh(K k) {
+        if (hi == null) {
+            return false;
+        }
+        int compare = k.compareTo(hi);
+        return compare > 0 || (compare == 0 && !hiInclusive);
+    }
+
+    boolean inRange(K k) {
+        return !tooLow(k) && !tooHigh(k);
+    }
+
+    /**
+     * 不包含边界的时候，边界本身也可以作为新视图的边界
+     */
+    private boolean inRange(K k, boolean inclusive) {
+        if (inclusive) {
+            return inRange(k);
+        }
+        return (lo == null || k.compareTo(lo) >= 0) && (hi == null || k.compareTo(hi) <= 0);
+    }
+
+    void checkInRange(K k) {
+        if (!inRange(k)) {
+            throw new IllegalArgumentException("key out of range: " + k);
+        }
+    }
+
+    // 下面按照自然顺序查找，和视图的方向无关
+
+    private Map.Entry<K, V> absLowest() {
+        return first(cursor(lo, loInclusive, hi, hiInclusive, false));
+    }
+
+    private Map.Entry<K, V> absHighest() {
+        return first(cursor(lo, loInclusive, hi, hiInclusive, true));
+    }
+
+    private Map.Entry<K, V> absCeiling(K k) {
+        Objects.requireNonNull(k);
+        return tooLow(k) ? absLowest() : first(cursor(k, true, hi, hiInclusive, false));
+    }
+
+    private Map.Entry<K, V> absHigher(K k) {
+        Objects.requireNonNull(k);
+        return tooLow(k) ? absLowest() : first(cursor(k, false, hi, hiInclusive, false));
+    }
+
+    private Map.Entry<K, V> absFloor(K k) {
+        Objects.requireNonNull(k);
+        return tooHigh(k) ? absHighest() : first(cursor(lo, loInclusive, k, true, true));
+    }
+
+    private Map.Entry<K, V> absLower(K k) {
+        Objects.requireNonNull(k);
+        return tooHigh(k) ? absHighest() : first(cursor(lo, loInclusive, k, false, true));
+    }
+
+    private Map.Entry<K, V> first(Cursor<K, V> cursor) {
+        if (!cursor.hasNext()) {
+            return null;
+        }
+        K k = cursor.next();
+        return new AbstractMap.SimpleImmutableEntry<>(k, cursor.getValue());
+    }
+
+    private Map.Entry<K, V> poll(Map.Entry<K, V> entry) {
+        if (entry != null) {
+            doRemove(entry.getKey());
+        }
+        return entry;
+    }
+
+    private static <K> K keyOrNull(Map.Entry<K, ?> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    private static <K> K keyOrThrow(Map.Entry<K, ?> entry) {
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+
+    /**
+     * 视图上的迭代器，按照视图的方向遍历
+     * remove的时候先删除树上的数据，再从刚删除的key后面重新定位游标
+     */
+    abstract class TreeIterator<T> implements Iterator<T> {
+
+        private Cursor<K, V> cursor = cursor();
+
+        K lastKey;
+
+        V lastValue;
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        void advance() {
+            lastKey = cursor.next();
+            lastValue = cursor.getValue();
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            doRemove(lastKey);
+            cursor = descending ? cursor(lo, loInclusive, lastKey, false, true)
+                    : cursor(lastKey, false, hi, hiInclusive, false);
+            lastKey = null;
+        }
+    }
+
+    final class KeyIterator extends TreeIterator<K> {
+
+        @Override
+        public K next() {
+            advance();
+            return lastKey;
+        }
+    }
+
+    final class ValueIterator extends TreeIterator<V> {
+
+        @Override
+        public V next() {
+            advance();
+            return lastValue;
+        }
+    }
+
+    final class EntryIterator extends TreeIterator<Map.Entry<K, V>> {
+
+        @Override
+        public Map.Entry<K, V> next() {
+            advance();
+            return new TreeEntry(lastKey, lastValue);
+        }
+    }
+
+    /**
+     * entrySet返回的数据，setValue直接写到树上
+     */
+    final class TreeEntry implements Map.Entry<K, V> {
+
+        private final K key;
+
+        private V value;
+
+        TreeEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            Objects.requireNonNull(value);
+            doPut(key, value);
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && value.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return AbstractBPlusTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AbstractBPlusTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            if (entry.getKey() == null) {
+                return false;
+            }
+            V value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            AbstractBPlusTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            AbstractBPlusTreeMap.this.clear();
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return AbstractBPlusTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AbstractBPlusTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            AbstractBPlusTreeMap.this.clear();
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return AbstractBPlusTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AbstractBPlusTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return AbstractBPlusTreeMap.this.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            AbstractBPlusTreeMap.this.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return higherKey(k);
+        }
+
+        @Override
+        public K first() {
+            return firstKey();
+        }
+
+        @Override
+        public K last() {
+            return lastKey();
+        }
+
+        @Override
+        public K pollFirst() {
+            return keyOrNull(pollFirstEntry());
+        }
+
+        @Override
+        public K pollLast() {
+            return keyOrNull(pollLastEntry());
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return AbstractBPlusTreeMap.this.comparator();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
@@ -41,16 +41,39 @@ public class BPlugsTree<K extends Comparable, V> {
      * 树拥有的数据
      */
     private int size;
+    /**
+     * 运行指标，为null的时候不统计
+     */
+    private TreeMetrics metrics;
 
 
     public BPlugsTree(int m) {
+        this(m, null);
+    }
+
+    /**
+     * @param m
+     * @param metrics 运行指标，可以为null，一个TreeMetrics只能给一棵树使用
+     */
+    public BPlugsTree(int m, TreeMetrics metrics) {
         this.m = m;
         this.size = 0;
-        root = new Leaf<K, V>(m);
+        if (metrics != null) {
+            metrics.attach();
+            this.metrics = metrics;
+        }
+        root = new Leaf<K, V>(m, metrics);
     }
 
     public V get(K k) {
-        return root.search(k);
+        if (metrics == null) {
+            return root.search(k);
+        }
+        long start = System.nanoTime();
+        TreeMetrics.CountingKey key = new TreeMetrics.CountingKey(k);
+        V v = root.search((K) key);
+        metrics.lookup(key.comparisons, System.nanoTime() - start);
+        return v;
     }
 
     public Integer size() {
@@ -76,7 +99,13 @@ public class BPlugsTree<K extends Comparable, V> {
             return null;
         }
         size--;
-        return root.delete(k, root);
+        if (metrics == null) {
+            return root.delete(k, root);
+        }
+        long start = System.nanoTime();
+        V v = root.delete(k, root);
+        metrics.delete(System.nanoTime() - start);
+        return v;
     }
 
     /**
@@ -86,12 +115,16 @@ public class BPlugsTree<K extends Comparable, V> {
      * @param v
      */
     public void insert(K k, V v) {
+        long start = metrics == null ? 0 : System.nanoTime();
         //如果返回了新的root节点，则把原来的根节点替换为新的节点。
         Node node = root.insert(k, v);
         if (node != null) {
             this.root = node;
         }
         size++;
+        if (metrics != null) {
+            metrics.insert(System.nanoTime() - start);
+        }
 
     }
 
@@ -127,9 +160,14 @@ public class BPlugsTree<K extends Comparable, V> {
          * 当前包含了多少数据
          */
         protected int size;
+        /**
+         * 和树共用的运行指标，为null的时候不统计
+         */
+        protected TreeMetrics metrics;
 
-        protected Node(int m){
+        protected Node(int m, TreeMetrics metrics){
             this.m=m;
+            this.metrics=metrics;
         }
 
         /**
@@ -203,8 +241,8 @@ public class BPlugsTree<K extends Comparable, V> {
          */
         private Leaf<K, V> next;
 
-        Leaf(int m) {
-            super(m);
+        Leaf(int m, TreeMetrics metrics) {
+            super(m, metrics);
             this.keys = new Object[m];
             this.values = new Object[m];
         }
@@ -255,7 +293,10 @@ public class BPlugsTree<K extends Comparable, V> {
             if (size > m) {
                 int newSize = size / 2;
                 if (this.parent == null) {
-                    this.parent = new NoneLeaf(m);
+                    this.parent = new NoneLeaf(m, metrics);
+                    if (metrics != null) {
+                        metrics.grow();
+                    }
                 }
                 this.keys = new Object[m];
                 this.values = new Object[m];
@@ -265,7 +306,10 @@ public class BPlugsTree<K extends Comparable, V> {
                 System.arraycopy(newValues, 0, this.values, 0, newSize);
                 /** 前后节点赋值 */
                 Leaf oldNext = this.next;
-                Leaf<K, V> newLeaf = new Leaf<K, V>(m);
+                Leaf<K, V> newLeaf = new Leaf<K, V>(m, metrics);
+                if (metrics != null) {
+                    metrics.leafSplit();
+                }
                 this.next = newLeaf;
                 //老的右节点赋值给新的接口的next属，因为 this < newLeaf < this.next
                 newLeaf.next = oldNext;
@@ -322,6 +366,9 @@ public class BPlugsTree<K extends Comparable, V> {
                             //把左node的最大一位移动这个Node的第一位
                             Entry<K, V> entry = pre.getAndRemoveLast();
                             pre.resetParentKey();
+                            if (metrics != null) {
+                                metrics.borrowFromLeft();
+                            }
                             Object[] newKey = new Object[size];
                             Object[] newValue = new Object[size];
                             newKey[0] = entry.getK();
@@ -346,6 +393,9 @@ public class BPlugsTree<K extends Comparable, V> {
                             //把左node的最大一位移动这个Node的第一位
                             Entry<K, V> entry = next.getAndRemoveFirst();
                             this.resetParentKey();
+                            if (metrics != null) {
+                                metrics.borrowFromRight();
+                            }
                             Object[] newKey = new Object[size];
                             Object[] newValue = new Object[size];
                             newKey[size - 1] = entry.getK();
@@ -390,6 +440,9 @@ public class BPlugsTree<K extends Comparable, V> {
                             removeNode.pre = null;
                             removeNode.next = null;
                             removeNode = null;
+                            if (metrics != null) {
+                                metrics.leafMerge();
+                            }
 
                         }
                     }
@@ -422,6 +475,9 @@ public class BPlugsTree<K extends Comparable, V> {
                             }
                             this.pre = null;
                             this.next = null;
+                            if (metrics != null) {
+                                metrics.leafMerge();
+                            }
 
                         }
                     }
@@ -521,8 +577,8 @@ public class BPlugsTree<K extends Comparable, V> {
          */
         private Node<K, V>[] children;
 
-        public NoneLeaf(int m) {
-            super(m);
+        public NoneLeaf(int m, TreeMetrics metrics) {
+            super(m, metrics);
             this.keys = new Object[m];
             this.children = new Node[m];
         }
@@ -646,13 +702,19 @@ public class BPlugsTree<K extends Comparable, V> {
             if (size > m) {
                 int newSize = size / 2;
                 if (this.parent == null) {
-                    this.parent = new NoneLeaf(m);
+                    this.parent = new NoneLeaf(m, metrics);
+                    if (metrics != null) {
+                        metrics.grow();
+                    }
                 }
                 this.keys = new Object[m];
                 this.size = newSize;
                 System.arraycopy(newKeys, 0, this.keys, 0, newSize);
                 System.arraycopy(newChildren, 0, this.children, 0, newSize + 1);
-                NoneLeaf<K, V> newLeaf = new NoneLeaf<K, V>(m);
+                NoneLeaf<K, V> newLeaf = new NoneLeaf<K, V>(m, metrics);
+                if (metrics != null) {
+                    metrics.innerSplit();
+                }
                 newLeaf.size = newKeys.length - newSize;
                 System.arraycopy(newKeys, newSize, newLeaf.keys, 0, newLeaf.size);
                 System.arraycopy(newChildren, newSize, newLeaf.children, 0, newLeaf.size);
@@ -1,33 +1,283 @@
 package com.kerns.structure.tree;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 标准的b+树基于内存
  * 参考动图
  * https://www.cs.usfca.edu/~galles/visualization/BPlusTree.html
+ * <p>
+ * 每个节点的数组在创建的时候按照阶数m一次性分配好，插入删除都在原数组里面移动数据，
+ * 只有分裂和新建根节点的时候才会分配新的节点。
  */
 public class BPlugsTree2<K extends Comparable, V> {
 
-    private Node<K, V> root;
     /**
-     * 包含的数据
+     * 延迟删除的时候放在value位置上的墓碑，查找和遍历的时候跳过
+     */
+    private static final Object TOMBSTONE = new Object();
+    /**
+     * 全局布隆过滤器最少按照这么多key计算大小
      */
-    private int size;
+    private static final int MIN_FILTER_ENTRIES = 1024;
 
-    private int m;
+    private Node<K, V> root;
 
-    private static final int D = 2;
+    private int m;
+    /**
+     * 子树聚合，为null的时候不维护
+     */
+    private Aggregator aggregator;
+    /**
+     * 运行指标，为null的时候不统计
+     */
+    private TreeMetrics metrics;
+    /**
+     * 增加或者删除数据的次数，覆盖value不算，compact整理节点也算，游标用来发现遍历过程中树被修改了
+     */
+    private int modCount;
+    /**
+     * 是否延迟删除，delete只把数据标记成墓碑，不移动数据也不合并节点
+     */
+    private boolean lazyDelete;
+    /**
+     * 插入到最右边叶子节点末尾的时候是否只分出最后一条数据
+     */
+    private final boolean appendSplit;
+    /**
+     * 布隆过滤器的误判率，0表示不使用
+     */
+    private final double filterFpp;
+    /**
+     * 全局布隆过滤器，不使用的时候为null，叶子节点的过滤器也是null
+     */
+    private BloomFilter filter;
+    /**
+     * 全局布隆过滤器按照多少个key计算的大小，添加的key超过之后重新构建
+     */
+    private int filterCapacity;
+    /**
+     * 全局布隆过滤器添加过的key的个数，包括后来删除的
+     */
+    private int filterAdds;
 
     public BPlugsTree2(int m) {
-        root = new Leaf<>(m);
-        this.m = m;
+        this(m, null);
+    }
+
+    /**
+     * 按照配置的阶数和分裂方式创建
+     *
+     * @param config
+     */
+    public BPlugsTree2(TreeConfig config) {
+        this(config, null, null);
+    }
+
+    /**
+     * 每个非叶子节点为每个子树缓存一份聚合结果，插入删除的时候沿着路径更新，范围聚合只需要访问两边的叶子节点
+     *
+     * @param m
+     * @param aggregator
+     */
+    public BPlugsTree2(int m, Aggregator<? super V, ?> aggregator) {
+        this(m, aggregator, null);
+    }
+
+    /**
+     * @param m
+     * @param aggregator 子树聚合，可以为null
+     * @param metrics    运行指标，可以为null，一个TreeMetrics只能给一棵树使用
+     */
+    public BPlugsTree2(int m, Aggregator<? super V, ?> aggregator, TreeMetrics metrics) {
+        this(TreeConfig.ofOrder(m), aggregator, metrics);
+    }
+
+    /**
+     * @param config     阶数、分裂方式和布隆过滤器
+     * @param aggregator 子树聚合，可以为null
+     * @param metrics    运行指标，可以为null，一个TreeMetrics只能给一棵树使用
+     */
+    public BPlugsTree2(TreeConfig config, Aggregator<? super V, ?> aggregator, TreeMetrics metrics) {
+        this.m = config.getOrder();
+        this.appendSplit = config.getSplitPolicy() == TreeConfig.SplitPolicy.APPEND;
+        this.filterFpp = config.getBloomFilterFpp();
+        this.aggregator = aggregator;
+        if (metrics != null) {
+            metrics.attach();
+            this.metrics = metrics;
+        }
+        root = newLeaf();
+        if (filterFpp > 0) {
+            rebuildFilter();
+        }
+    }
+
+    /**
+     * 新建一个空的叶子节点作为根节点，使用布隆过滤器的时候带上叶子节点的过滤器
+     */
+    private Leaf<K, V> newLeaf() {
+        Leaf<K, V> leaf = new Leaf<>(m, aggregator, metrics);
+        if (filterFpp > 0) {
+            leaf.filter = new BloomFilter(m - 1, filterFpp);
+        }
+        return leaf;
+    }
+
+    /**
+     * 按照当前数据个数的两倍重新构建全局布隆过滤器，已经删除的key不再算在里面
+     */
+    private void rebuildFilter() {
+        filterCapacity = Math.max(MIN_FILTER_ENTRIES, root.getKeyCount() << 1);
+        filter = new BloomFilter(filterCapacity, filterFpp);
+        filterAdds = 0;
+        for (Leaf<K, V> leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++) {
+                if (leaf.values[i] != TOMBSTONE) {
+                    filter.add(leaf.keys[i]);
+                    filterAdds++;
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.bloomFilter(firstLeaf().filter.getBytes(), filter.getBytes());
+        }
+    }
+
+    /**
+     * 新增的key加到全局布隆过滤器，超过容量之后误判率会升高，重新构建
+     */
+    private void addToFilter(K k) {
+        filter.add(k);
+        if (++filterAdds > filterCapacity) {
+            rebuildFilter();
+        }
+    }
+
+    public static <K extends Comparable, V> BPlugsTree2<K, V> bulkLoad(int m, Iterator<? extends Map.Entry<K, V>> sorted,
+                                                                     double fillFactor) {
+        return bulkLoad(m, null, sorted, fillFactor);
     }
 
     /**
-     * 获取树包含的数据
+     * 从已经排好序的数据批量构建树，不走insert，没有分裂
+     * 先从左往右按照填充率把数据装满叶子节点，同时串好next/pre链表，然后一层一层往上构建非叶子节点
+     *
+     * @param m          阶数
+     * @param aggregator 子树聚合，可以为null
+     * @param sorted     按照key严格递增的数据
+     * @param fillFactor 节点的填充率(0,1]，1表示装满
+     * @return
+     * @throws IllegalArgumentException key不是严格递增的时候
+     */
+    public static <K extends Comparable, V> BPlugsTree2<K, V> bulkLoad(int m, Aggregator<? super V, ?> aggregator,
+                                                                     Iterator<? extends Map.Entry<K, V>> sorted,
+                                                                     double fillFactor) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("fillFactor must be in (0, 1]");
+        }
+        BPlugsTree2<K, V> tree = new BPlugsTree2<>(m, aggregator);
+        Leaf<K, V> leaf = (Leaf<K, V>) tree.root;
+        int leafCapacity = Math.max(leaf.minSize(), Math.min(m - 1, (int) Math.ceil((m - 1) * fillFactor)));
+        List<Node<K, V>> level = new ArrayList<>();
+        level.add(leaf);
+        K last = null;
+        while (sorted.hasNext()) {
+            Map.Entry<K, V> entry = sorted.next();
+            K k = entry.getKey();
+            if (last != null && k.compareTo(last) <= 0) {
+                throw new IllegalArgumentException("keys must be strictly increasing: " + k + " after " + last);
+            }
+            if (leaf.size == leafCapacity) {
+                Leaf<K, V> next = new Leaf<>(m, aggregator, null);
+                leaf.next = next;
+                next.pre = leaf;
+                leaf = next;
+                level.add(leaf);
+            }
+            leaf.keys[leaf.size] = k;
+            leaf.values[leaf.size] = entry.getValue();
+            leaf.size++;
+            last = k;
+        }
+        //最后一个叶子节点数据不足，和前一个节点合并或者平分
+        if (level.size() > 1 && leaf.isUnderflowed()) {
+            Leaf<K, V> pre = leaf.pre;
+            if (pre.size + leaf.size < m) {
+                tree.merge(pre, leaf);
+                level.remove(level.size() - 1);
+            } else {
+                leaf.borrowFromLeft(pre, (pre.size - leaf.size) >> 1);
+            }
+        }
+        int childCapacity = Math.max((m + 1) >> 1, Math.min(m, (int) Math.ceil(m * fillFactor)));
+        while (level.size() > 1) {
+            level = buildParents(level, m, aggregator, null, childCapacity);
+        }
+        tree.root = level.get(0);
+        return tree;
+    }
+
+    /**
+     * 把同一层的节点按照顺序挂到新建的父节点上
+     *
+     * @param level    同一层的节点
+     * @param m
+     * @param aggregator
+     * @param metrics    新建的父节点使用的运行指标，可以为null
+     * @param capacity   每个父节点的子节点个数
+     * @return 父节点这一层
+     */
+    private static <K extends Comparable, V> List<Node<K, V>> buildParents(List<Node<K, V>> level, int m,
+                                                                               Aggregator aggregator,
+                                                                               TreeMetrics metrics, int capacity) {
+        int minChildren = (m + 1) >> 1;
+        int n = level.size();
+        List<Node<K, V>> parents = new ArrayList<>((n + capacity - 1) / capacity);
+        int from = 0;
+        while (from < n) {
+            int count = Math.min(capacity, n - from);
+            int rest = n - from - count;
+            if (rest > 0 && rest < minChildren) {
+                //剩下的不够一个节点，和当前节点一起合并或者平分
+                int total = count + rest;
+                count = total <= m ? total : total - (total >> 1);
+            }
+            NonLeaf<K, V> parent = new NonLeaf<>(m, aggregator, metrics);
+            for (int i = 0; i < count; i++) {
+                Node<K, V> child = level.get(from + i);
+                child.parent = parent;
+                parent.children[i] = child;
+                if (i > 0) {
+                    parent.keys[i - 1] = child.firstKey();
+                }
+                parent.refreshSlot(i);
+            }
+            parent.size = count - 1;
+            parent.recount();
+            parents.add(parent);
+            from += count;
+        }
+        return parents;
+    }
+
+    /**
+     * 获取树包含的数据，非叶子节点维护了子树的数据个数，不需要遍历
      *
      * @return
      */
@@ -36,32 +286,96 @@ public class BPlugsTree2<K extends Comparable, V> {
     }
 
     /**
-     * 插入数据
+     * 插入数据，key已经存在的时候覆盖原来的value
      *
      * @param k
      * @param v
      */
     public void insert(K k, V v) {
-        //TODO 查找对应的Node节点，如果没有返回
-        Node node = root;
-        while (node instanceof NonLeaf) {
-            //非叶子节点
-            int index = node.getIndex(k);
-            if (index < 0) {
-                index = -index - 1;
-            }
-            node = ((NonLeaf) node).children[index];
-        }
-        // 永远返回的是根节点
-        Node newNode = node.insert(k, v);
-        //后期重新构建树，计算总的长，先直接通过加减做
+        long start = metrics == null ? 0 : System.nanoTime();
+        int before = root.getKeyCount();
+        // 产生新的根节点的时候才会返回
+        Node newNode = findLeaf(k).insert(k, v, appendSplit);
         if (newNode != null) {
             //更新节点，默认情况下会有多线程进程，h2 使用compare and set 实现
             root = newNode;
         }
+        if (root.getKeyCount() != before) {
+            modCount++;
+            if (filter != null) {
+                addToFilter(k);
+            }
+        }
+        if (metrics != null) {
+            metrics.insert(System.nanoTime() - start);
+        }
     }
 
 
+    /**
+     * 批量插入数据
+     * 先按照key排序，落在同一个叶子节点的连续数据只从根节点查找一次，一次合并到叶子节点里面，
+     * 叶子节点放不下的时候一次性分裂成多个节点，每个叶子节点在一次批量插入中最多分裂一次。
+     * 同一批数据中key重复的时候，后面的覆盖前面的
+     *
+     * @param entries
+     */
+    public void insertAll(Collection<? extends Map.Entry<K, V>> entries) {
+        int before = root.getKeyCount();
+        Map.Entry<K, V>[] sorted = entries.toArray(new Map.Entry[0]);
+        //稳定排序，保证相同key的数据保持原来的顺序
+        Arrays.sort(sorted, (a, b) -> a.getKey().compareTo(b.getKey()));
+        int n = 0;
+        Comparable[] keys = new Comparable[sorted.length];
+        //全局过滤器只添加新增的key，覆盖的key已经在里面了
+        boolean[] isNew = filter == null ? null : new boolean[sorted.length];
+        Object[] values = new Object[sorted.length];
+        for (Map.Entry<K, V> entry : sorted) {
+            if (n > 0 && entry.getKey().compareTo(keys[n - 1]) == 0) {
+                values[n - 1] = entry.getValue();
+            } else {
+                keys[n] = entry.getKey();
+                values[n] = entry.getValue();
+                n++;
+            }
+        }
+        int from = 0;
+        while (from < n) {
+            K k = (K) keys[from];
+            //查找叶子节点，同时记录叶子节点的上限，小于上限的数据都属于这个叶子节点
+            Node<K, V> node = root;
+            K upper = null;
+            while (node instanceof NonLeaf) {
+                int index = node.getIndex(k);
+                index = index < 0 ? ~index : index + 1;
+                if (index < node.size) {
+                    upper = (K) node.keys[index];
+                }
+                node = ((NonLeaf<K, V>) node).children[index];
+            }
+            int to = from + 1;
+            while (to < n && (upper == null || keys[to].compareTo(upper) < 0)) {
+                to++;
+            }
+            Node newNode = ((Leaf<K, V>) node).insertAll(keys, values, isNew, from, to, appendSplit);
+            if (newNode != null) {
+                root = newNode;
+            }
+            from = to;
+        }
+        if (root.getKeyCount() != before) {
+            modCount++;
+        }
+        if (isNew != null) {
+            //合并完再添加，过滤器重建的时候已经包含了合并进去的key
+            for (int i = 0; i < n; i++) {
+                if (isNew[i]) {
+                    addToFilter((K) keys[i]);
+                }
+            }
+        }
+    }
+
     /**
      * 查找数据
      *
@@ -69,239 +383,1186 @@ public class BPlugsTree2<K extends Comparable, V> {
      * @return
      */
     public V get(K k) {
-        return root.search(k);
+        if (metrics == null) {
+            return filter == null ? root.search(k) : search(k, k);
+        }
+        long start = System.nanoTime();
+        TreeMetrics.CountingKey key = new TreeMetrics.CountingKey(k);
+        V v = filter == null ? root.search((K) key) : search(k, (K) key);
+        metrics.lookup(key.comparisons, System.nanoTime() - start);
+        return v;
+    }
+
+    /**
+     * 使用布隆过滤器的查找，全局过滤器判断不存在的时候不访问任何节点，
+     * 叶子节点的过滤器判断不存在的时候不在节点里二分查找
+     *
+     * @param k     用来计算hash
+     * @param probe 用来比较，统计比较次数的时候是包装过的k
+     * @return
+     */
+    private V search(K k, K probe) {
+        if (filter.mightContain(k)) {
+            Leaf<K, V> leaf = findLeaf(probe);
+            if (leaf.filter.mightContain(k)) {
+                V v = leaf.search(probe);
+                if (v == null && metrics != null) {
+                    metrics.bloomFilterFalsePositive();
+                }
+                return v;
+            }
+        }
+        if (metrics != null) {
+            metrics.bloomFilterNegative();
+        }
+        return null;
+    }
+
+    /**
+     * 小于k的数据个数
+     *
+     * @param k
+     * @return
+     */
+    public int rank(K k) {
+        return countLess(k, false);
+    }
+
+    /**
+     * 第i小的数据，从0开始，按照子树的计数往下找，不需要遍历叶子节点
+     * 可以用来算分位数，比如p99是select((int) ((size() - 1) * 0.99))
+     *
+     * @param i
+     * @return
+     * @throws IndexOutOfBoundsException i小于0或者不小于size()
+     */
+    public Map.Entry<K, V> select(int i) {
+        if (i < 0 || i >= root.getKeyCount()) {
+            throw new IndexOutOfBoundsException("index: " + i + ", size: " + root.getKeyCount());
+        }
+        Node<K, V> node = root;
+        while (node instanceof NonLeaf) {
+            NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+            int child = 0;
+            while (i >= nonLeaf.counts[child]) {
+                i -= nonLeaf.counts[child];
+                child++;
+            }
+            node = nonLeaf.children[child];
+        }
+        Leaf<K, V> leaf = (Leaf<K, V>) node;
+        i = leaf.liveIndex(i);
+        return new AbstractMap.SimpleImmutableEntry<>((K) leaf.keys[i], (V) leaf.values[i]);
+    }
+
+    /**
+     * [from,to]之间的数据个数
+     *
+     * @param from          为null的时候从最小值开始
+     * @param fromInclusive
+     * @param to            为null的时候一直到最大值
+     * @param toInclusive
+     * @return
+     */
+    public int countRange(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        int high = to == null ? root.getKeyCount() : countLess(to, toInclusive);
+        int low = from == null ? 0 : countLess(from, !fromInclusive);
+        return Math.max(0, high - low);
+    }
+
+    /**
+     * [from,to]之间的value的聚合，中间完整的子树直接使用缓存的结果，只有两边路径上的节点需要计算
+     *
+     * @param from          为null的时候从最小值开始
+     * @param fromInclusive
+     * @param to            为null的时候一直到最大值
+     * @param toInclusive
+     * @return 没有数据的时候返回identity()
+     * @throws IllegalStateException 创建树的时候没有指定聚合方式
+     */
+    public <A> A aggregate(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (aggregator == null) {
+            throw new IllegalStateException("tree was created without an aggregator");
+        }
+        return (A) aggregate(root, from, fromInclusive, to, toInclusive);
+    }
+
+    private Object aggregate(Node<K, V> node, K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (from == null && to == null) {
+            //没有边界的子树直接使用缓存的结果，边界所在的子树只沿着一条路径往下
+            return node.aggregate();
+        }
+        if (node instanceof Leaf) {
+            int low = 0;
+            if (from != null) {
+                low = node.getIndex(from);
+                low = low < 0 ? ~low : fromInclusive ? low : low + 1;
+            }
+            int high = node.size;
+            if (to != null) {
+                high = node.getIndex(to);
+                high = high < 0 ? ~high : toInclusive ? high + 1 : high;
+            }
+            return low < high ? ((Leaf<K, V>) node).aggregate(low, high) : aggregator.identity();
+        }
+        NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+        int i = 0;
+        if (from != null) {
+            i = node.getIndex(from);
+            i = i < 0 ? ~i : i + 1;
+        }
+        int j = node.size;
+        if (to != null) {
+            j = node.getIndex(to);
+            j = j < 0 ? ~j : j + 1;
+        }
+        if (i > j) {
+            return aggregator.identity();
+        }
+        if (i == j) {
+            return aggregate(nonLeaf.children[i], from, fromInclusive, to, toInclusive);
+        }
+        //左边界所在的子树只有下限，右边界所在的子树只有上限，中间的子树完整
+        Object result = aggregate(nonLeaf.children[i], from, fromInclusive, null, true);
+        for (int c = i + 1; c < j; c++) {
+            result = aggregator.combine(result, nonLeaf.aggregates[c]);
+        }
+        return aggregator.combine(result, aggregate(nonLeaf.children[j], null, true, to, toInclusive));
+    }
+
+    /**
+     * 小于k的数据个数，inclusive的时候包含等于k的数据
+     * 每一层把k左边的子树计数加起来
+     *
+     * @param k
+     * @param inclusive
+     * @return
+     */
+    private int countLess(K k, boolean inclusive) {
+        int count = 0;
+        Node<K, V> node = root;
+        while (node instanceof NonLeaf) {
+            NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+            int index = node.getIndex(k);
+            index = index < 0 ? ~index : index + 1;
+            for (int i = 0; i < index; i++) {
+                count += nonLeaf.counts[i];
+            }
+            node = nonLeaf.children[index];
+        }
+        Leaf<K, V> leaf = (Leaf<K, V>) node;
+        int index = leaf.getIndex(k);
+        if (index < 0) {
+            return count + leaf.countLive(~index);
+        }
+        return count + leaf.countLive(index) + (inclusive && leaf.values[index] != TOMBSTONE ? 1 : 0);
+    }
+
+    /**
+     * 按照从小到大的顺序遍历[from,to]之间的数据，只从根节点查找一次，后面沿着叶子节点的next链表往后走
+     * 遍历过程中不能增加或者删除数据，否则游标抛出ConcurrentModificationException
+     *
+     * @param from          为null的时候从最小值开始
+     * @param fromInclusive
+     * @param to            为null的时候一直到最大值
+     * @param toInclusive
+     * @return
+     */
+    public Cursor<K, V> scan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        Leaf<K, V> leaf;
+        int index;
+        if (from == null) {
+            leaf = firstLeaf();
+            index = 0;
+        } else {
+            leaf = findLeaf(from);
+            index = leaf.getIndex(from);
+            if (index < 0) {
+                index = ~index;
+            } else if (!fromInclusive) {
+                index++;
+            }
+        }
+        if (index >= leaf.size) {
+            leaf = leaf.next;
+            index = 0;
+        }
+        return new Cursor<>(this, leaf, index, false, to, toInclusive);
+    }
+
+    /**
+     * 按照从大到小的顺序遍历[from,to]之间的数据，沿着叶子节点的pre链表往前走
+     *
+     * @param from          下限，为null的时候一直到最小值
+     * @param fromInclusive
+     * @param to            上限，为null的时候从最大值开始
+     * @param toInclusive
+     * @return
+     */
+    public Cursor<K, V> descendingScan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        Leaf<K, V> leaf;
+        int index;
+        if (to == null) {
+            leaf = lastLeaf();
+            index = leaf.size - 1;
+        } else {
+            leaf = findLeaf(to);
+            index = leaf.getIndex(to);
+            if (index < 0) {
+                index = ~index - 1;
+            } else if (!toInclusive) {
+                index--;
+            }
+        }
+        if (index < 0) {
+            leaf = leaf.pre;
+            index = leaf == null ? 0 : leaf.size - 1;
+        }
+        return new Cursor<>(this, leaf, index, true, from, fromInclusive);
+    }
+
+    /**
+     * 查找k所在的叶子节点
+     *
+     * @param k
+     * @return
+     */
+    private Leaf<K, V> findLeaf(K k) {
+        Node<K, V> node = root;
+        while (node instanceof NonLeaf) {
+            //非叶子节点
+            int index = node.getIndex(k);
+            index = index < 0 ? ~index : index + 1;
+            node = ((NonLeaf<K, V>) node).children[index];
+        }
+        return (Leaf<K, V>) node;
+    }
+
+    private Leaf<K, V> firstLeaf() {
+        Node<K, V> node = root;
+        while (node instanceof NonLeaf) {
+            node = ((NonLeaf<K, V>) node).children[0];
+        }
+        return (Leaf<K, V>) node;
+    }
+
+    private Leaf<K, V> lastLeaf() {
+        Node<K, V> node = root;
+        while (node instanceof NonLeaf) {
+            node = ((NonLeaf<K, V>) node).children[node.size];
+        }
+        return (Leaf<K, V>) node;
+    }
+
+    /**
+     * 按照key从小到大的顺序遍历全部数据，可以并行
+     * 拆分的时候按照非叶子节点的子树拆，两边的数据个数尽量相等，每一部分的大小都是准确的
+     * 遍历过程中不能增加或者删除数据，否则抛出ConcurrentModificationException
+     *
+     * @return
+     */
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+        return new EntrySpliterator<>(this, root, 0, root instanceof NonLeaf ? root.size + 1 : root.size,
+                root.getKeyCount());
     }
 
     /**
-     * 删除数据
+     * 全部数据的流，parallel()之后每个线程遍历一部分子树
+     *
+     * @return
+     */
+    public Stream<Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * 把全部数据写成只读的快照文件，沿着叶子节点的链表按顺序写，不需要排序
+     * 先写临时文件再重命名，写的过程中不能增加或者删除数据
+     *
+     * @param file
+     * @param keyCodec
+     * @param valueCodec
+     * @throws IOException
+     * @see TreeSnapshot
+     */
+    public void writeSnapshot(Path file, FixedCodec<K> keyCodec, FixedCodec<V> valueCodec) throws IOException {
+        TreeSnapshot.write(file, scan(null, true, null, true), size(), keyCodec, valueCodec);
+    }
+
+    /**
+     * 映射writeSnapshot写的快照文件，不反序列化数据，需要修改的时候调用{@link TreeSnapshot#toTree(int)}
+     *
+     * @param file
+     * @param keyCodec
+     * @param valueCodec
+     * @return
+     * @throws IOException
+     */
+    public static <K extends Comparable, V> TreeSnapshot<K, V> openSnapshot(Path file, FixedCodec<K> keyCodec,
+                                                                            FixedCodec<V> valueCodec) throws IOException {
+        return TreeSnapshot.open(file, keyCodec, valueCodec);
+    }
+
+    /**
+     * 删除数据，延迟删除的时候只标记墓碑
      *
      * @param k
      */
     public void delete(K k) {
+        int before = root.getKeyCount();
+        if (metrics == null) {
+            remove(k);
+        } else {
+            long start = System.nanoTime();
+            remove(k);
+            metrics.delete(System.nanoTime() - start);
+        }
+        if (root.getKeyCount() != before) {
+            modCount++;
+        }
+    }
+
+    /**
+     * 打开之后delete只从根节点查找一次，把value换成墓碑，更新路径上的计数，不移动数据也不合并节点，
+     * 删除的耗时和删除之前的数据分布无关。墓碑占着叶子节点的位置，插入到满的叶子节点之前先清理这个节点的墓碑，
+     * 稀疏的叶子节点等到compact()的时候一起合并。
+     * 关闭之后已经有的墓碑保留，直到被插入覆盖或者compact()
+     *
+     * @param lazyDelete
+     */
+    public void setLazyDelete(boolean lazyDelete) {
+        this.lazyDelete = lazyDelete;
+    }
+
+    public boolean isLazyDelete() {
+        return lazyDelete;
+    }
+
+    /**
+     * 清理全部墓碑，从左往右合并相邻的叶子节点，放得下就合并，放不下的时候平分给数据不足的节点，
+     * 然后用整理好的叶子节点重新构建非叶子节点。叶子节点原地整理，只有非叶子节点重新创建
+     * 没有墓碑的时候直接返回，不修改树
+     *
+     * @return 清理掉的墓碑个数
+     */
+    public int compact() {
+        int tombstones = 0;
+        int leavesBefore = 0;
+        for (Leaf<K, V> leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            tombstones += leaf.dead;
+            leavesBefore++;
+        }
+        if (tombstones == 0) {
+            return 0;
+        }
+        modCount++;
+        int nodesBefore = 0;
+        int heightBefore = 0;
+        if (metrics != null) {
+            nodesBefore = countNodes(root);
+            heightBefore = height();
+        }
+        List<Node<K, V>> level = new ArrayList<>();
+        Leaf<K, V> left = firstLeaf();
+        left.purge();
+        level.add(left);
+        for (Leaf<K, V> leaf = left.next; leaf != null; leaf = left.next) {
+            leaf.purge();
+            if (left.size + leaf.size < m) {
+                merge(left, leaf);
+                continue;
+            }
+            if (left.isUnderflowed()) {
+                left.borrowFromRight(leaf, (leaf.size - left.size) >> 1);
+            }
+            left = leaf;
+            level.add(left);
+        }
+        //最后一个叶子节点和前一个节点加起来放不下，平分之后两个节点都满足最小值
+        if (left.isUnderflowed() && left.pre != null) {
+            left.borrowFromLeft(left.pre, (left.pre.size - left.size) >> 1);
+        }
+        int leavesAfter = level.size();
+        while (level.size() > 1) {
+            level = buildParents(level, m, aggregator, metrics, m);
+        }
+        root = level.get(0);
+        root.parent = null;
+        if (filter != null) {
+            for (Leaf<K, V> leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+                leaf.rebuildFilter();
+            }
+            rebuildFilter();
+        }
+        if (metrics != null) {
+            metrics.dropNodes(nodesBefore - countNodes(root), leavesBefore - leavesAfter, heightBefore - height());
+        }
+        return tombstones;
+    }
+
+    /**
+     * 树的高度，只有一个叶子节点的时候是1
+     */
+    private int height() {
+        int height = 1;
+        for (Node<K, V> node = root; node instanceof NonLeaf; node = ((NonLeaf<K, V>) node).children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+    private void remove(K k) {
+        if (lazyDelete) {
+            Leaf<K, V> leaf = findLeaf(k);
+            int i = leaf.getIndex(k);
+            if (i >= 0 && leaf.values[i] != TOMBSTONE) {
+                leaf.values[i] = TOMBSTONE;
+                leaf.dead++;
+                leaf.updateAncestors(k, -1);
+            }
+            return;
+        }
         if (root instanceof Leaf) {
-            Leaf<K, V> leafRoot = (Leaf<K, V>) root;
-            leafRoot.delete(k);//叶子节点更新数
+            //叶子节点更新数
+            root.delete(k);
+            return;
+        }
+        List<NonLeaf<K, V>> path = new ArrayList<NonLeaf<K, V>>();
+        List<Integer> indexInParentPath = new ArrayList<Integer>();
+        Node<K, V> tempNode = root;
+        //递归查找非叶子节点，查找对应的叶子接口对应的父亲节点
+        while (tempNode instanceof NonLeaf) {
+            NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) tempNode;
+            path.add(nonLeaf);
+            int i = nonLeaf.getIndex(k);
+            i = i < 0 ? ~i : i + 1;
+            // ith in parent's children
+            indexInParentPath.add(i);
+            tempNode = nonLeaf.children[i];
+        }
+
+        Leaf<K, V> leaf = (Leaf<K, V>) tempNode;
+        int before = leaf.size;
+        leaf.delete(k);
+        //叶子节点小于阀值，没有删除数据的时候不调整，清理过墓碑的节点可能本来就不满
+        if (leaf.size == before || !leaf.isUnderflowed()) {
+            return;
+        }
+        int level = path.size() - 1;
+        NonLeaf<K, V> parent = path.get(level);
+        int indexInParent = indexInParentPath.get(level);
+        boolean merged;
+        if (indexInParent == 0) {
+            merged = handleLeafNodeUnderflow(1, leaf, (Leaf<K, V>) parent.children[1], parent, 0);
         } else {
-            List<Node<K, V>> path = new ArrayList<Node<K, V>>();
-            List<Integer> indexInParentPath = new ArrayList<Integer>();
-            Node<K, V> tempNode = root;
-            //递归查找非叶子节点，查找对应的叶子接口对应的父亲节点
-            while (tempNode instanceof NonLeaf) {
-                path.add(tempNode);
-                NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) tempNode;
-                int i = nonLeaf.getIndex(k);
-                i = i < 0 ? ~i : i + 1;
-                indexInParentPath.add(i); // ith in parent's children - ArrayList
-                tempNode = nonLeaf.children[i];
-            }
-
-            Leaf<K, V> tempLeafNode = (Leaf<K, V>) tempNode;
-            int indexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-            tempLeafNode.delete(k);
-            //叶子节点小于阀值
-            if (!tempLeafNode.isUnderflowed()) {
-                indexInParent = -1;
+            merged = handleLeafNodeUnderflow(0, (Leaf<K, V>) parent.children[indexInParent - 1], leaf,
+                    parent, indexInParent - 1);
+        }
+        //合并之后父亲节点少了一个关键字，需要继续往上检查
+        while (merged) {
+            NonLeaf<K, V> tempIndexNode = path.get(level);
+            if (level == 0) {
+                if (tempIndexNode.size == 0) {
+                    //根节点只剩一个子节点，树的高度减一
+                    root = tempIndexNode.children[0];
+                    root.parent = null;
+                    if (metrics != null) {
+                        metrics.shrink();
+                    }
+                }
+                return;
+            }
+            if (!tempIndexNode.isUnderflowed()) {
+                return;
+            }
+            parent = path.get(level - 1);
+            indexInParent = indexInParentPath.get(level - 1);
+            if (indexInParent == 0) {
+                merged = handleNonLeafUnderflow(1, tempIndexNode, (NonLeaf<K, V>) parent.children[1], parent, 0);
             } else {
-                NonLeaf<K, V> parent = (NonLeaf<K, V>) path.get(path.size() - 1);
-                if (indexInParent == 0) {
-                    indexInParent = handleLeafNodeUnderflow(1, tempLeafNode, (Leaf<K, V>) parent.children[indexInParent + 1],
-                            parent, indexInParentPath);
-                } else {
-                    indexInParent = handleLeafNodeUnderflow(0, (Leaf<K, V>) parent.children[indexInParent - 1], tempLeafNode,
-                            parent, indexInParentPath);
+                merged = handleNonLeafUnderflow(0, (NonLeaf<K, V>) parent.children[indexInParent - 1],
+                        tempIndexNode, parent, indexInParent - 1);
+            }
+            level--;
+        }
+    }
+
+    /**
+     * 删除[from,to]之间的全部数据
+     * 只沿着范围两边的路径往下走，完全落在范围里面的子树直接从父节点上摘掉，两边的叶子节点裁掉范围里的部分，
+     * 重新接好next/pre链表，最后沿着两条路径往上合并或者平分一次，代价是O(log n)加上边界上的节点，和删除的数据个数无关
+     *
+     * @param from          为null的时候从最小值开始
+     * @param fromInclusive
+     * @param to            为null的时候一直到最大值
+     * @param toInclusive
+     * @return 删除的数据个数
+     */
+    public int deleteRange(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        int total = root.getKeyCount();
+        int low = from == null ? 0 : countLess(from, !fromInclusive);
+        int high = to == null ? total : countLess(to, toInclusive);
+        if (high <= low) {
+            return 0;
+        }
+        modCount++;
+        //范围左边最大的key和右边最小的key，它们所在的节点删除之后都不会为空
+        K before = low == 0 ? null : select(low - 1).getKey();
+        K after = high == total ? null : select(high).getKey();
+        if (before == null && after == null) {
+            if (metrics != null) {
+                metrics.dropNodes(countNodes(root) - 1, countLeaves(root) - 1, height() - 1);
+            }
+            root = newLeaf();
+            if (filter != null) {
+                rebuildFilter();
+            }
+            return total;
+        }
+        List<NonLeaf<K, V>> lowPath = new ArrayList<NonLeaf<K, V>>();
+        List<NonLeaf<K, V>> highPath = new ArrayList<NonLeaf<K, V>>();
+        Node<K, V> lowNode = before == null ? null : root;
+        Node<K, V> highNode = after == null ? null : root;
+        while ((lowNode != null ? lowNode : highNode) instanceof NonLeaf) {
+            NonLeaf<K, V> lowParent = (NonLeaf<K, V>) lowNode;
+            NonLeaf<K, V> highParent = (NonLeaf<K, V>) highNode;
+            int i = lowParent == null ? -1 : childIndex(lowParent, before);
+            int j = highParent == null ? -1 : childIndex(highParent, after);
+            if (lowParent == highParent) {
+                //两条路径还没有分开，中间的子树整个删除
+                if (i < j) {
+                    cut(lowParent, i + 1, j);
+                    j = i + 1;
+                }
+            } else {
+                //分开之后左边路径右侧的子树和右边路径左侧的子树都在范围里面
+                if (lowParent != null) {
+                    cut(lowParent, i + 1, lowParent.size + 1);
+                }
+                if (highParent != null) {
+                    cut(highParent, 0, j);
+                    j = 0;
                 }
             }
-            while (indexInParent != -1 && !path.isEmpty()) {
-                NonLeaf<K, V> tempIndexNode = (NonLeaf<K, V>) path.remove(path.size() - 1);
-                indexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                if (!tempIndexNode.isUnderflowed()) {
-                    indexInParent = -1;
-                } else {
-                    NonLeaf<K, V> parent = (NonLeaf<K, V>) path.get(path.size() - 1);
-                    if (indexInParent == 0) {
-                        indexInParent = handleNonLeafUnderflow(1, tempIndexNode,
-                                (NonLeaf<K, V>) parent.children[indexInParent + 1],
-                                parent, indexInParentPath);
-                    } else {
-                        indexInParent = handleNonLeafUnderflow(0,
-                                (NonLeaf<K, V>) parent.children[indexInParent - 1],
-                                tempIndexNode, parent, indexInParentPath);
+            if (lowParent != null) {
+                lowPath.add(lowParent);
+                lowNode = lowParent.children[i];
+            }
+            if (highParent != null) {
+                highPath.add(highParent);
+                highNode = highParent.children[j];
+            }
+        }
+        Leaf<K, V> lowLeaf = (Leaf<K, V>) lowNode;
+        Leaf<K, V> highLeaf = (Leaf<K, V>) highNode;
+        if (lowLeaf != null && lowLeaf == highLeaf) {
+            lowLeaf.removeRange(lowLeaf.getIndex(before) + 1, lowLeaf.getIndex(after));
+        } else {
+            if (lowLeaf != null) {
+                lowLeaf.removeRange(lowLeaf.getIndex(before) + 1, lowLeaf.size);
+                lowLeaf.next = highLeaf;
+            }
+            if (highLeaf != null) {
+                highLeaf.removeRange(0, highLeaf.getIndex(after));
+                highLeaf.pre = lowLeaf;
+            }
+        }
+        //从下往上重新计算两条路径上的计数和聚合，共用的节点右边路径会再算一次
+        refreshPath(lowPath, before);
+        refreshPath(highPath, after);
+        if (lowLeaf != null) {
+            rebalanceUp(lowLeaf);
+        }
+        if (highLeaf != null) {
+            rebalanceUp(highLeaf);
+        }
+        return high - low;
+    }
+
+    /**
+     * k所在的子树在节点中的位置
+     */
+    private int childIndex(NonLeaf<K, V> nonLeaf, K k) {
+        int i = nonLeaf.getIndex(k);
+        return i < 0 ? ~i : i + 1;
+    }
+
+    /**
+     * 从父节点上摘掉[from,to)的子树，统计运行指标的时候减掉摘掉的节点个数
+     */
+    private void cut(NonLeaf<K, V> nonLeaf, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        if (metrics != null) {
+            int nodes = 0;
+            int leaves = 0;
+            for (int i = from; i < to; i++) {
+                nodes += countNodes(nonLeaf.children[i]);
+                leaves += countLeaves(nonLeaf.children[i]);
+            }
+            metrics.dropNodes(nodes, leaves, 0);
+        }
+        nonLeaf.removeChildren(from, to);
+    }
+
+    /**
+     * 子树包含的节点个数，最下面一层非叶子节点直接用子节点的个数，不访问叶子节点
+     */
+    private int countNodes(Node<K, V> node) {
+        if (node instanceof Leaf) {
+            return 1;
+        }
+        NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+        if (nonLeaf.children[0] instanceof Leaf) {
+            return nonLeaf.size + 2;
+        }
+        int count = 1;
+        for (int i = 0; i <= nonLeaf.size; i++) {
+            count += countNodes(nonLeaf.children[i]);
+        }
+        return count;
+    }
+
+    /**
+     * 子树包含的叶子节点个数，同样不访问叶子节点
+     */
+    private int countLeaves(Node<K, V> node) {
+        if (node instanceof Leaf) {
+            return 1;
+        }
+        NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+        if (nonLeaf.children[0] instanceof Leaf) {
+            return nonLeaf.size + 1;
+        }
+        int count = 0;
+        for (int i = 0; i <= nonLeaf.size; i++) {
+            count += countLeaves(nonLeaf.children[i]);
+        }
+        return count;
+    }
+
+    /**
+     * 从下往上更新路径上k所在子树的计数和聚合
+     *
+     * @param path 从根节点开始的非叶子节点
+     * @param k
+     */
+    private void refreshPath(List<NonLeaf<K, V>> path, K k) {
+        for (int level = path.size() - 1; level >= 0; level--) {
+            NonLeaf<K, V> nonLeaf = path.get(level);
+            nonLeaf.refreshSlot(childIndex(nonLeaf, k));
+            nonLeaf.recount();
+        }
+    }
+
+    /**
+     * 从node开始往上修复数据不足的节点，一直到根节点
+     * 范围删除之后边界上的节点可能只剩很少的数据，和相邻的兄弟节点放得下就合并，放不下就平分，
+     * 平分之后两个节点都满足最小值；合并之后还不够的时候继续和下一个兄弟节点处理
+     *
+     * @param node
+     */
+    private void rebalanceUp(Node<K, V> node) {
+        while (true) {
+            if (node == root) {
+                while (root instanceof NonLeaf && root.size == 0) {
+                    //根节点只剩一个子节点，树的高度减一
+                    root = ((NonLeaf<K, V>) root).children[0];
+                    root.parent = null;
+                    if (metrics != null) {
+                        metrics.shrink();
                     }
                 }
+                return;
+            }
+            NonLeaf<K, V> parent = node.parent;
+            if (parent == null) {
+                //已经合并到兄弟节点里面了，兄弟节点往上的路径已经处理过
+                return;
+            }
+            if (!node.isUnderflowed()) {
+                node = parent;
+            } else if (parent.size == 0) {
+                //没有兄弟节点，先修复父节点
+                rebalanceUp(parent);
+            } else {
+                int index = parent.indexOf(node);
+                int leftIndex = index == 0 ? 0 : index - 1;
+                if (rebalance(parent, leftIndex)) {
+                    node = parent.children[leftIndex];
+                }
             }
         }
     }
 
     /**
-     * 叶子节点的借取
+     * 相邻的两个子节点合并或者平分，不要求哪一个节点只少一个数据
      *
-     * @param sibling
-     * @param leftLeaf
-     * @param rightLeaf
      * @param parent
-     * @param indexInParentPath
-     * @return
+     * @param leftIndex 左节点在父节点的位置
+     * @return 是否发生了合并
      */
-    public int handleLeafNodeUnderflow(int sibling, Leaf<K, V> leftLeaf, Leaf<K, V> rightLeaf,
-                                       NonLeaf<K, V> parent, List<Integer> indexInParentPath) {
-        if (sibling == 1) {
-            //找右边兄弟节点借取
-            if (!rightLeaf.isUnderflowed()) {
-                int count = (rightLeaf.size - 2 + 1) / 2;
-                if (count > 0) {
-                    leftLeaf.borrowFromRight(rightLeaf, count);
-                }
-                int leftIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                parent.keys[leftIndexInParent] = rightLeaf.keys[0];
-                return -1;
+    private boolean rebalance(NonLeaf<K, V> parent, int leftIndex) {
+        if (parent.children[leftIndex] instanceof Leaf) {
+            Leaf<K, V> left = (Leaf<K, V>) parent.children[leftIndex];
+            Leaf<K, V> right = (Leaf<K, V>) parent.children[leftIndex + 1];
+            if (left.size + right.size < m) {
+                merge(left, right);
+                parent.deleteByIndex(leftIndex);
+                parent.refreshSlot(leftIndex);
+                if (metrics != null) {
+                    metrics.leafMerge();
+                }
+                return true;
+            }
+            if (left.size < right.size) {
+                left.borrowFromRight(right, (right.size - left.size) >> 1);
+                if (metrics != null) {
+                    metrics.borrowFromRight();
+                }
             } else {
-                //TODO 合并兄弟节点
-                merge((Leaf<K, V>) leftLeaf, (Leaf<K, V>) rightLeaf);
-                int leftIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                parent.deleteKey(leftIndexInParent);
-                if (parent.size == 0) {
-                    root = rightLeaf;
-                    return -1;
-                }
-                indexInParentPath.remove(indexInParentPath.size() - 1);
-                if (indexInParentPath.size() == 0) {
-                    return -1;
-                } else {
-                    return indexInParentPath.get(indexInParentPath.size() - 1);
+                right.borrowFromLeft(left, (left.size - right.size) >> 1);
+                if (metrics != null) {
+                    metrics.borrowFromLeft();
                 }
             }
+            parent.keys[leftIndex] = right.keys[0];
+            parent.refreshSlots(leftIndex);
+            return false;
+        }
+        NonLeaf<K, V> left = (NonLeaf<K, V>) parent.children[leftIndex];
+        NonLeaf<K, V> right = (NonLeaf<K, V>) parent.children[leftIndex + 1];
+        K parentKey = (K) parent.keys[leftIndex];
+        if (left.size + right.size + 1 < m) {
+            left.appendRight(parentKey, right);
+            parent.deleteByIndex(leftIndex);
+            parent.refreshSlot(leftIndex);
+            if (metrics != null) {
+                metrics.innerMerge();
+            }
+            return true;
+        }
+        if (left.size < right.size) {
+            parent.keys[leftIndex] = left.borrowFromRight(right, (right.size - left.size) >> 1, parentKey);
+            if (metrics != null) {
+                metrics.borrowFromRight();
+            }
         } else {
-            // 向兄弟节点借取数据
-            if (!leftLeaf.isUnderflowed()) {
-                int count = (leftLeaf.size - 2 + 1) - (leftLeaf.size - 2 + 1) / 2;
-                if (count > 0) {
-                    rightLeaf.borrowFromLeft(leftLeaf, count);
-                }
-                int rightIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                parent.keys[rightIndexInParent - 1] = rightLeaf.keys[0];
-                return -1;
-            } else {//merge
-                //合并兄弟节点
-                merge(leftLeaf, rightLeaf);
-                int rightIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                parent.deleteByIndex(rightIndexInParent - 1);
-                if (parent.size == 0) {
-                    root = rightLeaf;
-                    return -1;
-                }
-
-                indexInParentPath.remove(indexInParentPath.size() - 1);
-                if (indexInParentPath.size() == 0) {
-                    return -1;
-                } else {
-                    return indexInParentPath.get(indexInParentPath.size() - 1);
-                }
+            parent.keys[leftIndex] = right.borrowFromLeft(left, (left.size - right.size) >> 1, parentKey);
+            if (metrics != null) {
+                metrics.borrowFromLeft();
+            }
+        }
+        parent.refreshSlots(leftIndex);
+        return false;
+    }
 
+    /**
+     * 叶子节点的借取或者合并
+     *
+     * @param sibling         1:左节点数据不足，从右边借，0:右节点数据不足，从左边借
+     * @param leftLeaf
+     * @param rightLeaf
+     * @param parent
+     * @param leftIndexInParent 左节点在父节点的位置
+     * @return 是否发生了合并，合并之后父节点会少一个关键字
+     */
+    private boolean handleLeafNodeUnderflow(int sibling, Leaf<K, V> leftLeaf, Leaf<K, V> rightLeaf,
+                                            NonLeaf<K, V> parent, int leftIndexInParent) {
+        if (sibling == 1 && rightLeaf.canLend()) {
+            //找右边兄弟节点借取
+            leftLeaf.borrowFromRight(rightLeaf, (rightLeaf.size - leftLeaf.size) >> 1);
+            parent.keys[leftIndexInParent] = rightLeaf.keys[0];
+            parent.refreshSlots(leftIndexInParent);
+            if (metrics != null) {
+                metrics.borrowFromRight();
+            }
+            return false;
+        }
+        if (sibling == 0 && leftLeaf.canLend()) {
+            // 向兄弟节点借取数据
+            rightLeaf.borrowFromLeft(leftLeaf, (leftLeaf.size - rightLeaf.size) >> 1);
+            parent.keys[leftIndexInParent] = rightLeaf.keys[0];
+            parent.refreshSlots(leftIndexInParent);
+            if (metrics != null) {
+                metrics.borrowFromLeft();
             }
+            return false;
         }
+        //合并兄弟节点
+        merge(leftLeaf, rightLeaf);
+        parent.deleteByIndex(leftIndexInParent);
+        parent.refreshSlot(leftIndexInParent);
+        if (metrics != null) {
+            metrics.leafMerge();
+        }
+        return true;
     }
 
     /**
-     * 两个节点合并成一个节点
+     * 两个节点合并成一个节点，右节点的数据追加到左节点，右节点从链表中去掉
      *
      * @param leftLeaf
      * @param rightLeaf
      */
     private void merge(Leaf<K, V> leftLeaf, Leaf<K, V> rightLeaf) {
-        int newSize = rightLeaf.size + leftLeaf.size;
-        Comparable[] newKeys = new Comparable[newSize];
-        String[] newValues = new String[newSize];
-        System.arraycopy(leftLeaf.keys, 0, newKeys, 0, leftLeaf.size);
-        System.arraycopy(rightLeaf.keys, 0, newKeys, leftLeaf.size, rightLeaf.size);
-        System.arraycopy(leftLeaf.values, 0, newValues, 0, leftLeaf.size);
-        System.arraycopy(rightLeaf.values, 0, newValues, leftLeaf.size, rightLeaf.size);
-        rightLeaf.keys = newKeys;
-        rightLeaf.values = newValues;
-        leftLeaf.parent=null;
-        leftLeaf.next=null;
-    }
-
-
-    /**
-     * 合并或者借取
-     *
-     * @param left   : the smaller node
-     * @param right  : the bigger node
-     * @param parent : their parent index node
-     * @return the splitkey position in parent if merged so that parent can
-     * delete the splitkey later on. -1 otherwise
-     */
-    public int handleNonLeafUnderflow(int sibling, NonLeaf<K, V> left, NonLeaf<K, V> right,
-                                      NonLeaf<K, V> parent, List<Integer> indexInParentPath) {
-        if (sibling == 1) {
-            if (right.size >= D + 1) {
-                //从右节点借取对象
-                int leftIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                left.append((K) parent.keys[leftIndexInParent], (NonLeaf) right.children[0]);
-                int count = (right.size - 2 + 1) / 2 - 1;
-                left.borrowFromRight(right, count);
-                parent.insertKey(leftIndexInParent, (K) right.keys[0]);
-                right.deleteKey(0);
-                return -1;
-            } else {
-                //合并节点
-                int leftIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                right.insertKey(0, (K) parent.keys[leftIndexInParent]);
-                right.insertChild(0, left.children[left.children.length - 1]);
-                //把左节点合并到右节点
-                right.appendLeft(left);
-                parent.deleteKey(leftIndexInParent);
-                if (parent.keys.length == 0) {
-                    root = right;
-                    return -1;
-                }
-                indexInParentPath.remove(indexInParentPath.size() - 1);
-                if (indexInParentPath.size() == 0) {
-                    return -1;
-                } else {
-                    return indexInParentPath.get(indexInParentPath.size() - 1);
-                }
+        System.arraycopy(rightLeaf.keys, 0, leftLeaf.keys, leftLeaf.size, rightLeaf.size);
+        System.arraycopy(rightLeaf.values, 0, leftLeaf.values, leftLeaf.size, rightLeaf.size);
+        leftLeaf.size += rightLeaf.size;
+        leftLeaf.dead += rightLeaf.dead;
+        leftLeaf.rebuildFilter();
+        leftLeaf.next = rightLeaf.next;
+        if (rightLeaf.next != null) {
+            rightLeaf.next.pre = leftLeaf;
+        }
+        rightLeaf.parent = null;
+        rightLeaf.next = null;
+        rightLeaf.pre = null;
+    }
+
+
+    /**
+     * 非叶子节点的借取或者合并，借取的时候关键字需要经过父节点旋转
+     *
+     * @param sibling         1:左节点数据不足，从右边借，0:右节点数据不足，从左边借
+     * @param left            : the smaller node
+     * @param right           : the bigger node
+     * @param parent          : their parent index node
+     * @param leftIndexInParent 左节点在父节点的位置
+     * @return 是否发生了合并
+     */
+    private boolean handleNonLeafUnderflow(int sibling, NonLeaf<K, V> left, NonLeaf<K, V> right,
+                                           NonLeaf<K, V> parent, int leftIndexInParent) {
+        if (sibling == 1 && right.canLend()) {
+            //从右节点借取对象
+            int count = (right.size - left.size) >> 1;
+            parent.keys[leftIndexInParent] = left.borrowFromRight(right, count,
+                    (K) parent.keys[leftIndexInParent]);
+            parent.refreshSlots(leftIndexInParent);
+            if (metrics != null) {
+                metrics.borrowFromRight();
             }
-        } else {
+            return false;
+        }
+        if (sibling == 0 && left.canLend()) {
             //找左节点借取数据
-            if (left.keys.length >= D + 1) {
-                int rightIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                right.insertKey(0, (K) parent.keys[rightIndexInParent - 1]);
-                right.insertChild(0, left.children[left.children.length - 1]);
-                left.deleteChild(left.children.length - 1);
-                int count = 1;
-                while (count <= (left.keys.length - D + 1)
-                        - (left.keys.length - D + 1) / 2 - 1) {
-                    int last = left.keys.length - 1;
-                    right.insertKey(0, (K) left.keys[last]);
-                    right.insertChild(0, left.children[last]);
-                    left.deleteKey(last);
-                    count++;
+            int count = (left.size - right.size) >> 1;
+            parent.keys[leftIndexInParent] = right.borrowFromLeft(left, count,
+                    (K) parent.keys[leftIndexInParent]);
+            parent.refreshSlots(leftIndexInParent);
+            if (metrics != null) {
+                metrics.borrowFromLeft();
+            }
+            return false;
+        }
+        //合并节点，父节点的关键字下沉到合并后的节点
+        left.appendRight((K) parent.keys[leftIndexInParent], right);
+        parent.deleteByIndex(leftIndexInParent);
+        parent.refreshSlot(leftIndexInParent);
+        if (metrics != null) {
+            metrics.innerMerge();
+        }
+        return true;
+    }
+
+
+    /**
+     * 子树聚合方式，combine需要满足结合律，identity是单位元，例如sum、min、max、计数
+     * 合并的时候保持key从小到大的顺序，不要求交换律
+     *
+     * @param <V> value的类型
+     * @param <A> 聚合结果的类型
+     */
+    public interface Aggregator<V, A> {
+
+        A identity();
+
+        /**
+         * 单个value的聚合结果
+         *
+         * @param value
+         * @return
+         */
+        A lift(V value);
+
+        A combine(A left, A right);
+    }
+
+    /**
+     * 叶子节点上的游标，参考H2 MVStore 的Cursor，next()返回key，getValue()获取当前的value
+     * 遍历的时候只移动叶子节点和下标，不会为每条数据创建对象
+     */
+    public static class Cursor<K extends Comparable, V> implements Iterator<K> {
+
+        private final BPlugsTree2<K, V> tree;
+
+        private final int expectedModCount;
+        /**
+         * 下一条数据所在的叶子节点，为null说明已经遍历完
+         */
+        private Leaf<K, V> leaf;
+        /**
+         * 下一条数据在叶子节点中的位置
+         */
+        private int index;
+        /**
+         * 是否从大到小遍历
+         */
+        private final boolean descending;
+        /**
+         * 遍历结束的边界，为null说明没有边界
+         */
+        private final K end;
+
+        private final boolean endInclusive;
+
+        private K key;
+
+        private V value;
+
+        Cursor(BPlugsTree2<K, V> tree, Leaf<K, V> leaf, int index, boolean descending, K end, boolean endInclusive) {
+            this.tree = tree;
+            this.expectedModCount = tree.modCount;
+            this.leaf = leaf;
+            this.index = index;
+            this.descending = descending;
+            this.end = end;
+            this.endInclusive = endInclusive;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (leaf == null) {
+                return false;
+            }
+            if (tree.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            while (leaf.values[index] == TOMBSTONE) {
+                move();
+                if (leaf == null) {
+                    return false;
                 }
-                parent.insertKey(rightIndexInParent - 1, (K) left.keys[left.keys.length - 1]);
-                parent.deleteKey(left.keys.length - 1);
-                return -1;
-            } else {
-                //合并数据
-                int rightIndexInParent = indexInParentPath.get(indexInParentPath.size() - 1);
-                right.insertKey(0, (K) parent.keys[rightIndexInParent - 1]);
-                right.insertChild(0, left.children[left.children.length - 1]);
-                right.appendLeft(left);
-                parent.deleteByIndex(rightIndexInParent - 1);
-                if (parent.keys.length == 0) {
-                    root = right;
-                    return -1;
-                }
-                indexInParentPath.remove(indexInParentPath.size() - 1);
-                if (indexInParentPath.size() == 0) {
-                    return -1;
+            }
+            if (end == null) {
+                return true;
+            }
+            int compare = leaf.keys[index].compareTo(end);
+            if (descending) {
+                compare = -compare;
+            }
+            if (compare < 0 || (compare == 0 && endInclusive)) {
+                return true;
+            }
+            leaf = null;
+            return false;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            key = (K) leaf.keys[index];
+            value = (V) leaf.values[index];
+            move();
+            return key;
+        }
+
+        /**
+         * 移动到下一个位置，不检查墓碑和边界
+         */
+        private void move() {
+            if (descending) {
+                if (--index < 0) {
+                    leaf = leaf.pre;
+                    index = leaf == null ? 0 : leaf.size - 1;
+                }
+            } else if (++index >= leaf.size) {
+                leaf = leaf.next;
+                index = 0;
+            }
+        }
+
+        /**
+         * 最近一次next()返回的key
+         *
+         * @return
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * 最近一次next()返回的key对应的value
+         *
+         * @return
+         */
+        public V getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * 树上的可拆分遍历器
+     * 开始遍历之前表示node的[from,to)这一段，非叶子节点是子节点的下标，叶子节点是数据的下标，
+     * 开始遍历之后从这一段最左边的叶子节点沿着next链表往后走remaining条数据，不同的遍历器之间没有共享的状态
+     */
+    static final class EntrySpliterator<K extends Comparable, V> implements Spliterator<Map.Entry<K, V>> {
+
+        private final BPlugsTree2<K, V> tree;
+
+        private final int expectedModCount;
+
+        private Node<K, V> node;
+
+        private int from;
+
+        private int to;
+        /**
+         * 当前的叶子节点，为null说明还没有开始遍历
+         */
+        private Leaf<K, V> leaf;
+
+        private int index;
+
+        private long remaining;
+
+        EntrySpliterator(BPlugsTree2<K, V> tree, Node<K, V> node, int from, int to, long remaining) {
+            this(tree, node, from, to, remaining, tree.modCount);
+        }
+
+        private EntrySpliterator(BPlugsTree2<K, V> tree, Node<K, V> node, int from, int to, long remaining,
+                                 int expectedModCount) {
+            this.tree = tree;
+            this.node = node;
+            this.from = from;
+            this.to = to;
+            this.remaining = remaining;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /**
+         * 按照子树的计数把前面大约一半的子树拆出去，只剩一个子树的时候先往下走一层，叶子节点不再拆分
+         *
+         * @return
+         */
+        @Override
+        public Spliterator<Map.Entry<K, V>> trySplit() {
+            if (leaf != null) {
+                return null;
+            }
+            while (node instanceof NonLeaf && to - from == 1) {
+                node = ((NonLeaf<K, V>) node).children[from];
+                from = 0;
+                to = node instanceof NonLeaf ? node.size + 1 : node.size;
+            }
+            if (!(node instanceof NonLeaf)) {
+                return null;
+            }
+            int[] counts = ((NonLeaf<K, V>) node).counts;
+            long half = remaining >> 1;
+            long prefix = counts[from];
+            int mid = from + 1;
+            while (mid < to - 1 && prefix + counts[mid] <= half) {
+                prefix += counts[mid++];
+            }
+            EntrySpliterator<K, V> prefixPart = new EntrySpliterator<>(tree, node, from, mid, prefix,
+                    expectedModCount);
+            from = mid;
+            remaining -= prefix;
+            return prefixPart;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            if (remaining <= 0) {
+                return false;
+            }
+            if (leaf == null) {
+                start();
+            }
+            if (tree.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            while (index >= leaf.size || leaf.values[index] == TOMBSTONE) {
+                if (index >= leaf.size) {
+                    leaf = leaf.next;
+                    index = 0;
                 } else {
-                    return indexInParentPath.get(indexInParentPath.size() - 1);
+                    index++;
+                }
+            }
+            action.accept(new AbstractMap.SimpleImmutableEntry<>((K) leaf.keys[index], (V) leaf.values[index]));
+            index++;
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+            if (remaining <= 0) {
+                return;
+            }
+            if (leaf == null) {
+                start();
+            }
+            Leaf<K, V> leaf = this.leaf;
+            int index = this.index;
+            for (long n = remaining; n > 0; n--) {
+                //换叶子节点的时候检查一次，防止树在回调里面被修改之后走出链表
+                while (index >= leaf.size || leaf.values[index] == TOMBSTONE) {
+                    if (index < leaf.size) {
+                        index++;
+                        continue;
+                    }
+                    if (tree.modCount != expectedModCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    leaf = leaf.next;
+                    index = 0;
                 }
+                action.accept(new AbstractMap.SimpleImmutableEntry<>((K) leaf.keys[index], (V) leaf.values[index]));
+                index++;
+            }
+            this.leaf = leaf;
+            this.index = index;
+            this.remaining = 0;
+            if (tree.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        /**
+         * 找到这一段最左边的叶子节点
+         */
+        private void start() {
+            Node<K, V> node = this.node;
+            int i = from;
+            while (node instanceof NonLeaf) {
+                node = ((NonLeaf<K, V>) node).children[i];
+                i = 0;
             }
+            leaf = (Leaf<K, V>) node;
+            index = i;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED | DISTINCT | NONNULL;
         }
-    }
 
+        @Override
+        public Comparator<? super Map.Entry<K, V>> getComparator() {
+            return (a, b) -> a.getKey().compareTo(b.getKey());
+        }
+    }
 
     abstract static class Node<K extends Comparable, V> {
         /**
@@ -313,29 +1574,78 @@ public class BPlugsTree2<K extends Comparable, V> {
          */
         protected int size;
         /**
-         * 包含的关键字
+         * 包含的关键字，容量固定为m
          */
         protected Comparable[] keys;
         /**
          * 父亲节点
          */
         protected NonLeaf<K, V> parent;
+        /**
+         * 和树共用的聚合方式，为null的时候不维护聚合
+         */
+        protected Aggregator aggregator;
+        /**
+         * 和树共用的运行指标，为null的时候不统计
+         */
+        protected TreeMetrics metrics;
 
-        protected Node(int m) {
+        protected Node(int m, Aggregator aggregator, TreeMetrics metrics) {
             this.m = m;
             this.keys = new Comparable[m];
+            this.aggregator = aggregator;
+            this.metrics = metrics;
         }
 
+        /**
+         * 子树包含的数据个数
+         *
+         * @return
+         */
         public abstract int getKeyCount();
 
+        /**
+         * 整个子树的聚合结果
+         *
+         * @return
+         */
+        protected abstract Object aggregate();
+
+        /**
+         * 子树的数据变化之后，更新所有祖先节点里的计数和聚合
+         *
+         * @param k     子树中的一个key，用来找到子树在父节点中的位置
+         * @param delta 数据个数的变化
+         */
+        protected void updateAncestors(K k, int delta) {
+            Node<K, V> child = this;
+            for (NonLeaf<K, V> p = parent; p != null; child = p, p = p.parent) {
+                int index = p.getIndex(k);
+                index = index < 0 ? ~index : index + 1;
+                p.counts[index] += delta;
+                p.keyCount += delta;
+                if (aggregator != null) {
+                    p.aggregates[index] = child.aggregate();
+                }
+            }
+        }
+
+        /**
+         * 子树中最小的key
+         *
+         * @return
+         */
+        protected abstract K firstKey();
+
         /**
          * 插入节点，有可能返回新的根节点
          *
          * @param k
          * @param v
+         * @param appendSplit 是否使用APPEND分裂方式
          * @return
          */
-        protected abstract Node insert(K k, V v);
+        protected abstract Node insert(K k, V v, boolean appendSplit);
 
         /**
          * 删除节点
@@ -344,13 +1654,15 @@ public class BPlugsTree2<K extends Comparable, V> {
          */
         protected abstract void delete(K k);
 
+        /**
+         * 在原数组中删除index位置的关键字
+         *
+         * @param index
+         */
         protected void deleteKey(int index) {
-            Comparable[] newKeys = new Comparable[this.size - 1];
-            System.arraycopy(this.keys, 0, newKeys, 0, index);
-            System.arraycopy(this.keys, index + 1, newKeys, index, this.size
-                    - index - 1);
-            this.keys=newKeys;
-            this.size=this.size-1;
+            System.arraycopy(this.keys, index + 1, this.keys, index, this.size - index - 1);
+            this.size = this.size - 1;
+            this.keys[this.size] = null;
         }
 
         /**
@@ -359,12 +1671,19 @@ public class BPlugsTree2<K extends Comparable, V> {
         protected abstract V search(K k);
 
         /**
-         * 是否是小于最小值
+         * 节点最少需要包含的关键字个数
+         *
+         * @return
+         */
+        protected abstract int minSize();
+
+        /**
+         * 是否超过最大值
          *
          * @return
          */
         public boolean isOverflowed() {
-            return size > m;
+            return size >= m;
         }
 
         /**
@@ -373,7 +1692,16 @@ public class BPlugsTree2<K extends Comparable, V> {
          * @return
          */
         public boolean isUnderflowed() {
-            return size <= (m / 2 - 1);
+            return size < minSize();
+        }
+
+        /**
+         * 借出一个元素之后是否还满足最小值
+         *
+         * @return
+         */
+        public boolean canLend() {
+            return size > minSize();
         }
 
         /**
@@ -384,8 +1712,19 @@ public class BPlugsTree2<K extends Comparable, V> {
          * @return
          */
         public int getIndex(K k) {
+            return getIndex(k, size);
+        }
+
+        /**
+         * 在前to个关键字中查找
+         *
+         * @param k
+         * @param to
+         * @return
+         */
+        public int getIndex(K k, int to) {
             int low = 0;
-            int high = size - 1;
+            int high = to - 1;
             // the cached index minus one, so that
             // for the first time (when cachedCompare is 0),
             // the default value is used
@@ -437,71 +1776,91 @@ public class BPlugsTree2<K extends Comparable, V> {
 
     static class NonLeaf<K extends Comparable, V> extends Node<K, V> {
         /**
-         * 子节点
+         * 子节点，比关键字多一个，多留一个位置给分裂前的溢出
          */
         private Node[] children;
+        /**
+         * 每个子树包含的数据个数，和children一一对应
+         */
+        private int[] counts;
+        /**
+         * 整个子树包含的数据个数，等于counts之和
+         */
+        private int keyCount;
+        /**
+         * 每个子树的聚合结果，和children一一对应，没有聚合的时候都是null
+         */
+        private Object[] aggregates;
 
-        protected NonLeaf(int m) {
-            super(m);
+        protected NonLeaf(int m, Aggregator aggregator, TreeMetrics metrics) {
+            super(m, aggregator, metrics);
+            this.children = new Node[m + 1];
+            this.counts = new int[m + 1];
+            this.aggregates = new Object[m + 1];
         }
 
         @Override
-        public int getKeyCount() {
-            int keyCount = 0;
-            int childSize=this.children.length;
-            for (int i = 0; i < childSize; i++) {
-                keyCount += this.children[i].getKeyCount();
+        protected Object aggregate() {
+            Object result = aggregates[0];
+            for (int i = 1; i <= this.size; i++) {
+                result = aggregator.combine(result, aggregates[i]);
             }
-            return keyCount;
+            return result;
         }
 
-        protected NonLeaf(int m, Comparable[] keys, Node[] children) {
-            super(m);
-            this.size = keys.length;
-            this.keys = keys;
-            this.children = children;
+        @Override
+        public int getKeyCount() {
+            return keyCount;
         }
 
+        /**
+         * 子节点之间移动数据之后重新计算总数
+         */
+        void recount() {
+            int total = 0;
+            for (int i = 0; i <= this.size; i++) {
+                total += counts[i];
+            }
+            keyCount = total;
+        }
 
-        @Override
-        protected Node insert(K k, V v) {
-
-            return null;
+        /**
+         * 重新计算第i个子树的计数和聚合
+         *
+         * @param i
+         */
+        void refreshSlot(int i) {
+            counts[i] = children[i].getKeyCount();
+            if (aggregator != null) {
+                aggregates[i] = children[i].aggregate();
+            }
         }
 
-        private void insertKey(int index, K k) {
-            int newSize = this.size + 1;
-            Comparable[] newKeys = new Comparable[newSize];
-            System.arraycopy(this.keys, 0, newKeys, 0, index);
-            System.arraycopy(this.keys, index, newKeys, index + 1, this.size - index);
-            newKeys[index] = k;
-            this.size = newSize;
-            this.keys = newKeys;
+        /**
+         * 相邻的两个子节点之间借取数据之后更新两个子节点的计数，总数不变
+         *
+         * @param leftIndex 左节点的位置
+         */
+        void refreshSlots(int leftIndex) {
+            refreshSlot(leftIndex);
+            refreshSlot(leftIndex + 1);
         }
 
-        private void insertChild(int index, Node child) {
-            int newSize = this.children.length + 1;
-            Node[] newChildren = new Node[newSize];
-            System.arraycopy(this.children, 0, newChildren, 0, index);
-            System.arraycopy(this.children, index, newChildren, index + 1, this.size - index);
-            newChildren[index] = child;
-            this.children = newChildren;
+        @Override
+        protected K firstKey() {
+            return (K) children[0].firstKey();
         }
 
-        private void append(K k, NonLeaf node) {
-            int newSize = this.size + 1;
-            Comparable[] newKeys = new Comparable[newSize];
-            Node[] newChildren = new Node[newSize];
-            System.arraycopy(this.keys, 0, newKeys, 0, this.size);
-            System.arraycopy(this.children, 0, newChildren, 0, this.size);
+        @Override
+        protected int minSize() {
+            // 子节点最少 m/2 向上取整个，关键字比子节点少一个
+            return ((m + 1) >> 1) - 1;
         }
 
-        protected void deleteChild(int index) {
-            int newChildSize = children.length - 1;
-            Node[] newChildren = new Node[newChildSize];
-            System.arraycopy(this.children, 0, newChildren, 0, index);
-            System.arraycopy(this.children, index + 1, newChildren, index, newChildSize - index);
-            this.children = children;
+        @Override
+        protected Node insert(K k, V v, boolean appendSplit) {
+
+            return null;
         }
 
         @Override
@@ -509,53 +1868,150 @@ public class BPlugsTree2<K extends Comparable, V> {
 
         }
 
+        /**
+         * 删除index位置的关键字，以及关键字右边的子节点
+         *
+         * @param index
+         */
         protected void deleteByIndex(int index) {
+            System.arraycopy(this.children, index + 2, this.children, index + 1, this.size - index - 1);
+            System.arraycopy(this.counts, index + 2, this.counts, index + 1, this.size - index - 1);
+            System.arraycopy(this.aggregates, index + 2, this.aggregates, index + 1, this.size - index - 1);
+            this.children[this.size] = null;
+            this.counts[this.size] = 0;
+            this.aggregates[this.size] = null;
             super.deleteKey(index);
-            int size=this.children.length - 1;
-            Node[] newChildren = new Node[size];
-            System.arraycopy(this.children, 0, newChildren, 0, index);
-            System.arraycopy(this.children, index + 1, newChildren, index, size
-                    - index - 1);
+        }
+
+        /**
+         * 删除[from,to)的子节点，以及它们左边的关键字，from为0的时候删除右边的关键字，剩下的关键字仍然能分隔剩下的子节点
+         * 至少要留下一个子节点，计数和聚合由调用方重新计算
+         *
+         * @param from
+         * @param to
+         */
+        void removeChildren(int from, int to) {
+            int count = to - from;
+            int keyFrom = from == 0 ? 0 : from - 1;
+            System.arraycopy(this.keys, keyFrom + count, this.keys, keyFrom, this.size - keyFrom - count);
+            System.arraycopy(this.children, to, this.children, from, this.size + 1 - to);
+            System.arraycopy(this.counts, to, this.counts, from, this.size + 1 - to);
+            System.arraycopy(this.aggregates, to, this.aggregates, from, this.size + 1 - to);
+            Arrays.fill(this.keys, this.size - count, this.size, null);
+            Arrays.fill(this.children, this.size + 1 - count, this.size + 1, null);
+            Arrays.fill(this.counts, this.size + 1 - count, this.size + 1, 0);
+            Arrays.fill(this.aggregates, this.size + 1 - count, this.size + 1, null);
+            this.size -= count;
+        }
+
+        /**
+         * 子节点的位置，按照引用查找
+         *
+         * @param child
+         * @return 不是子节点的时候返回-1
+         */
+        int indexOf(Node<K, V> child) {
+            for (int i = 0; i <= this.size; i++) {
+                if (children[i] == child) {
+                    return i;
+                }
+            }
+            return -1;
         }
 
         @Override
         protected V search(K k) {
             int index = getIndex(k);
+            index = index < 0 ? ~index : index + 1;
             // 递归查找，一直查找到叶子节点。
             return (V) children[index].search(k);
         }
 
         /**
-         * 从右边节点借数据
+         * 从右边节点借数据，父节点的关键字下沉到当前节点，右节点的关键字上浮到父节点
          *
          * @param right
-         * @param range
+         * @param count     借取的子节点个数
+         * @param parentKey 父节点中两个节点之间的关键字
+         * @return 新的父节点关键字
          */
-        void borrowFromRight(NonLeaf right, int range) {
-
+        K borrowFromRight(NonLeaf<K, V> right, int count, K parentKey) {
+            this.keys[this.size] = parentKey;
+            System.arraycopy(right.keys, 0, this.keys, this.size + 1, count - 1);
+            System.arraycopy(right.children, 0, this.children, this.size + 1, count);
+            System.arraycopy(right.counts, 0, this.counts, this.size + 1, count);
+            System.arraycopy(right.aggregates, 0, this.aggregates, this.size + 1, count);
+            for (int i = 0; i < count; i++) {
+                this.children[this.size + 1 + i].parent = this;
+            }
+            K newParentKey = (K) right.keys[count - 1];
+            this.size += count;
+            System.arraycopy(right.keys, count, right.keys, 0, right.size - count);
+            System.arraycopy(right.children, count, right.children, 0, right.size - count + 1);
+            System.arraycopy(right.counts, count, right.counts, 0, right.size - count + 1);
+            System.arraycopy(right.aggregates, count, right.aggregates, 0, right.size - count + 1);
+            Arrays.fill(right.keys, right.size - count, right.size, null);
+            Arrays.fill(right.children, right.size - count + 1, right.size + 1, null);
+            Arrays.fill(right.counts, right.size - count + 1, right.size + 1, 0);
+            Arrays.fill(right.aggregates, right.size - count + 1, right.size + 1, null);
+            right.size -= count;
+            this.recount();
+            right.recount();
+            return newParentKey;
         }
 
         /**
          * 从左边节点借数据
          *
          * @param left
-         * @param range
+         * @param count     借取的子节点个数
+         * @param parentKey 父节点中两个节点之间的关键字
+         * @return 新的父节点关键字
          */
-        void borrowFromLeft(NonLeaf left, int range) {
-
+        K borrowFromLeft(NonLeaf<K, V> left, int count, K parentKey) {
+            System.arraycopy(this.keys, 0, this.keys, count, this.size);
+            System.arraycopy(this.children, 0, this.children, count, this.size + 1);
+            System.arraycopy(this.counts, 0, this.counts, count, this.size + 1);
+            System.arraycopy(this.aggregates, 0, this.aggregates, count, this.size + 1);
+            this.keys[count - 1] = parentKey;
+            int from = left.size - count + 1;
+            System.arraycopy(left.keys, from, this.keys, 0, count - 1);
+            System.arraycopy(left.children, from, this.children, 0, count);
+            System.arraycopy(left.counts, from, this.counts, 0, count);
+            System.arraycopy(left.aggregates, from, this.aggregates, 0, count);
+            for (int i = 0; i < count; i++) {
+                this.children[i].parent = this;
+            }
+            this.size += count;
+            K newParentKey = (K) left.keys[from - 1];
+            Arrays.fill(left.keys, from - 1, left.size, null);
+            Arrays.fill(left.children, from, left.size + 1, null);
+            Arrays.fill(left.counts, from, left.size + 1, 0);
+            Arrays.fill(left.aggregates, from, left.size + 1, null);
+            left.size -= count;
+            this.recount();
+            left.recount();
+            return newParentKey;
         }
 
-        void appendLeft(NonLeaf left) {
-            int newSize = this.size + left.size;
-            Comparable[] newKeys = new Comparable[newSize];
-            Node[] newChildren = new Node[newSize];
-            System.arraycopy(left.keys, 0, newKeys, 0, left.size);
-            System.arraycopy(left.children, 0, newChildren, 0, left.size);
-            System.arraycopy(this.keys, 0, newKeys, left.size, this.size);
-            System.arraycopy(this.children, 0, newChildren, left.size, this.size);
-            this.size = newSize;
-            this.keys = newKeys;
-            this.children = newChildren;
+        /**
+         * 合并右边的节点，父节点的关键字放在两个节点的中间
+         *
+         * @param parentKey
+         * @param right
+         */
+        void appendRight(K parentKey, NonLeaf<K, V> right) {
+            this.keys[this.size] = parentKey;
+            System.arraycopy(right.keys, 0, this.keys, this.size + 1, right.size);
+            System.arraycopy(right.children, 0, this.children, this.size + 1, right.size + 1);
+            System.arraycopy(right.counts, 0, this.counts, this.size + 1, right.size + 1);
+            System.arraycopy(right.aggregates, 0, this.aggregates, this.size + 1, right.size + 1);
+            for (int i = 0; i <= right.size; i++) {
+                right.children[i].parent = this;
+            }
+            this.size += right.size + 1;
+            this.keyCount += right.keyCount;
+            right.parent = null;
         }
 
         /**
@@ -563,67 +2019,76 @@ public class BPlugsTree2<K extends Comparable, V> {
          *
          * @param left
          * @param right
+         * @param append 下面一层是追加分裂，right是新的最右边节点
          * @return
          */
-        protected Node updateInsert(K k, Node<K, V> left, Node<K, V> right) {
+        protected Node updateInsert(K k, Node<K, V> left, Node<K, V> right, boolean append) {
+            right.parent = this;
             if (size == 0) {
+                //新的根节点
                 size++;
-                this.keys = new Comparable[1];
                 this.keys[0] = k;
-                this.children = new Node[2];
                 this.children[0] = left;
                 this.children[1] = right;
+                refreshSlots(0);
+                this.keyCount = this.counts[0] + this.counts[1];
+                left.parent = this;
+                if (metrics != null) {
+                    metrics.grow();
+                }
                 return this;
-            } else {
-                int i = getIndex(k);
-                if (i < 0) {
-                    i = -i - 1;
-                }
-                Comparable[] newKeys = new Comparable[size + 1];
-                Node[] newChildren = new Node[size + 2];
-                newKeys[i] = k;
-                newChildren[i + 1] = right;
-                System.arraycopy(this.keys, 0, newKeys, 0, i);
-                System.arraycopy(this.children, 0, newChildren, 0, i + 1);
-                System.arraycopy(this.keys, i, newKeys, i, size - i);
-                System.arraycopy(this.children, i, newChildren, i + 1, size - i);
-                this.keys = newKeys;
-                this.children = newChildren;
-                size++;
-                return split();
-            }
-        }
-
-        private Node split() {
-            if (this.size >= m) {
-                // 除以2操作
-                Comparable[] oldKeys = this.keys;
-                Node[] oldChildren = this.children;
-                int newSize = size >> 1;
-                Comparable[] newKeys1 = new Comparable[newSize];
-                Node[] newChildren1 = new Node[newSize + 1];
-                System.arraycopy(oldKeys, 0, newKeys1, 0, newSize);
-                System.arraycopy(oldChildren, 0, newChildren1, 0, newSize + 1);
-                this.keys = newKeys1;
-                this.children = newChildren1;
-                this.size = newSize;
-                int size2 = m - newSize - 1;
-                Comparable[] newKeys2 = new Comparable[size2];
-                Node[] newChildren2 = new Node[size2 + 1];
-                System.arraycopy(oldKeys, newSize + 1, newKeys2, 0, size2);
-                System.arraycopy(oldChildren, newSize + 1, newChildren2, 0, size2 + 1);
-                NonLeaf leaf = new NonLeaf(m, newKeys2, newChildren2);
-                if (this.parent == null) {
-                    this.parent = new NonLeaf<>(m);
-                }
-                //修改父节点
-                for (Node node : newChildren2) {
-                    node.parent = leaf;
-                }
-                leaf.parent = this.parent;
-                return parent.updateInsert((K) oldKeys[newSize], this, leaf);
             }
-            return null;
+            int i = getIndex(k);
+            if (i < 0) {
+                i = ~i;
+            }
+            System.arraycopy(this.keys, i, this.keys, i + 1, size - i);
+            System.arraycopy(this.children, i + 1, this.children, i + 2, size - i);
+            System.arraycopy(this.counts, i + 1, this.counts, i + 2, size - i);
+            System.arraycopy(this.aggregates, i + 1, this.aggregates, i + 2, size - i);
+            this.keys[i] = k;
+            this.children[i + 1] = right;
+            //left原来的计数已经包含了分裂出去的数据，总数不变
+            refreshSlots(i);
+            size++;
+            return split(append && i == size - 1);
+        }
+
+        /**
+         * @param append 追加分裂，新节点只留最后一个关键字和两个子节点，否则除以2，中间的关键字上升到父节点
+         * @return
+         */
+        private Node split(boolean append) {
+            if (!isOverflowed()) {
+                return null;
+            }
+            int newSize = append ? size - 2 : size >> 1;
+            K upKey = (K) this.keys[newSize];
+            int size2 = size - newSize - 1;
+            NonLeaf<K, V> right = new NonLeaf<>(m, aggregator, metrics);
+            System.arraycopy(this.keys, newSize + 1, right.keys, 0, size2);
+            System.arraycopy(this.children, newSize + 1, right.children, 0, size2 + 1);
+            System.arraycopy(this.counts, newSize + 1, right.counts, 0, size2 + 1);
+            System.arraycopy(this.aggregates, newSize + 1, right.aggregates, 0, size2 + 1);
+            //修改父节点
+            for (int i = 0; i <= size2; i++) {
+                right.children[i].parent = right;
+            }
+            Arrays.fill(this.keys, newSize, size, null);
+            Arrays.fill(this.children, newSize + 1, size + 1, null);
+            Arrays.fill(this.counts, newSize + 1, size + 1, 0);
+            Arrays.fill(this.aggregates, newSize + 1, size + 1, null);
+            right.size = size2;
+            this.size = newSize;
+            this.recount();
+            right.recount();
+            if (metrics != null) {
+                metrics.innerSplit();
+            }
+            if (this.parent == null) {
+                this.parent = new NonLeaf<>(m, aggregator, metrics);
+            }
+            return parent.updateInsert(upKey, this, right, append);
         }
 
 
@@ -643,101 +2108,370 @@ public class BPlugsTree2<K extends Comparable, V> {
          * 前面一个节点
          */
         private Leaf<K, V> pre;
+        /**
+         * 墓碑的个数，size包含墓碑，子树计数不包含
+         */
+        private int dead;
+        /**
+         * 节点里的key的布隆过滤器，不使用的时候为null，删除数据的时候不更新，数据移动之后重新构建
+         */
+        private BloomFilter filter;
 
-        protected Leaf(int m) {
-            super(m);
+        protected Leaf(int m, Aggregator aggregator, TreeMetrics metrics) {
+            super(m, aggregator, metrics);
             this.values = new Object[m];
         }
 
+        /**
+         * 分裂出来的新节点，布隆过滤器和当前节点一样大
+         */
+        private Leaf<K, V> newSibling() {
+            Leaf<K, V> leaf = new Leaf<>(m, aggregator, metrics);
+            if (filter != null) {
+                leaf.filter = filter.emptyCopy();
+            }
+            return leaf;
+        }
+
+        /**
+         * 按照节点现在的数据重新构建布隆过滤器，去掉已经移走或者删除的key
+         */
+        void rebuildFilter() {
+            if (filter == null) {
+                return;
+            }
+            filter.clear();
+            for (int i = 0; i < size; i++) {
+                if (values[i] != TOMBSTONE) {
+                    filter.add(keys[i]);
+                }
+            }
+        }
+
+        @Override
+        protected Object aggregate() {
+            return aggregate(0, size);
+        }
+
+        /**
+         * [from,to)之间的数据的聚合
+         */
+        Object aggregate(int from, int to) {
+            Object result = aggregator.identity();
+            for (int i = from; i < to; i++) {
+                if (values[i] != TOMBSTONE) {
+                    result = aggregator.combine(result, aggregator.lift(values[i]));
+                }
+            }
+            return result;
+        }
+
         @Override
         public int getKeyCount() {
-            return size;
+            return size - dead;
+        }
+
+        /**
+         * 前to个位置中不是墓碑的数据个数
+         */
+        int countLive(int to) {
+            if (dead == 0) {
+                return to;
+            }
+            int count = 0;
+            for (int i = 0; i < to; i++) {
+                if (values[i] != TOMBSTONE) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 跳过墓碑之后第i条数据的位置
+         */
+        int liveIndex(int i) {
+            if (dead == 0) {
+                return i;
+            }
+            int index = 0;
+            while (values[index] == TOMBSTONE || i-- > 0) {
+                index++;
+            }
+            return index;
+        }
+
+        /**
+         * 在原数组里面去掉墓碑，子树计数和聚合不变，父节点的关键字仍然能分隔子节点
+         */
+        void purge() {
+            if (dead == 0) {
+                return;
+            }
+            int w = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] != TOMBSTONE) {
+                    keys[w] = keys[i];
+                    values[w++] = values[i];
+                }
+            }
+            Arrays.fill(keys, w, size, null);
+            Arrays.fill(values, w, size, null);
+            size = w;
+            dead = 0;
+        }
+
+        /**
+         * 数据在节点之间移动之后重新数一遍墓碑
+         */
+        void recountDead() {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] == TOMBSTONE) {
+                    count++;
+                }
+            }
+            dead = count;
+        }
+
+        @Override
+        protected K firstKey() {
+            return (K) keys[0];
         }
 
-        protected Leaf(int m, Comparable[] keys, Object[] values) {
-            super(m);
-            this.size = keys.length;
-            this.keys = keys;
-            this.values = values;
+        @Override
+        protected int minSize() {
+            return m >> 1;
         }
 
         @Override
-        protected Node insert(K k, V v) {
+        protected Node insert(K k, V v, boolean appendSplit) {
             int i = getIndex(k);
-            if (i < 0) {
-                i = -i - 1;
+            if (i >= 0 && values[i] == TOMBSTONE) {
+                //覆盖墓碑，数据个数加一
+                values[i] = v;
+                dead--;
+                if (filter != null) {
+                    filter.add(k);
+                }
+                updateAncestors(k, 1);
+                return null;
+            }
+            if (i >= 0) {
+                //key已经存在，直接覆盖
+                values[i] = v;
+                if (aggregator != null) {
+                    updateAncestors(k, 0);
+                }
+                return null;
             }
+            if (size == m - 1 && dead > 0) {
+                //先清理墓碑腾出位置，不需要分裂
+                purge();
+                i = getIndex(k);
+            }
+            i = ~i;
+            System.arraycopy(this.keys, i, this.keys, i + 1, size - i);
+            System.arraycopy(this.values, i, this.values, i + 1, size - i);
+            this.keys[i] = k;
+            this.values[i] = v;
             size++;
-            Comparable[] newKeys = new Comparable[size];
-            Object[] newValues = new Object[size];
-            newKeys[i] = k;
-            newValues[i] = v;
-            //TODO 重新赋值
-            System.arraycopy(this.keys, 0, newKeys, 0, i);
-            System.arraycopy(this.values, 0, newValues, 0, i);
-            System.arraycopy(this.keys, i, newKeys, i + 1, size - i - 1);
-            System.arraycopy(this.keys, i, newValues, i + 1, size - i - 1);
-            this.keys = newKeys;
-            this.values = newValues;
-            //TODO 判断是否需要分裂。
-            return split();
-        }
-
-
-        private Node split() {
-            if (this.size < m) {
+            if (filter != null) {
+                filter.add(k);
+            }
+            updateAncestors(k, 1);
+            return split(appendSplit && next == null && i == size - 1);
+        }
+
+
+        /**
+         * 把排好序的[from,to)的数据合并到当前节点，放得下的时候从后往前在原数组里面合并，
+         * 放不下的时候一次分裂成多个节点
+         *
+         * @param isNew       不为null的时候标记[from,to)里面原来不存在的key
+         * @param appendSplit 是否使用APPEND分裂方式，新数据都追加在最右边叶子节点后面的时候每个节点装满
+         * @return 新的根节点，没有的时候返回null
+         */
+        protected Node insertAll(Comparable[] newKeys, Object[] newValues, boolean[] isNew, int from, int to,
+                                 boolean appendSplit) {
+            //墓碑先清理掉，被覆盖的墓碑算新增的数据
+            purge();
+            boolean append = appendSplit && next == null
+                    && (size == 0 || keys[size - 1].compareTo(newKeys[from]) < 0);
+            int added = 0;
+            for (int i = from; i < to; i++) {
+                if (getIndex((K) newKeys[i]) < 0) {
+                    added++;
+                    if (isNew != null) {
+                        isNew[i] = true;
+                    }
+                }
+                if (filter != null) {
+                    filter.add(newKeys[i]);
+                }
+            }
+            int total = size + added;
+            if (total < m) {
+                //从后往前合并，不需要额外的数组，原来的数据按块移动
+                int high = size;
+                int w = total;
+                for (int j = to - 1; j >= from; j--) {
+                    int i = getIndex((K) newKeys[j], high);
+                    int end = high;
+                    if (i >= 0) {
+                        //key已经存在，跳过原来的数据
+                        high = i;
+                        i++;
+                    } else {
+                        i = ~i;
+                        high = i;
+                    }
+                    int move = end - i;
+                    w -= move;
+                    System.arraycopy(keys, i, keys, w, move);
+                    System.arraycopy(values, i, values, w, move);
+                    w--;
+                    keys[w] = newKeys[j];
+                    values[w] = newValues[j];
+                }
+                size = total;
+                updateAncestors((K) newKeys[from], added);
                 return null;
-            } else {
-                // 除以2操作
-                int newSize = size >> 1;
-                Comparable[] newKeys1 = new Comparable[newSize];
-                Object[] newValue1 = new Object[newSize];
-                System.arraycopy(this.keys, 0, newKeys1, 0, newSize);
-                System.arraycopy(this.values, 0, newValue1, 0, newSize);
-                int size2 = m - newSize;
-                Comparable[] newKeys2 = new Comparable[size2];
-                Object[] newValue2 = new Object[size2];
-                System.arraycopy(this.keys, newSize, newKeys2, 0, size2);
-                System.arraycopy(this.values, newSize, newValue2, 0, size2);
-                Leaf leaf = new Leaf(m, newKeys2, newValue2);
-                this.next = leaf;
-                leaf.pre = this;
-                this.keys = newKeys1;
-                this.values = newValue1;
-                this.size = newSize;
-                if (this.parent == null) {
-                    this.parent = new NonLeaf<>(m);
-                }
-                leaf.parent = this.parent;
-                return parent.updateInsert((K) leaf.keys[0], this, leaf);
-            }
-        }
-
-        /**
-         * 从右边节点借数据
+            }
+            Comparable[] mergedKeys = new Comparable[total];
+            Object[] mergedValues = new Object[total];
+            int i = 0;
+            int j = from;
+            int w = 0;
+            while (i < size || j < to) {
+                int compare = j >= to ? -1 : i >= size ? 1 : keys[i].compareTo(newKeys[j]);
+                if (compare < 0) {
+                    mergedKeys[w] = keys[i];
+                    mergedValues[w++] = values[i++];
+                } else {
+                    if (compare == 0) {
+                        i++;
+                    }
+                    mergedKeys[w] = newKeys[j];
+                    mergedValues[w++] = newValues[j++];
+                }
+            }
+            //平均分到多个节点，每个节点不超过m-1个，追加的时候前面的节点装满
+            int pieces = (total + m - 2) / (m - 1);
+            int pieceSize = total / pieces;
+            int remainder = total % pieces;
+            int count = append ? m - 1 : pieceSize + (remainder > 0 ? 1 : 0);
+            if (count < size) {
+                Arrays.fill(keys, count, size, null);
+                Arrays.fill(values, count, size, null);
+            }
+            System.arraycopy(mergedKeys, 0, keys, 0, count);
+            System.arraycopy(mergedValues, 0, values, 0, count);
+            int delta = count - size;
+            size = count;
+            updateAncestors((K) newKeys[from], delta);
+            Node newRoot = null;
+            Leaf<K, V> left = this;
+            int offset = count;
+            for (int p = 1; p < pieces; p++) {
+                count = append ? Math.min(m - 1, total - offset) : pieceSize + (p < remainder ? 1 : 0);
+                Leaf<K, V> leaf = newSibling();
+                System.arraycopy(mergedKeys, offset, leaf.keys, 0, count);
+                System.arraycopy(mergedValues, offset, leaf.values, 0, count);
+                leaf.size = count;
+                offset += count;
+                leaf.next = left.next;
+                if (left.next != null) {
+                    left.next.pre = leaf;
+                }
+                left.next = leaf;
+                leaf.pre = left;
+                if (metrics != null) {
+                    metrics.leafSplit();
+                }
+                //先算在左节点的子树里，updateInsert的时候再分到新节点
+                left.updateAncestors((K) left.keys[0], count);
+                if (left.parent == null) {
+                    left.parent = new NonLeaf<>(m, aggregator, metrics);
+                }
+                Node node = left.parent.updateInsert((K) leaf.keys[0], left, leaf, append);
+                if (node != null) {
+                    newRoot = node;
+                }
+                left = leaf;
+            }
+            if (filter != null) {
+                for (Leaf<K, V> piece = this; piece != left.next; piece = piece.next) {
+                    piece.rebuildFilter();
+                }
+            }
+            if (aggregator != null) {
+                //分裂的时候新节点先算在左节点里，最后重新计算每个节点到根节点路径上的聚合
+                for (Leaf<K, V> piece = this; piece != left.next; piece = piece.next) {
+                    piece.updateAncestors((K) piece.keys[0], 0);
+                }
+            }
+            return newRoot;
+        }
+
+        /**
+         * @param append 追加分裂，原节点保持装满，只把最后一条数据放到新节点，否则除以2
+         * @return
+         */
+        private Node split(boolean append) {
+            if (!isOverflowed()) {
+                return null;
+            }
+            int newSize = append ? size - 1 : size >> 1;
+            int size2 = size - newSize;
+            Leaf<K, V> leaf = newSibling();
+            System.arraycopy(this.keys, newSize, leaf.keys, 0, size2);
+            System.arraycopy(this.values, newSize, leaf.values, 0, size2);
+            Arrays.fill(this.keys, newSize, size, null);
+            Arrays.fill(this.values, newSize, size, null);
+            leaf.size = size2;
+            this.size = newSize;
+            leaf.recountDead();
+            this.dead -= leaf.dead;
+            this.rebuildFilter();
+            leaf.rebuildFilter();
+            leaf.next = this.next;
+            if (this.next != null) {
+                this.next.pre = leaf;
+            }
+            this.next = leaf;
+            leaf.pre = this;
+            if (metrics != null) {
+                metrics.leafSplit();
+            }
+            if (this.parent == null) {
+                this.parent = new NonLeaf<>(m, aggregator, metrics);
+            }
+            return parent.updateInsert((K) leaf.keys[0], this, leaf, append);
+        }
+
+        /**
+         * 从右边节点借range个元素数据
          *
          * @param right
          * @param range
          */
-        void borrowFromRight(Leaf right, int range) {
-            int rightNewSize = this.size - range;
-            Comparable[] rightNewKeys = new Comparable[this.size - range];
-            Objects[] rightNewValues = new Objects[this.size - range];
-            System.arraycopy(right.keys, range, rightNewKeys, 0, rightNewSize);
-            System.arraycopy(right.values, range, rightNewValues, 0, rightNewSize);
-            int newSize = this.size + range;
-            Comparable[] newKeys = new Comparable[newSize];
-            Objects[] newValues = new Objects[newSize];
-            System.arraycopy(this.keys, 0, newKeys, 0, this.size);
-            System.arraycopy(this.values, 0, newValues, 0, this.size);
-            System.arraycopy(right.keys, 0, newKeys, this.size, range);
-            System.arraycopy(right.values, 0, newValues, this.size, range);
-            this.keys = rightNewKeys;
-            this.values = rightNewValues;
-            this.size = rightNewSize;
-            right.keys = newKeys;
-            right.values = newValues;
-            right.size = newSize;
+        void borrowFromRight(Leaf<K, V> right, int range) {
+            System.arraycopy(right.keys, 0, this.keys, this.size, range);
+            System.arraycopy(right.values, 0, this.values, this.size, range);
+            this.size += range;
+            int rightNewSize = right.size - range;
+            System.arraycopy(right.keys, range, right.keys, 0, rightNewSize);
+            System.arraycopy(right.values, range, right.values, 0, rightNewSize);
+            Arrays.fill(right.keys, rightNewSize, right.size, null);
+            Arrays.fill(right.values, rightNewSize, right.size, null);
+            right.size = rightNewSize;
+            if (this.dead + right.dead > 0) {
+                this.recountDead();
+                right.recountDead();
+            }
+            this.rebuildFilter();
+            right.rebuildFilter();
         }
 
         /**
@@ -746,61 +2480,68 @@ public class BPlugsTree2<K extends Comparable, V> {
          * @param left
          * @param range
          */
-        protected void borrowFromLeft(Leaf left, int range) {
+        void borrowFromLeft(Leaf<K, V> left, int range) {
+            System.arraycopy(this.keys, 0, this.keys, range, this.size);
+            System.arraycopy(this.values, 0, this.values, range, this.size);
             int leftNewSize = left.size - range;
-            Comparable[] leftNewKeys = new Comparable[leftNewSize];
-            String[] leftNewValues = new String[leftNewSize];
-            System.arraycopy(left.keys, 0, leftNewKeys, 0, leftNewSize);
-            System.arraycopy(left.values, 0, leftNewValues, 0, leftNewSize);
-            int newSize = this.size + range;
-            Comparable[] newKeys = new Comparable[newSize];
-            String[] newValues = new String[newSize];
-            System.arraycopy(left.keys, leftNewSize, newKeys, 0, range);
-            System.arraycopy(left.values, leftNewSize, newValues, 0, range);
-            System.arraycopy(this.keys, 0, newKeys, range, this.size);
-            System.arraycopy(this.values, 0, newValues, range, this.size);
-            left.keys = newKeys;
-            left.values = leftNewValues;
+            System.arraycopy(left.keys, leftNewSize, this.keys, 0, range);
+            System.arraycopy(left.values, leftNewSize, this.values, 0, range);
+            this.size += range;
+            Arrays.fill(left.keys, leftNewSize, left.size, null);
+            Arrays.fill(left.values, leftNewSize, left.size, null);
             left.size = leftNewSize;
-            this.keys = newKeys;
-            this.values = newValues;
-            this.size = newSize;
+            if (this.dead + left.dead > 0) {
+                this.recountDead();
+                left.recountDead();
+            }
+            this.rebuildFilter();
+            left.rebuildFilter();
         }
 
         @Override
         protected void delete(K k) {
             int i = getIndex(k);
-            if (i >= 0) {
-                Comparable[] newKey = new Comparable[this.size - 1];
-                Object[] newValue = new Object[this.size - 1];
-                copyExclude(newKey, newValue, i);
-                this.size--;
-                this.keys = newKey;
-                this.values = newValue;
+            //墓碑已经不算数据了，留给compact清理
+            if (i >= 0 && values[i] != TOMBSTONE) {
+                deleteKey(i);
+                updateAncestors(k, -1);
             }
         }
 
+        @Override
         protected void deleteKey(int index) {
+            System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+            this.values[this.size - 1] = null;
             super.deleteKey(index);
-            Object[] newValues = new Object[this.size - 1];
-            System.arraycopy(this.values, 0, newValues, 0, index);
-            System.arraycopy(this.values, index + 1, newValues, index, this.size
-                    - index - 1);
         }
 
-
-        private void copyExclude(Comparable[] newKeys, Object[] newValue, int exclude) {
-            System.arraycopy(this.keys, 0, newKeys, 0, exclude);
-            System.arraycopy(this.values, 0, newValue, 0, exclude);
-            System.arraycopy(this.keys, exclude + 1, newKeys, exclude, this.size - exclude - 1);
-            System.arraycopy(this.values, exclude + 1, newValue, exclude, this.size - exclude - 1);
+        /**
+         * 删除[from,to)的数据，不更新父节点
+         *
+         * @param from
+         * @param to
+         */
+        void removeRange(int from, int to) {
+            int count = to - from;
+            if (count <= 0) {
+                return;
+            }
+            System.arraycopy(this.keys, to, this.keys, from, this.size - to);
+            System.arraycopy(this.values, to, this.values, from, this.size - to);
+            Arrays.fill(this.keys, this.size - count, this.size, null);
+            Arrays.fill(this.values, this.size - count, this.size, null);
+            this.size -= count;
+            if (dead > 0) {
+                recountDead();
+            }
+            rebuildFilter();
         }
 
 
         @Override
         protected V search(K k) {
             int index = getIndex(k);
-            return (V) values[index];
+            return index < 0 || values[index] == TOMBSTONE ? null : (V) values[index];
         }
     }
 
@@ -0,0 +1,98 @@
+package com.kerns.structure.tree;
+
+/**
+ * 基于{@link BPlugsTree2}的NavigableMap，可以直接替换TreeMap
+ * <p>
+ * subMap/headMap/tailMap/descendingMap都是树上的视图，不复制数据；
+ * 遍历沿着叶子节点的链表走，keySet和values的迭代器不创建对象，entrySet每条数据创建一个Entry。
+ * size()使用子树计数，视图上也是O(log n)。
+ * 不是线程安全的，遍历的过程中只能通过迭代器删除，其他修改会让迭代器抛出ConcurrentModificationException。
+ * key按照自然顺序排序，key和value都不能为null。
+ */
+public class BPlusTreeMap<K extends Comparable, V> extends AbstractBPlusTreeMap<K, V> {
+
+    private final BPlugsTree2<K, V> tree;
+
+    public BPlusTreeMap(int m) {
+        this(new BPlugsTree2<>(m));
+    }
+
+    /**
+     * 使用已经有数据的树，比如bulkLoad构建的树，或者带聚合和运行指标的树
+     *
+     * @param tree
+     */
+    public BPlusTreeMap(BPlugsTree2<K, V> tree) {
+        this(tree, null, false, null, false, false);
+    }
+
+    private BPlusTreeMap(BPlugsTree2<K, V> tree, K lo, boolean loInclusive, K hi, boolean hiInclusive,
+                         boolean descending) {
+        super(lo, loInclusive, hi, hiInclusive, descending);
+        this.tree = tree;
+    }
+
+    @Override
+    public int size() {
+        if (lo == null && hi == null) {
+            return tree.size();
+        }
+        return tree.countRange(lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * 直接在树上范围删除，headMap(cutoff).clear()不需要一条一条删
+     */
+    @Override
+    public void clear() {
+        tree.deleteRange(lo, loInclusive, hi, hiInclusive);
+    }
+
+    @Override
+    V doGet(K k) {
+        return tree.get(k);
+    }
+
+    @Override
+    V doPut(K k, V v) {
+        V old = tree.get(k);
+        tree.insert(k, v);
+        return old;
+    }
+
+    @Override
+    V doRemove(K k) {
+        V old = tree.get(k);
+        if (old != null) {
+            tree.delete(k);
+        }
+        return old;
+    }
+
+    @Override
+    Cursor<K, V> cursor(K low, boolean lowInclusive, K high, boolean highInclusive, boolean descending) {
+        BPlugsTree2.Cursor<K, V> cursor = descending ? tree.descendingScan(low, lowInclusive, high, highInclusive)
+                : tree.scan(low, lowInclusive, high, highInclusive);
+        return new Cursor<K, V>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public K next() {
+                return cursor.next();
+            }
+
+            @Override
+            public V getValue() {
+                return cursor.getValue();
+            }
+        };
+    }
+
+    @Override
+    AbstractBPlusTreeMap<K, V> newView(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+        return new BPlusTreeMap<>(tree, lo, loInclusive, hi, hiInclusive, descending);
+    }
+}
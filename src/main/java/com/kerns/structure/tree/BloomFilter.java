@@ -0,0 +1,122 @@
+package com.kerns.structure.tree;
+
+import java.util.Arrays;
+
+/**
+ * 分块的布隆过滤器，一个key的全部位都落在同一个64字节的块里面，判断一次只访问一个缓存行。
+ * 同样的位数误判率比普通的布隆过滤器高，每个块装的key个数不均匀，配置的误判率越低差得越多，
+ * 0.01的时候实际大约1.3%，0.001的时候大约0.3%，按照误判率计算位数的时候没有补偿。
+ * 只能添加不能删除，删除数据之后原来的位还在，只会多误判，不会漏掉，需要的时候重新构建
+ * <p>
+ * 用key的hashCode计算位置，key的hashCode需要和compareTo一致，compareTo相等的key的hashCode也相等
+ */
+final class BloomFilter {
+
+    /**
+     * 一个块8个long，512位，正好一个缓存行
+     */
+    private static final int BLOCK_LONGS = 8;
+
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+
+    private final long[] bits;
+
+    private final int blocks;
+
+    private final int hashes;
+
+    /**
+     * @param expectedEntries 预计添加的key的个数
+     * @param fpp             期望的误判率(0,1)
+     */
+    BloomFilter(int expectedEntries, double fpp) {
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("fpp must be in (0, 1)");
+        }
+        int n = Math.max(1, expectedEntries);
+        double ln2 = Math.log(2);
+        long bitCount = (long) Math.ceil(-n * Math.log(fpp) / (ln2 * ln2));
+        this.blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS, (bitCount + BLOCK_BITS - 1) / BLOCK_BITS);
+        this.bits = new long[blocks * BLOCK_LONGS];
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) bitCount / n * ln2)));
+    }
+
+    private BloomFilter(BloomFilter other) {
+        this.blocks = other.blocks;
+        this.hashes = other.hashes;
+        this.bits = new long[other.bits.length];
+    }
+
+    /**
+     * 大小一样的空过滤器
+     *
+     * @return
+     */
+    BloomFilter emptyCopy() {
+        return new BloomFilter(this);
+    }
+
+    void add(Object key) {
+        long h = hash(key);
+        int base = block(h);
+        long g = h * 0x9E3779B97F4A7C15L;
+        int h1 = (int) g;
+        int h2 = (int) (g >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param key
+     * @return false的时候一定不包含，true的时候可能包含
+     */
+    boolean mightContain(Object key) {
+        long h = hash(key);
+        int base = block(h);
+        long g = h * 0x9E3779B97F4A7C15L;
+        int h1 = (int) g;
+        int h2 = (int) (g >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(bits, 0);
+    }
+
+    /**
+     * 位数组占用的字节数
+     *
+     * @return
+     */
+    long getBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    /**
+     * 高32位乘以块数取高位，块数不需要是2的幂次
+     */
+    private int block(long h) {
+        return (int) (((h >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+    }
+
+    /**
+     * hashCode只有32位，用murmur3的fmix64打散到64位
+     */
+    private static long hash(Object key) {
+        long h = key.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,221 @@
+package com.kerns.structure.tree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 固定内存预算的页缓冲池，缓存解码之后的页
+ * <p>
+ * 使用中的页需要pin，pin住的页不会被淘汰，用完之后unpin并告诉缓冲池有没有修改，修改过的页淘汰或者flush的时候写回。
+ * 淘汰策略是LRU-2：比较每一页倒数第二次访问的时间，只访问过一次的页最先被淘汰，
+ * 所以一次大范围扫描只会挤掉扫描自己读进来的叶子节点，经常访问的非叶子节点留在缓存里。
+ * 同一页在pin住期间重复pin不算新的访问，避免一次操作里的多次访问让页看起来很热。
+ *
+ * @param <T> 解码之后的页
+ */
+public class BufferPool<T> {
+
+    /**
+     * 页的读取和写回
+     */
+    public interface PageStore<T> {
+
+        T read(long id);
+
+        void write(long id, T page);
+    }
+
+    private final PageStore<T> store;
+
+    private final int capacity;
+
+    private final Map<Long, Frame<T>> frames = new HashMap<>();
+    /**
+     * 没有pin住的页，按照LRU-2的顺序排列，第一个就是要淘汰的页
+     */
+    private final TreeSet<Frame<T>> evictable = new TreeSet<>((a, b) -> {
+        if (a.secondLast != b.secondLast) {
+            return Long.compare(a.secondLast, b.secondLast);
+        }
+        if (a.last != b.last) {
+            return Long.compare(a.last, b.last);
+        }
+        return Long.compare(a.id, b.id);
+    });
+
+    private long clock;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long writeBacks;
+
+    /**
+     * @param byteBudget   缓冲池最多使用的内存
+     * @param bytesPerPage 每一页解码之后大约占用的内存
+     * @param store
+     */
+    public BufferPool(long byteBudget, int bytesPerPage, PageStore<T> store) {
+        if (byteBudget <= 0 || bytesPerPage <= 0) {
+            throw new IllegalArgumentException("byteBudget and bytesPerPage must be positive");
+        }
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, byteBudget / bytesPerPage));
+        this.store = store;
+    }
+
+    /**
+     * pin住一页，不在缓冲池里的时候读取
+     *
+     * @param id
+     * @return
+     */
+    public T pin(long id) {
+        Frame<T> frame = frames.get(id);
+        if (frame == null) {
+            misses++;
+            frame = new Frame<>(id, store.read(id));
+            frames.put(id, frame);
+        } else {
+            hits++;
+        }
+        pin(frame);
+        evictIfNeeded();
+        return frame.page;
+    }
+
+    /**
+     * 放入一个新的页并pin住，新页一定会写回
+     *
+     * @param id
+     * @param page
+     */
+    public void pinNew(long id, T page) {
+        Frame<T> frame = new Frame<>(id, page);
+        frame.dirty = true;
+        Frame<T> old = frames.put(id, frame);
+        if (old != null) {
+            evictable.remove(old);
+        }
+        pin(frame);
+        evictIfNeeded();
+    }
+
+    /**
+     * @param id
+     * @param dirty 这次pin期间有没有修改
+     */
+    public void unpin(long id, boolean dirty) {
+        Frame<T> frame = frames.get(id);
+        if (frame == null || frame.pinCount == 0) {
+            throw new IllegalStateException("page " + id + " is not pinned");
+        }
+        frame.dirty |= dirty;
+        if (--frame.pinCount == 0) {
+            evictable.add(frame);
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * 丢弃一页，不写回，用在页被释放的时候
+     *
+     * @param id
+     */
+    public void discard(long id) {
+        Frame<T> frame = frames.remove(id);
+        if (frame != null) {
+            evictable.remove(frame);
+        }
+    }
+
+    /**
+     * 写回所有修改过的页
+     */
+    public void flush() {
+        for (Frame<T> frame : frames.values()) {
+            writeBack(frame);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getCachedPages() {
+        return frames.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getWriteBacks() {
+        return writeBacks;
+    }
+
+    private void pin(Frame<T> frame) {
+        if (frame.pinCount++ == 0) {
+            evictable.remove(frame);
+            frame.secondLast = frame.last;
+            frame.last = ++clock;
+        }
+    }
+
+    /**
+     * 超过容量的时候淘汰，全部页都pin住的时候暂时超过容量，等unpin之后再淘汰
+     */
+    private void evictIfNeeded() {
+        while (frames.size() > capacity && !evictable.isEmpty()) {
+            //先写回再移出，写回失败的时候这一页还在缓冲池里
+            Frame<T> victim = evictable.first();
+            writeBack(victim);
+            evictable.pollFirst();
+            frames.remove(victim.id);
+            evictions++;
+        }
+    }
+
+    private void writeBack(Frame<T> frame) {
+        if (frame.dirty) {
+            store.write(frame.id, frame.page);
+            frame.dirty = false;
+            writeBacks++;
+        }
+    }
+
+    private static final class Frame<T> {
+
+        final long id;
+
+        final T page;
+
+        int pinCount;
+
+        boolean dirty;
+        /**
+         * 最近一次访问的时间
+         */
+        long last;
+        /**
+         * 倒数第二次访问的时间，只访问过一次的时候是0
+         */
+        long secondLast;
+
+        Frame(long id, T page) {
+            this.id = id;
+            this.page = page;
+        }
+    }
+}
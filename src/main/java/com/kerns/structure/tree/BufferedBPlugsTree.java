@@ -0,0 +1,675 @@
+package com.kerns.structure.tree;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+/**
+ * 写优化的b+树(Bε树)，适合写多读少的场景
+ * 每个非叶子节点带一个有上限的消息缓冲区，插入、删除、upsert先作为消息放到根节点的缓冲区，不往下查找。
+ * 缓冲区满了之后，把消息最多的那个子节点的消息一批推下去，推到叶子节点的时候一次合并进叶子节点，
+ * 一次推下去的消息越多，平均每条数据写叶子节点的次数越少。
+ * 同一个缓冲区里同一个key只保留一条消息，新的消息和旧的消息合并。
+ * <p>
+ * 查找的时候从根节点往下，路径上越靠上的消息越新，遇到put或者delete就能确定结果，upsert需要继续往下合并。
+ * 删除只去掉空的叶子节点，不做合并，和{@link CopyOnWriteBPlugsTree}一样。
+ * size()和forEach()需要先把全部消息推到叶子节点。
+ * <p>
+ * 不是线程安全的
+ */
+public class BufferedBPlugsTree<K extends Comparable, V> {
+
+    static final byte PUT = 0;
+
+    static final byte DELETE = 1;
+
+    static final byte UPSERT = 2;
+
+    private Node<K, V> root;
+
+    private final int m;
+
+    private final int bufferSize;
+    /**
+     * upsert的合并方式，需要满足结合律，为null的时候不支持upsert
+     */
+    private final BinaryOperator<V> merger;
+    /**
+     * 写叶子节点的次数，一批消息合并到一个叶子节点算一次
+     */
+    private long leafWrites;
+
+    /**
+     * @param m          阶数，非叶子节点最多m个子节点，叶子节点最多m-1条数据
+     * @param bufferSize 每个非叶子节点的缓冲区最多放多少条消息，一般是m的几倍
+     */
+    public BufferedBPlugsTree(int m, int bufferSize) {
+        this(m, bufferSize, null);
+    }
+
+    /**
+     * @param m
+     * @param bufferSize
+     * @param merger     upsert的合并方式，merger(旧的value, 增量)，需要满足结合律，比如计数相加
+     */
+    public BufferedBPlugsTree(int m, int bufferSize, BinaryOperator<V> merger) {
+        if (m < 3) {
+            throw new IllegalArgumentException("m must be greater than 2");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.m = m;
+        this.bufferSize = bufferSize;
+        this.merger = merger;
+        this.root = new Leaf<>(m);
+    }
+
+    /**
+     * 插入数据，key已经存在的时候覆盖原来的value
+     *
+     * @param k
+     * @param v
+     */
+    public void insert(K k, V v) {
+        apply(k, PUT, v);
+    }
+
+    public void delete(K k) {
+        apply(k, DELETE, null);
+    }
+
+    /**
+     * key不存在的时候value是delta，存在的时候是merger(原来的value, delta)，不需要先读出原来的value
+     *
+     * @param k
+     * @param delta
+     * @throws UnsupportedOperationException 创建的时候没有指定merger
+     */
+    public void upsert(K k, V delta) {
+        if (merger == null) {
+            throw new UnsupportedOperationException("merger is not set");
+        }
+        apply(k, UPSERT, delta);
+    }
+
+    /**
+     * 查找数据，合并路径上缓冲区里的消息
+     *
+     * @param k
+     * @return
+     */
+    public V get(K k) {
+        //上面的upsert合并之后的增量，越往下消息越旧
+        Object pending = null;
+        boolean upsert = false;
+        Node<K, V> node = root;
+        while (node instanceof NonLeaf) {
+            NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+            int i = Arrays.binarySearch(nonLeaf.bufKeys, 0, nonLeaf.bufSize, k);
+            if (i >= 0) {
+                byte type = nonLeaf.bufTypes[i];
+                Object value = nonLeaf.bufValues[i];
+                if (type == DELETE) {
+                    return (V) pending;
+                }
+                if (type == PUT) {
+                    return upsert ? merger.apply((V) value, (V) pending) : (V) value;
+                }
+                pending = upsert ? merger.apply((V) value, (V) pending) : value;
+                upsert = true;
+            }
+            node = nonLeaf.children[nonLeaf.childIndex(k)];
+        }
+        Leaf<K, V> leaf = (Leaf<K, V>) node;
+        int i = Arrays.binarySearch(leaf.keys, 0, leaf.size, k);
+        if (i < 0) {
+            return (V) pending;
+        }
+        return upsert ? merger.apply((V) leaf.values[i], (V) pending) : (V) leaf.values[i];
+    }
+
+    /**
+     * 把全部消息推到叶子节点之后数一遍
+     *
+     * @return
+     */
+    public int size() {
+        flushAll();
+        return count(root);
+    }
+
+    /**
+     * 把全部消息推到叶子节点之后按照key从小到大遍历
+     *
+     * @param action
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        flushAll();
+        forEach(root, action);
+    }
+
+    /**
+     * 把所有缓冲区的消息都推到叶子节点
+     */
+    public void flushAll() {
+        if (root instanceof NonLeaf) {
+            flushAll((NonLeaf<K, V>) root);
+            fixRoot();
+        }
+    }
+
+    /**
+     * 写叶子节点的次数，一批消息合并到一个叶子节点算一次，普通的b+树每次插入都要写一次
+     *
+     * @return
+     */
+    public long getLeafWrites() {
+        return leafWrites;
+    }
+
+    private void apply(K k, byte type, Object value) {
+        if (root instanceof Leaf) {
+            Leaf<K, V> leaf = (Leaf<K, V>) root;
+            leaf.apply(k, type, value, merger);
+            leafWrites++;
+        } else {
+            NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) root;
+            nonLeaf.addMessage(k, type, value, merger);
+            while (nonLeaf.bufSize >= bufferSize) {
+                flush(nonLeaf);
+            }
+        }
+        fixRoot();
+    }
+
+    /**
+     * 根节点太大的时候分裂出新的根节点，只剩一个子节点而且没有消息的时候去掉
+     */
+    private void fixRoot() {
+        while (root.isOverflowed()) {
+            NonLeaf<K, V> newRoot = new NonLeaf<>(m, bufferSize);
+            newRoot.children[0] = root;
+            newRoot.splitChild(0);
+            root = newRoot;
+        }
+        while (root instanceof NonLeaf && root.size == 0 && ((NonLeaf<K, V>) root).bufSize == 0) {
+            root = ((NonLeaf<K, V>) root).children[0];
+        }
+    }
+
+    /**
+     * 把消息最多的子节点的消息推下去，推完之后子节点太大的时候分裂，叶子节点为空的时候去掉
+     */
+    private void flush(NonLeaf<K, V> node) {
+        int best = 0;
+        int bestFrom = 0;
+        int bestTo = 0;
+        int from = 0;
+        for (int c = 0; c <= node.size && from < node.bufSize; c++) {
+            int to = node.bufSize;
+            if (c < node.size) {
+                to = Arrays.binarySearch(node.bufKeys, from, node.bufSize, node.keys[c]);
+                to = to < 0 ? ~to : to;
+            }
+            if (to - from > bestTo - bestFrom) {
+                best = c;
+                bestFrom = from;
+                bestTo = to;
+            }
+            from = to;
+        }
+        pushDown(node, best, bestFrom, bestTo);
+        node.removeMessages(bestFrom, bestTo);
+        fixChild(node, best);
+    }
+
+    /**
+     * 把全部消息按照子节点分组推下去，从右往左处理，子节点分裂不影响左边的下标
+     */
+    private void flushAll(NonLeaf<K, V> node) {
+        for (int c = node.size; c >= 0; c--) {
+            int from = 0;
+            if (c > 0) {
+                from = Arrays.binarySearch(node.bufKeys, 0, node.bufSize, node.keys[c - 1]);
+                from = from < 0 ? ~from : from;
+            }
+            Node<K, V> child = node.children[c];
+            if (from < node.bufSize) {
+                pushDown(node, c, from, node.bufSize);
+                node.removeMessages(from, node.bufSize);
+            }
+            if (child instanceof NonLeaf) {
+                flushAll((NonLeaf<K, V>) child);
+            }
+            fixChild(node, c);
+        }
+    }
+
+    /**
+     * 把node缓冲区[from,to)的消息推到第c个子节点，这些消息比子节点里的都新
+     */
+    private void pushDown(NonLeaf<K, V> node, int c, int from, int to) {
+        Node<K, V> child = node.children[c];
+        if (child instanceof Leaf) {
+            ((Leaf<K, V>) child).apply(node.bufKeys, node.bufTypes, node.bufValues, from, to, merger);
+            leafWrites++;
+            return;
+        }
+        NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) child;
+        nonLeaf.mergeMessages(node.bufKeys, node.bufTypes, node.bufValues, from, to, merger);
+        while (nonLeaf.bufSize >= bufferSize) {
+            flush(nonLeaf);
+        }
+    }
+
+    /**
+     * 第c个子节点太大的时候分裂，是空的叶子节点而且有兄弟节点的时候去掉
+     */
+    private void fixChild(NonLeaf<K, V> node, int c) {
+        Node<K, V> child = node.children[c];
+        if (child.isOverflowed()) {
+            node.splitChild(c);
+        } else if (child instanceof Leaf && child.size == 0 && node.size > 0) {
+            node.removeChild(c);
+        }
+    }
+
+    private int count(Node<K, V> node) {
+        if (node instanceof Leaf) {
+            return node.size;
+        }
+        NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+        int count = 0;
+        for (int i = 0; i <= nonLeaf.size; i++) {
+            count += count(nonLeaf.children[i]);
+        }
+        return count;
+    }
+
+    private void forEach(Node<K, V> node, BiConsumer<? super K, ? super V> action) {
+        if (node instanceof Leaf) {
+            for (int i = 0; i < node.size; i++) {
+                action.accept((K) node.keys[i], (V) ((Leaf<K, V>) node).values[i]);
+            }
+            return;
+        }
+        NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) node;
+        for (int i = 0; i <= nonLeaf.size; i++) {
+            forEach(nonLeaf.children[i], action);
+        }
+    }
+
+    /**
+     * 旧消息上面再来一条新消息之后的类型，新消息是upsert的时候需要合并value
+     */
+    private static byte combineType(byte oldType, byte newType) {
+        if (newType != UPSERT) {
+            return newType;
+        }
+        return oldType == DELETE ? PUT : oldType;
+    }
+
+    private static Object combineValue(byte oldType, Object oldValue, byte newType, Object newValue,
+                                       BinaryOperator merger) {
+        if (newType != UPSERT || oldType == DELETE) {
+            return newValue;
+        }
+        return merger.apply(oldValue, newValue);
+    }
+
+    abstract static class Node<K extends Comparable, V> {
+
+        protected final int m;
+        /**
+         * 叶子节点是数据个数，非叶子节点是分隔key的个数，子节点个数是size+1
+         */
+        protected int size;
+
+        protected Comparable[] keys;
+
+        protected Node(int m) {
+            this.m = m;
+            this.keys = new Comparable[m];
+        }
+
+        /**
+         * 一批消息推下来之后可能超过好几个节点的容量，分裂的时候按照容量分成多个节点
+         */
+        abstract boolean isOverflowed();
+    }
+
+    static final class Leaf<K extends Comparable, V> extends Node<K, V> {
+
+        private Object[] values;
+
+        Leaf(int m) {
+            super(m);
+            this.values = new Object[m];
+        }
+
+        @Override
+        boolean isOverflowed() {
+            return size >= m;
+        }
+
+        /**
+         * 根节点是叶子节点的时候直接合并一条消息
+         */
+        void apply(Comparable k, byte type, Object value, BinaryOperator merger) {
+            int i = Arrays.binarySearch(keys, 0, size, k);
+            if (i >= 0) {
+                //已经存在的数据相当于一条put消息
+                if (type == DELETE) {
+                    System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                    System.arraycopy(values, i + 1, values, i, size - i - 1);
+                    size--;
+                    keys[size] = null;
+                    values[size] = null;
+                } else {
+                    values[i] = combineValue(PUT, values[i], type, value, merger);
+                }
+                return;
+            }
+            if (type == DELETE) {
+                return;
+            }
+            i = ~i;
+            ensureCapacity(size + 1);
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            keys[i] = k;
+            values[i] = value;
+            size++;
+        }
+
+        /**
+         * 把排好序的消息[from,to)合并进来，消息比节点里的数据新
+         * 从后往前在原数组里合并，删除和相同的key会在前面空出位置，最后整体往前移
+         */
+        void apply(Comparable[] messageKeys, byte[] types, Object[] messageValues, int from, int to,
+                   BinaryOperator merger) {
+            int total = size + to - from;
+            ensureCapacity(total);
+            int i = size - 1;
+            int j = to - 1;
+            int w = total;
+            while (j >= from) {
+                int compare = i < 0 ? -1 : keys[i].compareTo(messageKeys[j]);
+                if (compare > 0) {
+                    w--;
+                    keys[w] = keys[i];
+                    values[w] = values[i--];
+                    continue;
+                }
+                byte type = types[j];
+                Object value = messageValues[j];
+                if (compare == 0) {
+                    //已经存在的数据相当于一条put消息
+                    type = combineType(PUT, type);
+                    value = combineValue(PUT, values[i--], types[j], value, merger);
+                }
+                if (type != DELETE) {
+                    w--;
+                    keys[w] = messageKeys[j];
+                    values[w] = value;
+                }
+                j--;
+            }
+            //剩下的[0,i]已经在原来的位置，和合并好的部分之间的空位是删除和重复的key
+            int gap = w - (i + 1);
+            if (gap > 0) {
+                System.arraycopy(keys, w, keys, i + 1, total - w);
+                System.arraycopy(values, w, values, i + 1, total - w);
+                Arrays.fill(keys, total - gap, total, null);
+                Arrays.fill(values, total - gap, total, null);
+            }
+            size = total - gap;
+        }
+
+        /**
+         * 一批消息合并之后可能超过m，先放下，之后再分裂
+         */
+        private void ensureCapacity(int capacity) {
+            if (keys.length < capacity) {
+                int length = Math.max(capacity, keys.length << 1);
+                keys = Arrays.copyOf(keys, length);
+                values = Arrays.copyOf(values, length);
+            }
+        }
+
+        /**
+         * 按照容量平均分成多个叶子节点，第一个是当前节点
+         *
+         * @return 分出来的节点，包括当前节点
+         */
+        Leaf<K, V>[] split() {
+            int pieces = (size + m - 2) / (m - 1);
+            int pieceSize = size / pieces;
+            int remainder = size % pieces;
+            Leaf<K, V>[] result = new Leaf[pieces];
+            int offset = 0;
+            for (int p = 0; p < pieces; p++) {
+                int count = pieceSize + (p < remainder ? 1 : 0);
+                Leaf<K, V> leaf = new Leaf<>(m);
+                System.arraycopy(keys, offset, leaf.keys, 0, count);
+                System.arraycopy(values, offset, leaf.values, 0, count);
+                leaf.size = count;
+                result[p] = leaf;
+                offset += count;
+            }
+            keys = result[0].keys;
+            values = result[0].values;
+            size = result[0].size;
+            result[0] = this;
+            return result;
+        }
+    }
+
+    static final class NonLeaf<K extends Comparable, V> extends Node<K, V> {
+
+        private Node<K, V>[] children;
+
+        private final int bufferSize;
+        /**
+         * 缓冲区的消息，按照key排好序，一个key只有一条
+         */
+        private Comparable[] bufKeys;
+
+        private byte[] bufTypes;
+
+        private Object[] bufValues;
+
+        private int bufSize;
+
+        NonLeaf(int m, int bufferSize) {
+            super(m);
+            this.bufferSize = bufferSize;
+            this.children = new Node[m + 1];
+            this.bufKeys = new Comparable[bufferSize];
+            this.bufTypes = new byte[bufferSize];
+            this.bufValues = new Object[bufferSize];
+        }
+
+        @Override
+        boolean isOverflowed() {
+            return size >= m;
+        }
+
+        int childIndex(Comparable k) {
+            int i = Arrays.binarySearch(keys, 0, size, k);
+            return i < 0 ? ~i : i + 1;
+        }
+
+        void addMessage(Comparable k, byte type, Object value, BinaryOperator merger) {
+            int i = Arrays.binarySearch(bufKeys, 0, bufSize, k);
+            if (i >= 0) {
+                bufValues[i] = combineValue(bufTypes[i], bufValues[i], type, value, merger);
+                bufTypes[i] = combineType(bufTypes[i], type);
+                return;
+            }
+            i = ~i;
+            ensureBufferCapacity(bufSize + 1);
+            System.arraycopy(bufKeys, i, bufKeys, i + 1, bufSize - i);
+            System.arraycopy(bufTypes, i, bufTypes, i + 1, bufSize - i);
+            System.arraycopy(bufValues, i, bufValues, i + 1, bufSize - i);
+            bufKeys[i] = k;
+            bufTypes[i] = type;
+            bufValues[i] = value;
+            bufSize++;
+        }
+
+        /**
+         * 合并父节点推下来的一批排好序的消息，同一个key父节点的消息更新
+         * 从后往前在原数组里合并，相同的key合并之后前面会空出位置，最后整体往前移
+         */
+        void mergeMessages(Comparable[] messageKeys, byte[] types, Object[] messageValues, int from, int to,
+                           BinaryOperator merger) {
+            int total = bufSize + to - from;
+            ensureBufferCapacity(total);
+            int i = bufSize - 1;
+            int j = to - 1;
+            int w = total;
+            while (j >= from) {
+                int compare = i < 0 ? -1 : bufKeys[i].compareTo(messageKeys[j]);
+                w--;
+                if (compare > 0) {
+                    bufKeys[w] = bufKeys[i];
+                    bufTypes[w] = bufTypes[i];
+                    bufValues[w] = bufValues[i--];
+                } else if (compare < 0) {
+                    bufKeys[w] = messageKeys[j];
+                    bufTypes[w] = types[j];
+                    bufValues[w] = messageValues[j--];
+                } else {
+                    byte type = combineType(bufTypes[i], types[j]);
+                    bufValues[w] = combineValue(bufTypes[i], bufValues[i], types[j], messageValues[j], merger);
+                    bufTypes[w] = type;
+                    bufKeys[w] = messageKeys[j];
+                    i--;
+                    j--;
+                }
+            }
+            //剩下的[0,i]已经在原来的位置，和合并好的部分之间的空位是重复的key
+            int gap = w - (i + 1);
+            if (gap > 0) {
+                System.arraycopy(bufKeys, w, bufKeys, i + 1, total - w);
+                System.arraycopy(bufTypes, w, bufTypes, i + 1, total - w);
+                System.arraycopy(bufValues, w, bufValues, i + 1, total - w);
+                Arrays.fill(bufKeys, total - gap, total, null);
+                Arrays.fill(bufValues, total - gap, total, null);
+            }
+            bufSize = total - gap;
+        }
+
+        void removeMessages(int from, int to) {
+            int count = to - from;
+            System.arraycopy(bufKeys, to, bufKeys, from, bufSize - to);
+            System.arraycopy(bufTypes, to, bufTypes, from, bufSize - to);
+            System.arraycopy(bufValues, to, bufValues, from, bufSize - to);
+            Arrays.fill(bufKeys, bufSize - count, bufSize, null);
+            Arrays.fill(bufValues, bufSize - count, bufSize, null);
+            bufSize -= count;
+        }
+
+        /**
+         * 把第c个子节点按照容量分成多个节点，分隔key插入到当前节点，当前节点可能因此超过容量
+         */
+        void splitChild(int c) {
+            Node<K, V> child = children[c];
+            Node<K, V>[] pieces;
+            Comparable[] separators;
+            if (child instanceof Leaf) {
+                pieces = ((Leaf<K, V>) child).split();
+                separators = new Comparable[pieces.length - 1];
+                for (int p = 1; p < pieces.length; p++) {
+                    separators[p - 1] = pieces[p].keys[0];
+                }
+            } else {
+                NonLeaf<K, V> nonLeaf = (NonLeaf<K, V>) child;
+                separators = new Comparable[nonLeaf.size / m];
+                pieces = nonLeaf.split(separators);
+            }
+            int count = pieces.length - 1;
+            ensureChildCapacity(size + 1 + count);
+            System.arraycopy(children, c + 1, children, c + 1 + count, size - c);
+            System.arraycopy(keys, c, keys, c + count, size - c);
+            System.arraycopy(pieces, 1, children, c + 1, count);
+            System.arraycopy(separators, 0, keys, c, count);
+            size += count;
+        }
+
+        /**
+         * 按照容量平均分成多个节点，相邻节点之间的key提到父节点，缓冲区的消息按照提上去的key分开
+         *
+         * @param separators 提到父节点的key，长度是分出来的节点个数减一
+         * @return 分出来的节点，第一个是当前节点
+         */
+        NonLeaf<K, V>[] split(Comparable[] separators) {
+            int pieces = separators.length + 1;
+            //一共size+1个子节点，每个节点的子节点个数不超过m
+            int childCount = size + 1;
+            int pieceSize = childCount / pieces;
+            int remainder = childCount % pieces;
+            NonLeaf<K, V>[] result = new NonLeaf[pieces];
+            int offset = 0;
+            int bufOffset = 0;
+            for (int p = 0; p < pieces; p++) {
+                int count = pieceSize + (p < remainder ? 1 : 0);
+                NonLeaf<K, V> nonLeaf = new NonLeaf<>(m, bufferSize);
+                nonLeaf.ensureChildCapacity(count);
+                System.arraycopy(children, offset, nonLeaf.children, 0, count);
+                System.arraycopy(keys, offset, nonLeaf.keys, 0, count - 1);
+                nonLeaf.size = count - 1;
+                int bufTo = bufSize;
+                if (p < pieces - 1) {
+                    separators[p] = keys[offset + count - 1];
+                    bufTo = Arrays.binarySearch(bufKeys, bufOffset, bufSize, separators[p]);
+                    bufTo = bufTo < 0 ? ~bufTo : bufTo;
+                }
+                nonLeaf.mergeMessages(bufKeys, bufTypes, bufValues, bufOffset, bufTo, null);
+                result[p] = nonLeaf;
+                offset += count;
+                bufOffset = bufTo;
+            }
+            NonLeaf<K, V> first = result[0];
+            children = first.children;
+            keys = first.keys;
+            size = first.size;
+            bufKeys = first.bufKeys;
+            bufTypes = first.bufTypes;
+            bufValues = first.bufValues;
+            bufSize = first.bufSize;
+            result[0] = this;
+            return result;
+        }
+
+        /**
+         * 去掉第c个子节点，它的范围并到左边的兄弟节点，是第一个的时候并到右边
+         */
+        void removeChild(int c) {
+            int keyIndex = c == 0 ? 0 : c - 1;
+            System.arraycopy(children, c + 1, children, c, size - c);
+            System.arraycopy(keys, keyIndex + 1, keys, keyIndex, size - keyIndex - 1);
+            size--;
+            children[size + 1] = null;
+            keys[size] = null;
+        }
+
+        private void ensureChildCapacity(int childCount) {
+            if (children.length < childCount) {
+                children = Arrays.copyOf(children, Math.max(childCount, children.length << 1));
+                keys = Arrays.copyOf(keys, children.length);
+            }
+        }
+
+        private void ensureBufferCapacity(int capacity) {
+            if (bufKeys.length < capacity) {
+                int length = Math.max(capacity, bufKeys.length << 1);
+                bufKeys = Arrays.copyOf(bufKeys, length);
+                bufTypes = Arrays.copyOf(bufTypes, length);
+                bufValues = Arrays.copyOf(bufValues, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package com.kerns.structure.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 线程安全的b+树，Lehman-Yao 的 B-link 树加上乐观锁
+ * 参考 Lehman, Yao. Efficient locking for concurrent operations on B-trees
+ * 参考 Leis. The ART of practical synchronization (Optimistic Lock Coupling)
+ * <p>
+ * 1.每个节点有一个highKey和指向右边兄弟节点的right指针，叶子节点的right就是叶子链表
+ * 2.节点分裂的时候先把右半部分挂到right上，再修改highKey，这时候父节点还不知道新节点，
+ * 查找的key大于等于highKey的时候沿着right往右走就能找到
+ * 3.读不加锁，读之前拿节点的版本号，读完之后校验版本号，被修改过就重新读这个节点
+ * 4.写只锁需要修改的叶子节点，分裂完先释放子节点的锁再锁父节点。加锁之后发现节点已经分裂要往右走的时候，
+ * 先锁住右边的节点再释放当前节点，交接的瞬间持有同一层相邻的两个锁，保证往右走的过程中右边的节点不会再分裂出去。
+ * 加锁的顺序总是同一层从左往右，不会死锁
+ * 5.删除不合并节点，节点从来不会从树上摘掉，所以读校验失败只需要重读当前节点，不需要从根节点重来
+ */
+public class ConcurrentBLinkTree<K extends Comparable, V> {
+
+    private volatile Node<K, V> root;
+
+    /**
+     * 新建根节点的时候使用
+     */
+    private final Object rootLock = new Object();
+
+    private final LongAdder size = new LongAdder();
+
+    private final int m;
+
+    public ConcurrentBLinkTree(int m) {
+        if (m < 3) {
+            throw new IllegalArgumentException("m must be greater than 2");
+        }
+        this.m = m;
+        this.root = new Leaf<>(m);
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    public boolean isEmpty() {
+        return size.sum() == 0;
+    }
+
+    /**
+     * 查找数据，不加锁
+     *
+     * @param k
+     * @return
+     */
+    public V get(K k) {
+        Node<K, V> node = root;
+        for (; ; ) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                //正在被修改
+                Thread.yield();
+                continue;
+            }
+            Node<K, V> next;
+            V value = null;
+            try {
+                K highKey = node.highKey;
+                if (highKey != null && k.compareTo(highKey) >= 0) {
+                    next = node.right;
+                } else if (node instanceof Inner) {
+                    next = ((Inner<K, V>) node).child(k);
+                } else {
+                    next = null;
+                    Leaf<K, V> leaf = (Leaf<K, V>) node;
+                    int i = leaf.getIndex(k);
+                    if (i >= 0) {
+                        value = (V) leaf.values[i];
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (node.lock.validate(stamp)) {
+                    throw e;
+                }
+                continue;
+            }
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            if (next == null) {
+                return value;
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * 插入数据，key已经存在的时候覆盖
+     *
+     * @param k
+     * @param v
+     * @return 原来的value
+     */
+    public V put(K k, V v) {
+        if (k == null) {
+            throw new NullPointerException();
+        }
+        List<Inner<K, V>> path = new ArrayList<>();
+        Leaf<K, V> leaf = lockLeaf(k, path);
+        int i = leaf.getIndex(k);
+        if (i >= 0) {
+            V old = (V) leaf.values[i];
+            leaf.values[i] = v;
+            leaf.lock.unlockWrite(leaf.stamp);
+            return old;
+        }
+        leaf.insert(~i, k, v);
+        size.increment();
+        if (leaf.size < m) {
+            leaf.lock.unlockWrite(leaf.stamp);
+            return null;
+        }
+        Leaf<K, V> right = leaf.split();
+        leaf.lock.unlockWrite(leaf.stamp);
+        insertSeparator(leaf, (K) right.keys[0], right, path);
+        return null;
+    }
+
+    /**
+     * 删除数据，不做合并
+     *
+     * @param k
+     * @return 被删除的value
+     */
+    public V delete(K k) {
+        Leaf<K, V> leaf = lockLeaf(k, null);
+        int i = leaf.getIndex(k);
+        V old = null;
+        if (i >= 0) {
+            old = (V) leaf.values[i];
+            leaf.deleteKey(i);
+            size.decrement();
+        }
+        leaf.lock.unlockWrite(leaf.stamp);
+        return old;
+    }
+
+    /**
+     * 按照顺序遍历[from,to]之间的数据，弱一致性，每个叶子节点读到的是一个一致的版本
+     *
+     * @param from     为null的时候从最小值开始
+     * @param to       为null的时候一直到最大值
+     * @param consumer
+     */
+    public void scan(K from, K to, BiConsumer<? super K, ? super V> consumer) {
+        Node<K, V> node = from == null ? descendLeftmost() : descend(from, 0, null);
+        Comparable[] keys = new Comparable[m];
+        Object[] values = new Object[m];
+        K last = null;
+        while (node != null) {
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            Leaf<K, V> leaf = (Leaf<K, V>) node;
+            int count;
+            Node<K, V> right;
+            try {
+                count = Math.min(leaf.size, m);
+                System.arraycopy(leaf.keys, 0, keys, 0, count);
+                System.arraycopy(leaf.values, 0, values, 0, count);
+                right = leaf.right;
+            } catch (RuntimeException e) {
+                if (leaf.lock.validate(stamp)) {
+                    throw e;
+                }
+                continue;
+            }
+            if (!leaf.lock.validate(stamp)) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                K k = (K) keys[i];
+                //分裂之后数据会移到右边的节点，已经访问过的跳过
+                if ((last != null && k.compareTo(last) <= 0) || (from != null && k.compareTo(from) < 0)) {
+                    continue;
+                }
+                if (to != null && k.compareTo(to) > 0) {
+                    return;
+                }
+                consumer.accept(k, (V) values[i]);
+                last = k;
+            }
+            node = right;
+        }
+    }
+
+    /**
+     * 查找并锁住k所在的叶子节点，锁的stamp记录在节点上
+     *
+     * @param k
+     * @param path 记录经过的非叶子节点，分裂的时候用来查找父节点
+     * @return
+     */
+    private Leaf<K, V> lockLeaf(K k, List<Inner<K, V>> path) {
+        Node<K, V> node = descend(k, 0, path);
+        long stamp = node.lock.writeLock();
+        //加锁之前节点可能已经分裂，往右找
+        while (node.highKey != null && k.compareTo(node.highKey) >= 0) {
+            Node<K, V> right = node.right;
+            long rightStamp = right.lock.writeLock();
+            node.lock.unlockWrite(stamp);
+            node = right;
+            stamp = rightStamp;
+        }
+        node.stamp = stamp;
+        return (Leaf<K, V>) node;
+    }
+
+    /**
+     * 乐观读从根节点往下查找k所在的第level层的节点
+     *
+     * @param k
+     * @param level 叶子节点是第0层
+     * @param path  不为null的时候记录经过的非叶子节点
+     * @return
+     */
+    private Node<K, V> descend(K k, int level, List<Inner<K, V>> path) {
+        Node<K, V> node = root;
+        for (; ; ) {
+            if (node.level == level) {
+                return node;
+            }
+            long stamp = node.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+            Node<K, V> next;
+            boolean moveRight;
+            try {
+                K highKey = node.highKey;
+                moveRight = highKey != null && k.compareTo(highKey) >= 0;
+                next = moveRight ? node.right : ((Inner<K, V>) node).child(k);
+            } catch (RuntimeException e) {
+                if (node.lock.validate(stamp)) {
+                    throw e;
+                }
+                continue;
+            }
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            if (!moveRight && path != null) {
+                path.add((Inner<K, V>) node);
+            }
+            node = next;
+        }
+    }
+
+    private Node<K, V> descendLeftmost() {
+        Node<K, V> node = root;
+        while (node instanceof Inner) {
+            long stamp = node.lock.tryOptimisticRead();
+            Node<K, V> next = ((Inner<K, V>) node).children[0];
+            if (stamp != 0 && node.lock.validate(stamp)) {
+                node = next;
+            } else {
+                Thread.yield();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * 分裂之后把新节点插入到父节点
+     *
+     * @param left    分裂的节点
+     * @param sepKey  新节点的最小值
+     * @param newNode 分裂出来的右节点
+     * @param path    查找时经过的非叶子节点
+     */
+    private void insertSeparator(Node<K, V> left, K sepKey, Node<K, V> newNode, List<Inner<K, V>> path) {
+        Inner<K, V> parent;
+        if (!path.isEmpty()) {
+            parent = path.remove(path.size() - 1);
+        } else {
+            parent = growRoot(left, sepKey, newNode);
+            if (parent == null) {
+                return;
+            }
+        }
+        long stamp = parent.lock.writeLock();
+        while (parent.highKey != null && sepKey.compareTo(parent.highKey) >= 0) {
+            Inner<K, V> right = (Inner<K, V>) parent.right;
+            long rightStamp = right.lock.writeLock();
+            parent.lock.unlockWrite(stamp);
+            parent = right;
+            stamp = rightStamp;
+        }
+        parent.insert(sepKey, newNode);
+        if (parent.size < m) {
+            parent.lock.unlockWrite(stamp);
+            return;
+        }
+        K upKey = (K) parent.keys[parent.size >> 1];
+        Inner<K, V> right = parent.split();
+        parent.lock.unlockWrite(stamp);
+        insertSeparator(parent, upKey, right, path);
+    }
+
+    /**
+     * 分裂的是根节点的时候新建根节点，否则返回上一层中应该插入的节点
+     *
+     * @return 新建了根节点的时候返回null
+     */
+    private Inner<K, V> growRoot(Node<K, V> left, K sepKey, Node<K, V> newNode) {
+        for (; ; ) {
+            synchronized (rootLock) {
+                Node<K, V> r = root;
+                if (r == left) {
+                    Inner<K, V> newRoot = new Inner<>(m, left.level + 1);
+                    newRoot.keys[0] = sepKey;
+                    newRoot.children[0] = left;
+                    newRoot.children[1] = newNode;
+                    newRoot.size = 1;
+                    root = newRoot;
+                    return null;
+                }
+                if (r.level > left.level) {
+                    break;
+                }
+            }
+            //同一层的根节点正在被其他线程分裂，等待新的根节点
+            Thread.yield();
+        }
+        return (Inner<K, V>) descend(sepKey, left.level + 1, null);
+    }
+
+    abstract static class Node<K extends Comparable, V> {
+        /**
+         * 读写锁，读使用乐观读
+         */
+        protected final StampedLock lock = new StampedLock();
+        /**
+         * 持有写锁时候的stamp
+         */
+        protected long stamp;
+        /**
+         * 层数，叶子节点是0
+         */
+        protected final int level;
+
+        protected final int m;
+
+        protected int size;
+
+        protected final Comparable[] keys;
+        /**
+         * 这个节点包含的key都小于highKey，null表示没有上限
+         */
+        protected K highKey;
+        /**
+         * 右边的兄弟节点
+         */
+        protected Node<K, V> right;
+
+        protected Node(int m, int level) {
+            this.m = m;
+            this.level = level;
+            this.keys = new Comparable[m];
+        }
+
+        public int getIndex(K k) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int x = (low + high) >>> 1;
+                int compare = k.compareTo(keys[x]);
+                if (compare > 0) {
+                    low = x + 1;
+                } else if (compare < 0) {
+                    high = x - 1;
+                } else {
+                    return x;
+                }
+            }
+            return ~low;
+        }
+    }
+
+    static class Inner<K extends Comparable, V> extends Node<K, V> {
+
+        private final Node<K, V>[] children;
+
+        Inner(int m, int level) {
+            super(m, level);
+            this.children = new Node[m + 1];
+        }
+
+        Node<K, V> child(K k) {
+            int index = getIndex(k);
+            return children[index < 0 ? ~index : index + 1];
+        }
+
+        void insert(K k, Node<K, V> child) {
+            int i = getIndex(k);
+            i = i < 0 ? ~i : i;
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(children, i + 1, children, i + 2, size - i);
+            keys[i] = k;
+            children[i + 1] = child;
+            size++;
+        }
+
+        /**
+         * 中间的关键字作为highKey，右半部分移到新节点
+         *
+         * @return 新的右节点
+         */
+        Inner<K, V> split() {
+            int mid = size >> 1;
+            int size2 = size - mid - 1;
+            Inner<K, V> node = new Inner<>(m, level);
+            System.arraycopy(keys, mid + 1, node.keys, 0, size2);
+            System.arraycopy(children, mid + 1, node.children, 0, size2 + 1);
+            node.size = size2;
+            node.highKey = highKey;
+            node.right = right;
+            highKey = (K) keys[mid];
+            right = node;
+            for (int i = mid; i < size; i++) {
+                keys[i] = null;
+                children[i + 1] = null;
+            }
+            size = mid;
+            return node;
+        }
+    }
+
+    static class Leaf<K extends Comparable, V> extends Node<K, V> {
+
+        private final Object[] values;
+
+        Leaf(int m) {
+            super(m, 0);
+            this.values = new Object[m];
+        }
+
+        void insert(int i, K k, V v) {
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            keys[i] = k;
+            values[i] = v;
+            size++;
+        }
+
+        void deleteKey(int i) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+            keys[size] = null;
+            values[size] = null;
+        }
+
+        /**
+         * 右半部分移到新节点，新节点的最小值作为highKey
+         *
+         * @return 新的右节点
+         */
+        Leaf<K, V> split() {
+            int mid = size >> 1;
+            int size2 = size - mid;
+            Leaf<K, V> node = new Leaf<>(m);
+            System.arraycopy(keys, mid, node.keys, 0, size2);
+            System.arraycopy(values, mid, node.values, 0, size2);
+            node.size = size2;
+            node.highKey = highKey;
+            node.right = right;
+            highKey = (K) node.keys[0];
+            right = node;
+            for (int i = mid; i < size; i++) {
+                keys[i] = null;
+                values[i] = null;
+            }
+            size = mid;
+            return node;
+        }
+    }
+}
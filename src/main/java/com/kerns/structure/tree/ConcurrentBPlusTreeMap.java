@@ -0,0 +1,164 @@
+package com.kerns.structure.tree;
+
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+/**
+ * 基于{@link CopyOnWriteBPlugsTree}的ConcurrentNavigableMap，可以替换ConcurrentSkipListMap
+ * <p>
+ * 读不加锁；putIfAbsent/replace/remove(key,value)用树上的一次CAS完成，是原子的。
+ * 迭代器和导航方法在创建的时候拿一个快照，看到的是那个时刻完整的数据，不会抛出ConcurrentModificationException。
+ * 写的时候从叶子节点复制到根节点，适合读多写少的场景。
+ * key按照自然顺序排序，key和value都不能为null。
+ */
+public class ConcurrentBPlusTreeMap<K extends Comparable, V> extends AbstractBPlusTreeMap<K, V>
+        implements ConcurrentNavigableMap<K, V> {
+
+    private final CopyOnWriteBPlugsTree<K, V> tree;
+
+    public ConcurrentBPlusTreeMap(int m) {
+        this(new CopyOnWriteBPlugsTree<>(m), null, false, null, false, false);
+    }
+
+    private ConcurrentBPlusTreeMap(CopyOnWriteBPlugsTree<K, V> tree, K lo, boolean loInclusive, K hi,
+                                   boolean hiInclusive, boolean descending) {
+        super(lo, loInclusive, hi, hiInclusive, descending);
+        this.tree = tree;
+    }
+
+    /**
+     * 整个map是O(1)，视图需要遍历
+     *
+     * @return
+     */
+    @Override
+    public int size() {
+        if (lo == null && hi == null) {
+            return tree.size();
+        }
+        return super.size();
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        checkInRange(key);
+        return tree.update(key, (k, old) -> old != null ? old : value);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        K k = (K) Objects.requireNonNull(key);
+        if (value == null || !inRange(k)) {
+            return false;
+        }
+        return value.equals(tree.update(k, (x, old) -> value.equals(old) ? null : old));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        if (!inRange(key)) {
+            return false;
+        }
+        return oldValue.equals(tree.update(key, (k, old) -> oldValue.equals(old) ? newValue : old));
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        if (!inRange(key)) {
+            return null;
+        }
+        return tree.update(key, (k, old) -> old == null ? null : value);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return (ConcurrentBPlusTreeMap<K, V>) super.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> headMap(K toKey, boolean inclusive) {
+        return (ConcurrentBPlusTreeMap<K, V>) super.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return (ConcurrentBPlusTreeMap<K, V>) super.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public ConcurrentBPlusTreeMap<K, V> descendingMap() {
+        return (ConcurrentBPlusTreeMap<K, V>) super.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    V doGet(K k) {
+        return tree.get(k);
+    }
+
+    @Override
+    V doPut(K k, V v) {
+        return tree.put(k, v);
+    }
+
+    @Override
+    V doRemove(K k) {
+        return tree.delete(k);
+    }
+
+    @Override
+    Cursor<K, V> cursor(K low, boolean lowInclusive, K high, boolean highInclusive, boolean descending) {
+        CopyOnWriteBPlugsTree.Snapshot<K, V> snapshot = tree.snapshot();
+        CopyOnWriteBPlugsTree.Cursor<K, V> cursor = descending
+                ? snapshot.descendingScan(low, lowInclusive, high, highInclusive)
+                : snapshot.scan(low, lowInclusive, high, highInclusive);
+        return new Cursor<K, V>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public K next() {
+                return cursor.next();
+            }
+
+            @Override
+            public V getValue() {
+                return cursor.getValue();
+            }
+        };
+    }
+
+    @Override
+    AbstractBPlusTreeMap<K, V> newView(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+        return new ConcurrentBPlusTreeMap<>(tree, lo, loInclusive, hi, hiInclusive, descending);
+    }
+}
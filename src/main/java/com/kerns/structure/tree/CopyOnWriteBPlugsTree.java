@@ -0,0 +1,566 @@
+package com.kerns.structure.tree;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * 写时复制的b+树，参考H2 MVStore 的MVMap
+ * 节点创建之后就不再修改，修改的时候从叶子节点一直复制到根节点，然后用一次CAS发布新的根节点。
+ * 所以节点上没有父节点指针和兄弟节点指针，不然一个节点没法同时属于多个版本。
+ * <p>
+ * snapshot() 直接拿当前的根节点，读快照不需要加锁，没有快照引用的旧版本节点由GC回收。
+ * 多个线程同时写的时候CAS失败的一方基于新的根节点重做。
+ * 删除的时候只去掉空的节点，不做合并，和MVStore一样。
+ */
+public class CopyOnWriteBPlugsTree<K extends Comparable, V> {
+
+    private final AtomicReference<Page<K, V>> root;
+
+    private final int m;
+
+    public CopyOnWriteBPlugsTree(int m) {
+        if (m < 3) {
+            throw new IllegalArgumentException("m must be greater than 2");
+        }
+        this.m = m;
+        this.root = new AtomicReference<>(Page.emptyLeaf());
+    }
+
+    public int size() {
+        return (int) root.get().totalCount;
+    }
+
+    public boolean isEmpty() {
+        return root.get().totalCount == 0;
+    }
+
+    public V get(K k) {
+        return get(root.get(), k);
+    }
+
+    /**
+     * 插入数据，key已经存在的时候覆盖
+     *
+     * @param k
+     * @param v
+     * @return 原来的value
+     */
+    public V put(K k, V v) {
+        if (k == null) {
+            throw new NullPointerException();
+        }
+        for (; ; ) {
+            Page<K, V> current = root.get();
+            V old = get(current, k);
+            if (root.compareAndSet(current, putRoot(current, k, v))) {
+                return old;
+            }
+        }
+    }
+
+    /**
+     * 删除数据
+     *
+     * @param k
+     * @return 被删除的value
+     */
+    public V delete(K k) {
+        for (; ; ) {
+            Page<K, V> current = root.get();
+            Page<K, V> leaf = leafFor(current, k);
+            int i = leaf.getIndex(k);
+            if (i < 0) {
+                return null;
+            }
+            V old = (V) leaf.values[i];
+            if (root.compareAndSet(current, removeRoot(current, k))) {
+                return old;
+            }
+        }
+    }
+
+    /**
+     * 原子的读改写，用当前的value(不存在的时候是null)计算新的value，新的value为null的时候删除
+     * 函数返回原来的value对象的时候不修改树；CAS失败的时候函数会基于新的版本重新计算，所以可能被调用多次
+     *
+     * @param k
+     * @param function
+     * @return 修改之前的value
+     */
+    public V update(K k, BiFunction<? super K, ? super V, ? extends V> function) {
+        if (k == null) {
+            throw new NullPointerException();
+        }
+        for (; ; ) {
+            Page<K, V> current = root.get();
+            V old = get(current, k);
+            V v = function.apply(k, old);
+            if (v == old) {
+                return old;
+            }
+            Page<K, V> page = v != null ? putRoot(current, k, v) : removeRoot(current, k);
+            if (root.compareAndSet(current, page)) {
+                return old;
+            }
+        }
+    }
+
+    /**
+     * 当前版本的只读快照，O(1)
+     *
+     * @return
+     */
+    public Snapshot<K, V> snapshot() {
+        return new Snapshot<>(root.get());
+    }
+
+    /**
+     * 插入之后的新根节点
+     */
+    private Page<K, V> putRoot(Page<K, V> current, K k, V v) {
+        Page<K, V> page = put(current, k, v);
+        if (page.isOverflowed(m)) {
+            page = newRoot(page);
+        }
+        return page;
+    }
+
+    /**
+     * 删除之后的新根节点，k必须存在
+     */
+    private Page<K, V> removeRoot(Page<K, V> current, K k) {
+        Page<K, V> page = remove(current, k);
+        //根节点只剩一个子节点，树的高度减一
+        while (page.children != null && page.children.length == 1) {
+            page = page.children[0];
+        }
+        if (page.children != null && page.children.length == 0) {
+            page = Page.emptyLeaf();
+        }
+        return page;
+    }
+
+    private Page<K, V> put(Page<K, V> page, K k, V v) {
+        int i = page.getIndex(k);
+        if (page.isLeaf()) {
+            if (i >= 0) {
+                return page.copyWithValue(i, v);
+            }
+            return page.copyInsertEntry(~i, k, v);
+        }
+        i = i < 0 ? ~i : i + 1;
+        Page<K, V> child = page.children[i];
+        long before = child.totalCount;
+        Page<K, V> newChild = put(child, k, v);
+        long delta = newChild.totalCount - before;
+        if (!newChild.isOverflowed(m)) {
+            return page.copyWithChild(i, newChild, delta);
+        }
+        int at = newChild.keys.length >> 1;
+        K sepKey = (K) newChild.keys[at];
+        Page<K, V> left = newChild.splitLeft(at);
+        Page<K, V> right = newChild.splitRight(at);
+        return page.copyWithSplitChild(i, left, sepKey, right, delta);
+    }
+
+    private Page<K, V> newRoot(Page<K, V> page) {
+        int at = page.keys.length >> 1;
+        K sepKey = (K) page.keys[at];
+        Page<K, V> left = page.splitLeft(at);
+        Page<K, V> right = page.splitRight(at);
+        return Page.inner(new Comparable[]{sepKey}, new Page[]{left, right}, page.totalCount);
+    }
+
+    private Page<K, V> remove(Page<K, V> page, K k) {
+        int i = page.getIndex(k);
+        if (page.isLeaf()) {
+            return page.copyRemoveEntry(i);
+        }
+        i = i < 0 ? ~i : i + 1;
+        Page<K, V> newChild = remove(page.children[i], k);
+        if (newChild.totalCount == 0) {
+            //子节点已经空了，直接去掉
+            return page.copyRemoveChild(i);
+        }
+        return page.copyWithChild(i, newChild, -1);
+    }
+
+    static <K extends Comparable, V> V get(Page<K, V> page, K k) {
+        Page<K, V> leaf = leafFor(page, k);
+        int i = leaf.getIndex(k);
+        return i < 0 ? null : (V) leaf.values[i];
+    }
+
+    static <K extends Comparable, V> Page<K, V> leafFor(Page<K, V> page, K k) {
+        while (!page.isLeaf()) {
+            int i = page.getIndex(k);
+            page = page.children[i < 0 ? ~i : i + 1];
+        }
+        return page;
+    }
+
+    /**
+     * 某一个版本的只读视图
+     */
+    public static class Snapshot<K extends Comparable, V> {
+
+        private final Page<K, V> root;
+
+        Snapshot(Page<K, V> root) {
+            this.root = root;
+        }
+
+        public V get(K k) {
+            return CopyOnWriteBPlugsTree.get(root, k);
+        }
+
+        public int size() {
+            return (int) root.totalCount;
+        }
+
+        public boolean isEmpty() {
+            return root.totalCount == 0;
+        }
+
+        /**
+         * 按照从小到大的顺序遍历[from,to]之间的数据
+         *
+         * @param from 为null的时候从最小值开始
+         * @param to   为null的时候一直到最大值
+         * @return
+         */
+        public Cursor<K, V> scan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+            return new Cursor<>(root, from, fromInclusive, to, toInclusive, false);
+        }
+
+        /**
+         * 按照从大到小的顺序遍历[from,to]之间的数据
+         *
+         * @param from 下限，为null的时候一直到最小值
+         * @param to   上限，为null的时候从最大值开始
+         * @return
+         */
+        public Cursor<K, V> descendingScan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+            return new Cursor<>(root, to, toInclusive, from, fromInclusive, true);
+        }
+    }
+
+    /**
+     * 快照上的游标，没有兄弟节点指针，用一个栈记录从根节点到叶子节点的路径
+     */
+    public static class Cursor<K extends Comparable, V> implements Iterator<K> {
+
+        private Page<K, V>[] pages;
+
+        private int[] indexes;
+
+        private int depth;
+
+        private final K end;
+
+        private final boolean endInclusive;
+        /**
+         * 是否从大到小遍历
+         */
+        private final boolean descending;
+
+        private K key;
+
+        private V value;
+
+        /**
+         * @param start          开始的边界，为null的时候从第一条(倒序的时候是最后一条)数据开始
+         * @param startInclusive
+         * @param end            结束的边界，为null说明没有边界
+         * @param endInclusive
+         * @param descending
+         */
+        Cursor(Page<K, V> root, K start, boolean startInclusive, K end, boolean endInclusive, boolean descending) {
+            this.end = end;
+            this.endInclusive = endInclusive;
+            this.descending = descending;
+            int height = 1;
+            for (Page<K, V> p = root; !p.isLeaf(); p = p.children[0]) {
+                height++;
+            }
+            this.pages = new Page[height];
+            this.indexes = new int[height];
+            Page<K, V> page = root;
+            for (; ; ) {
+                int i = start == null ? 0 : page.getIndex(start);
+                pages[depth] = page;
+                if (page.isLeaf()) {
+                    if (start == null) {
+                        i = descending ? page.size() - 1 : 0;
+                    } else if (i < 0) {
+                        i = descending ? ~i - 1 : ~i;
+                    } else if (!startInclusive) {
+                        i += descending ? -1 : 1;
+                    }
+                    indexes[depth] = i;
+                    break;
+                }
+                if (start == null) {
+                    i = descending ? page.size() - 1 : 0;
+                } else {
+                    i = i < 0 ? ~i : i + 1;
+                }
+                indexes[depth++] = i;
+                page = page.children[i];
+            }
+            normalize();
+        }
+
+        /**
+         * 当前叶子节点遍历完之后，回到上一层找下一个子节点
+         */
+        private void normalize() {
+            while (depth >= 0 && (descending ? indexes[depth] < 0 : indexes[depth] >= pages[depth].size())) {
+                depth--;
+                if (depth >= 0) {
+                    indexes[depth] += descending ? -1 : 1;
+                }
+            }
+            if (depth < 0) {
+                return;
+            }
+            while (!pages[depth].isLeaf()) {
+                Page<K, V> child = pages[depth].children[indexes[depth]];
+                depth++;
+                pages[depth] = child;
+                indexes[depth] = descending ? child.size() - 1 : 0;
+                if (child.size() == 0) {
+                    normalize();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (depth < 0) {
+                return false;
+            }
+            if (end == null) {
+                return true;
+            }
+            int compare = pages[depth].keys[indexes[depth]].compareTo(end);
+            if (descending) {
+                compare = -compare;
+            }
+            if (compare < 0 || (compare == 0 && endInclusive)) {
+                return true;
+            }
+            depth = -1;
+            return false;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Page<K, V> leaf = pages[depth];
+            int i = indexes[depth];
+            indexes[depth] += descending ? -1 : 1;
+            key = (K) leaf.keys[i];
+            value = (V) leaf.values[i];
+            normalize();
+            return key;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * 不可变的节点，叶子节点的children为null，非叶子节点的values为null
+     */
+    static final class Page<K extends Comparable, V> {
+
+        private static final Page EMPTY_LEAF = new Page(new Comparable[0], new Object[0], null, 0);
+
+        final Comparable[] keys;
+
+        final Object[] values;
+
+        final Page<K, V>[] children;
+        /**
+         * 子树包含的数据个数
+         */
+        final long totalCount;
+
+        private Page(Comparable[] keys, Object[] values, Page<K, V>[] children, long totalCount) {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+            this.totalCount = totalCount;
+        }
+
+        static <K extends Comparable, V> Page<K, V> emptyLeaf() {
+            return EMPTY_LEAF;
+        }
+
+        static <K extends Comparable, V> Page<K, V> leaf(Comparable[] keys, Object[] values) {
+            return new Page<>(keys, values, null, keys.length);
+        }
+
+        static <K extends Comparable, V> Page<K, V> inner(Comparable[] keys, Page<K, V>[] children, long totalCount) {
+            return new Page<>(keys, null, children, totalCount);
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        /**
+         * 叶子节点是数据的个数，非叶子节点是子节点的个数
+         */
+        int size() {
+            return isLeaf() ? keys.length : children.length;
+        }
+
+        boolean isOverflowed(int m) {
+            return isLeaf() ? keys.length >= m : children.length > m;
+        }
+
+        int getIndex(K k) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int x = (low + high) >>> 1;
+                int compare = k.compareTo(keys[x]);
+                if (compare > 0) {
+                    low = x + 1;
+                } else if (compare < 0) {
+                    high = x - 1;
+                } else {
+                    return x;
+                }
+            }
+            return ~low;
+        }
+
+        Page<K, V> copyWithValue(int i, V v) {
+            Object[] newValues = values.clone();
+            newValues[i] = v;
+            return leaf(keys, newValues);
+        }
+
+        Page<K, V> copyInsertEntry(int i, K k, V v) {
+            int size = keys.length;
+            Comparable[] newKeys = new Comparable[size + 1];
+            Object[] newValues = new Object[size + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(values, 0, newValues, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, size - i);
+            System.arraycopy(values, i, newValues, i + 1, size - i);
+            newKeys[i] = k;
+            newValues[i] = v;
+            return leaf(newKeys, newValues);
+        }
+
+        Page<K, V> copyRemoveEntry(int i) {
+            int size = keys.length - 1;
+            Comparable[] newKeys = new Comparable[size];
+            Object[] newValues = new Object[size];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(values, 0, newValues, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, size - i);
+            System.arraycopy(values, i + 1, newValues, i, size - i);
+            return leaf(newKeys, newValues);
+        }
+
+        Page<K, V> copyWithChild(int i, Page<K, V> child, long delta) {
+            Page<K, V>[] newChildren = children.clone();
+            newChildren[i] = child;
+            return inner(keys, newChildren, totalCount + delta);
+        }
+
+        /**
+         * 第i个子节点分裂成left和right
+         */
+        Page<K, V> copyWithSplitChild(int i, Page<K, V> left, K sepKey, Page<K, V> right, long delta) {
+            int size = keys.length;
+            Comparable[] newKeys = new Comparable[size + 1];
+            Page<K, V>[] newChildren = new Page[size + 2];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, size - i);
+            newKeys[i] = sepKey;
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(children, i + 1, newChildren, i + 2, size - i);
+            newChildren[i] = left;
+            newChildren[i + 1] = right;
+            return inner(newKeys, newChildren, totalCount + delta);
+        }
+
+        Page<K, V> copyRemoveChild(int i) {
+            int size = children.length - 1;
+            Page<K, V>[] newChildren = new Page[size];
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(children, i + 1, newChildren, i, size - i);
+            //被去掉的子节点只剩下刚删除的一条数据
+            long count = totalCount - 1;
+            if (size == 0) {
+                return inner(new Comparable[0], newChildren, 0);
+            }
+            //去掉子节点左边的关键字，第一个子节点去掉右边的关键字
+            int keyIndex = i == 0 ? 0 : i - 1;
+            Comparable[] newKeys = new Comparable[keys.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, keyIndex);
+            System.arraycopy(keys, keyIndex + 1, newKeys, keyIndex, keys.length - keyIndex - 1);
+            return inner(newKeys, newChildren, count);
+        }
+
+        /**
+         * 叶子节点：[0,at) 非叶子节点：关键字[0,at)，子节点[0,at]
+         */
+        Page<K, V> splitLeft(int at) {
+            Comparable[] newKeys = new Comparable[at];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            if (isLeaf()) {
+                Object[] newValues = new Object[at];
+                System.arraycopy(values, 0, newValues, 0, at);
+                return leaf(newKeys, newValues);
+            }
+            Page<K, V>[] newChildren = new Page[at + 1];
+            System.arraycopy(children, 0, newChildren, 0, at + 1);
+            return inner(newKeys, newChildren, sum(newChildren));
+        }
+
+        /**
+         * 叶子节点：[at,size) 非叶子节点：关键字(at,size)，关键字at上升到父节点，子节点[at+1,size]
+         */
+        Page<K, V> splitRight(int at) {
+            if (isLeaf()) {
+                int size = keys.length - at;
+                Comparable[] newKeys = new Comparable[size];
+                Object[] newValues = new Object[size];
+                System.arraycopy(keys, at, newKeys, 0, size);
+                System.arraycopy(values, at, newValues, 0, size);
+                return leaf(newKeys, newValues);
+            }
+            int size = keys.length - at - 1;
+            Comparable[] newKeys = new Comparable[size];
+            Page<K, V>[] newChildren = new Page[size + 1];
+            System.arraycopy(keys, at + 1, newKeys, 0, size);
+            System.arraycopy(children, at + 1, newChildren, 0, size + 1);
+            return inner(newKeys, newChildren, sum(newChildren));
+        }
+
+        private static long sum(Page[] pages) {
+            long count = 0;
+            for (Page page : pages) {
+                count += page.totalCount;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.kerns.structure.tree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 内存中的{@link BPlugsTree2}加上预写日志，修改先写日志再返回，不需要每次修改都fsync
+ * <p>
+ * 目录下有两个文件：
+ * tree.img 检查点，按照key排好序的全部数据，打开的时候用bulkLoad构建
+ * tree.wal 检查点之后的insert/delete，打开的时候在检查点上重放
+ * <p>
+ * 日志里的操作是覆盖写和删除，重复重放同一段日志结果不变，所以检查点写完之后、日志清空之前宕机也可以正确恢复
+ * <p>
+ * 修改在追加日志之后、等待落盘之前就改到内存的树里，别的线程的get可能读到还没有落盘的数据，宕机之后这些修改会丢失。
+ * 日志写失败的时候insert/delete抛出UncheckedIOException，但是这次修改已经在内存里可见，
+ * 之后的修改在追加日志的时候就失败，不会再改到树，这个时候需要关闭之后重新打开，以日志里落盘的数据为准
+ */
+public class DurableBPlugsTree<K extends Comparable, V> implements Closeable {
+
+    private static final byte OP_INSERT = 1;
+
+    private static final byte OP_DELETE = 2;
+
+    private static final int IMAGE_MAGIC = 0x42504932;
+
+    private static final int IMAGE_HEADER = 16;
+
+    private final Path dir;
+
+    private final int m;
+
+    private final FixedCodec<K> keyCodec;
+
+    private final FixedCodec<V> valueCodec;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private BPlugsTree2<K, V> tree;
+
+    private WriteAheadLog log;
+
+    private DurableBPlugsTree(Path dir, int m, FixedCodec<K> keyCodec, FixedCodec<V> valueCodec) {
+        this.dir = dir;
+        this.m = m;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+    }
+
+    /**
+     * 打开目录下的树，读取检查点并重放日志
+     *
+     * @param dir
+     * @param m          阶数
+     * @param keyCodec
+     * @param valueCodec
+     * @param maxBatch   一次组提交最多的记录数
+     * @param maxLatency 一次组提交最多等待的时间
+     * @param unit
+     * @return
+     * @throws IOException
+     */
+    public static <K extends Comparable, V> DurableBPlugsTree<K, V> open(Path dir, int m, FixedCodec<K> keyCodec,
+                                                                       FixedCodec<V> valueCodec, int maxBatch,
+                                                                       long maxLatency, TimeUnit unit) throws IOException {
+        Files.createDirectories(dir);
+        DurableBPlugsTree<K, V> durable = new DurableBPlugsTree<>(dir, m, keyCodec, valueCodec);
+        durable.loadImage();
+        durable.log = WriteAheadLog.open(dir.resolve("tree.wal"), maxBatch, maxLatency, unit, durable::redo);
+        return durable;
+    }
+
+    public V get(K k) {
+        lock.readLock().lock();
+        try {
+            return tree.get(k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tree.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 插入数据，日志落盘之后返回
+     *
+     * @param k
+     * @param v 不能为null
+     * @throws java.io.UncheckedIOException 日志写失败的时候
+     */
+    public void insert(K k, V v) {
+        if (k == null || v == null) {
+            throw new NullPointerException();
+        }
+        ByteBuffer record = ByteBuffer.allocate(1 + keyCodec.width() + valueCodec.width());
+        record.put(0, OP_INSERT);
+        keyCodec.write(record, 1, k);
+        valueCodec.write(record, 1 + keyCodec.width(), v);
+        long seq;
+        lock.writeLock().lock();
+        try {
+            //在锁里追加日志，保证日志的顺序和修改的顺序一致
+            seq = log.append(record);
+            apply(k, v);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.sync(seq);
+    }
+
+    /**
+     * 删除数据，日志落盘之后返回
+     *
+     * @param k
+     * @return 被删除的value
+     * @throws java.io.UncheckedIOException 日志写失败的时候
+     */
+    public V delete(K k) {
+        ByteBuffer record = ByteBuffer.allocate(1 + keyCodec.width());
+        record.put(0, OP_DELETE);
+        keyCodec.write(record, 1, k);
+        long seq;
+        V old;
+        lock.writeLock().lock();
+        try {
+            old = tree.get(k);
+            if (old == null) {
+                return null;
+            }
+            seq = log.append(record);
+            apply(k, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.sync(seq);
+        return old;
+    }
+
+    /**
+     * 把当前的数据写成新的检查点，然后清空日志
+     * 检查点先写到临时文件，fsync之后再重命名，宕机的时候旧的检查点还是完整的
+     *
+     * @throws IOException
+     */
+    public void checkpoint() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.sync();
+            Path tmp = dir.resolve("tree.img.tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                int entryWidth = keyCodec.width() + valueCodec.width();
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(IMAGE_HEADER, 1024 * entryWidth));
+                CRC32 crc = new CRC32();
+                buffer.putInt(IMAGE_MAGIC).putInt(tree.size()).putInt(entryWidth).putInt(0);
+                BPlugsTree2.Cursor<K, V> cursor = tree.scan(null, true, null, true);
+                while (cursor.hasNext()) {
+                    if (buffer.remaining() < entryWidth) {
+                        writeFully(channel, buffer, crc);
+                    }
+                    K k = cursor.next();
+                    keyCodec.write(buffer, buffer.position(), k);
+                    valueCodec.write(buffer, buffer.position() + keyCodec.width(), cursor.getValue());
+                    buffer.position(buffer.position() + entryWidth);
+                }
+                writeFully(channel, buffer, crc);
+                //crc放在文件头的最后4个字节，不包含文件头
+                channel.write(ByteBuffer.allocate(4).putInt(0, (int) crc.getValue()), IMAGE_HEADER - 4);
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve("tree.img"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            //重命名记录在目录里，目录也要fsync，否则宕机之后可能还是旧的检查点，日志却已经清空了
+            try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+            log.truncate();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private void apply(K k, V v) {
+        if (v == null) {
+            tree.delete(k);
+        } else {
+            tree.insert(k, v);
+        }
+    }
+
+    private void redo(ByteBuffer record) {
+        K k = keyCodec.read(record, 1);
+        if (record.get(0) == OP_INSERT) {
+            apply(k, valueCodec.read(record, 1 + keyCodec.width()));
+        } else {
+            apply(k, null);
+        }
+    }
+
+    private void loadImage() throws IOException {
+        Path image = dir.resolve("tree.img");
+        if (!Files.exists(image)) {
+            tree = new BPlugsTree2<>(m);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int entryWidth = keyCodec.width() + valueCodec.width();
+            if (data.limit() < IMAGE_HEADER || data.getInt(0) != IMAGE_MAGIC || data.getInt(8) != entryWidth
+                    || data.limit() != IMAGE_HEADER + (long) data.getInt(4) * entryWidth) {
+                throw new IOException("corrupted checkpoint image: " + image);
+            }
+            ByteBuffer body = data.duplicate();
+            body.position(IMAGE_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != data.getInt(12)) {
+                throw new IOException("checkpoint image checksum mismatch: " + image);
+            }
+            int size = data.getInt(4);
+            tree = BPlugsTree2.bulkLoad(m, new Iterator<Map.Entry<K, V>>() {
+                int i;
+
+                @Override
+                public boolean hasNext() {
+                    return i < size;
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int offset = IMAGE_HEADER + i++ * entryWidth;
+                    return new AbstractMap.SimpleImmutableEntry<>(keyCodec.read(data, offset),
+                            valueCodec.read(data, offset + keyCodec.width()));
+                }
+            }, 1);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        if (channel.position() == 0) {
+            //文件头不参与校验
+            ByteBuffer body = buffer.duplicate();
+            body.position(IMAGE_HEADER);
+            crc.update(body);
+        } else {
+            crc.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,142 @@
+package com.kerns.structure.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 定长的序列化方式，持久化的树按照定长把key和value放到页里面
+ * 读写都使用绝对位置，不改变ByteBuffer的position，多个节点可以共用同一个映射的buffer
+ *
+ * @param <T>
+ */
+public interface FixedCodec<T> {
+
+    /**
+     * 序列化之后占用的字节数
+     *
+     * @return
+     */
+    int width();
+
+    void write(ByteBuffer buffer, int offset, T value);
+
+    T read(ByteBuffer buffer, int offset);
+
+    /**
+     * 和buffer中offset位置已经序列化的值比较，结果和k.compareTo(read(buffer, offset))一致
+     * 默认先反序列化再比较，定长的数字直接读出原始类型比较，不创建对象
+     *
+     * @param k
+     * @param buffer
+     * @param offset
+     * @return
+     */
+    default int compare(T k, ByteBuffer buffer, int offset) {
+        return ((Comparable) k).compareTo(read(buffer, offset));
+    }
+
+    FixedCodec<Long> LONG = new FixedCodec<Long>() {
+        @Override
+        public int width() {
+            return 8;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Long value) {
+            buffer.putLong(offset, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        public int compare(Long k, ByteBuffer buffer, int offset) {
+            return Long.compare(k, buffer.getLong(offset));
+        }
+    };
+
+    FixedCodec<Integer> INT = new FixedCodec<Integer>() {
+        @Override
+        public int width() {
+            return 4;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Integer value) {
+            buffer.putInt(offset, value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        public int compare(Integer k, ByteBuffer buffer, int offset) {
+            return Integer.compare(k, buffer.getInt(offset));
+        }
+    };
+
+    FixedCodec<Double> DOUBLE = new FixedCodec<Double>() {
+        @Override
+        public int width() {
+            return 8;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Double value) {
+            buffer.putDouble(offset, value);
+        }
+
+        @Override
+        public Double read(ByteBuffer buffer, int offset) {
+            return buffer.getDouble(offset);
+        }
+
+        @Override
+        public int compare(Double k, ByteBuffer buffer, int offset) {
+            return Double.compare(k, buffer.getDouble(offset));
+        }
+    };
+
+    /**
+     * utf8字符串，前两个字节是长度，后面补齐到maxBytes
+     *
+     * @param maxBytes 字符串编码之后最多的字节数
+     * @return
+     */
+    static FixedCodec<String> string(int maxBytes) {
+        if (maxBytes <= 0 || maxBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes must be in (0, " + Short.MAX_VALUE + "]");
+        }
+        return new FixedCodec<String>() {
+            @Override
+            public int width() {
+                return maxBytes + 2;
+            }
+
+            @Override
+            public void write(ByteBuffer buffer, int offset, String value) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > maxBytes) {
+                    throw new IllegalArgumentException("string longer than " + maxBytes + " bytes: " + value);
+                }
+                buffer.putShort(offset, (short) bytes.length);
+                for (int i = 0; i < bytes.length; i++) {
+                    buffer.put(offset + 2 + i, bytes[i]);
+                }
+            }
+
+            @Override
+            public String read(ByteBuffer buffer, int offset) {
+                byte[] bytes = new byte[buffer.getShort(offset)];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(offset + 2 + i);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
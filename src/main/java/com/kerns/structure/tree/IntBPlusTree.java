@@ -0,0 +1,513 @@
+package com.kerns.structure.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * key为int的b+树，结构和{@link BPlugsTree2}一致
+ * 关键字直接存放在int[]里面，查找的时候直接用 < 比较，不需要装箱，也没有compareTo的虚方法调用
+ * <p>
+ * 由{@link LongBPlusTree}生成，修改的时候两个类需要同步
+ */
+public class IntBPlusTree<V> {
+
+    private Node<V> root;
+    /**
+     * 包含的数据
+     */
+    private int size;
+
+    private int m;
+
+    public IntBPlusTree(int m) {
+        if (m < 3) {
+            throw new IllegalArgumentException("m must be greater than 2");
+        }
+        this.root = new Leaf<>(m);
+        this.m = m;
+    }
+
+    /**
+     * 获取树包含的数据
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 插入数据，key已经存在的时候覆盖原来的value
+     *
+     * @param k
+     * @param v
+     */
+    public void insert(int k, V v) {
+        Leaf<V> leaf = findLeaf(k);
+        int i = leaf.getIndex(k);
+        if (i >= 0) {
+            leaf.values[i] = v;
+            return;
+        }
+        size++;
+        Node<V> newNode = leaf.insert(~i, k, v);
+        if (newNode != null) {
+            root = newNode;
+        }
+    }
+
+    /**
+     * 查找数据
+     *
+     * @param k
+     * @return
+     */
+    public V get(int k) {
+        Leaf<V> leaf = findLeaf(k);
+        int i = leaf.getIndex(k);
+        return i < 0 ? null : (V) leaf.values[i];
+    }
+
+    /**
+     * 按照顺序访问[from,to]之间的数据
+     *
+     * @param from    包含
+     * @param to      包含
+     * @param visitor
+     */
+    public void range(int from, int to, EntryVisitor<V> visitor) {
+        if (from > to) {
+            return;
+        }
+        Leaf<V> leaf = findLeaf(from);
+        int i = leaf.getIndex(from);
+        i = i < 0 ? ~i : i;
+        while (leaf != null) {
+            for (; i < leaf.size; i++) {
+                int k = leaf.keys[i];
+                if (k > to) {
+                    return;
+                }
+                visitor.visit(k, (V) leaf.values[i]);
+            }
+            leaf = leaf.next;
+            i = 0;
+        }
+    }
+
+    /**
+     * 删除数据
+     *
+     * @param k
+     * @return 被删除的value
+     */
+    public V delete(int k) {
+        List<NonLeaf<V>> path = new ArrayList<NonLeaf<V>>();
+        List<Integer> indexInParentPath = new ArrayList<Integer>();
+        Node<V> tempNode = root;
+        while (tempNode instanceof NonLeaf) {
+            NonLeaf<V> nonLeaf = (NonLeaf<V>) tempNode;
+            path.add(nonLeaf);
+            int i = nonLeaf.getIndex(k);
+            i = i < 0 ? ~i : i + 1;
+            indexInParentPath.add(i);
+            tempNode = nonLeaf.children[i];
+        }
+        Leaf<V> leaf = (Leaf<V>) tempNode;
+        int index = leaf.getIndex(k);
+        if (index < 0) {
+            return null;
+        }
+        V old = (V) leaf.values[index];
+        leaf.deleteKey(index);
+        size--;
+        if (path.isEmpty() || !leaf.isUnderflowed()) {
+            return old;
+        }
+        int level = path.size() - 1;
+        NonLeaf<V> parent = path.get(level);
+        int indexInParent = indexInParentPath.get(level);
+        boolean merged;
+        if (indexInParent == 0) {
+            merged = handleLeafNodeUnderflow(1, leaf, (Leaf<V>) parent.children[1], parent, 0);
+        } else {
+            merged = handleLeafNodeUnderflow(0, (Leaf<V>) parent.children[indexInParent - 1], leaf,
+                    parent, indexInParent - 1);
+        }
+        while (merged) {
+            NonLeaf<V> tempIndexNode = path.get(level);
+            if (level == 0) {
+                if (tempIndexNode.size == 0) {
+                    root = tempIndexNode.children[0];
+                    root.parent = null;
+                }
+                break;
+            }
+            if (!tempIndexNode.isUnderflowed()) {
+                break;
+            }
+            parent = path.get(level - 1);
+            indexInParent = indexInParentPath.get(level - 1);
+            if (indexInParent == 0) {
+                merged = handleNonLeafUnderflow(1, tempIndexNode, (NonLeaf<V>) parent.children[1], parent, 0);
+            } else {
+                merged = handleNonLeafUnderflow(0, (NonLeaf<V>) parent.children[indexInParent - 1],
+                        tempIndexNode, parent, indexInParent - 1);
+            }
+            level--;
+        }
+        return old;
+    }
+
+    private Leaf<V> findLeaf(int k) {
+        Node<V> node = root;
+        while (node instanceof NonLeaf) {
+            int index = node.getIndex(k);
+            index = index < 0 ? ~index : index + 1;
+            node = ((NonLeaf<V>) node).children[index];
+        }
+        return (Leaf<V>) node;
+    }
+
+    /**
+     * 叶子节点的借取或者合并
+     *
+     * @see BPlugsTree2
+     */
+    private boolean handleLeafNodeUnderflow(int sibling, Leaf<V> leftLeaf, Leaf<V> rightLeaf,
+                                            NonLeaf<V> parent, int leftIndexInParent) {
+        if (sibling == 1 && rightLeaf.canLend()) {
+            leftLeaf.borrowFromRight(rightLeaf, (rightLeaf.size - leftLeaf.size) >> 1);
+            parent.keys[leftIndexInParent] = rightLeaf.keys[0];
+            return false;
+        }
+        if (sibling == 0 && leftLeaf.canLend()) {
+            rightLeaf.borrowFromLeft(leftLeaf, (leftLeaf.size - rightLeaf.size) >> 1);
+            parent.keys[leftIndexInParent] = rightLeaf.keys[0];
+            return false;
+        }
+        leftLeaf.appendRight(rightLeaf);
+        parent.deleteByIndex(leftIndexInParent);
+        return true;
+    }
+
+    /**
+     * 非叶子节点的借取或者合并
+     *
+     * @see BPlugsTree2
+     */
+    private boolean handleNonLeafUnderflow(int sibling, NonLeaf<V> left, NonLeaf<V> right,
+                                           NonLeaf<V> parent, int leftIndexInParent) {
+        if (sibling == 1 && right.canLend()) {
+            int count = (right.size - left.size) >> 1;
+            parent.keys[leftIndexInParent] = left.borrowFromRight(right, count, parent.keys[leftIndexInParent]);
+            return false;
+        }
+        if (sibling == 0 && left.canLend()) {
+            int count = (left.size - right.size) >> 1;
+            parent.keys[leftIndexInParent] = right.borrowFromLeft(left, count, parent.keys[leftIndexInParent]);
+            return false;
+        }
+        left.appendRight(parent.keys[leftIndexInParent], right);
+        parent.deleteByIndex(leftIndexInParent);
+        return true;
+    }
+
+    /**
+     * 范围查询的回调，key不装箱
+     *
+     * @param <V>
+     */
+    public interface EntryVisitor<V> {
+        void visit(int k, V v);
+    }
+
+    abstract static class Node<V> {
+        /**
+         * 几阶的树
+         */
+        protected int m;
+        /**
+         * 已经包含了多少个元素
+         */
+        protected int size;
+        /**
+         * 包含的关键字，容量固定为m
+         */
+        protected int[] keys;
+        /**
+         * 父亲节点
+         */
+        protected NonLeaf<V> parent;
+
+        protected Node(int m) {
+            this.m = m;
+            this.keys = new int[m];
+        }
+
+        protected abstract int minSize();
+
+        protected void deleteKey(int index) {
+            System.arraycopy(this.keys, index + 1, this.keys, index, this.size - index - 1);
+            this.size--;
+        }
+
+        public boolean isOverflowed() {
+            return size >= m;
+        }
+
+        public boolean isUnderflowed() {
+            return size < minSize();
+        }
+
+        public boolean canLend() {
+            return size > minSize();
+        }
+
+        /**
+         * 二分查找，找到返回位置，找不到返回 ~插入位置
+         *
+         * @param k
+         * @return
+         */
+        public int getIndex(int k) {
+            int[] keys = this.keys;
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int x = (low + high) >>> 1;
+                int key = keys[x];
+                if (key < k) {
+                    low = x + 1;
+                } else if (key > k) {
+                    high = x - 1;
+                } else {
+                    return x;
+                }
+            }
+            return ~low;
+        }
+    }
+
+    static class NonLeaf<V> extends Node<V> {
+        /**
+         * 子节点，比关键字多一个，多留一个位置给分裂前的溢出
+         */
+        private Node<V>[] children;
+
+        protected NonLeaf(int m) {
+            super(m);
+            this.children = new Node[m + 1];
+        }
+
+        @Override
+        protected int minSize() {
+            return ((m + 1) >> 1) - 1;
+        }
+
+        protected void deleteByIndex(int index) {
+            System.arraycopy(this.children, index + 2, this.children, index + 1, this.size - index - 1);
+            this.children[this.size] = null;
+            super.deleteKey(index);
+        }
+
+        int borrowFromRight(NonLeaf<V> right, int count, int parentKey) {
+            this.keys[this.size] = parentKey;
+            System.arraycopy(right.keys, 0, this.keys, this.size + 1, count - 1);
+            System.arraycopy(right.children, 0, this.children, this.size + 1, count);
+            for (int i = 0; i < count; i++) {
+                this.children[this.size + 1 + i].parent = this;
+            }
+            int newParentKey = right.keys[count - 1];
+            this.size += count;
+            System.arraycopy(right.keys, count, right.keys, 0, right.size - count);
+            System.arraycopy(right.children, count, right.children, 0, right.size - count + 1);
+            Arrays.fill(right.children, right.size - count + 1, right.size + 1, null);
+            right.size -= count;
+            return newParentKey;
+        }
+
+        int borrowFromLeft(NonLeaf<V> left, int count, int parentKey) {
+            System.arraycopy(this.keys, 0, this.keys, count, this.size);
+            System.arraycopy(this.children, 0, this.children, count, this.size + 1);
+            this.keys[count - 1] = parentKey;
+            int from = left.size - count + 1;
+            System.arraycopy(left.keys, from, this.keys, 0, count - 1);
+            System.arraycopy(left.children, from, this.children, 0, count);
+            for (int i = 0; i < count; i++) {
+                this.children[i].parent = this;
+            }
+            this.size += count;
+            int newParentKey = left.keys[from - 1];
+            Arrays.fill(left.children, from, left.size + 1, null);
+            left.size -= count;
+            return newParentKey;
+        }
+
+        void appendRight(int parentKey, NonLeaf<V> right) {
+            this.keys[this.size] = parentKey;
+            System.arraycopy(right.keys, 0, this.keys, this.size + 1, right.size);
+            System.arraycopy(right.children, 0, this.children, this.size + 1, right.size + 1);
+            for (int i = 0; i <= right.size; i++) {
+                right.children[i].parent = this;
+            }
+            this.size += right.size + 1;
+            right.parent = null;
+        }
+
+        protected Node<V> updateInsert(int k, Node<V> left, Node<V> right) {
+            right.parent = this;
+            if (size == 0) {
+                size++;
+                this.keys[0] = k;
+                this.children[0] = left;
+                this.children[1] = right;
+                left.parent = this;
+                return this;
+            }
+            int i = getIndex(k);
+            if (i < 0) {
+                i = ~i;
+            }
+            System.arraycopy(this.keys, i, this.keys, i + 1, size - i);
+            System.arraycopy(this.children, i + 1, this.children, i + 2, size - i);
+            this.keys[i] = k;
+            this.children[i + 1] = right;
+            size++;
+            return split();
+        }
+
+        private Node<V> split() {
+            if (!isOverflowed()) {
+                return null;
+            }
+            int newSize = size >> 1;
+            int upKey = this.keys[newSize];
+            int size2 = size - newSize - 1;
+            NonLeaf<V> right = new NonLeaf<>(m);
+            System.arraycopy(this.keys, newSize + 1, right.keys, 0, size2);
+            System.arraycopy(this.children, newSize + 1, right.children, 0, size2 + 1);
+            for (int i = 0; i <= size2; i++) {
+                right.children[i].parent = right;
+            }
+            Arrays.fill(this.children, newSize + 1, size + 1, null);
+            right.size = size2;
+            this.size = newSize;
+            if (this.parent == null) {
+                this.parent = new NonLeaf<>(m);
+            }
+            return parent.updateInsert(upKey, this, right);
+        }
+    }
+
+    static class Leaf<V> extends Node<V> {
+        /**
+         * 保存的值数据
+         */
+        private Object[] values;
+        /**
+         * 后面一个节点
+         */
+        private Leaf<V> next;
+        /**
+         * 前面一个节点
+         */
+        private Leaf<V> pre;
+
+        protected Leaf(int m) {
+            super(m);
+            this.values = new Object[m];
+        }
+
+        @Override
+        protected int minSize() {
+            return m >> 1;
+        }
+
+        /**
+         * 在位置i插入数据，有可能返回新的根节点
+         */
+        protected Node<V> insert(int i, int k, V v) {
+            System.arraycopy(this.keys, i, this.keys, i + 1, size - i);
+            System.arraycopy(this.values, i, this.values, i + 1, size - i);
+            this.keys[i] = k;
+            this.values[i] = v;
+            size++;
+            return split();
+        }
+
+        private Node<V> split() {
+            if (!isOverflowed()) {
+                return null;
+            }
+            int newSize = size >> 1;
+            int size2 = size - newSize;
+            Leaf<V> leaf = new Leaf<>(m);
+            System.arraycopy(this.keys, newSize, leaf.keys, 0, size2);
+            System.arraycopy(this.values, newSize, leaf.values, 0, size2);
+            Arrays.fill(this.values, newSize, size, null);
+            leaf.size = size2;
+            this.size = newSize;
+            leaf.next = this.next;
+            if (this.next != null) {
+                this.next.pre = leaf;
+            }
+            this.next = leaf;
+            leaf.pre = this;
+            if (this.parent == null) {
+                this.parent = new NonLeaf<>(m);
+            }
+            return parent.updateInsert(leaf.keys[0], this, leaf);
+        }
+
+        void borrowFromRight(Leaf<V> right, int range) {
+            System.arraycopy(right.keys, 0, this.keys, this.size, range);
+            System.arraycopy(right.values, 0, this.values, this.size, range);
+            this.size += range;
+            int rightNewSize = right.size - range;
+            System.arraycopy(right.keys, range, right.keys, 0, rightNewSize);
+            System.arraycopy(right.values, range, right.values, 0, rightNewSize);
+            Arrays.fill(right.values, rightNewSize, right.size, null);
+            right.size = rightNewSize;
+        }
+
+        void borrowFromLeft(Leaf<V> left, int range) {
+            System.arraycopy(this.keys, 0, this.keys, range, this.size);
+            System.arraycopy(this.values, 0, this.values, range, this.size);
+            int leftNewSize = left.size - range;
+            System.arraycopy(left.keys, leftNewSize, this.keys, 0, range);
+            System.arraycopy(left.values, leftNewSize, this.values, 0, range);
+            this.size += range;
+            Arrays.fill(left.values, leftNewSize, left.size, null);
+            left.size = leftNewSize;
+        }
+
+        /**
+         * 合并右边的节点，右节点从链表中去掉
+         */
+        void appendRight(Leaf<V> right) {
+            System.arraycopy(right.keys, 0, this.keys, this.size, right.size);
+            System.arraycopy(right.values, 0, this.values, this.size, right.size);
+            this.size += right.size;
+            this.next = right.next;
+            if (right.next != null) {
+                right.next.pre = this;
+            }
+            right.parent = null;
+            right.next = null;
+            right.pre = null;
+        }
+
+        @Override
+        protected void deleteKey(int index) {
+            System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+            this.values[this.size - 1] = null;
+            super.deleteKey(index);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.kerns.structure.tree;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * 一个key对应多个long值的b+树，用作二级索引，key是索引列，值是行号
+ * 每个key在叶子节点里只占一个位置，值都放在key对应的{@link PostingList}里面，
+ * 一个key有成千上万个值的时候树的高度和节点个数不受影响。
+ * 值少的时候是排好序的数组，超过128个之后按块做差值varint压缩。
+ * 同一个key下面的值不重复，重复添加只保留一个。
+ * <p>
+ * 不是线程安全的
+ */
+public class MultimapBPlugsTree<K extends Comparable> {
+
+    private static final PrimitiveIterator.OfLong EMPTY = new PrimitiveIterator.OfLong() {
+        @Override
+        public long nextLong() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return false;
+        }
+    };
+
+    private final BPlugsTree2<K, PostingList> tree;
+
+    /**
+     * 全部key下面的值的个数
+     */
+    private long size;
+
+    public MultimapBPlugsTree(int m) {
+        this(TreeConfig.ofOrder(m));
+    }
+
+    /**
+     * @param config 阶数、分裂方式和布隆过滤器，和BPlugsTree2一样
+     */
+    public MultimapBPlugsTree(TreeConfig config) {
+        this.tree = new BPlugsTree2<>(config);
+    }
+
+    /**
+     * @param k
+     * @param value
+     * @return 值已经存在的时候返回false
+     */
+    public boolean put(K k, long value) {
+        if (!postings(k).add(value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * 批量添加同一个key的值，只查找一次叶子节点，落在同一个压缩块里的值一起解压压缩
+     *
+     * @param k
+     * @param values 可以无序、重复
+     * @return 实际新增的个数
+     */
+    public int putAll(K k, long... values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        int added = postings(k).addAll(values);
+        size += added;
+        return added;
+    }
+
+    /**
+     * 删除一个值，key下面没有值之后从树里删除key
+     *
+     * @param k
+     * @param value
+     * @return 值不存在的时候返回false
+     */
+    public boolean remove(K k, long value) {
+        PostingList list = tree.get(k);
+        if (list == null || !list.remove(value)) {
+            return false;
+        }
+        if (list.isEmpty()) {
+            tree.delete(k);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * 删除key下面的全部值
+     *
+     * @param k
+     * @return 删除的值的个数
+     */
+    public int removeAll(K k) {
+        PostingList list = tree.get(k);
+        if (list == null) {
+            return 0;
+        }
+        tree.delete(k);
+        size -= list.size();
+        return list.size();
+    }
+
+    public boolean containsKey(K k) {
+        return tree.get(k) != null;
+    }
+
+    public boolean containsEntry(K k, long value) {
+        PostingList list = tree.get(k);
+        return list != null && list.contains(value);
+    }
+
+    /**
+     * @param k
+     * @return key下面的值的个数
+     */
+    public int valueCount(K k) {
+        PostingList list = tree.get(k);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * 从小到大遍历key下面的值，遍历过程中不能修改这个key下面的值，否则抛出ConcurrentModificationException
+     *
+     * @param k
+     * @return
+     */
+    public PrimitiveIterator.OfLong values(K k) {
+        PostingList list = tree.get(k);
+        return list == null ? EMPTY : list.iterator();
+    }
+
+    /**
+     * @return 全部值的个数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return 不同的key的个数，也就是树里面的数据个数
+     */
+    public int keyCount() {
+        return tree.size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * key对应的值列表，没有的时候插入一个空的
+     */
+    private PostingList postings(K k) {
+        PostingList list = tree.get(k);
+        if (list == null) {
+            list = new PostingList();
+            tree.insert(k, list);
+        }
+        return list;
+    }
+}
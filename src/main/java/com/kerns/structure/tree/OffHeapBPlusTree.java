@@ -0,0 +1,697 @@
+package com.kerns.structure.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 节点放在堆外内存的b+树，结构和{@link BPlugsTree2}一致
+ * key和value按照{@link FixedCodec}定长编码，直接放在ByteBuffer.allocateDirect分配的slab里面，
+ * 子节点和叶子节点的pre/next都是节点地址：高32位是slab的下标，低32位是节点在slab里的偏移。
+ * 查找的时候用{@link FixedCodec#compare}直接和buffer里的key比较，只有返回给调用方的value才会反序列化，
+ * 堆上只有slab数组和每个slab的ByteBuffer对象，不会因为数据变多产生大量的小对象。
+ * <p>
+ * 节点上没有父节点指针，修改的时候把查找路径记在固定长度的数组里，插入删除不在堆上分配内存。
+ * 被合并掉的节点串成空闲链表，下一个空闲节点的地址写在节点里面，新建节点的时候优先使用。
+ * <p>
+ * 叶子节点：类型(1) 个数(4) pre(8) next(8) keys values
+ * 非叶子节点：类型(1) 个数(4) keys children
+ * <p>
+ * 不是线程安全的，遍历的过程中不能修改树。
+ */
+public class OffHeapBPlusTree<K extends Comparable, V> {
+
+    /**
+     * 默认每个slab 1M
+     */
+    public static final int DEFAULT_SLAB_BYTES = 1 << 20;
+
+    private static final byte LEAF = 0;
+
+    private static final byte INNER = 1;
+
+    private static final int SIZE = 1;
+
+    private static final int PRE = 5;
+
+    private static final int NEXT = 13;
+
+    private static final int LEAF_HEADER = 21;
+
+    private static final int INNER_HEADER = 5;
+    /**
+     * 没有节点
+     */
+    private static final long NONE = -1;
+    /**
+     * 每个节点至少两个子节点，高度不会超过int的位数
+     */
+    private static final int MAX_HEIGHT = 33;
+
+    private final int m;
+
+    private final FixedCodec<K> keyCodec;
+
+    private final FixedCodec<V> valueCodec;
+
+    private final int keyWidth;
+
+    private final int valueWidth;
+    /**
+     * 叶子节点中value开始的位置
+     */
+    private final int leafValues;
+    /**
+     * 非叶子节点中子节点地址开始的位置
+     */
+    private final int innerChildren;
+    /**
+     * 叶子节点和非叶子节点使用同样大小的位置，空闲的节点可以互相复用
+     */
+    private final int nodeBytes;
+
+    private final int slabBytes;
+    /**
+     * 插入的时候先把key和value编码到这里，编码失败的时候不会改到节点
+     */
+    private final ByteBuffer scratch;
+
+    private ByteBuffer[] slabs = new ByteBuffer[4];
+
+    private int slabCount;
+    /**
+     * 最后一个slab中还没有用过的位置
+     */
+    private int slabOffset;
+    /**
+     * 空闲链表的第一个节点
+     */
+    private long free = NONE;
+
+    private long root;
+
+    private int size;
+
+    private int nodeCount;
+    /**
+     * 最近一次查找经过的节点，path[i]的第indexInParentPath[i]个子节点是path[i+1]
+     */
+    private final long[] path = new long[MAX_HEIGHT];
+
+    private final int[] indexInParentPath = new int[MAX_HEIGHT];
+
+    public OffHeapBPlusTree(int m, FixedCodec<K> keyCodec, FixedCodec<V> valueCodec) {
+        this(m, keyCodec, valueCodec, DEFAULT_SLAB_BYTES);
+    }
+
+    /**
+     * @param m          阶数，节点最多m-1个关键字
+     * @param keyCodec
+     * @param valueCodec
+     * @param slabBytes  每次向操作系统申请的堆外内存大小，至少放得下一个节点
+     */
+    public OffHeapBPlusTree(int m, FixedCodec<K> keyCodec, FixedCodec<V> valueCodec, int slabBytes) {
+        if (m < 3) {
+            throw new IllegalArgumentException("m must be greater than 2");
+        }
+        this.m = m;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.keyWidth = keyCodec.width();
+        this.valueWidth = valueCodec.width();
+        this.leafValues = LEAF_HEADER + m * keyWidth;
+        this.innerChildren = INNER_HEADER + m * keyWidth;
+        this.nodeBytes = Math.max(leafValues + m * valueWidth, innerChildren + (m + 1) * 8);
+        if (nodeBytes > slabBytes) {
+            throw new IllegalArgumentException("slab of " + slabBytes + " bytes can not hold a node of " + nodeBytes
+                    + " bytes");
+        }
+        this.slabBytes = slabBytes;
+        this.scratch = ByteBuffer.allocate(keyWidth + valueWidth).order(ByteOrder.nativeOrder());
+        this.root = allocate(LEAF);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 已经申请的堆外内存，包括空闲的节点
+     *
+     * @return
+     */
+    public long getOffHeapBytes() {
+        return (long) slabCount * slabBytes;
+    }
+
+    /**
+     * 正在使用的节点个数
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public V get(K k) {
+        long leaf = path[descend(k)];
+        ByteBuffer b = buffer(leaf);
+        int o = offset(leaf);
+        int i = search(b, o + LEAF_HEADER, b.getInt(o + SIZE), k);
+        return i < 0 ? null : valueCodec.read(b, o + leafValues + i * valueWidth);
+    }
+
+    /**
+     * 插入数据，key已经存在的时候覆盖
+     *
+     * @param k
+     * @param v 不能为null
+     */
+    public void insert(K k, V v) {
+        if (k == null || v == null) {
+            throw new NullPointerException();
+        }
+        keyCodec.write(scratch, 0, k);
+        valueCodec.write(scratch, keyWidth, v);
+        int depth = descend(k);
+        long leaf = path[depth];
+        ByteBuffer b = buffer(leaf);
+        int o = offset(leaf);
+        int n = b.getInt(o + SIZE);
+        int keys = o + LEAF_HEADER;
+        int values = o + leafValues;
+        int i = search(b, keys, n, k);
+        if (i >= 0) {
+            copy(scratch, keyWidth, b, values + i * valueWidth, valueWidth);
+            return;
+        }
+        i = ~i;
+        copy(b, keys + i * keyWidth, b, keys + (i + 1) * keyWidth, (n - i) * keyWidth);
+        copy(b, values + i * valueWidth, b, values + (i + 1) * valueWidth, (n - i) * valueWidth);
+        copy(scratch, 0, b, keys + i * keyWidth, keyWidth);
+        copy(scratch, keyWidth, b, values + i * valueWidth, valueWidth);
+        b.putInt(o + SIZE, ++n);
+        size++;
+        if (n >= m) {
+            splitLeaf(leaf, depth);
+        }
+    }
+
+    /**
+     * 删除数据
+     *
+     * @param k
+     * @return 被删除的value
+     */
+    public V delete(K k) {
+        int depth = descend(k);
+        long leaf = path[depth];
+        ByteBuffer b = buffer(leaf);
+        int o = offset(leaf);
+        int n = b.getInt(o + SIZE);
+        int keys = o + LEAF_HEADER;
+        int values = o + leafValues;
+        int i = search(b, keys, n, k);
+        if (i < 0) {
+            return null;
+        }
+        V old = valueCodec.read(b, values + i * valueWidth);
+        copy(b, keys + (i + 1) * keyWidth, b, keys + i * keyWidth, (n - i - 1) * keyWidth);
+        copy(b, values + (i + 1) * valueWidth, b, values + i * valueWidth, (n - i - 1) * valueWidth);
+        b.putInt(o + SIZE, --n);
+        size--;
+        if (depth > 0 && n < (m >> 1)) {
+            rebalance(depth);
+        }
+        return old;
+    }
+
+    /**
+     * 按照从小到大的顺序遍历[from,to]之间的数据，沿着叶子节点的next地址往后走
+     * 遍历过程中不能修改树
+     *
+     * @param from 为null的时候从最小值开始
+     * @param to   为null的时候一直到最大值
+     * @return
+     */
+    public Cursor<K, V> scan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        long leaf;
+        int index = 0;
+        if (from == null) {
+            leaf = root;
+            while (buffer(leaf).get(offset(leaf)) == INNER) {
+                leaf = child(leaf, 0);
+            }
+        } else {
+            leaf = path[descend(from)];
+            ByteBuffer b = buffer(leaf);
+            int o = offset(leaf);
+            index = search(b, o + LEAF_HEADER, b.getInt(o + SIZE), from);
+            if (index < 0) {
+                index = ~index;
+            } else if (!fromInclusive) {
+                index++;
+            }
+        }
+        return new Cursor<>(this, leaf, index, to, toInclusive);
+    }
+
+    /**
+     * 删除全部数据，释放所有的slab，堆外内存等ByteBuffer被回收的时候释放
+     */
+    public void clear() {
+        slabs = new ByteBuffer[4];
+        slabCount = 0;
+        slabOffset = 0;
+        free = NONE;
+        nodeCount = 0;
+        size = 0;
+        root = allocate(LEAF);
+    }
+
+    /**
+     * 从根节点找到k所在的叶子节点，路径记在path和indexInParentPath里面
+     *
+     * @param k
+     * @return 叶子节点在path中的位置
+     */
+    private int descend(K k) {
+        long node = root;
+        int depth = 0;
+        for (; ; ) {
+            path[depth] = node;
+            ByteBuffer b = buffer(node);
+            int o = offset(node);
+            if (b.get(o) == LEAF) {
+                return depth;
+            }
+            int i = search(b, o + INNER_HEADER, b.getInt(o + SIZE), k);
+            i = i < 0 ? ~i : i + 1;
+            indexInParentPath[depth++] = i;
+            node = b.getLong(o + innerChildren + i * 8);
+        }
+    }
+
+    /**
+     * 二分查找，直接和buffer里序列化的key比较
+     *
+     * @param b
+     * @param keys 第一个key的位置
+     * @param n    key的个数
+     * @param k
+     * @return
+     */
+    private int search(ByteBuffer b, int keys, int n, K k) {
+        int low = 0;
+        int high = n - 1;
+        while (low <= high) {
+            int x = (low + high) >>> 1;
+            int compare = keyCodec.compare(k, b, keys + x * keyWidth);
+            if (compare > 0) {
+                low = x + 1;
+            } else if (compare < 0) {
+                high = x - 1;
+            } else {
+                return x;
+            }
+        }
+        return ~low;
+    }
+
+    private void splitLeaf(long leaf, int depth) {
+        ByteBuffer b = buffer(leaf);
+        int o = offset(leaf);
+        int n = b.getInt(o + SIZE);
+        int mid = n >> 1;
+        int size2 = n - mid;
+        long right = allocate(LEAF);
+        ByteBuffer rb = buffer(right);
+        int ro = offset(right);
+        copy(b, o + LEAF_HEADER + mid * keyWidth, rb, ro + LEAF_HEADER, size2 * keyWidth);
+        copy(b, o + leafValues + mid * valueWidth, rb, ro + leafValues, size2 * valueWidth);
+        rb.putInt(ro + SIZE, size2);
+        b.putInt(o + SIZE, mid);
+        long next = b.getLong(o + NEXT);
+        rb.putLong(ro + PRE, leaf);
+        rb.putLong(ro + NEXT, next);
+        if (next != NONE) {
+            buffer(next).putLong(offset(next) + PRE, right);
+        }
+        b.putLong(o + NEXT, right);
+        insertIntoParent(depth - 1, leaf, rb, ro + LEAF_HEADER, right);
+    }
+
+    /**
+     * 分裂之后把新节点插入父节点，父节点满了继续分裂
+     * 分隔的key直接从子节点里复制字节，不需要反序列化
+     *
+     * @param level  父节点在path中的位置，小于0的时候产生新的根节点
+     * @param left
+     * @param sep    分隔key所在的buffer
+     * @param sepOffset
+     * @param right
+     */
+    private void insertIntoParent(int level, long left, ByteBuffer sep, int sepOffset, long right) {
+        if (level < 0) {
+            long newRoot = allocate(INNER);
+            ByteBuffer b = buffer(newRoot);
+            int o = offset(newRoot);
+            copy(sep, sepOffset, b, o + INNER_HEADER, keyWidth);
+            b.putLong(o + innerChildren, left);
+            b.putLong(o + innerChildren + 8, right);
+            b.putInt(o + SIZE, 1);
+            root = newRoot;
+            return;
+        }
+        long parent = path[level];
+        int i = indexInParentPath[level];
+        ByteBuffer b = buffer(parent);
+        int o = offset(parent);
+        int n = b.getInt(o + SIZE);
+        int keys = o + INNER_HEADER;
+        int children = o + innerChildren;
+        copy(b, keys + i * keyWidth, b, keys + (i + 1) * keyWidth, (n - i) * keyWidth);
+        copy(b, children + (i + 1) * 8, b, children + (i + 2) * 8, (n - i) * 8);
+        copy(sep, sepOffset, b, keys + i * keyWidth, keyWidth);
+        b.putLong(children + (i + 1) * 8, right);
+        b.putInt(o + SIZE, ++n);
+        if (n < m) {
+            return;
+        }
+        //中间的关键字上升到父节点，字节还留在原来的位置，复制到父节点之前不会被覆盖
+        int mid = n >> 1;
+        int size2 = n - mid - 1;
+        long newRight = allocate(INNER);
+        ByteBuffer rb = buffer(newRight);
+        int ro = offset(newRight);
+        copy(b, keys + (mid + 1) * keyWidth, rb, ro + INNER_HEADER, size2 * keyWidth);
+        copy(b, children + (mid + 1) * 8, rb, ro + innerChildren, (size2 + 1) * 8);
+        rb.putInt(ro + SIZE, size2);
+        b.putInt(o + SIZE, mid);
+        insertIntoParent(level - 1, parent, b, keys + mid * keyWidth, newRight);
+    }
+
+    /**
+     * 节点数据不足，从兄弟节点借一个，兄弟节点也不够的时候合并，合并之后父节点少一个关键字，继续往上检查
+     *
+     * @param level 数据不足的节点在path中的位置
+     */
+    private void rebalance(int level) {
+        int innerMinSize = ((m + 1) >> 1) - 1;
+        for (; level > 0; level--) {
+            long node = path[level];
+            long parent = path[level - 1];
+            int i = indexInParentPath[level - 1];
+            int parentSize = size(parent);
+            int minSize = buffer(node).get(offset(node)) == LEAF ? m >> 1 : innerMinSize;
+            long left = i > 0 ? child(parent, i - 1) : NONE;
+            if (left != NONE && size(left) > minSize) {
+                borrowFromLeft(parent, i - 1, left, node);
+                return;
+            }
+            long right = i < parentSize ? child(parent, i + 1) : NONE;
+            if (right != NONE && size(right) > minSize) {
+                borrowFromRight(parent, i, node, right);
+                return;
+            }
+            if (left != NONE) {
+                merge(parent, i - 1, left, node);
+            } else {
+                merge(parent, i, node, right);
+            }
+            parentSize--;
+            if (level == 1) {
+                if (parentSize == 0) {
+                    //根节点只剩一个子节点，树的高度减一
+                    root = child(parent, 0);
+                    release(parent);
+                }
+                return;
+            }
+            if (parentSize >= innerMinSize) {
+                return;
+            }
+        }
+    }
+
+    private void borrowFromLeft(long parent, int leftIndex, long left, long node) {
+        ByteBuffer pb = buffer(parent);
+        int parentKey = offset(parent) + INNER_HEADER + leftIndex * keyWidth;
+        ByteBuffer lb = buffer(left);
+        int lo = offset(left);
+        int ls = lb.getInt(lo + SIZE);
+        ByteBuffer b = buffer(node);
+        int o = offset(node);
+        int n = b.getInt(o + SIZE);
+        if (b.get(o) == LEAF) {
+            int keys = o + LEAF_HEADER;
+            int values = o + leafValues;
+            copy(b, keys, b, keys + keyWidth, n * keyWidth);
+            copy(b, values, b, values + valueWidth, n * valueWidth);
+            copy(lb, lo + LEAF_HEADER + (ls - 1) * keyWidth, b, keys, keyWidth);
+            copy(lb, lo + leafValues + (ls - 1) * valueWidth, b, values, valueWidth);
+            copy(b, keys, pb, parentKey, keyWidth);
+        } else {
+            int keys = o + INNER_HEADER;
+            int children = o + innerChildren;
+            copy(b, keys, b, keys + keyWidth, n * keyWidth);
+            copy(b, children, b, children + 8, (n + 1) * 8);
+            copy(pb, parentKey, b, keys, keyWidth);
+            b.putLong(children, lb.getLong(lo + innerChildren + ls * 8));
+            copy(lb, lo + INNER_HEADER + (ls - 1) * keyWidth, pb, parentKey, keyWidth);
+        }
+        lb.putInt(lo + SIZE, ls - 1);
+        b.putInt(o + SIZE, n + 1);
+    }
+
+    private void borrowFromRight(long parent, int index, long node, long right) {
+        ByteBuffer pb = buffer(parent);
+        int parentKey = offset(parent) + INNER_HEADER + index * keyWidth;
+        ByteBuffer rb = buffer(right);
+        int ro = offset(right);
+        int rs = rb.getInt(ro + SIZE);
+        ByteBuffer b = buffer(node);
+        int o = offset(node);
+        int n = b.getInt(o + SIZE);
+        if (b.get(o) == LEAF) {
+            int keys = ro + LEAF_HEADER;
+            int values = ro + leafValues;
+            copy(rb, keys, b, o + LEAF_HEADER + n * keyWidth, keyWidth);
+            copy(rb, values, b, o + leafValues + n * valueWidth, valueWidth);
+            copy(rb, keys + keyWidth, rb, keys, (rs - 1) * keyWidth);
+            copy(rb, values + valueWidth, rb, values, (rs - 1) * valueWidth);
+            copy(rb, keys, pb, parentKey, keyWidth);
+        } else {
+            int keys = ro + INNER_HEADER;
+            int children = ro + innerChildren;
+            copy(pb, parentKey, b, o + INNER_HEADER + n * keyWidth, keyWidth);
+            b.putLong(o + innerChildren + (n + 1) * 8, rb.getLong(children));
+            copy(rb, keys, pb, parentKey, keyWidth);
+            copy(rb, keys + keyWidth, rb, keys, (rs - 1) * keyWidth);
+            copy(rb, children + 8, rb, children, rs * 8);
+        }
+        rb.putInt(ro + SIZE, rs - 1);
+        b.putInt(o + SIZE, n + 1);
+    }
+
+    /**
+     * 右节点合并到左节点，右节点放回空闲链表
+     */
+    private void merge(long parent, int leftIndex, long left, long right) {
+        ByteBuffer pb = buffer(parent);
+        int po = offset(parent);
+        int ps = pb.getInt(po + SIZE);
+        ByteBuffer lb = buffer(left);
+        int lo = offset(left);
+        int ls = lb.getInt(lo + SIZE);
+        ByteBuffer rb = buffer(right);
+        int ro = offset(right);
+        int rs = rb.getInt(ro + SIZE);
+        if (lb.get(lo) == LEAF) {
+            copy(rb, ro + LEAF_HEADER, lb, lo + LEAF_HEADER + ls * keyWidth, rs * keyWidth);
+            copy(rb, ro + leafValues, lb, lo + leafValues + ls * valueWidth, rs * valueWidth);
+            lb.putInt(lo + SIZE, ls + rs);
+            long next = rb.getLong(ro + NEXT);
+            lb.putLong(lo + NEXT, next);
+            if (next != NONE) {
+                buffer(next).putLong(offset(next) + PRE, left);
+            }
+        } else {
+            copy(pb, po + INNER_HEADER + leftIndex * keyWidth, lb, lo + INNER_HEADER + ls * keyWidth, keyWidth);
+            copy(rb, ro + INNER_HEADER, lb, lo + INNER_HEADER + (ls + 1) * keyWidth, rs * keyWidth);
+            copy(rb, ro + innerChildren, lb, lo + innerChildren + (ls + 1) * 8, (rs + 1) * 8);
+            lb.putInt(lo + SIZE, ls + rs + 1);
+        }
+        int keys = po + INNER_HEADER;
+        int children = po + innerChildren;
+        copy(pb, keys + (leftIndex + 1) * keyWidth, pb, keys + leftIndex * keyWidth, (ps - leftIndex - 1) * keyWidth);
+        copy(pb, children + (leftIndex + 2) * 8, pb, children + (leftIndex + 1) * 8, (ps - leftIndex - 1) * 8);
+        pb.putInt(po + SIZE, ps - 1);
+        release(right);
+    }
+
+    /**
+     * 分配一个节点，优先使用空闲链表，当前slab放不下的时候申请新的slab
+     *
+     * @param type
+     * @return 节点地址
+     */
+    private long allocate(byte type) {
+        long node;
+        if (free != NONE) {
+            node = free;
+            free = buffer(node).getLong(offset(node) + PRE);
+        } else {
+            if (slabCount == 0 || slabOffset + nodeBytes > slabBytes) {
+                if (slabCount == slabs.length) {
+                    slabs = Arrays.copyOf(slabs, slabCount << 1);
+                }
+                slabs[slabCount++] = ByteBuffer.allocateDirect(slabBytes).order(ByteOrder.nativeOrder());
+                slabOffset = 0;
+            }
+            node = ((long) (slabCount - 1) << 32) | slabOffset;
+            slabOffset += nodeBytes;
+        }
+        ByteBuffer b = buffer(node);
+        int o = offset(node);
+        b.put(o, type);
+        b.putInt(o + SIZE, 0);
+        if (type == LEAF) {
+            b.putLong(o + PRE, NONE);
+            b.putLong(o + NEXT, NONE);
+        }
+        nodeCount++;
+        return node;
+    }
+
+    /**
+     * 节点放回空闲链表，下一个空闲节点的地址写在pre的位置
+     *
+     * @param node
+     */
+    private void release(long node) {
+        buffer(node).putLong(offset(node) + PRE, free);
+        free = node;
+        nodeCount--;
+    }
+
+    private ByteBuffer buffer(long node) {
+        return slabs[(int) (node >>> 32)];
+    }
+
+    private static int offset(long node) {
+        return (int) node;
+    }
+
+    private int size(long node) {
+        return buffer(node).getInt(offset(node) + SIZE);
+    }
+
+    private long child(long node, int i) {
+        return buffer(node).getLong(offset(node) + innerChildren + i * 8);
+    }
+
+    /**
+     * 复制字节，同一个buffer里重叠的时候按照方向复制，按8个字节一次读写
+     */
+    private static void copy(ByteBuffer src, int from, ByteBuffer dst, int to, int length) {
+        if (src == dst && to > from && to < from + length) {
+            int i = length;
+            for (; i >= 8; i -= 8) {
+                dst.putLong(to + i - 8, src.getLong(from + i - 8));
+            }
+            for (; i > 0; i--) {
+                dst.put(to + i - 1, src.get(from + i - 1));
+            }
+        } else {
+            int i = 0;
+            for (; i + 8 <= length; i += 8) {
+                dst.putLong(to + i, src.getLong(from + i));
+            }
+            for (; i < length; i++) {
+                dst.put(to + i, src.get(from + i));
+            }
+        }
+    }
+
+    /**
+     * 叶子链表上的游标，next()的时候才反序列化key和value
+     */
+    public static class Cursor<K extends Comparable, V> implements Iterator<K> {
+
+        private final OffHeapBPlusTree<K, V> tree;
+
+        private long leaf;
+
+        private int index;
+
+        private final K end;
+
+        private final boolean endInclusive;
+
+        private K key;
+
+        private V value;
+
+        Cursor(OffHeapBPlusTree<K, V> tree, long leaf, int index, K end, boolean endInclusive) {
+            this.tree = tree;
+            this.leaf = leaf;
+            this.index = index;
+            this.end = end;
+            this.endInclusive = endInclusive;
+            skipExhausted();
+        }
+
+        private void skipExhausted() {
+            while (leaf != NONE && index >= tree.size(leaf)) {
+                leaf = tree.buffer(leaf).getLong(offset(leaf) + NEXT);
+                index = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (leaf == NONE) {
+                return false;
+            }
+            if (end == null) {
+                return true;
+            }
+            int compare = tree.keyCodec.compare(end, tree.buffer(leaf),
+                    offset(leaf) + LEAF_HEADER + index * tree.keyWidth);
+            if (compare > 0 || (compare == 0 && endInclusive)) {
+                return true;
+            }
+            leaf = NONE;
+            return false;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer b = tree.buffer(leaf);
+            int o = offset(leaf);
+            key = tree.keyCodec.read(b, o + LEAF_HEADER + index * tree.keyWidth);
+            value = tree.valueCodec.read(b, o + tree.leafValues + index * tree.valueWidth);
+            index++;
+            skipExhausted();
+            return key;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
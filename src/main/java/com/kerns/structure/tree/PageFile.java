@@ -0,0 +1,188 @@
+package com.kerns.structure.tree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按照固定大小的页管理的文件，通过FileChannel.map映射到内存，读写直接走操作系统的page cache
+ * 文件按照块(chunk)映射，每个块包含固定数量的页，页不够的时候再映射下一个块
+ * <p>
+ * 第0页是文件头：
+ * 0  magic
+ * 4  页大小
+ * 8  已经分配的页数
+ * 16 空闲页链表的第一页，被释放的页的前8个字节存放下一个空闲页
+ * 24 之后的数据交给使用者
+ */
+public class PageFile implements Closeable {
+
+    public static final int PAGE_SIZE_4K = 4096;
+
+    public static final int PAGE_SIZE_16K = 16384;
+
+    /**
+     * 文件头中使用者可以使用的起始位置
+     */
+    public static final int HEADER_USER_OFFSET = 24;
+
+    private static final int MAGIC = 0x42505446;
+
+    private static final long NO_PAGE = 0;
+
+    private final FileChannel channel;
+
+    private final int pageSize;
+
+    private final int pagesPerChunk;
+
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    private long pageCount;
+
+    private long freeHead;
+
+    private PageFile(FileChannel channel, int pageSize) {
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.pagesPerChunk = Math.max(1, (4 << 20) / pageSize);
+    }
+
+    /**
+     * 打开或者新建文件
+     *
+     * @param file
+     * @param pageSize 2的幂，512到64K之间，一般使用4K或者16K
+     * @return
+     * @throws IOException
+     */
+    public static PageFile open(Path file, int pageSize) throws IOException {
+        if (Integer.bitCount(pageSize) != 1 || pageSize < 512 || pageSize > 65536) {
+            throw new IllegalArgumentException("pageSize must be a power of two between 512 and 65536");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        PageFile pageFile = new PageFile(channel, pageSize);
+        try {
+            if (channel.size() == 0) {
+                pageFile.pageCount = 1;
+                pageFile.freeHead = NO_PAGE;
+                ByteBuffer header = pageFile.page(0);
+                header.putInt(0, MAGIC);
+                header.putInt(4, pageSize);
+                pageFile.writeHeader();
+            } else {
+                ByteBuffer header = pageFile.page(0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("not a page file: " + file);
+                }
+                if (header.getInt(4) != pageSize) {
+                    throw new IOException("page size mismatch, file uses " + header.getInt(4));
+                }
+                pageFile.pageCount = header.getLong(8);
+                pageFile.freeHead = header.getLong(16);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return pageFile;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * 第id页对应的buffer，position为0，limit为页大小
+     *
+     * @param id
+     * @return
+     */
+    public ByteBuffer page(long id) {
+        int chunk = (int) (id / pagesPerChunk);
+        while (chunks.size() <= chunk) {
+            mapChunk(chunks.size());
+        }
+        ByteBuffer buffer = chunks.get(chunk).duplicate();
+        int offset = (int) (id % pagesPerChunk) * pageSize;
+        buffer.position(offset).limit(offset + pageSize);
+        return buffer.slice();
+    }
+
+    /**
+     * 文件头，使用者从HEADER_USER_OFFSET开始写
+     *
+     * @return
+     */
+    public ByteBuffer header() {
+        return page(0);
+    }
+
+    /**
+     * 分配一页，优先使用空闲页
+     *
+     * @return 页号
+     */
+    public long allocate() {
+        if (freeHead != NO_PAGE) {
+            long id = freeHead;
+            freeHead = page(id).getLong(0);
+            return id;
+        }
+        return pageCount++;
+    }
+
+    /**
+     * 释放一页，放到空闲链表
+     *
+     * @param id
+     */
+    public void free(long id) {
+        page(id).putLong(0, freeHead);
+        freeHead = id;
+    }
+
+    /**
+     * 把页数和空闲链表写到文件头，并把映射的内容刷到磁盘
+     */
+    public void force() {
+        writeHeader();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    private void writeHeader() {
+        ByteBuffer header = page(0);
+        header.putLong(8, pageCount);
+        header.putLong(16, freeHead);
+    }
+
+    private void mapChunk(int chunk) {
+        try {
+            long size = (long) pagesPerChunk * pageSize;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunk * size, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to map chunk " + chunk, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        chunks.clear();
+        channel.close();
+    }
+}
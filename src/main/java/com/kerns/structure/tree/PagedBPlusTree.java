@@ -0,0 +1,684 @@
+package com.kerns.structure.tree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于磁盘的b+树，结构和{@link BPlugsTree2}一致，每个节点对应{@link PageFile}中的一页
+ * 子节点指针换成页号，叶子节点的pre/next也是页号，所以节点上没有父节点指针，修改的时候记录查找路径
+ * <p>
+ * 解码之后的节点放在{@link BufferPool}里，每次操作把用到的节点pin住，操作结束之后统一unpin，
+ * 修改只改堆上的节点并标记为脏，节点被淘汰或者flush的时候才编码写回映射的页，其余的交给操作系统的page cache。重启的时候只需要映射文件读取文件头里的根节点页号，不需要重新插入数据。
+ * <p>
+ * 叶子节点页：类型(1) 个数(4) pre(8) next(8) keys values
+ * 非叶子节点页：类型(1) 个数(4) keys children
+ * 文件头：key宽度(4) value宽度(4) 根节点页号(8) 数据总数(8)
+ */
+public class PagedBPlusTree<K extends Comparable, V> implements Closeable {
+
+    private static final byte LEAF = 0;
+
+    private static final byte INNER = 1;
+
+    private static final int LEAF_HEADER = 21;
+
+    private static final int INNER_HEADER = 5;
+
+    /**
+     * 页号0是文件头，不会被节点使用，用来表示没有节点
+     */
+    private static final long NONE = 0;
+
+    private final PageFile file;
+
+    private final FixedCodec<K> keyCodec;
+
+    private final FixedCodec<V> valueCodec;
+    /**
+     * 叶子节点最多包含的数据个数
+     */
+    private final int leafCapacity;
+    /**
+     * 非叶子节点最多包含的关键字个数
+     */
+    private final int innerCapacity;
+
+    private final BufferPool<PagedNode> pool;
+    /**
+     * 插入的时候先把key和value编码到这里，编码失败的时候不会改到节点，也不会等到写回的时候才失败
+     */
+    private final ByteBuffer scratch;
+    /**
+     * 当前操作pin住的节点
+     */
+    private final List<PagedNode> pinned = new ArrayList<>();
+    /**
+     * 当前操作释放的节点，操作结束之后才释放页，避免同一次操作里页被重新分配
+     */
+    private final List<PagedNode> freed = new ArrayList<>();
+
+    private long rootId;
+
+    private long size;
+
+    private PagedBPlusTree(PageFile file, FixedCodec<K> keyCodec, FixedCodec<V> valueCodec, long cacheBytes) {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        int pageSize = file.getPageSize();
+        this.leafCapacity = (pageSize - LEAF_HEADER) / (keyCodec.width() + valueCodec.width());
+        this.innerCapacity = (pageSize - INNER_HEADER - 8) / (keyCodec.width() + 8);
+        if (leafCapacity < 3 || innerCapacity < 3) {
+            throw new IllegalArgumentException("page size " + pageSize + " too small for key/value width");
+        }
+        this.scratch = ByteBuffer.allocate(keyCodec.width() + valueCodec.width());
+        this.pool = new BufferPool<>(Math.max(cacheBytes, 16L * pageSize), pageSize, new BufferPool.PageStore<PagedNode>() {
+            @Override
+            public PagedNode read(long id) {
+                return PagedBPlusTree.this.read(id);
+            }
+
+            @Override
+            public void write(long id, PagedNode node) {
+                PagedBPlusTree.this.write(node);
+            }
+        });
+    }
+
+    /**
+     * 打开或者新建一棵树
+     *
+     * @param path
+     * @param keyCodec
+     * @param valueCodec
+     * @param pageSize       {@link PageFile#PAGE_SIZE_4K} 或者 {@link PageFile#PAGE_SIZE_16K}
+     * @param cacheBytes     缓冲池的内存预算，每个节点按照一页计算，最少16页
+     * @return
+     * @throws IOException
+     */
+    public static <K extends Comparable, V> PagedBPlusTree<K, V> open(Path path, FixedCodec<K> keyCodec,
+                                                                    FixedCodec<V> valueCodec, int pageSize,
+                                                                    long cacheBytes) throws IOException {
+        PageFile file = PageFile.open(path, pageSize);
+        try {
+            PagedBPlusTree<K, V> tree = new PagedBPlusTree<>(file, keyCodec, valueCodec, cacheBytes);
+            ByteBuffer header = file.header();
+            int offset = PageFile.HEADER_USER_OFFSET;
+            if (file.getPageCount() == 1) {
+                header.putInt(offset, keyCodec.width());
+                header.putInt(offset + 4, valueCodec.width());
+                tree.rootId = tree.newNode(true).id;
+                tree.release();
+                tree.writeHeader();
+            } else {
+                if (header.getInt(offset) != keyCodec.width() || header.getInt(offset + 4) != valueCodec.width()) {
+                    throw new IOException("key/value width mismatch with " + path);
+                }
+                tree.rootId = header.getLong(offset + 8);
+                tree.size = header.getLong(offset + 16);
+            }
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return (int) size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(K k) {
+        PagedNode node = load(rootId);
+        while (!node.leaf) {
+            node = load(node.children[node.childIndex(k)]);
+        }
+        int i = node.getIndex(k);
+        V value = i < 0 ? null : (V) node.values[i];
+        release();
+        return value;
+    }
+
+    /**
+     * 插入数据，key已经存在的时候覆盖
+     *
+     * @param k
+     * @param v 不能为null
+     * @throws IllegalArgumentException key或者value超过编码的宽度，这个时候树不会被修改
+     */
+    public void insert(K k, V v) {
+        if (k == null || v == null) {
+            throw new NullPointerException();
+        }
+        keyCodec.write(scratch, 0, k);
+        valueCodec.write(scratch, keyCodec.width(), v);
+        List<PagedNode> path = new ArrayList<>();
+        List<Integer> indexInParentPath = new ArrayList<>();
+        PagedNode leaf = findLeaf(k, path, indexInParentPath);
+        int i = leaf.getIndex(k);
+        leaf.dirty = true;
+        if (i >= 0) {
+            leaf.values[i] = v;
+        } else {
+            i = ~i;
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+            System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.size - i);
+            leaf.keys[i] = k;
+            leaf.values[i] = v;
+            leaf.size++;
+            size++;
+            if (leaf.size > leafCapacity) {
+                splitLeaf(leaf, path, indexInParentPath);
+            }
+        }
+        release();
+    }
+
+    /**
+     * 删除数据
+     *
+     * @param k
+     * @return 被删除的value
+     */
+    public V delete(K k) {
+        List<PagedNode> path = new ArrayList<>();
+        List<Integer> indexInParentPath = new ArrayList<>();
+        PagedNode leaf = findLeaf(k, path, indexInParentPath);
+        int i = leaf.getIndex(k);
+        if (i < 0) {
+            release();
+            return null;
+        }
+        V old = (V) leaf.values[i];
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.size - i - 1);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.size - i - 1);
+        leaf.size--;
+        leaf.keys[leaf.size] = null;
+        leaf.values[leaf.size] = null;
+        leaf.dirty = true;
+        size--;
+        if (!path.isEmpty() && leaf.size < leafCapacity / 2) {
+            rebalance(leaf, path, indexInParentPath);
+        }
+        release();
+        return old;
+    }
+
+    /**
+     * 按照从小到大的顺序遍历[from,to]之间的数据，沿着叶子节点的next页号往后走
+     * 遍历过程中不能修改树
+     *
+     * @param from 为null的时候从最小值开始
+     * @param to   为null的时候一直到最大值
+     * @return
+     */
+    public Cursor<K, V> scan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        PagedNode node = load(rootId);
+        while (!node.leaf) {
+            node = load(node.children[from == null ? 0 : node.childIndex(from)]);
+        }
+        int index = 0;
+        if (from != null) {
+            index = node.getIndex(from);
+            if (index < 0) {
+                index = ~index;
+            } else if (!fromInclusive) {
+                index++;
+            }
+        }
+        Cursor<K, V> cursor = new Cursor<>(this, node, index, to, toInclusive);
+        release();
+        return cursor;
+    }
+
+    /**
+     * 把所有脏节点写回页，并刷到磁盘
+     */
+    public void flush() {
+        pool.flush();
+        writeHeader();
+        file.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * 缓冲池，用来查看命中、淘汰的次数
+     *
+     * @return
+     */
+    public BufferPool<?> getBufferPool() {
+        return pool;
+    }
+
+    int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    private PagedNode findLeaf(K k, List<PagedNode> path, List<Integer> indexInParentPath) {
+        PagedNode node = load(rootId);
+        while (!node.leaf) {
+            int i = node.childIndex(k);
+            path.add(node);
+            indexInParentPath.add(i);
+            node = load(node.children[i]);
+        }
+        return node;
+    }
+
+    private void splitLeaf(PagedNode leaf, List<PagedNode> path, List<Integer> indexInParentPath) {
+        PagedNode right = newNode(true);
+        int mid = leaf.size >> 1;
+        int size2 = leaf.size - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, size2);
+        System.arraycopy(leaf.values, mid, right.values, 0, size2);
+        for (int i = mid; i < leaf.size; i++) {
+            leaf.keys[i] = null;
+            leaf.values[i] = null;
+        }
+        right.size = size2;
+        leaf.size = mid;
+        right.pre = leaf.id;
+        right.next = leaf.next;
+        if (leaf.next != NONE) {
+            PagedNode next = load(leaf.next);
+            next.pre = right.id;
+            next.dirty = true;
+        }
+        leaf.next = right.id;
+        insertIntoParent(leaf, (K) right.keys[0], right.id, path, indexInParentPath);
+    }
+
+    /**
+     * 分裂之后把新节点插入父节点，父节点满了继续分裂
+     */
+    private void insertIntoParent(PagedNode left, K sepKey, long rightId, List<PagedNode> path,
+                                  List<Integer> indexInParentPath) {
+        if (path.isEmpty()) {
+            PagedNode root = newNode(false);
+            root.keys[0] = sepKey;
+            root.children[0] = left.id;
+            root.children[1] = rightId;
+            root.size = 1;
+            rootId = root.id;
+            return;
+        }
+        PagedNode parent = path.remove(path.size() - 1);
+        int i = indexInParentPath.remove(indexInParentPath.size() - 1);
+        System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.size - i);
+        System.arraycopy(parent.children, i + 1, parent.children, i + 2, parent.size - i);
+        parent.keys[i] = sepKey;
+        parent.children[i + 1] = rightId;
+        parent.size++;
+        parent.dirty = true;
+        if (parent.size <= innerCapacity) {
+            return;
+        }
+        int mid = parent.size >> 1;
+        K upKey = (K) parent.keys[mid];
+        int size2 = parent.size - mid - 1;
+        PagedNode right = newNode(false);
+        System.arraycopy(parent.keys, mid + 1, right.keys, 0, size2);
+        System.arraycopy(parent.children, mid + 1, right.children, 0, size2 + 1);
+        for (int j = mid; j < parent.size; j++) {
+            parent.keys[j] = null;
+        }
+        right.size = size2;
+        parent.size = mid;
+        insertIntoParent(parent, upKey, right.id, path, indexInParentPath);
+    }
+
+    /**
+     * 节点数据不足，从兄弟节点借一个，兄弟节点也不够的时候合并，合并之后父节点少一个关键字，继续往上检查
+     */
+    private void rebalance(PagedNode node, List<PagedNode> path, List<Integer> indexInParentPath) {
+        for (; ; ) {
+            PagedNode parent = path.get(path.size() - 1);
+            int i = indexInParentPath.get(indexInParentPath.size() - 1);
+            int minSize = node.leaf ? leafCapacity / 2 : innerCapacity / 2;
+            PagedNode left = i > 0 ? load(parent.children[i - 1]) : null;
+            if (left != null && left.size > minSize) {
+                borrowFromLeft(parent, i - 1, left, node);
+                return;
+            }
+            PagedNode right = i < parent.size ? load(parent.children[i + 1]) : null;
+            if (right != null && right.size > minSize) {
+                borrowFromRight(parent, i, node, right);
+                return;
+            }
+            if (left != null) {
+                merge(parent, i - 1, left, node);
+            } else {
+                merge(parent, i, node, right);
+            }
+            path.remove(path.size() - 1);
+            indexInParentPath.remove(indexInParentPath.size() - 1);
+            if (path.isEmpty()) {
+                if (parent.size == 0) {
+                    //根节点只剩一个子节点，树的高度减一
+                    rootId = parent.children[0];
+                    freeNode(parent);
+                }
+                return;
+            }
+            if (parent.size >= innerCapacity / 2) {
+                return;
+            }
+            node = parent;
+        }
+    }
+
+    private void borrowFromLeft(PagedNode parent, int leftIndex, PagedNode left, PagedNode node) {
+        System.arraycopy(node.keys, 0, node.keys, 1, node.size);
+        if (node.leaf) {
+            System.arraycopy(node.values, 0, node.values, 1, node.size);
+            node.keys[0] = left.keys[left.size - 1];
+            node.values[0] = left.values[left.size - 1];
+            left.values[left.size - 1] = null;
+            parent.keys[leftIndex] = node.keys[0];
+        } else {
+            System.arraycopy(node.children, 0, node.children, 1, node.size + 1);
+            node.keys[0] = parent.keys[leftIndex];
+            node.children[0] = left.children[left.size];
+            parent.keys[leftIndex] = left.keys[left.size - 1];
+        }
+        left.keys[left.size - 1] = null;
+        left.size--;
+        node.size++;
+        left.dirty = true;
+        node.dirty = true;
+        parent.dirty = true;
+    }
+
+    private void borrowFromRight(PagedNode parent, int index, PagedNode node, PagedNode right) {
+        if (node.leaf) {
+            node.keys[node.size] = right.keys[0];
+            node.values[node.size] = right.values[0];
+            System.arraycopy(right.values, 1, right.values, 0, right.size - 1);
+            right.values[right.size - 1] = null;
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            parent.keys[index] = right.keys[0];
+        } else {
+            node.keys[node.size] = parent.keys[index];
+            node.children[node.size + 1] = right.children[0];
+            parent.keys[index] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.size);
+        }
+        right.keys[right.size - 1] = null;
+        right.size--;
+        node.size++;
+        right.dirty = true;
+        node.dirty = true;
+        parent.dirty = true;
+    }
+
+    /**
+     * 右节点合并到左节点，释放右节点的页
+     */
+    private void merge(PagedNode parent, int leftIndex, PagedNode left, PagedNode right) {
+        if (left.leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+            System.arraycopy(right.values, 0, left.values, left.size, right.size);
+            left.size += right.size;
+            left.next = right.next;
+            if (right.next != NONE) {
+                PagedNode next = load(right.next);
+                next.pre = left.id;
+                next.dirty = true;
+            }
+        } else {
+            left.keys[left.size] = parent.keys[leftIndex];
+            System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+            System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+            left.size += right.size + 1;
+        }
+        left.dirty = true;
+        System.arraycopy(parent.keys, leftIndex + 1, parent.keys, leftIndex, parent.size - leftIndex - 1);
+        System.arraycopy(parent.children, leftIndex + 2, parent.children, leftIndex + 1, parent.size - leftIndex - 1);
+        parent.size--;
+        parent.keys[parent.size] = null;
+        parent.dirty = true;
+        freeNode(right);
+    }
+
+    private PagedNode newNode(boolean leaf) {
+        PagedNode node = new PagedNode(file.allocate(), leaf, leaf ? leafCapacity : innerCapacity);
+        pool.pinNew(node.id, node);
+        pinned.add(node);
+        return node;
+    }
+
+    private void freeNode(PagedNode node) {
+        freed.add(node);
+    }
+
+    PagedNode load(long id) {
+        PagedNode node = pool.pin(id);
+        pinned.add(node);
+        return node;
+    }
+
+    /**
+     * 每次操作结束之后unpin这次操作用到的节点，释放被合并掉的节点的页
+     */
+    void release() {
+        for (PagedNode node : freed) {
+            pool.discard(node.id);
+        }
+        for (PagedNode node : pinned) {
+            if (!freed.contains(node)) {
+                pool.unpin(node.id, node.dirty);
+                node.dirty = false;
+            }
+        }
+        for (PagedNode node : freed) {
+            file.free(node.id);
+        }
+        pinned.clear();
+        freed.clear();
+    }
+
+    private PagedNode read(long id) {
+        ByteBuffer page = file.page(id);
+        boolean leaf = page.get(0) == LEAF;
+        PagedNode node = new PagedNode(id, leaf, leaf ? leafCapacity : innerCapacity);
+        node.size = page.getInt(1);
+        int keyWidth = keyCodec.width();
+        if (leaf) {
+            node.pre = page.getLong(5);
+            node.next = page.getLong(13);
+            int valueOffset = LEAF_HEADER + leafCapacity * keyWidth;
+            for (int i = 0; i < node.size; i++) {
+                node.keys[i] = keyCodec.read(page, LEAF_HEADER + i * keyWidth);
+                node.values[i] = valueCodec.read(page, valueOffset + i * valueCodec.width());
+            }
+        } else {
+            int childOffset = INNER_HEADER + innerCapacity * keyWidth;
+            for (int i = 0; i < node.size; i++) {
+                node.keys[i] = keyCodec.read(page, INNER_HEADER + i * keyWidth);
+            }
+            for (int i = 0; i <= node.size; i++) {
+                node.children[i] = page.getLong(childOffset + i * 8);
+            }
+        }
+        return node;
+    }
+
+    private void write(PagedNode node) {
+        ByteBuffer page = file.page(node.id);
+        page.put(0, node.leaf ? LEAF : INNER);
+        page.putInt(1, node.size);
+        int keyWidth = keyCodec.width();
+        if (node.leaf) {
+            page.putLong(5, node.pre);
+            page.putLong(13, node.next);
+            int valueOffset = LEAF_HEADER + leafCapacity * keyWidth;
+            for (int i = 0; i < node.size; i++) {
+                keyCodec.write(page, LEAF_HEADER + i * keyWidth, (K) node.keys[i]);
+                valueCodec.write(page, valueOffset + i * valueCodec.width(), (V) node.values[i]);
+            }
+        } else {
+            int childOffset = INNER_HEADER + innerCapacity * keyWidth;
+            for (int i = 0; i < node.size; i++) {
+                keyCodec.write(page, INNER_HEADER + i * keyWidth, (K) node.keys[i]);
+            }
+            for (int i = 0; i <= node.size; i++) {
+                page.putLong(childOffset + i * 8, node.children[i]);
+            }
+        }
+    }
+
+    private void writeHeader() {
+        ByteBuffer header = file.header();
+        header.putLong(PageFile.HEADER_USER_OFFSET + 8, rootId);
+        header.putLong(PageFile.HEADER_USER_OFFSET + 16, size);
+    }
+
+    /**
+     * 解码之后的节点，数组比容量多一个位置，用来放分裂前溢出的数据
+     */
+    static final class PagedNode {
+
+        final long id;
+
+        final boolean leaf;
+
+        int size;
+
+        final Comparable[] keys;
+
+        final Object[] values;
+
+        final long[] children;
+
+        long pre = NONE;
+
+        long next = NONE;
+
+        /**
+         * 当前操作有没有修改
+         */
+        boolean dirty;
+
+        PagedNode(long id, boolean leaf, int capacity) {
+            this.id = id;
+            this.leaf = leaf;
+            this.keys = new Comparable[capacity + 1];
+            this.values = leaf ? new Object[capacity + 1] : null;
+            this.children = leaf ? null : new long[capacity + 2];
+        }
+
+        int getIndex(Comparable k) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int x = (low + high) >>> 1;
+                int compare = k.compareTo(keys[x]);
+                if (compare > 0) {
+                    low = x + 1;
+                } else if (compare < 0) {
+                    high = x - 1;
+                } else {
+                    return x;
+                }
+            }
+            return ~low;
+        }
+
+        int childIndex(Comparable k) {
+            int i = getIndex(k);
+            return i < 0 ? ~i : i + 1;
+        }
+    }
+
+    /**
+     * 叶子链表上的游标
+     */
+    public static class Cursor<K extends Comparable, V> implements Iterator<K> {
+
+        private final PagedBPlusTree<K, V> tree;
+
+        private PagedNode leaf;
+
+        private int index;
+
+        private final K end;
+
+        private final boolean endInclusive;
+
+        private K key;
+
+        private V value;
+
+        Cursor(PagedBPlusTree<K, V> tree, PagedNode leaf, int index, K end, boolean endInclusive) {
+            this.tree = tree;
+            this.leaf = leaf;
+            this.index = index;
+            this.end = end;
+            this.endInclusive = endInclusive;
+            skipExhausted();
+        }
+
+        private void skipExhausted() {
+            while (leaf != null && index >= leaf.size) {
+                leaf = leaf.next == NONE ? null : tree.load(leaf.next);
+                index = 0;
+            }
+            tree.release();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (leaf == null) {
+                return false;
+            }
+            if (end == null) {
+                return true;
+            }
+            int compare = leaf.keys[index].compareTo(end);
+            if (compare < 0 || (compare == 0 && endInclusive)) {
+                return true;
+            }
+            leaf = null;
+            return false;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            key = (K) leaf.keys[index];
+            value = (V) leaf.values[index];
+            index++;
+            skipExhausted();
+            return key;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.kerns.structure.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * 一个key下面的全部值，从小到大排好序，不重复
+ * 比所有块都大的值放在尾部的数组里，不压缩，尾部装满BLOCK_SIZE个之后压缩成一个块追加到最后，
+ * 值较少的时候只有尾部数组。块内第一个值原样保存，后面每个值只存和前一个值的差，用varint编码，
+ * 行号比较密集的时候一个值只占一两个字节。
+ * 插入或者删除块范围内的值的时候解压这一个块，修改之后重新压缩，超过MAX_BLOCK_SIZE的时候拆开
+ */
+final class PostingList {
+
+    static final int BLOCK_SIZE = 128;
+
+    /**
+     * 往块中间插入之后块的最大值，超过之后按照BLOCK_SIZE拆成多个块
+     */
+    static final int MAX_BLOCK_SIZE = BLOCK_SIZE << 1;
+
+    /**
+     * 一个long的varint最多10个字节
+     */
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final List<Block> blocks = new ArrayList<>();
+
+    private long[] tail = new long[4];
+
+    private int tailSize;
+
+    private int size;
+
+    /**
+     * 增加或者删除值的次数，迭代器用来发现遍历过程中被修改了
+     */
+    private int modCount;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(long value) {
+        int i = blockIndex(value);
+        if (i < 0) {
+            return Arrays.binarySearch(tail, 0, tailSize, value) >= 0;
+        }
+        Block block = blocks.get(i);
+        if (value < block.first) {
+            return false;
+        }
+        long[] values = new long[block.count];
+        block.decode(values);
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    /**
+     * @param value
+     * @return 值已经存在的时候返回false
+     */
+    boolean add(long value) {
+        int i = blockIndex(value);
+        if (i < 0) {
+            return addToTail(value);
+        }
+        Block block = blocks.get(i);
+        long[] values = new long[block.count + 1];
+        block.decode(values);
+        int index = Arrays.binarySearch(values, 0, block.count, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = ~index;
+        System.arraycopy(values, index, values, index + 1, block.count - index);
+        values[index] = value;
+        replace(i, values, block.count + 1);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * 批量添加，先排序，落在同一个块里的值只解压压缩一次，比所有块都大的值追加到尾部
+     *
+     * @param values 可以无序、重复，不会修改
+     * @return 实际新增的个数
+     */
+    int addAll(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int before = size;
+        int j = 0;
+        while (j < sorted.length) {
+            int i = blockIndex(sorted[j]);
+            if (i < 0) {
+                //尾部装满压缩成块之后，后面的值可能落到这个块里，所以每次重新判断
+                addToTail(sorted[j++]);
+                continue;
+            }
+            Block block = blocks.get(i);
+            int to = j;
+            while (to < sorted.length && sorted[to] <= block.last) {
+                to++;
+            }
+            long[] old = new long[block.count];
+            block.decode(old);
+            long[] merged = new long[block.count + to - j];
+            int n = 0;
+            int a = 0;
+            for (int b = j; a < old.length || b < to; ) {
+                long v;
+                if (b >= to || (a < old.length && old[a] <= sorted[b])) {
+                    v = old[a++];
+                } else {
+                    v = sorted[b++];
+                }
+                if (n == 0 || merged[n - 1] != v) {
+                    merged[n++] = v;
+                }
+            }
+            size += n - block.count;
+            replace(i, merged, n);
+            j = to;
+        }
+        if (size != before) {
+            modCount++;
+        }
+        return size - before;
+    }
+
+    /**
+     * @param value
+     * @return 值不存在的时候返回false
+     */
+    boolean remove(long value) {
+        int i = blockIndex(value);
+        if (i < 0) {
+            int index = Arrays.binarySearch(tail, 0, tailSize, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(tail, index + 1, tail, index, tailSize - index - 1);
+            tailSize--;
+        } else {
+            Block block = blocks.get(i);
+            long[] values = new long[block.count];
+            block.decode(values);
+            int index = Arrays.binarySearch(values, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, block.count - index - 1);
+            replace(i, values, block.count - 1);
+        }
+        size--;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * 从小到大遍历，每次解压一个块，遍历过程中不能增加或者删除值，否则抛出ConcurrentModificationException
+     *
+     * @return
+     */
+    PrimitiveIterator.OfLong iterator() {
+        return new ValueIterator();
+    }
+
+    /**
+     * 压缩的块和尾部数组占用的字节数，不算对象头
+     *
+     * @return
+     */
+    long getBytes() {
+        long bytes = (long) tail.length * Long.BYTES;
+        for (Block block : blocks) {
+            bytes += block.data.length + 2 * Long.BYTES + Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    int blockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * value所在范围的块，第一个last大于等于value的块，比所有块都大的时候返回-1，应该放到尾部
+     */
+    private int blockIndex(long value) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        if (high < 0 || blocks.get(high).last < value) {
+            return -1;
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).last < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean addToTail(long value) {
+        int index = Arrays.binarySearch(tail, 0, tailSize, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = ~index;
+        if (tailSize == tail.length) {
+            tail = Arrays.copyOf(tail, Math.min(BLOCK_SIZE, tail.length << 1));
+        }
+        System.arraycopy(tail, index, tail, index + 1, tailSize - index);
+        tail[index] = value;
+        tailSize++;
+        size++;
+        modCount++;
+        if (tailSize == BLOCK_SIZE) {
+            //尾部装满之后压缩成最后一个块
+            blocks.add(Block.encode(tail, 0, BLOCK_SIZE));
+            tail = new long[4];
+            tailSize = 0;
+        }
+        return true;
+    }
+
+    /**
+     * 用排好序的前count个值替换第i个块，为空的时候去掉这个块，太大的时候拆开
+     */
+    private void replace(int i, long[] values, int count) {
+        if (count == 0) {
+            blocks.remove(i);
+        } else if (count <= MAX_BLOCK_SIZE) {
+            blocks.set(i, Block.encode(values, 0, count));
+        } else {
+            List<Block> pieces = new ArrayList<>((count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            for (int from = 0; from < count; from += BLOCK_SIZE) {
+                pieces.add(Block.encode(values, from, Math.min(count, from + BLOCK_SIZE)));
+            }
+            blocks.remove(i);
+            blocks.addAll(i, pieces);
+        }
+    }
+
+    /**
+     * 压缩的块，first和last不压缩，查找的时候不需要解压就能判断范围
+     */
+    static final class Block {
+
+        final long first;
+
+        final long last;
+
+        final int count;
+
+        /**
+         * 第二个值开始和前一个值的差，按照无符号数写成varint
+         */
+        final byte[] data;
+
+        private Block(long first, long last, int count, byte[] data) {
+            this.first = first;
+            this.last = last;
+            this.count = count;
+            this.data = data;
+        }
+
+        /**
+         * @param values 排好序，不重复
+         */
+        static Block encode(long[] values, int from, int to) {
+            byte[] buffer = new byte[(to - from - 1) * MAX_VARINT_BYTES];
+            int position = 0;
+            for (int i = from + 1; i < to; i++) {
+                long delta = values[i] - values[i - 1];
+                while ((delta & ~0x7FL) != 0) {
+                    buffer[position++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                buffer[position++] = (byte) delta;
+            }
+            return new Block(values[from], values[to - 1], to - from, Arrays.copyOf(buffer, position));
+        }
+
+        /**
+         * 解压到out的前count个位置
+         */
+        void decode(long[] out) {
+            long value = first;
+            out[0] = value;
+            int position = 0;
+            for (int i = 1; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                out[i] = value;
+            }
+        }
+    }
+
+    private final class ValueIterator implements PrimitiveIterator.OfLong {
+
+        private final int expectedModCount = modCount;
+
+        private final long[] buffer = new long[MAX_BLOCK_SIZE];
+
+        /**
+         * 下一个要解压的块，等于blocks.size()的时候在遍历尾部
+         */
+        private int block;
+
+        private long[] current = buffer;
+
+        private int index;
+
+        private int count;
+
+        @Override
+        public boolean hasNext() {
+            while (index == count) {
+                if (block > blocks.size()) {
+                    return false;
+                }
+                if (block == blocks.size()) {
+                    current = tail;
+                    count = tailSize;
+                } else {
+                    Block b = blocks.get(block);
+                    b.decode(buffer);
+                    current = buffer;
+                    count = b.count;
+                }
+                block++;
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public long nextLong() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current[index++];
+        }
+    }
+}
@@ -20,11 +20,11 @@ public class RedBlackTree<T extends Comparable<T>> {
     private static final boolean RED   = false;
     private static final boolean BLACK = true;
     public static class RBTreeNode<T extends Comparable<T>> {
-      private boolean color;
-      private T key;
-      private RBTreeNode<T> left;
-      private RBTreeNode<T> right;
-      private RBTreeNode<T> parent;
+      boolean color;
+      T key;
+      RBTreeNode<T> left;
+      RBTreeNode<T> right;
+      RBTreeNode<T> parent;
 
         public RBTreeNode(boolean color, T key, RBTreeNode<T> left, RBTreeNode<T> right, RBTreeNode<T> parent) {
             this.color = color;
@@ -35,6 +35,13 @@ public class RedBlackTree<T extends Comparable<T>> {
         }
     }
 
+    /**
+     * 根节点，测试里用来检查红黑树的性质
+     */
+    RBTreeNode<T> getRoot() {
+        return root;
+    }
+
     /**
      * 插入一条数据
      * @param key
@@ -133,22 +140,25 @@ public class RedBlackTree<T extends Comparable<T>> {
        if(root==null)
        {
            this.root=node;
+           setBlack(node);
            return;
        }
 
-       RBTreeNode temp=root;
-       //找到对应的挂载节点
-       while(temp!=null)
+       RBTreeNode x=root;
+       RBTreeNode temp=null;
+       //找到对应的挂载节点，temp是最后一个不为空的节点
+       while(x!=null)
        {
-           int cmp=temp.key.compareTo(node.key);
+           temp=x;
+           int cmp=x.key.compareTo(node.key);
 
            if(cmp>0)//如果大于0 ，通过左节点去比较
            {
-             temp=temp.left;
+             x=x.left;
            }
            else
            {
-               temp=temp.right;
+               x=x.right;
            }
        }
 
@@ -0,0 +1,123 @@
+package com.kerns.structure.tree;
+
+/**
+ * 创建{@link BPlugsTree2}的配置：节点大小、分裂方式和布隆过滤器，创建之后不能修改
+ * 节点大小可以直接指定阶数，也可以按照目标字节数换算，比如一个缓存行或者一个页
+ * <p>
+ * 使用方式：
+ * <pre>
+ * TreeConfig config = TreeConfig.ofNodeBytes(TreeConfig.PAGE_BYTES, TreeConfig.REFERENCE_BYTES)
+ *         .withSplitPolicy(TreeConfig.SplitPolicy.APPEND);
+ * BPlugsTree2&lt;Long, String&gt; tree = new BPlugsTree2&lt;&gt;(config);
+ * </pre>
+ */
+public final class TreeConfig {
+
+    public static final int CACHE_LINE_BYTES = 64;
+
+    public static final int PAGE_BYTES = 4096;
+
+    /**
+     * 开启压缩指针的时候一个引用占4个字节，堆超过32G关闭压缩指针之后是8个字节
+     */
+    public static final int REFERENCE_BYTES = 4;
+
+    public enum SplitPolicy {
+        /**
+         * 从中间分裂，两边各一半
+         */
+        HALF,
+        /**
+         * 插入到最右边叶子节点的末尾的时候，原节点保持装满，新数据放到新的最右边节点，往上的非叶子节点同样只分出最后一个关键字；
+         * 其他位置还是从中间分裂。key单调递增的时候节点接近装满，节点个数大约是HALF的一半
+         */
+        APPEND
+    }
+
+    private final int order;
+
+    private final SplitPolicy splitPolicy;
+    /**
+     * 布隆过滤器的误判率，0表示不使用
+     */
+    private final double bloomFilterFpp;
+
+    private TreeConfig(int order, SplitPolicy splitPolicy, double bloomFilterFpp) {
+        if (order < 3) {
+            throw new IllegalArgumentException("m must be greater than 2");
+        }
+        if (splitPolicy == null) {
+            throw new NullPointerException("splitPolicy");
+        }
+        this.order = order;
+        this.splitPolicy = splitPolicy;
+        this.bloomFilterFpp = bloomFilterFpp;
+    }
+
+    /**
+     * 直接指定阶数，从中间分裂
+     *
+     * @param m
+     * @return
+     */
+    public static TreeConfig ofOrder(int m) {
+        return new TreeConfig(m, SplitPolicy.HALF, 0);
+    }
+
+    /**
+     * 按照节点的目标字节数换算阶数，查找的时候二分访问的是节点的keys数组，
+     * BPlugsTree2的key是引用，entryBytes传REFERENCE_BYTES；定长序列化的key传{@link FixedCodec#width()}
+     *
+     * @param nodeBytes  节点的目标字节数，比如CACHE_LINE_BYTES、PAGE_BYTES
+     * @param entryBytes 每个key占用的字节数
+     * @return
+     * @throws IllegalArgumentException 换算出来的阶数小于3
+     */
+    public static TreeConfig ofNodeBytes(int nodeBytes, int entryBytes) {
+        if (entryBytes <= 0) {
+            throw new IllegalArgumentException("entryBytes must be positive");
+        }
+        return new TreeConfig(nodeBytes / entryBytes, SplitPolicy.HALF, 0);
+    }
+
+    public TreeConfig withSplitPolicy(SplitPolicy splitPolicy) {
+        return new TreeConfig(order, splitPolicy, bloomFilterFpp);
+    }
+
+    /**
+     * 给整棵树和每个叶子节点各建一个布隆过滤器，get的时候全局过滤器判断不存在就不用往下查找，
+     * 叶子节点的过滤器判断不存在就不用在节点里二分查找。适合大量查找不存在的key的场景，
+     * 每次插入需要多算一次hash，每个叶子节点多占一个按照m-1个key计算大小的位数组，大小可以通过{@link TreeMetrics}查看。
+     * key的hashCode需要和compareTo一致
+     *
+     * @param fpp 误判率(0,1)，比如0.01
+     * @return
+     */
+    public TreeConfig withBloomFilter(double fpp) {
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("fpp must be in (0, 1)");
+        }
+        return new TreeConfig(order, splitPolicy, fpp);
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public SplitPolicy getSplitPolicy() {
+        return splitPolicy;
+    }
+
+    /**
+     * @return 布隆过滤器的误判率，没有开启的时候是0
+     */
+    public double getBloomFilterFpp() {
+        return bloomFilterFpp;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeConfig{order=" + order + ", splitPolicy=" + splitPolicy + ", bloomFilterFpp=" + bloomFilterFpp
+                + '}';
+    }
+}
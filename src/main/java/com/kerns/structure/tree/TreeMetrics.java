@@ -0,0 +1,410 @@
+package com.kerns.structure.tree;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 树的运行指标，创建树的时候传入，不传的时候树里面只有一次null判断，没有其他开销
+ * <p>
+ * 计数都用LongAdder，多个线程同时更新的时候分散到不同的cell上，不会争抢同一个缓存行。
+ * 延迟直方图每个2的幂次分成4个桶，一共248个桶，可以记录到Long.MAX_VALUE纳秒。
+ * 一个TreeMetrics只能给一棵树使用，高度和节点个数是这棵树的。
+ * <p>
+ * 使用方式：
+ * <pre>
+ * TreeMetrics metrics = new TreeMetrics();
+ * BPlugsTree2&lt;Long, String&gt; tree = new BPlugsTree2&lt;&gt;(64, null, metrics);
+ * metrics.register("orders");
+ * </pre>
+ */
+public class TreeMetrics implements TreeMetricsMXBean {
+
+    private final AtomicBoolean attached = new AtomicBoolean();
+
+    private final LongAdder leafSplits = new LongAdder();
+
+    private final LongAdder innerSplits = new LongAdder();
+
+    private final LongAdder leafMerges = new LongAdder();
+
+    private final LongAdder innerMerges = new LongAdder();
+
+    private final LongAdder borrowsFromLeft = new LongAdder();
+
+    private final LongAdder borrowsFromRight = new LongAdder();
+
+    private final LongAdder keyComparisons = new LongAdder();
+
+    private final LongAdder nodes = new LongAdder();
+
+    private final LongAdder leaves = new LongAdder();
+
+    private final LongAdder bloomFilterNegatives = new LongAdder();
+
+    private final LongAdder bloomFilterFalsePositives = new LongAdder();
+
+    private volatile long leafFilterBytes;
+
+    private volatile long globalFilterBytes;
+
+    private volatile int height;
+
+    private final Histogram getLatency = new Histogram();
+
+    private final Histogram insertLatency = new Histogram();
+
+    private final Histogram deleteLatency = new Histogram();
+
+    private ObjectName objectName;
+
+    /**
+     * 注册到平台的MBeanServer，名字是com.kerns.structure.tree:type=TreeMetrics,name=name
+     *
+     * @param name
+     * @return
+     * @throws IllegalStateException 名字已经被使用的时候
+     */
+    public synchronized ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.kerns.structure.tree:type=TreeMetrics,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register tree metrics " + name, e);
+        }
+    }
+
+    /**
+     * 从MBeanServer中注销，没有注册的时候什么都不做
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to unregister tree metrics " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getLeafSplits() {
+        return leafSplits.sum();
+    }
+
+    @Override
+    public long getInnerSplits() {
+        return innerSplits.sum();
+    }
+
+    @Override
+    public long getLeafMerges() {
+        return leafMerges.sum();
+    }
+
+    @Override
+    public long getInnerMerges() {
+        return innerMerges.sum();
+    }
+
+    @Override
+    public long getBorrowsFromLeft() {
+        return borrowsFromLeft.sum();
+    }
+
+    @Override
+    public long getBorrowsFromRight() {
+        return borrowsFromRight.sum();
+    }
+
+    @Override
+    public long getLookups() {
+        return getLatency.count.sum();
+    }
+
+    @Override
+    public long getKeyComparisons() {
+        return keyComparisons.sum();
+    }
+
+    @Override
+    public double getComparisonsPerLookup() {
+        long lookups = getLookups();
+        return lookups == 0 ? 0 : (double) getKeyComparisons() / lookups;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getNodeCount() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getLeafCount() {
+        return leaves.sum();
+    }
+
+    @Override
+    public long getBloomFilterBytes() {
+        return getLeafCount() * leafFilterBytes + globalFilterBytes;
+    }
+
+    @Override
+    public long getBloomFilterNegatives() {
+        return bloomFilterNegatives.sum();
+    }
+
+    @Override
+    public long getBloomFilterFalsePositives() {
+        return bloomFilterFalsePositives.sum();
+    }
+
+    @Override
+    public Latency getGetLatency() {
+        return getLatency.snapshot();
+    }
+
+    @Override
+    public Latency getInsertLatency() {
+        return insertLatency.snapshot();
+    }
+
+    @Override
+    public Latency getDeleteLatency() {
+        return deleteLatency.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        leafSplits.reset();
+        innerSplits.reset();
+        leafMerges.reset();
+        innerMerges.reset();
+        borrowsFromLeft.reset();
+        borrowsFromRight.reset();
+        keyComparisons.reset();
+        bloomFilterNegatives.reset();
+        bloomFilterFalsePositives.reset();
+        getLatency.reset();
+        insertLatency.reset();
+        deleteLatency.reset();
+    }
+
+    /**
+     * 树创建的时候调用，这时候树只有一个空的叶子节点
+     *
+     * @throws IllegalArgumentException 已经被其他树使用
+     */
+    void attach() {
+        if (!attached.compareAndSet(false, true)) {
+            throw new IllegalArgumentException("metrics is already used by another tree");
+        }
+        nodes.increment();
+        leaves.increment();
+        height = 1;
+    }
+
+    void leafSplit() {
+        leafSplits.increment();
+        nodes.increment();
+        leaves.increment();
+    }
+
+    void innerSplit() {
+        innerSplits.increment();
+        nodes.increment();
+    }
+
+    void leafMerge() {
+        leafMerges.increment();
+        nodes.decrement();
+        leaves.decrement();
+    }
+
+    void innerMerge() {
+        innerMerges.increment();
+        nodes.decrement();
+    }
+
+    void borrowFromLeft() {
+        borrowsFromLeft.increment();
+    }
+
+    void borrowFromRight() {
+        borrowsFromRight.increment();
+    }
+
+    /**
+     * 根节点分裂，产生了新的根节点
+     */
+    void grow() {
+        nodes.increment();
+        height++;
+    }
+
+    /**
+     * 根节点只剩一个子节点，被去掉了
+     */
+    void shrink() {
+        nodes.decrement();
+        height--;
+    }
+
+    /**
+     * 范围删除或者整理直接去掉了count个节点，其中有leafCount个叶子节点，树的高度降低了levels
+     */
+    void dropNodes(int count, int leafCount, int levels) {
+        nodes.add(-count);
+        leaves.add(-leafCount);
+        height -= levels;
+    }
+
+    /**
+     * 布隆过滤器的大小，每个叶子节点的过滤器一样大，全局过滤器重新构建之后会变
+     */
+    void bloomFilter(long leafFilterBytes, long globalFilterBytes) {
+        this.leafFilterBytes = leafFilterBytes;
+        this.globalFilterBytes = globalFilterBytes;
+    }
+
+    void bloomFilterNegative() {
+        bloomFilterNegatives.increment();
+    }
+
+    void bloomFilterFalsePositive() {
+        bloomFilterFalsePositives.increment();
+    }
+
+    void lookup(int comparisons, long nanos) {
+        keyComparisons.add(comparisons);
+        getLatency.record(nanos);
+    }
+
+    void insert(long nanos) {
+        insertLatency.record(nanos);
+    }
+
+    void delete(long nanos) {
+        deleteLatency.record(nanos);
+    }
+
+    /**
+     * 包装查找的key，记录compareTo的次数，树的查找都是用查找的key去比较节点里的key
+     * 不是线程安全的，每次查找新建一个，并发读的时候互不影响
+     */
+    static final class CountingKey implements Comparable {
+
+        final Comparable key;
+
+        int comparisons;
+
+        CountingKey(Comparable key) {
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Object o) {
+            comparisons++;
+            return key.compareTo(o);
+        }
+    }
+
+    /**
+     * 对数分桶的延迟直方图，小于4纳秒每个值一个桶，之后每个2的幂次分成4个桶
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = 248;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder sum = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets[bucket(nanos)].increment();
+            count.increment();
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+
+        Latency snapshot() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            long max = this.max.get();
+            return new Latency(total, total == 0 ? 0 : sum.sum() / total, percentile(counts, total, 0.5, max),
+                    percentile(counts, total, 0.99, max), percentile(counts, total, 0.999, max), max);
+        }
+
+        private static long percentile(long[] counts, long total, double q, long max) {
+            long target = (long) Math.ceil(total * q);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(upper(i), max);
+                }
+            }
+            return 0;
+        }
+
+        static int bucket(long value) {
+            if (value < 4) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 2)) & 3;
+            return ((exponent - 1) << 2) + sub;
+        }
+
+        /**
+         * 桶里最大的值
+         */
+        static long upper(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int exponent = (bucket >> 2) + 1;
+            long lower = (4L + (bucket & 3)) << (exponent - 2);
+            return lower + (1L << (exponent - 2)) - 1;
+        }
+    }
+}
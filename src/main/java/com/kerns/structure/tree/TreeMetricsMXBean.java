@@ -0,0 +1,148 @@
+package com.kerns.structure.tree;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * 树的运行指标，通过JMX查看，参考{@link TreeMetrics}
+ */
+public interface TreeMetricsMXBean {
+
+    long getLeafSplits();
+
+    long getInnerSplits();
+
+    long getLeafMerges();
+
+    long getInnerMerges();
+
+    /**
+     * 节点数据不足的时候从左边兄弟节点借数据的次数，包括叶子节点和非叶子节点
+     *
+     * @return
+     */
+    long getBorrowsFromLeft();
+
+    long getBorrowsFromRight();
+
+    /**
+     * 查找的次数，只统计get
+     *
+     * @return
+     */
+    long getLookups();
+
+    /**
+     * 查找过程中key比较的总次数
+     *
+     * @return
+     */
+    long getKeyComparisons();
+
+    /**
+     * 平均每次查找的比较次数
+     *
+     * @return
+     */
+    double getComparisonsPerLookup();
+
+    /**
+     * 树的高度，只有一个叶子节点的时候是1
+     *
+     * @return
+     */
+    int getHeight();
+
+    long getNodeCount();
+
+    long getLeafCount();
+
+    /**
+     * 布隆过滤器占用的字节数，叶子节点的过滤器加上全局过滤器，没有开启的时候是0
+     *
+     * @return
+     */
+    long getBloomFilterBytes();
+
+    /**
+     * 被布隆过滤器判断不存在，没有查找叶子节点就返回的get次数
+     *
+     * @return
+     */
+    long getBloomFilterNegatives();
+
+    /**
+     * 布隆过滤器判断可能存在，查找之后发现不存在的get次数
+     *
+     * @return
+     */
+    long getBloomFilterFalsePositives();
+
+    Latency getGetLatency();
+
+    Latency getInsertLatency();
+
+    Latency getDeleteLatency();
+
+    /**
+     * 清空计数和延迟直方图，高度和节点个数不受影响
+     */
+    void reset();
+
+    /**
+     * 延迟的快照，单位纳秒，分位数是直方图桶的上限，误差在25%以内
+     */
+    class Latency {
+
+        private final long count;
+
+        private final long mean;
+
+        private final long p50;
+
+        private final long p99;
+
+        private final long p999;
+
+        private final long max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+        public Latency(long count, long mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + mean + "ns, p50=" + p50 + "ns, p99=" + p99 + "ns, p999=" + p999
+                    + "ns, max=" + max + "ns";
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package com.kerns.structure.tree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * {@link BPlugsTree2}的只读快照，数据按列存放：排好序的key块、value块和稀疏索引
+ * 打开的时候只映射文件，校验文件头和稀疏索引，不反序列化数据，get和scan直接在映射的内存上二分查找，
+ * 启动时间和数据量无关，需要修改的时候再通过toTree()转换成BPlugsTree2
+ * <p>
+ * 文件格式：
+ * 0  magic
+ * 4  key的宽度
+ * 8  value的宽度
+ * 12 稀疏索引的间隔，每隔这么多条数据记录一个key，2的幂
+ * 16 数据条数
+ * 20 key块的crc
+ * 24 value块的crc
+ * 28 稀疏索引的crc
+ * 32 key块，数据条数 * key的宽度
+ * value块，数据条数 * value的宽度
+ * 稀疏索引，每一段第一条数据的key
+ * <p>
+ * 文件按照块(chunk)映射，超过2G也可以打开，每个块包含2的幂条数据，稀疏索引的一段不会跨块。
+ * key块和value块只有调用verify()的时候才校验，几个G的文件打开的时候不需要全部读一遍。
+ * 读取都使用绝对位置，可以多个线程同时读。close()之后再读抛出IllegalStateException。
+ */
+public class TreeSnapshot<K extends Comparable, V> implements Closeable {
+
+    private static final int MAGIC = 0x42505333;
+
+    private static final int HEADER = 32;
+
+    /**
+     * 稀疏索引的间隔，long类型的key一段是1K
+     */
+    static final int BLOCK_SIZE = 128;
+
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final Path file;
+
+    private final FixedCodec<K> keyCodec;
+
+    private final FixedCodec<V> valueCodec;
+
+    private final int size;
+
+    private final int blockSize;
+
+    private final int blockCount;
+
+    private final int chunkShift;
+
+    private final int chunkMask;
+
+    private final MappedByteBuffer header;
+
+    private final MappedByteBuffer index;
+
+    private final List<MappedByteBuffer> keyChunks;
+
+    private final List<MappedByteBuffer> valueChunks;
+
+    private volatile boolean closed;
+
+    private TreeSnapshot(Path file, FixedCodec<K> keyCodec, FixedCodec<V> valueCodec, MappedByteBuffer header,
+                         MappedByteBuffer index, List<MappedByteBuffer> keyChunks,
+                         List<MappedByteBuffer> valueChunks, int entriesPerChunk) {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.header = header;
+        this.size = header.getInt(16);
+        this.blockSize = header.getInt(12);
+        this.blockCount = index.limit() / keyCodec.width();
+        this.index = index;
+        this.keyChunks = keyChunks;
+        this.valueChunks = valueChunks;
+        this.chunkShift = Integer.numberOfTrailingZeros(entriesPerChunk);
+        this.chunkMask = entriesPerChunk - 1;
+    }
+
+    /**
+     * 沿着游标的顺序写快照，key、value和稀疏索引各自有一个缓冲区，写到文件里不同的位置
+     * 先写临时文件，fsync之后再重命名，重命名之后fsync所在的目录
+     *
+     * @param file
+     * @param cursor 从小到大遍历全部数据的游标
+     * @param size   数据条数
+     * @throws IOException
+     */
+    static <K extends Comparable, V> void write(Path file, BPlugsTree2.Cursor<K, V> cursor, int size,
+                                                FixedCodec<K> keyCodec, FixedCodec<V> valueCodec) throws IOException {
+        int keyWidth = keyCodec.width();
+        int valueWidth = valueCodec.width();
+        long valueStart = HEADER + (long) size * keyWidth;
+        long indexStart = valueStart + (long) size * valueWidth;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Column keys = new Column(channel, HEADER, keyWidth);
+            Column values = new Column(channel, valueStart, valueWidth);
+            Column index = new Column(channel, indexStart, keyWidth);
+            int i = 0;
+            while (cursor.hasNext()) {
+                K k = cursor.next();
+                keyCodec.write(keys.buffer, keys.next(), k);
+                valueCodec.write(values.buffer, values.next(), cursor.getValue());
+                if ((i++ & (BLOCK_SIZE - 1)) == 0) {
+                    keyCodec.write(index.buffer, index.next(), k);
+                }
+            }
+            if (i != size) {
+                throw new IllegalStateException("expected " + size + " entries but got " + i);
+            }
+            keys.flush();
+            values.flush();
+            index.flush();
+            ByteBuffer head = ByteBuffer.allocate(HEADER);
+            head.putInt(MAGIC).putInt(keyWidth).putInt(valueWidth).putInt(BLOCK_SIZE).putInt(size)
+                    .putInt((int) keys.crc.getValue()).putInt((int) values.crc.getValue())
+                    .putInt((int) index.crc.getValue());
+            head.flip();
+            long position = 0;
+            while (head.hasRemaining()) {
+                position += channel.write(head, position);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        //重命名记录在目录里，目录不fsync的话宕机之后可能还是旧的文件
+        try (FileChannel dir = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    /**
+     * 打开快照文件
+     *
+     * @param file
+     * @param keyCodec   必须和写快照的时候一样
+     * @param valueCodec 必须和写快照的时候一样
+     * @return
+     * @throws IOException 文件头或者稀疏索引损坏的时候
+     */
+    public static <K extends Comparable, V> TreeSnapshot<K, V> open(Path file, FixedCodec<K> keyCodec,
+                                                                    FixedCodec<V> valueCodec) throws IOException {
+        return open(file, keyCodec, valueCodec, CHUNK_BYTES);
+    }
+
+    static <K extends Comparable, V> TreeSnapshot<K, V> open(Path file, FixedCodec<K> keyCodec,
+                                                             FixedCodec<V> valueCodec, int chunkBytes) throws IOException {
+        int keyWidth = keyCodec.width();
+        int valueWidth = valueCodec.width();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER) {
+                throw new IOException("corrupted snapshot: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            int blockSize = header.getInt(12);
+            int size = header.getInt(16);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != keyWidth || header.getInt(8) != valueWidth
+                    || Integer.bitCount(blockSize) != 1 || size < 0) {
+                throw new IOException("corrupted snapshot: " + file);
+            }
+            long indexStart = HEADER + (long) size * (keyWidth + valueWidth);
+            long indexLength = ((size + (long) blockSize - 1) / blockSize) * keyWidth;
+            if (length != indexStart + indexLength || indexLength > Integer.MAX_VALUE) {
+                throw new IOException("corrupted snapshot: " + file);
+            }
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexStart, indexLength);
+            CRC32 crc = new CRC32();
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != header.getInt(28)) {
+                throw new IOException("snapshot index checksum mismatch: " + file);
+            }
+            int entriesPerChunk = Math.max(blockSize,
+                    Integer.highestOneBit(Math.max(1, chunkBytes / Math.max(keyWidth, valueWidth))));
+            List<MappedByteBuffer> keyChunks = map(channel, HEADER, size, keyWidth, entriesPerChunk);
+            List<MappedByteBuffer> valueChunks = map(channel, HEADER + (long) size * keyWidth, size, valueWidth,
+                    entriesPerChunk);
+            return new TreeSnapshot<>(file, keyCodec, valueCodec, header, index, keyChunks, valueChunks,
+                    entriesPerChunk);
+        }
+    }
+
+    private static List<MappedByteBuffer> map(FileChannel channel, long start, int size, int width,
+                                              int entriesPerChunk) throws IOException {
+        List<MappedByteBuffer> chunks = new ArrayList<>();
+        for (long i = 0; i < size; i += entriesPerChunk) {
+            long entries = Math.min(entriesPerChunk, size - i);
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start + i * width, entries * width));
+        }
+        return chunks;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 先在稀疏索引上二分找到所在的段，再在段内二分，只会访问稀疏索引和一段key
+     *
+     * @param k
+     * @return
+     */
+    public V get(K k) {
+        ensureOpen();
+        int i = search(k);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    /**
+     * 范围遍历，边界为null的时候表示没有边界，value在调用getValue()的时候才读取
+     *
+     * @param from
+     * @param fromInclusive
+     * @param to
+     * @param toInclusive
+     * @return
+     */
+    public Cursor<K, V> scan(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        ensureOpen();
+        int start = 0;
+        if (from != null) {
+            int i = search(from);
+            start = i < 0 ? ~i : fromInclusive ? i : i + 1;
+        }
+        int end = size;
+        if (to != null) {
+            int i = search(to);
+            end = i < 0 ? ~i : toInclusive ? i + 1 : i;
+        }
+        return new Cursor<>(this, start, Math.max(start, end));
+    }
+
+    /**
+     * 转换成可以修改的树，按顺序读一遍数据批量构建，不走insert
+     *
+     * @param m 阶数
+     * @return
+     */
+    public BPlugsTree2<K, V> toTree(int m) {
+        Cursor<K, V> cursor = scan(null, true, null, true);
+        return BPlugsTree2.bulkLoad(m, new Iterator<Map.Entry<K, V>>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                K k = cursor.next();
+                return new AbstractMap.SimpleImmutableEntry<>(k, cursor.getValue());
+            }
+        }, 1);
+    }
+
+    /**
+     * 校验key块和value块，需要把整个文件读一遍
+     *
+     * @throws IOException 校验失败的时候
+     */
+    public void verify() throws IOException {
+        ensureOpen();
+        if (checksum(keyChunks) != header.getInt(20) || checksum(valueChunks) != header.getInt(24)) {
+            throw new IOException("snapshot checksum mismatch: " + file);
+        }
+    }
+
+    /**
+     * 映射的内存在buffer被回收的时候才释放
+     */
+    @Override
+    public void close() {
+        closed = true;
+        keyChunks.clear();
+        valueChunks.clear();
+    }
+
+    private static int checksum(List<MappedByteBuffer> chunks) {
+        CRC32 crc = new CRC32();
+        for (MappedByteBuffer chunk : chunks) {
+            crc.update(chunk.duplicate());
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 找到的时候返回下标，否则返回~插入位置
+     */
+    private int search(K k) {
+        int keyWidth = keyCodec.width();
+        //稀疏索引里面最后一个不大于k的key
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = keyCodec.compare(k, index, mid * keyWidth);
+            if (compare < 0) {
+                high = mid - 1;
+            } else if (compare > 0) {
+                low = mid + 1;
+            } else {
+                return mid * blockSize;
+            }
+        }
+        if (high < 0) {
+            return ~0;
+        }
+        //段的第一个key已经比较过了
+        int from = high * blockSize;
+        ByteBuffer chunk = keyChunks.get(from >>> chunkShift);
+        low = from + 1;
+        high = Math.min(size, from + blockSize) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = keyCodec.compare(k, chunk, (mid & chunkMask) * keyWidth);
+            if (compare < 0) {
+                high = mid - 1;
+            } else if (compare > 0) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return ~low;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("snapshot is closed: " + file);
+        }
+    }
+
+    private K keyAt(int i) {
+        ensureOpen();
+        return keyCodec.read(keyChunks.get(i >>> chunkShift), (i & chunkMask) * keyCodec.width());
+    }
+
+    private V valueAt(int i) {
+        return valueCodec.read(valueChunks.get(i >>> chunkShift), (i & chunkMask) * valueCodec.width());
+    }
+
+    /**
+     * 快照上的游标，和{@link BPlugsTree2.Cursor}用法一样
+     */
+    public static class Cursor<K extends Comparable, V> implements Iterator<K> {
+
+        private final TreeSnapshot<K, V> snapshot;
+        /**
+         * 下一条数据的下标
+         */
+        private int index;
+
+        private final int end;
+
+        private K key;
+
+        Cursor(TreeSnapshot<K, V> snapshot, int index, int end) {
+            this.snapshot = snapshot;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < end;
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            key = snapshot.keyAt(index++);
+            return key;
+        }
+
+        /**
+         * 最近一次next()返回的key
+         *
+         * @return
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * 最近一次next()返回的key对应的value
+         *
+         * @return
+         */
+        public V getValue() {
+            if (key == null) {
+                return null;
+            }
+            snapshot.ensureOpen();
+            return snapshot.valueAt(index - 1);
+        }
+    }
+
+    /**
+     * 写快照的时候一列数据的缓冲区，写满之后写到文件里这一列的位置
+     */
+    private static final class Column {
+
+        private final FileChannel channel;
+
+        private final int width;
+
+        private final ByteBuffer buffer;
+
+        private final CRC32 crc = new CRC32();
+
+        private long position;
+
+        Column(FileChannel channel, long position, int width) {
+            this.channel = channel;
+            this.position = position;
+            this.width = width;
+            this.buffer = ByteBuffer.allocate(width * Math.max(1, (64 << 10) / width));
+        }
+
+        /**
+         * 在缓冲区里面占用一条数据的位置
+         *
+         * @return 数据在缓冲区里面的位置
+         * @throws IOException
+         */
+        int next() throws IOException {
+            if (buffer.remaining() < width) {
+                flush();
+            }
+            int offset = buffer.position();
+            buffer.position(offset + width);
+            return offset;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.kerns.structure.tree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的预写日志，每条记录：长度(4) crc32(4) 内容
+ * <p>
+ * append只把记录放到内存的缓冲区并返回序号，由后台线程把缓冲区一次写入文件并fsync(组提交)，
+ * sync(序号)等待这条记录落盘。多个线程并发写的时候一次fsync可以提交很多条记录。
+ * 后台线程拿到第一条记录之后最多等待maxLatency，或者攒够maxBatch条记录就开始写。
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final int RECORD_HEADER = 8;
+
+    private final FileChannel channel;
+
+    private final int maxBatch;
+
+    private final long maxLatencyNanos;
+
+    private final Thread flusher;
+
+    private ByteBuffer pending = ByteBuffer.allocate(64 << 10);
+
+    private ByteBuffer writing = ByteBuffer.allocate(64 << 10);
+
+    private int pendingCount;
+    /**
+     * 已经追加的最后一条记录的序号
+     */
+    private long appendedSeq;
+    /**
+     * 已经落盘的最后一条记录的序号
+     */
+    private long durableSeq;
+
+    private IOException failure;
+
+    private boolean closed;
+
+    private final CRC32 crc = new CRC32();
+
+    private WriteAheadLog(FileChannel channel, int maxBatch, long maxLatencyNanos) {
+        this.channel = channel;
+        this.maxBatch = maxBatch;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * 打开日志，先把已经落盘的完整记录交给replay，最后一条没写完或者校验失败的记录会被截掉
+     *
+     * @param file
+     * @param maxBatch   一次组提交最多等待的记录数
+     * @param maxLatency 一次组提交最多等待的时间
+     * @param unit
+     * @param replay     每条记录的内容，position到limit之间
+     * @return
+     * @throws IOException
+     */
+    public static WriteAheadLog open(Path file, int maxBatch, long maxLatency, TimeUnit unit,
+                                     Consumer<ByteBuffer> replay) throws IOException {
+        if (maxBatch < 1 || maxLatency < 0) {
+            throw new IllegalArgumentException("maxBatch must be positive and maxLatency not negative");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long end = replay(channel, replay);
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        WriteAheadLog log = new WriteAheadLog(channel, maxBatch, unit.toNanos(maxLatency));
+        log.flusher.start();
+        return log;
+    }
+
+    /**
+     * 追加一条记录，只写到内存，返回之后不保证落盘
+     *
+     * @param record position到limit之间的内容
+     * @return 记录的序号，交给sync等待落盘
+     */
+    public synchronized long append(ByteBuffer record) {
+        checkOpen();
+        int length = record.remaining();
+        if (pending.remaining() < RECORD_HEADER + length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + RECORD_HEADER + length));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        crc.reset();
+        crc.update(record.duplicate());
+        pending.putInt(length);
+        pending.putInt((int) crc.getValue());
+        pending.put(record);
+        pendingCount++;
+        if (pendingCount == 1 || pendingCount >= maxBatch) {
+            notifyAll();
+        }
+        return ++appendedSeq;
+    }
+
+    /**
+     * 等待seq之前的记录全部落盘
+     *
+     * @param seq
+     */
+    public synchronized void sync(long seq) {
+        boolean interrupted = false;
+        while (durableSeq < seq) {
+            if (failure != null) {
+                throw new UncheckedIOException("write-ahead log failed", failure);
+            }
+            if (closed && durableSeq < seq && !flusher.isAlive()) {
+                throw new IllegalStateException("write-ahead log closed");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 等待已经追加的记录全部落盘
+     */
+    public void sync() {
+        long seq;
+        synchronized (this) {
+            seq = appendedSeq;
+        }
+        sync(seq);
+    }
+
+    /**
+     * 清空日志，调用之前需要保证日志里的记录已经不再需要(已经写到检查点)，并且没有并发的append
+     *
+     * @throws IOException
+     */
+    public synchronized void truncate() throws IOException {
+        sync();
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+    }
+
+    public synchronized long getDurableSeq() {
+        return durableSeq;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("write-ahead log closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("write-ahead log failed", failure);
+        }
+    }
+
+    private void flushLoop() {
+        for (; ; ) {
+            long seq;
+            synchronized (this) {
+                while (pendingCount == 0 && !closed) {
+                    waitUninterruptibly(0);
+                }
+                if (pendingCount == 0) {
+                    return;
+                }
+                //等更多的记录一起提交
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                long remaining;
+                while (pendingCount < maxBatch && !closed && (remaining = deadline - System.nanoTime()) > 0) {
+                    waitUninterruptibly(remaining);
+                }
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                pendingCount = 0;
+                seq = appendedSeq;
+            }
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                writing.clear();
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durableSeq = seq;
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitUninterruptibly(long nanos) {
+        try {
+            if (nanos == 0) {
+                wait();
+            } else {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+            }
+        } catch (InterruptedException e) {
+            //flusher只在close的时候退出
+        }
+    }
+
+    private static long replay(FileChannel channel, Consumer<ByteBuffer> replay) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (size - position >= RECORD_HEADER) {
+            int length = data.getInt(position);
+            if (length < 0 || length > size - position - RECORD_HEADER) {
+                break;
+            }
+            ByteBuffer record = data.duplicate();
+            record.position(position + RECORD_HEADER).limit(position + RECORD_HEADER + length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != data.getInt(position + 4)) {
+                break;
+            }
+            replay.accept(record.slice());
+            position += RECORD_HEADER + length;
+        }
+        return position;
+    }
+}
@@ -1,9 +1,20 @@
 package com.kerns.structure.tree;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -15,7 +26,11 @@ class BPlugsTree2Test {
         for(int i=1;i<=20;i++){
             tree.insert(i,"test "+i);
         }
-        Assertions.assertEquals(100,tree.size());
+        Assertions.assertEquals(20,tree.size());
+        for(int i=1;i<=20;i++){
+            Assertions.assertEquals("test "+i,tree.get(i));
+        }
+        Assertions.assertNull(tree.get(21));
     }
 
     @Test
@@ -31,10 +46,829 @@ class BPlugsTree2Test {
         Assertions.assertEquals(10,tree.size());
     }
 
+    /**
+     * 随机插入删除，和TreeMap的结果对比
+     */
+    @Test
+    public void testRandom(){
+        Random random=new Random(7);
+        for(int m=3;m<=8;m++){
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<5000;i++){
+                int k=random.nextInt(500);
+                if(random.nextInt(3)==0){
+                    tree.delete(k);
+                    expect.remove(k);
+                }else{
+                    tree.insert(k,i);
+                    expect.put(k,i);
+                }
+            }
+            Assertions.assertEquals(expect.size(),tree.size());
+            for(int k=0;k<500;k++){
+                Assertions.assertEquals(expect.get(k),tree.get(k));
+            }
+        }
+    }
+
+    @Test
+    public void testScan(){
+        BPlugsTree2<Integer,String> tree=new BPlugsTree2<>(4);
+        for(int i=0;i<100;i+=2){
+            tree.insert(i,"test "+i);
+        }
+        BPlugsTree2.Cursor<Integer,String> cursor=tree.scan(10,false,21,true);
+        List<Integer> keys=new ArrayList<>();
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+            Assertions.assertEquals("test "+cursor.getKey(),cursor.getValue());
+        }
+        Assertions.assertEquals(Arrays.asList(12,14,16,18,20),keys);
+
+        keys.clear();
+        cursor=tree.scan(null,true,null,true);
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+        }
+        Assertions.assertEquals(50,keys.size());
+        Assertions.assertEquals(Integer.valueOf(98),keys.get(49));
+        Assertions.assertFalse(tree.scan(99,true,null,true).hasNext());
+    }
+
+    @Test
+    public void testDescendingScan(){
+        BPlugsTree2<Integer,String> tree=new BPlugsTree2<>(4);
+        for(int i=0;i<100;i+=2){
+            tree.insert(i,"test "+i);
+        }
+        BPlugsTree2.Cursor<Integer,String> cursor=tree.descendingScan(11,true,20,false);
+        List<Integer> keys=new ArrayList<>();
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+        }
+        Assertions.assertEquals(Arrays.asList(18,16,14,12),keys);
+
+        keys.clear();
+        cursor=tree.descendingScan(null,true,null,true);
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+        }
+        Assertions.assertEquals(50,keys.size());
+        Assertions.assertEquals(Integer.valueOf(0),keys.get(49));
+        Assertions.assertFalse(tree.descendingScan(null,true,-1,true).hasNext());
+    }
+
+    @Test
+    public void testBulkLoad(){
+        for(int m=3;m<=8;m++){
+            for(double fillFactor:new double[]{1,0.7,0.1}){
+                for(int n:new int[]{0,1,2,7,1000}){
+                    TreeMap<Integer,Integer> expect=new TreeMap<>();
+                    for(int i=0;i<n;i++){
+                        expect.put(i*2,i);
+                    }
+                    BPlugsTree2<Integer,Integer> tree=BPlugsTree2.bulkLoad(m,expect.entrySet().iterator(),fillFactor);
+                    Assertions.assertEquals(n,tree.size());
+                    BPlugsTree2.Cursor<Integer,Integer> cursor=tree.scan(null,true,null,true);
+                    for(Integer k:expect.keySet()){
+                        Assertions.assertEquals(k,cursor.next());
+                        Assertions.assertEquals(expect.get(k),cursor.getValue());
+                    }
+                    Assertions.assertFalse(cursor.hasNext());
+                    //构建之后的树可以继续正常插入删除
+                    Random random=new Random(n);
+                    for(int i=0;i<2000;i++){
+                        int k=random.nextInt(2*n+10);
+                        if(random.nextBoolean()){
+                            tree.delete(k);
+                            expect.remove(k);
+                        }else{
+                            tree.insert(k,i);
+                            expect.put(k,i);
+                        }
+                    }
+                    Assertions.assertEquals(expect.size(),tree.size());
+                    for(int k=0;k<2*n+10;k++){
+                        Assertions.assertEquals(expect.get(k),tree.get(k));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulkLoadOutOfOrder(){
+        List<Map.Entry<Integer,String>> entries=new ArrayList<>();
+        entries.add(new AbstractMap.SimpleEntry<>(1,"test 1"));
+        entries.add(new AbstractMap.SimpleEntry<>(3,"test 3"));
+        entries.add(new AbstractMap.SimpleEntry<>(2,"test 2"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                ()->BPlugsTree2.bulkLoad(4,entries.iterator(),1));
+    }
+
+    @Test
+    public void testInsertAll(){
+        Random random=new Random(5);
+        for(int m=3;m<=9;m++){
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int round=0;round<20;round++){
+                List<Map.Entry<Integer,Integer>> batch=new ArrayList<>();
+                int batchSize=random.nextInt(300);
+                for(int i=0;i<batchSize;i++){
+                    int k=random.nextInt(3000);
+                    batch.add(new AbstractMap.SimpleEntry<>(k,round*1000+i));
+                    expect.put(k,round*1000+i);
+                }
+                tree.insertAll(batch);
+                for(int i=0;i<50;i++){
+                    int k=random.nextInt(3000);
+                    tree.delete(k);
+                    expect.remove(k);
+                }
+            }
+            Assertions.assertEquals(expect.size(),tree.size());
+            BPlugsTree2.Cursor<Integer,Integer> cursor=tree.scan(null,true,null,true);
+            for(Map.Entry<Integer,Integer> entry:expect.entrySet()){
+                Assertions.assertEquals(entry.getKey(),cursor.next());
+                Assertions.assertEquals(entry.getValue(),cursor.getValue());
+            }
+            Assertions.assertFalse(cursor.hasNext());
+            for(int k=0;k<3000;k++){
+                Assertions.assertEquals(expect.get(k),tree.get(k));
+            }
+        }
+    }
+
+    /**
+     * 每次插入、删除之后size都和实际的数据个数一致，覆盖和删除不存在的key不改变size
+     */
+    @Test
+    public void testSize(){
+        Random random=new Random(11);
+        for(int m=3;m<=8;m++){
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<500;i+=2){
+                expect.put(i,i);
+            }
+            BPlugsTree2<Integer,Integer> tree=BPlugsTree2.bulkLoad(m,expect.entrySet().iterator(),0.7);
+            Assertions.assertEquals(expect.size(),tree.size());
+            for(int i=0;i<5000;i++){
+                int k=random.nextInt(1000);
+                if(random.nextInt(3)==0){
+                    tree.delete(k);
+                    expect.remove(k);
+                }else{
+                    tree.insert(k,i);
+                    expect.put(k,i);
+                }
+                Assertions.assertEquals(expect.size(),tree.size());
+            }
+            for(int k=0;k<1000;k++){
+                tree.delete(k);
+            }
+            Assertions.assertEquals(0,tree.size());
+        }
+    }
+
+    @Test
+    public void testRankAndSelect(){
+        Random random=new Random(12);
+        for(int m=3;m<=9;m++){
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<4000;i++){
+                int k=random.nextInt(1500);
+                if(random.nextInt(3)==0){
+                    tree.delete(k);
+                    expect.remove(k);
+                }else{
+                    tree.insert(k,i);
+                    expect.put(k,i);
+                }
+            }
+            List<Integer> keys=new ArrayList<>(expect.keySet());
+            for(int i=0;i<keys.size();i++){
+                Map.Entry<Integer,Integer> entry=tree.select(i);
+                Assertions.assertEquals(keys.get(i),entry.getKey());
+                Assertions.assertEquals(expect.get(keys.get(i)),entry.getValue());
+            }
+            for(int k=-1;k<=1500;k++){
+                Assertions.assertEquals(expect.headMap(k).size(),tree.rank(k));
+            }
+            for(int i=0;i<200;i++){
+                int from=random.nextInt(1600)-50;
+                int to=from+random.nextInt(400);
+                boolean fromInclusive=random.nextBoolean();
+                boolean toInclusive=random.nextBoolean();
+                Assertions.assertEquals(expect.subMap(from,fromInclusive,to,toInclusive).size(),
+                        tree.countRange(from,fromInclusive,to,toInclusive));
+            }
+            Assertions.assertEquals(expect.tailMap(700,false).size(),tree.countRange(700,false,null,true));
+            Assertions.assertEquals(expect.size(),tree.countRange(null,true,null,true));
+            Assertions.assertEquals(0,tree.countRange(900,true,100,true));
+            Assertions.assertThrows(IndexOutOfBoundsException.class,()->tree.select(expect.size()));
+        }
+    }
+
+    private static final BPlugsTree2.Aggregator<Integer,Long> SUM=new BPlugsTree2.Aggregator<Integer,Long>() {
+        @Override
+        public Long identity() {
+            return 0L;
+        }
+
+        @Override
+        public Long lift(Integer value) {
+            return (long)value;
+        }
+
+        @Override
+        public Long combine(Long left, Long right) {
+            return left+right;
+        }
+    };
+
+    /**
+     * 拼接字符串不满足交换律，用来检查合并的顺序
+     */
+    private static final BPlugsTree2.Aggregator<Integer,String> CONCAT=new BPlugsTree2.Aggregator<Integer,String>() {
+        @Override
+        public String identity() {
+            return "";
+        }
+
+        @Override
+        public String lift(Integer value) {
+            return value+",";
+        }
+
+        @Override
+        public String combine(String left, String right) {
+            return left+right;
+        }
+    };
+
+    @Test
+    public void testAggregate(){
+        Random random=new Random(13);
+        for(int m=3;m<=8;m++){
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<600;i+=3){
+                expect.put(i,i);
+            }
+            BPlugsTree2<Integer,Integer> tree=BPlugsTree2.bulkLoad(m,SUM,expect.entrySet().iterator(),0.8);
+            BPlugsTree2<Integer,Integer> concat=new BPlugsTree2<>(m,CONCAT);
+            for(int i=0;i<3000;i++){
+                int k=random.nextInt(1000);
+                int op=random.nextInt(4);
+                if(op==0){
+                    tree.delete(k);
+                    concat.delete(k);
+                    expect.remove(k);
+                }else if(op==1){
+                    List<Map.Entry<Integer,Integer>> batch=new ArrayList<>();
+                    for(int j=random.nextInt(30);j>0;j--){
+                        batch.add(new AbstractMap.SimpleEntry<>(random.nextInt(1000),random.nextInt(100)));
+                    }
+                    tree.insertAll(batch);
+                    concat.insertAll(batch);
+                    batch.forEach(entry->expect.put(entry.getKey(),entry.getValue()));
+                }else{
+                    int v=random.nextInt(100);
+                    tree.insert(k,v);
+                    concat.insert(k,v);
+                    expect.put(k,v);
+                }
+            }
+            for(int i=0;i<300;i++){
+                int from=random.nextInt(1100)-50;
+                int to=from+random.nextInt(500);
+                boolean fromInclusive=random.nextBoolean();
+                boolean toInclusive=random.nextBoolean();
+                Map<Integer,Integer> range=expect.subMap(from,fromInclusive,to,toInclusive);
+                long sum=0;
+                StringBuilder builder=new StringBuilder();
+                for(int v:range.values()){
+                    sum+=v;
+                    builder.append(v).append(',');
+                }
+                Assertions.assertEquals(sum,tree.<Long>aggregate(from,fromInclusive,to,toInclusive).longValue());
+                Assertions.assertEquals(builder.toString(),concat.aggregate(from,fromInclusive,to,toInclusive));
+            }
+            long total=expect.values().stream().mapToLong(v->v).sum();
+            Assertions.assertEquals(total,tree.<Long>aggregate(null,true,null,true).longValue());
+            Assertions.assertEquals(0L,tree.<Long>aggregate(500,true,100,true).longValue());
+        }
+        Assertions.assertThrows(IllegalStateException.class,()->new BPlugsTree2<Integer,Integer>(4).aggregate(null,true,null,true));
+    }
+
+    /**
+     * 中间完整的子树使用缓存的结果，只计算两个边界叶子节点里的数据，lift的次数和数据量无关
+     */
+    @Test
+    public void testAggregateLiftCount(){
+        int[] lifts=new int[1];
+        BPlugsTree2.Aggregator<Integer,Long> counting=new BPlugsTree2.Aggregator<Integer,Long>() {
+            @Override
+            public Long identity() {
+                return 0L;
+            }
+
+            @Override
+            public Long lift(Integer value) {
+                lifts[0]++;
+                return (long)value;
+            }
+
+            @Override
+            public Long combine(Long left, Long right) {
+                return left+right;
+            }
+        };
+        int n=1<<20;
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(4,counting);
+        for(int i=0;i<n;i++){
+            tree.insert(i,i);
+        }
+        long total=(long)n*(n-1)/2;
+        lifts[0]=0;
+        Assertions.assertEquals(total,tree.<Long>aggregate(null,true,null,true).longValue());
+        Assertions.assertEquals(0,lifts[0]);
+        lifts[0]=0;
+        Assertions.assertEquals(total-45-(long)(n-10+n-1)*5,tree.<Long>aggregate(10,true,n-10,false).longValue());
+        //两个边界叶子节点最多各3条数据
+        Assertions.assertTrue(lifts[0]<=6,"lift calls: "+lifts[0]);
+        lifts[0]=0;
+        Assertions.assertEquals(total-45,tree.<Long>aggregate(10,true,null,true).longValue());
+        Assertions.assertTrue(lifts[0]<=3,"lift calls: "+lifts[0]);
+        lifts[0]=0;
+        Assertions.assertEquals((long)(n-10)*(n-11)/2,tree.<Long>aggregate(null,true,n-10,false).longValue());
+        Assertions.assertTrue(lifts[0]<=3,"lift calls: "+lifts[0]);
+    }
+
+    /**
+     * 不触发分裂的插入不应该分配内存
+     */
+    @Test
+    public void testInsertWithoutAllocation(){
+        com.sun.management.ThreadMXBean bean= (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        int m=128;
+        int n=20000;
+        Integer[] keys=new Integer[2*n];
+        for(int i=0;i<keys.length;i++){
+            keys[i]=i;
+        }
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m);
+        for(int i=0;i<n;i++){
+            tree.insert(keys[2*i],keys[2*i]);
+        }
+        //顺序插入之后叶子节点都是半满的，每个叶子节点再插入m/8个数据不会分裂
+        long threadId=Thread.currentThread().getId();
+        long overhead=bean.getThreadAllocatedBytes(threadId);
+        overhead=bean.getThreadAllocatedBytes(threadId)-overhead;
+        long start=bean.getThreadAllocatedBytes(threadId);
+        for(int i=0;i<n-m;i+=4){
+            tree.insert(keys[2*i+1],keys[2*i+1]);
+        }
+        long allocated=bean.getThreadAllocatedBytes(threadId)-start-overhead;
+        Assertions.assertEquals(0,allocated);
+        Assertions.assertEquals(Integer.valueOf(n+(n-m)/4),tree.size());
+    }
+
+    /**
+     * 随机范围删除，每次之后两个方向遍历、计数、聚合都和TreeMap一致，之后还能正常插入删除
+     */
+    @Test
+    public void testDeleteRange(){
+        for(int m=3;m<=10;m++){
+            Random random=new Random(m);
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m,SUM);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int round=0;round<200;round++){
+                int n=random.nextInt(400);
+                for(int i=0;i<n;i++){
+                    int k=random.nextInt(2000);
+                    tree.insert(k,i);
+                    expect.put(k,i);
+                }
+                for(int i=0;i<n/5;i++){
+                    int k=random.nextInt(2000);
+                    tree.delete(k);
+                    expect.remove(k);
+                }
+                Integer from=random.nextInt(10)==0?null:random.nextInt(2100)-50;
+                Integer to=random.nextInt(10)==0?null:(from==null?0:from)+random.nextInt(random.nextBoolean()?50:1500);
+                boolean fromInclusive=random.nextBoolean();
+                boolean toInclusive=random.nextBoolean();
+                int before=expect.size();
+                expect.keySet().removeIf(k->(from==null||(fromInclusive?k>=from:k>from))
+                        &&(to==null||(toInclusive?k<=to:k<to)));
+                Assertions.assertEquals(before-expect.size(),tree.deleteRange(from,fromInclusive,to,toInclusive));
+                Assertions.assertEquals(expect.size(),tree.size());
+                List<Integer> keys=new ArrayList<>();
+                BPlugsTree2.Cursor<Integer,Integer> cursor=tree.scan(null,true,null,true);
+                while(cursor.hasNext()){
+                    keys.add(cursor.next());
+                }
+                Assertions.assertEquals(new ArrayList<>(expect.keySet()),keys);
+                keys.clear();
+                cursor=tree.descendingScan(null,true,null,true);
+                while(cursor.hasNext()){
+                    keys.add(cursor.next());
+                }
+                Assertions.assertEquals(new ArrayList<>(expect.descendingKeySet()),keys);
+                long sum=expect.values().stream().mapToLong(v->v).sum();
+                Assertions.assertEquals(Long.valueOf(sum),tree.aggregate(null,true,null,true));
+                if(!expect.isEmpty()){
+                    int i=random.nextInt(expect.size());
+                    Assertions.assertEquals(i,tree.rank(tree.select(i).getKey()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeleteRangeMetrics(){
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(4,null,metrics);
+        for(int i=0;i<10000;i++){
+            tree.insert(i,i);
+        }
+        //只剩两边各一个数据，中间的子树都被摘掉，两个叶子节点合并成根节点
+        Assertions.assertEquals(9998,tree.deleteRange(0,false,9999,false));
+        Assertions.assertEquals(1,metrics.getHeight());
+        Assertions.assertEquals(1,metrics.getNodeCount());
+        Assertions.assertEquals(Arrays.asList(0,9999),Arrays.asList(tree.select(0).getKey(),tree.select(1).getKey()));
+        Assertions.assertEquals(0,tree.deleteRange(5,true,5,false));
+        Assertions.assertEquals(2,tree.deleteRange(null,true,null,true));
+        Assertions.assertEquals(1,metrics.getHeight());
+        Assertions.assertEquals(1,metrics.getNodeCount());
+        tree.insert(1,1);
+        Assertions.assertEquals("1",String.valueOf(tree.get(1)));
+    }
+
+    @Test
+    public void testStream(){
+        for(int m=3;m<=8;m++){
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m);
+            Assertions.assertEquals(0,tree.stream().parallel().count());
+            Random random=new Random(m);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<5000;i++){
+                int k=random.nextInt(10000);
+                if(random.nextInt(4)==0){
+                    expect.remove(k);
+                    tree.delete(k);
+                }else{
+                    expect.put(k,i);
+                    tree.insert(k,i);
+                }
+            }
+            List<Map.Entry<Integer,Integer>> entries=new ArrayList<>(expect.entrySet());
+            Assertions.assertEquals(entries,tree.stream().collect(Collectors.toList()));
+            Assertions.assertEquals(entries,tree.stream().parallel().collect(Collectors.toList()));
+            Assertions.assertEquals(expect.values().stream().mapToLong(v->v).sum(),
+                    tree.stream().parallel().mapToLong(Map.Entry::getValue).sum());
+            Assertions.assertEquals(expect.size(),tree.stream().parallel().filter(e->true).count());
+        }
+    }
+
+    /**
+     * 拆分之后每一段的大小都是准确的，拼起来和顺序遍历一样
+     */
+    @Test
+    public void testSpliterator(){
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(4);
+        for(int i=0;i<1000;i++){
+            tree.insert(i,i);
+        }
+        Spliterator<Map.Entry<Integer,Integer>> spliterator=tree.spliterator();
+        Assertions.assertTrue(spliterator.hasCharacteristics(Spliterator.SORTED|Spliterator.SIZED|Spliterator.SUBSIZED));
+        Assertions.assertEquals(1000,spliterator.getExactSizeIfKnown());
+        List<Spliterator<Map.Entry<Integer,Integer>>> parts=new ArrayList<>();
+        parts.add(spliterator);
+        for(int round=0;round<4;round++){
+            List<Spliterator<Map.Entry<Integer,Integer>>> next=new ArrayList<>();
+            for(Spliterator<Map.Entry<Integer,Integer>> part:parts){
+                long size=part.getExactSizeIfKnown();
+                Spliterator<Map.Entry<Integer,Integer>> prefix=part.trySplit();
+                if(prefix!=null){
+                    Assertions.assertEquals(size,prefix.getExactSizeIfKnown()+part.getExactSizeIfKnown());
+                    next.add(prefix);
+                }
+                next.add(part);
+            }
+            parts=next;
+        }
+        Assertions.assertEquals(16,parts.size());
+        for(Spliterator<Map.Entry<Integer,Integer>> part:parts){
+            //4阶的树子树大小不完全一样，不会差太多
+            Assertions.assertTrue(part.getExactSizeIfKnown()>1000/64);
+        }
+        List<Integer> keys=new ArrayList<>();
+        for(Spliterator<Map.Entry<Integer,Integer>> part:parts){
+            long size=part.getExactSizeIfKnown();
+            Assertions.assertTrue(part.tryAdvance(e->keys.add(e.getKey())));
+            Assertions.assertNull(part.trySplit());
+            Assertions.assertEquals(size-1,part.getExactSizeIfKnown());
+            part.forEachRemaining(e->keys.add(e.getKey()));
+            Assertions.assertFalse(part.tryAdvance(e->keys.add(e.getKey())));
+        }
+        Assertions.assertEquals(1000,keys.size());
+        for(int i=0;i<1000;i++){
+            Assertions.assertEquals(i,keys.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testSpliteratorConcurrentModification(){
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(4);
+        for(int i=0;i<100;i++){
+            tree.insert(i,i);
+        }
+        Spliterator<Map.Entry<Integer,Integer>> spliterator=tree.spliterator();
+        spliterator.tryAdvance(e->{});
+        //覆盖value不算修改
+        tree.insert(50,-1);
+        tree.insertAll(Arrays.asList(new AbstractMap.SimpleEntry<>(10,-1),new AbstractMap.SimpleEntry<>(20,-1)));
+        spliterator.tryAdvance(e->{});
+        tree.insert(1000,1000);
+        Assertions.assertThrows(ConcurrentModificationException.class,()->spliterator.tryAdvance(e->{}));
+        Assertions.assertThrows(ConcurrentModificationException.class,()->tree.stream().forEach(e->tree.delete(e.getKey())));
+    }
+
 
     public static void main(String[] args){
         Random random=new Random();
         System.out.println(~2);// -(x+1)
     }
 
-}
\ No newline at end of file
+    /**
+     * 延迟删除和立即删除、插入、批量插入、范围删除、compact随机混在一起，每一轮之后查找、遍历、计数、聚合都和TreeMap一致
+     */
+    @Test
+    public void testLazyDelete(){
+        for(int m=3;m<=8;m++){
+            Random random=new Random(m);
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(m,SUM);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int round=0;round<100;round++){
+                tree.setLazyDelete(random.nextInt(4)!=0);
+                for(int i=0;i<300;i++){
+                    int k=random.nextInt(1000);
+                    if(random.nextInt(5)<2){
+                        tree.insert(k,i);
+                        expect.put(k,i);
+                    }else{
+                        tree.delete(k);
+                        expect.remove(k);
+                    }
+                }
+                if(random.nextInt(5)==0){
+                    List<Map.Entry<Integer,Integer>> entries=new ArrayList<>();
+                    for(int i=0;i<100;i++){
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(random.nextInt(1000),-i));
+                    }
+                    tree.insertAll(entries);
+                    entries.forEach(entry->expect.put(entry.getKey(),entry.getValue()));
+                }
+                if(random.nextInt(5)==0){
+                    int from=random.nextInt(1000);
+                    Assertions.assertEquals(expect.subMap(from,from+100).size(),tree.deleteRange(from,true,from+100,false));
+                    expect.subMap(from,from+100).clear();
+                }
+                assertLive(expect,tree,random);
+                if(random.nextInt(3)==0){
+                    tree.compact();
+                    Assertions.assertEquals(0,tree.compact());
+                    assertLive(expect,tree,random);
+                }
+            }
+        }
+    }
+
+    /**
+     * 延迟删除不合并节点，compact之后节点个数和高度恢复
+     */
+    @Test
+    public void testCompact(){
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(4,null,metrics);
+        tree.setLazyDelete(true);
+        for(int i=0;i<10000;i++){
+            tree.insert(i,i);
+        }
+        long nodes=metrics.getNodeCount();
+        int height=metrics.getHeight();
+        for(int i=0;i<10000;i++){
+            if(i%1000!=0){
+                tree.delete(i);
+            }
+        }
+        Assertions.assertEquals(10,tree.size());
+        Assertions.assertEquals(nodes,metrics.getNodeCount());
+        Assertions.assertEquals(height,metrics.getHeight());
+        Assertions.assertEquals(9990,tree.compact());
+        Assertions.assertEquals(Arrays.asList(0,1000,2000,3000,4000,5000,6000,7000,8000,9000),
+                tree.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+        //10个数据装进3,3,2,2四个叶子节点，挂在同一个根节点上
+        Assertions.assertEquals(2,metrics.getHeight());
+        Assertions.assertEquals(4+1,metrics.getNodeCount());
+        Assertions.assertEquals(4,metrics.getLeafCount());
+        tree.insert(1,1);
+        Assertions.assertEquals(1,tree.get(1).intValue());
+        Assertions.assertEquals(0,tree.compact());
+    }
+
+    /**
+     * key递增的时候追加分裂让叶子节点装满，分裂次数是从中间分裂的一半
+     */
+    @Test
+    public void testAppendSplit(){
+        Assertions.assertEquals(16,TreeConfig.ofNodeBytes(TreeConfig.CACHE_LINE_BYTES,TreeConfig.REFERENCE_BYTES).getOrder());
+        Assertions.assertEquals(512,TreeConfig.ofNodeBytes(TreeConfig.PAGE_BYTES,8).getOrder());
+        Assertions.assertThrows(IllegalArgumentException.class,()->TreeConfig.ofNodeBytes(16,8));
+        int n=100000;
+        TreeMetrics half=new TreeMetrics();
+        TreeMetrics append=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> halfTree=new BPlugsTree2<>(TreeConfig.ofOrder(64),null,half);
+        BPlugsTree2<Integer,Integer> appendTree=new BPlugsTree2<>(
+                TreeConfig.ofOrder(64).withSplitPolicy(TreeConfig.SplitPolicy.APPEND),null,append);
+        for(int i=0;i<n;i++){
+            halfTree.insert(i,i);
+            appendTree.insert(i,i);
+        }
+        //每个叶子节点装满63个
+        Assertions.assertEquals((n+62)/63-1,append.getLeafSplits());
+        Assertions.assertTrue(append.getNodeCount()*100<half.getNodeCount()*51,
+                append.getNodeCount()+" vs "+half.getNodeCount());
+        Assertions.assertEquals(n,appendTree.size().intValue());
+        Assertions.assertEquals(n-1,appendTree.select(n-1).getKey().intValue());
+        //批量追加同样装满
+        TreeMetrics batch=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> batchTree=new BPlugsTree2<>(
+                TreeConfig.ofOrder(64).withSplitPolicy(TreeConfig.SplitPolicy.APPEND),null,batch);
+        for(int i=0;i<n;i+=1000){
+            List<Map.Entry<Integer,Integer>> entries=new ArrayList<>();
+            for(int j=i;j<i+1000;j++){
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(j,j));
+            }
+            batchTree.insertAll(entries);
+        }
+        Assertions.assertTrue(batch.getLeafSplits()<=n/63+n/1000,String.valueOf(batch.getLeafSplits()));
+        Assertions.assertEquals(new ArrayList<>(appendTree.stream().collect(Collectors.toList())),
+                batchTree.stream().collect(Collectors.toList()));
+    }
+
+    /**
+     * 追加分裂留下的不满的节点在删除、范围删除、compact的时候都能正常处理
+     */
+    @Test
+    public void testAppendSplitRandom(){
+        for(int m=3;m<=8;m++){
+            Random random=new Random(m);
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(
+                    TreeConfig.ofOrder(m).withSplitPolicy(TreeConfig.SplitPolicy.APPEND),SUM,null);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int round=0;round<200;round++){
+                tree.setLazyDelete(random.nextInt(4)==0);
+                int next=expect.isEmpty()?0:expect.lastKey()+1;
+                int n=random.nextInt(60);
+                if(random.nextBoolean()){
+                    for(int k=next;k<next+n&&k<1000;k++){
+                        tree.insert(k,k);
+                        expect.put(k,k);
+                    }
+                }else{
+                    List<Map.Entry<Integer,Integer>> entries=new ArrayList<>();
+                    for(int k=next;k<next+n&&k<1000;k++){
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(k,k));
+                        expect.put(k,k);
+                    }
+                    tree.insertAll(entries);
+                }
+                for(int i=0;i<20;i++){
+                    int k=random.nextInt(1000);
+                    if(random.nextBoolean()){
+                        tree.insert(k,-k);
+                        expect.put(k,-k);
+                    }else{
+                        tree.delete(k);
+                        expect.remove(k);
+                    }
+                }
+                if(random.nextInt(10)==0){
+                    int from=random.nextInt(1000);
+                    Assertions.assertEquals(expect.tailMap(from).size(),tree.deleteRange(from,true,null,true));
+                    expect.tailMap(from).clear();
+                }
+                if(random.nextInt(10)==0){
+                    tree.compact();
+                }
+                assertLive(expect,tree,random);
+            }
+        }
+    }
+
+    /**
+     * 插入、删除、批量插入、范围删除和compact之后，布隆过滤器不会漏掉存在的key
+     */
+    @Test
+    public void testBloomFilter(){
+        for(int m=3;m<=8;m++){
+            Random random=new Random(m);
+            TreeMetrics metrics=new TreeMetrics();
+            BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(TreeConfig.ofOrder(m).withBloomFilter(0.01),SUM,metrics);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int round=0;round<100;round++){
+                tree.setLazyDelete(random.nextInt(4)==0);
+                for(int i=0;i<50;i++){
+                    int k=random.nextInt(1000);
+                    if(random.nextInt(3)>0){
+                        tree.insert(k,k);
+                        expect.put(k,k);
+                    }else{
+                        tree.delete(k);
+                        expect.remove(k);
+                    }
+                }
+                List<Map.Entry<Integer,Integer>> entries=new ArrayList<>();
+                for(int i=random.nextInt(30);i>0;i--){
+                    int k=random.nextInt(1000);
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(k,-k));
+                    expect.put(k,-k);
+                }
+                tree.insertAll(entries);
+                if(random.nextInt(10)==0){
+                    int from=random.nextInt(1000);
+                    int to=from+random.nextInt(200);
+                    Assertions.assertEquals(expect.subMap(from,to).size(),tree.deleteRange(from,true,to,false));
+                    expect.subMap(from,to).clear();
+                }
+                if(random.nextInt(10)==0){
+                    tree.compact();
+                }
+                assertLive(expect,tree,random);
+            }
+            Assertions.assertTrue(metrics.getBloomFilterNegatives()>0);
+        }
+    }
+
+    /**
+     * 不存在的key大部分被过滤器挡掉，误判率接近配置的值
+     */
+    @Test
+    public void testBloomFilterNegatives(){
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(TreeConfig.ofOrder(64).withBloomFilter(0.01),null,metrics);
+        for(int i=0;i<100000;i++){
+            tree.insert(i*2,i);
+        }
+        Assertions.assertTrue(metrics.getBloomFilterBytes()>metrics.getLeafCount()*64);
+        for(int i=0;i<100000;i++){
+            Assertions.assertEquals(i,tree.get(i*2).intValue());
+            Assertions.assertNull(tree.get(i*2+1));
+        }
+        Assertions.assertEquals(0,metrics.getBloomFilterFalsePositives()+metrics.getBloomFilterNegatives()-100000);
+        Assertions.assertTrue(metrics.getBloomFilterFalsePositives()<100000*0.03,
+                "false positives "+metrics.getBloomFilterFalsePositives());
+        //没有开启的时候不占内存
+        TreeMetrics plain=new TreeMetrics();
+        new BPlugsTree2<Integer,Integer>(TreeConfig.ofOrder(64),null,plain).insert(1,1);
+        Assertions.assertEquals(0,plain.getBloomFilterBytes());
+    }
+
+    private void assertLive(TreeMap<Integer,Integer> expect,BPlugsTree2<Integer,Integer> tree,Random random){
+        Assertions.assertEquals(expect.size(),tree.size());
+        for(int k=0;k<1000;k++){
+            Assertions.assertEquals(expect.get(k),tree.get(k));
+        }
+        List<Integer> keys=new ArrayList<>();
+        BPlugsTree2.Cursor<Integer,Integer> cursor=tree.scan(null,true,null,true);
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+        }
+        Assertions.assertEquals(new ArrayList<>(expect.keySet()),keys);
+        keys.clear();
+        cursor=tree.descendingScan(null,true,null,true);
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+        }
+        Assertions.assertEquals(new ArrayList<>(expect.descendingKeySet()),keys);
+        Assertions.assertEquals(new ArrayList<>(expect.entrySet()),tree.stream().parallel().collect(Collectors.toList()));
+        int from=random.nextInt(1000);
+        int to=from+random.nextInt(300);
+        Assertions.assertEquals(expect.subMap(from,true,to,false).size(),tree.countRange(from,true,to,false));
+        Assertions.assertEquals(expect.subMap(from,false,to,true).values().stream().mapToLong(v->v).sum(),
+                (long)tree.aggregate(from,false,to,true));
+        if(!expect.isEmpty()){
+            int i=random.nextInt(expect.size());
+            Map.Entry<Integer,Integer> entry=tree.select(i);
+            Assertions.assertEquals(new ArrayList<>(expect.keySet()).get(i),entry.getKey());
+            Assertions.assertEquals(i,tree.rank(entry.getKey()));
+        }
+    }
+}
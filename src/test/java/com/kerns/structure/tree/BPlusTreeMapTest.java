@@ -0,0 +1,151 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+class BPlusTreeMapTest {
+
+    @Test
+    public void testRandom(){
+        for(int m=3;m<=8;m++){
+            assertSameAsTreeMap(new BPlusTreeMap<>(m),new Random(m));
+        }
+    }
+
+    @Test
+    public void testIteratorRemove(){
+        BPlusTreeMap<Integer,Integer> map=new BPlusTreeMap<>(4);
+        for(int i=0;i<1000;i++){
+            map.put(i,i);
+        }
+        Iterator<Integer> iterator=map.keySet().iterator();
+        while(iterator.hasNext()){
+            if(iterator.next()%3!=0){
+                iterator.remove();
+            }
+        }
+        Assertions.assertEquals(334,map.size());
+        iterator=map.descendingMap().keySet().iterator();
+        int expect=999;
+        while(iterator.hasNext()){
+            Assertions.assertEquals(expect,iterator.next().intValue());
+            iterator.remove();
+            expect-=3;
+        }
+        Assertions.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentModification(){
+        BPlusTreeMap<Integer,Integer> map=new BPlusTreeMap<>(4);
+        for(int i=0;i<100;i++){
+            map.put(i,i);
+        }
+        Iterator<Map.Entry<Integer,Integer>> iterator=map.entrySet().iterator();
+        //覆盖value不影响遍历
+        iterator.next().setValue(-1);
+        Assertions.assertEquals(-1,map.get(0).intValue());
+        iterator.next();
+        map.put(1000,1000);
+        Assertions.assertThrows(ConcurrentModificationException.class,iterator::next);
+    }
+
+    @Test
+    public void testViewOutOfRange(){
+        BPlusTreeMap<Integer,Integer> map=new BPlusTreeMap<>(4);
+        NavigableMap<Integer,Integer> sub=map.subMap(10,true,20,false);
+        Assertions.assertThrows(IllegalArgumentException.class,()->sub.put(20,20));
+        Assertions.assertThrows(IllegalArgumentException.class,()->sub.subMap(5,15));
+        Assertions.assertThrows(IllegalArgumentException.class,()->map.subMap(20,10));
+        Assertions.assertThrows(NullPointerException.class,()->map.put(null,1));
+        Assertions.assertThrows(NullPointerException.class,()->map.put(1,null));
+        sub.put(10,10);
+        Assertions.assertEquals(10,map.get(10).intValue());
+        Assertions.assertNull(sub.get(30));
+    }
+
+    /**
+     * 随机修改，每一步之后和TreeMap的各种视图比较
+     */
+    static void assertSameAsTreeMap(NavigableMap<Integer,Integer> map,Random random){
+        TreeMap<Integer,Integer> expect=new TreeMap<>();
+        for(int round=0;round<300;round++){
+            for(int i=0;i<20;i++){
+                int k=random.nextInt(500);
+                if(random.nextInt(3)==0){
+                    Assertions.assertEquals(expect.remove(k),map.remove(k));
+                }else{
+                    Assertions.assertEquals(expect.put(k,round),map.put(k,round));
+                }
+            }
+            int from=random.nextInt(500);
+            int to=from+random.nextInt(200);
+            boolean fromInclusive=random.nextBoolean();
+            boolean toInclusive=random.nextBoolean();
+            List<NavigableMap<Integer,Integer>> expects=new ArrayList<>();
+            List<NavigableMap<Integer,Integer>> actuals=new ArrayList<>();
+            expects.add(expect);
+            actuals.add(map);
+            expects.add(expect.subMap(from,fromInclusive,to,toInclusive));
+            actuals.add(map.subMap(from,fromInclusive,to,toInclusive));
+            expects.add(expect.headMap(to,toInclusive).descendingMap());
+            actuals.add(map.headMap(to,toInclusive).descendingMap());
+            expects.add(expect.descendingMap().subMap(to,toInclusive,from,fromInclusive).tailMap((from+to)/2,false));
+            actuals.add(map.descendingMap().subMap(to,toInclusive,from,fromInclusive).tailMap((from+to)/2,false));
+            for(int v=0;v<expects.size();v++){
+                assertView(expects.get(v),actuals.get(v),random);
+            }
+        }
+        //通过视图修改
+        NavigableMap<Integer,Integer> view=map.tailMap(250,false);
+        expect.tailMap(250,false).pollFirstEntry();
+        view.pollFirstEntry();
+        expect.tailMap(250,false).pollLastEntry();
+        view.pollLastEntry();
+        view.keySet().removeIf(k->k%2==0);
+        expect.tailMap(250,false).keySet().removeIf(k->k%2==0);
+        view.entrySet().iterator().next().setValue(-1);
+        expect.tailMap(250,false).entrySet().iterator().next().setValue(-1);
+        assertView(expect,map,random);
+        map.headMap(100).clear();
+        expect.headMap(100).clear();
+        assertView(expect,map,random);
+    }
+
+    private static void assertView(NavigableMap<Integer,Integer> expect,NavigableMap<Integer,Integer> actual,Random random){
+        Assertions.assertEquals(expect.size(),actual.size());
+        Assertions.assertEquals(expect.isEmpty(),actual.isEmpty());
+        Assertions.assertEquals(expect,actual);
+        Assertions.assertEquals(new ArrayList<>(expect.keySet()),new ArrayList<>(actual.keySet()));
+        Assertions.assertEquals(new ArrayList<>(expect.values()),new ArrayList<>(actual.values()));
+        Assertions.assertEquals(new ArrayList<>(expect.descendingKeySet()),new ArrayList<>(actual.descendingKeySet()));
+        Assertions.assertEquals(expect.firstEntry(),actual.firstEntry());
+        Assertions.assertEquals(expect.lastEntry(),actual.lastEntry());
+        for(int i=0;i<20;i++){
+            int k=random.nextInt(520)-10;
+            Assertions.assertEquals(expect.get(k),actual.get(k));
+            Assertions.assertEquals(expect.containsKey(k),actual.containsKey(k));
+            Assertions.assertEquals(expect.lowerEntry(k),actual.lowerEntry(k));
+            Assertions.assertEquals(expect.floorEntry(k),actual.floorEntry(k));
+            Assertions.assertEquals(expect.ceilingEntry(k),actual.ceilingEntry(k));
+            Assertions.assertEquals(expect.higherEntry(k),actual.higherEntry(k));
+            Assertions.assertEquals(expect.navigableKeySet().floor(k),actual.navigableKeySet().floor(k));
+        }
+        if(expect.isEmpty()){
+            Assertions.assertThrows(NoSuchElementException.class,actual::firstKey);
+        }else{
+            Assertions.assertEquals(expect.firstKey(),actual.firstKey());
+            Assertions.assertEquals(expect.lastKey(),actual.lastKey());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    @Test
+    public void testFalsePositiveRate(){
+        for(double fpp:new double[]{0.1,0.01,0.001}){
+            BloomFilter filter=new BloomFilter(100000,fpp);
+            for(long i=0;i<100000;i++){
+                filter.add(i);
+            }
+            for(long i=0;i<100000;i++){
+                Assertions.assertTrue(filter.mightContain(i));
+            }
+            int positives=0;
+            for(long i=100000;i<1100000;i++){
+                if(filter.mightContain(i)){
+                    positives++;
+                }
+            }
+            //分块之后误判率比普通布隆过滤器高，误判率越低差得越多
+            Assertions.assertTrue(positives<1000000*fpp*4,fpp+": "+positives);
+        }
+    }
+
+    @Test
+    public void testSmallFilter(){
+        BloomFilter filter=new BloomFilter(7,0.01);
+        //不足一个块的时候按一个块分配
+        Assertions.assertEquals(64,filter.getBytes());
+        BloomFilter copy=filter.emptyCopy();
+        filter.add("a");
+        Assertions.assertTrue(filter.mightContain("a"));
+        Assertions.assertFalse(copy.mightContain("a"));
+        Assertions.assertEquals(64,copy.getBytes());
+        filter.clear();
+        Assertions.assertFalse(filter.mightContain("a"));
+        Assertions.assertThrows(IllegalArgumentException.class,()->new BloomFilter(10,1));
+    }
+}
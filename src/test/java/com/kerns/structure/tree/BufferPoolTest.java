@@ -0,0 +1,104 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class BufferPoolTest {
+
+    private final Map<Long,String> disk=new HashMap<>();
+
+    private final BufferPool.PageStore<String> store=new BufferPool.PageStore<String>() {
+        @Override
+        public String read(long id) {
+            return disk.getOrDefault(id,"page "+id);
+        }
+
+        @Override
+        public void write(long id, String page) {
+            disk.put(id,page);
+        }
+    };
+
+    /**
+     * 一次大范围扫描不会挤掉访问过多次的页
+     */
+    @Test
+    public void testScanResistant(){
+        BufferPool<String> pool=new BufferPool<>(4*100,100,store);
+        for(int round=0;round<2;round++){
+            for(long id=0;id<3;id++){
+                pool.pin(id);
+                pool.unpin(id,false);
+            }
+        }
+        for(long id=100;id<200;id++){
+            pool.pin(id);
+            pool.unpin(id,false);
+        }
+        long misses=pool.getMisses();
+        for(long id=0;id<3;id++){
+            pool.pin(id);
+            pool.unpin(id,false);
+        }
+        Assertions.assertEquals(misses,pool.getMisses());
+        Assertions.assertEquals(4,pool.getCachedPages());
+        Assertions.assertEquals(99,pool.getEvictions());
+    }
+
+    @Test
+    public void testPinAndWriteBack(){
+        BufferPool<String> pool=new BufferPool<>(2*100,100,store);
+        pool.pinNew(1,"new 1");
+        pool.pin(2);
+        pool.pin(3);
+        //全部pin住的时候暂时超过容量
+        Assertions.assertEquals(3,pool.getCachedPages());
+        Assertions.assertEquals(0,pool.getEvictions());
+        pool.unpin(1,false);
+        Assertions.assertEquals(2,pool.getCachedPages());
+        Assertions.assertEquals("new 1",disk.get(1L));
+        pool.unpin(2,true);
+        pool.unpin(3,false);
+        Assertions.assertThrows(IllegalStateException.class,()->pool.unpin(3,false));
+        pool.flush();
+        Assertions.assertEquals("page 2",disk.get(2L));
+        Assertions.assertEquals(2,pool.getWriteBacks());
+        Assertions.assertEquals(2,pool.getMisses());
+    }
+
+    /**
+     * 写回失败的页留在缓冲池里，之后还可以再写回
+     */
+    @Test
+    public void testWriteBackFailure(){
+        boolean[] fail={true};
+        BufferPool<String> pool=new BufferPool<>(100,100,new BufferPool.PageStore<String>() {
+            @Override
+            public String read(long id) {
+                return store.read(id);
+            }
+
+            @Override
+            public void write(long id, String page) {
+                if(fail[0]){
+                    throw new IllegalArgumentException("cannot write page "+id);
+                }
+                store.write(id,page);
+            }
+        });
+        pool.pinNew(1,"new 1");
+        pool.pin(2);
+        Assertions.assertThrows(IllegalArgumentException.class,()->pool.unpin(1,true));
+        Assertions.assertEquals(2,pool.getCachedPages());
+        Assertions.assertEquals(0,pool.getEvictions());
+        fail[0]=false;
+        pool.unpin(2,false);
+        pool.pin(3);
+        //失败的页还可以被淘汰
+        Assertions.assertEquals(1,pool.getCachedPages());
+        Assertions.assertEquals("new 1",disk.get(1L));
+    }
+}
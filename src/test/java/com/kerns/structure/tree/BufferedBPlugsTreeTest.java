@@ -0,0 +1,122 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+class BufferedBPlugsTreeTest {
+
+    @Test
+    public void testRandom(){
+        for(int m=3;m<=8;m++){
+            for(int bufferSize:new int[]{1,4,32}){
+                Random random=new Random(m*100+bufferSize);
+                TreeMap<Integer,Long> expect=new TreeMap<>();
+                BufferedBPlugsTree<Integer,Long> tree=new BufferedBPlugsTree<>(m,bufferSize,Long::sum);
+                for(int i=0;i<20000;i++){
+                    int k=random.nextInt(2000);
+                    int op=random.nextInt(10);
+                    if(op<5){
+                        tree.insert(k,(long)i);
+                        expect.put(k,(long)i);
+                    }else if(op<8){
+                        tree.delete(k);
+                        expect.remove(k);
+                    }else{
+                        tree.upsert(k,1L);
+                        expect.merge(k,1L,Long::sum);
+                    }
+                    if(i%1000==0){
+                        for(int j=0;j<2000;j++){
+                            Assertions.assertEquals(expect.get(j),tree.get(j));
+                        }
+                    }
+                }
+                assertTree(expect,tree);
+                for(int k=0;k<2000;k+=2){
+                    tree.delete(k);
+                    expect.remove(k);
+                }
+                assertTree(expect,tree);
+                for(int k=0;k<2000;k++){
+                    tree.delete(k);
+                }
+                Assertions.assertEquals(0,tree.size());
+                tree.insert(1,1L);
+                Assertions.assertEquals(1L,tree.get(1).longValue());
+            }
+        }
+    }
+
+    /**
+     * 数据少的时候根节点是叶子节点，消息直接合并进去
+     */
+    @Test
+    public void testRootLeaf(){
+        Random random=new Random(3);
+        TreeMap<Integer,Long> expect=new TreeMap<>();
+        BufferedBPlugsTree<Integer,Long> tree=new BufferedBPlugsTree<>(8,16,Long::sum);
+        for(int i=0;i<10000;i++){
+            int k=random.nextInt(7);
+            int op=random.nextInt(3);
+            if(op==0){
+                tree.insert(k,(long)i);
+                expect.put(k,(long)i);
+            }else if(op==1){
+                tree.delete(k);
+                expect.remove(k);
+            }else{
+                tree.upsert(k,1L);
+                expect.merge(k,1L,Long::sum);
+            }
+            for(int j=0;j<7;j++){
+                Assertions.assertEquals(expect.get(j),tree.get(j));
+            }
+        }
+        Assertions.assertEquals(10000,tree.getLeafWrites());
+        assertTree(expect,tree);
+    }
+
+    /**
+     * 一批消息一起合并到叶子节点，写叶子节点的次数远少于插入的次数
+     */
+    @Test
+    public void testBatchedLeafWrites(){
+        BufferedBPlugsTree<Integer,Integer> tree=new BufferedBPlugsTree<>(16,256);
+        Random random=new Random(25);
+        int n=100000;
+        for(int i=0;i<n;i++){
+            int k=random.nextInt();
+            tree.insert(k,k);
+        }
+        Assertions.assertTrue(tree.getLeafWrites()*10<n,"leaf writes "+tree.getLeafWrites());
+        random=new Random(25);
+        for(int i=0;i<n;i++){
+            int k=random.nextInt();
+            Assertions.assertEquals(k,tree.get(k).intValue());
+        }
+    }
+
+    @Test
+    public void testUpsertWithoutMerger(){
+        BufferedBPlugsTree<Integer,Integer> tree=new BufferedBPlugsTree<>(4,8);
+        Assertions.assertThrows(UnsupportedOperationException.class,()->tree.upsert(1,1));
+        Assertions.assertThrows(IllegalArgumentException.class,()->new BufferedBPlugsTree<Integer,Integer>(2,8));
+    }
+
+    private void assertTree(TreeMap<Integer,Long> expect,BufferedBPlugsTree<Integer,Long> tree){
+        for(int k=-1;k<=2000;k++){
+            Assertions.assertEquals(expect.get(k),tree.get(k));
+        }
+        Assertions.assertEquals(expect.size(),tree.size());
+        List<Map.Entry<Integer,Long>> entries=new ArrayList<>();
+        tree.forEach((k,v)->entries.add(new AbstractMap.SimpleImmutableEntry<>(k,v)));
+        Assertions.assertEquals(new ArrayList<>(expect.entrySet()),entries);
+    }
+}
@@ -0,0 +1,181 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class ConcurrentBLinkTreeTest {
+
+    @Test
+    public void testSingleThread(){
+        Random random=new Random(3);
+        for(int m=3;m<=8;m++){
+            ConcurrentBLinkTree<Integer,Integer> tree=new ConcurrentBLinkTree<>(m);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<5000;i++){
+                int k=random.nextInt(800);
+                if(random.nextInt(3)==0){
+                    Assertions.assertEquals(expect.remove(k),tree.delete(k));
+                }else{
+                    Assertions.assertEquals(expect.put(k,i),tree.put(k,i));
+                }
+            }
+            Assertions.assertEquals(expect.size(),tree.size());
+            for(int k=0;k<800;k++){
+                Assertions.assertEquals(expect.get(k),tree.get(k));
+            }
+            List<Integer> keys=new ArrayList<>();
+            tree.scan(100,300,(k,v)->keys.add(k));
+            Assertions.assertEquals(new ArrayList<>(expect.subMap(100,true,300,true).keySet()),keys);
+        }
+    }
+
+    /**
+     * 多个线程同时写不同的key，同时有线程在读，写完之后所有数据都能读到
+     */
+    @Test
+    public void testConcurrentPut() throws Exception{
+        int threads=8;
+        int perThread=20000;
+        ConcurrentBLinkTree<Integer,Integer> tree=new ConcurrentBLinkTree<>(8);
+        ExecutorService executor=Executors.newFixedThreadPool(threads+2);
+        CountDownLatch start=new CountDownLatch(1);
+        AtomicBoolean done=new AtomicBoolean(false);
+        List<Future<?>> writers=new ArrayList<>();
+        for(int t=0;t<threads;t++){
+            int offset=t;
+            writers.add(executor.submit(()->{
+                start.await();
+                for(int i=0;i<perThread;i++){
+                    int k=i*threads+offset;
+                    tree.put(k,k);
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> readers=new ArrayList<>();
+        for(int t=0;t<2;t++){
+            readers.add(executor.submit(()->{
+                start.await();
+                Random random=new Random();
+                while(!done.get()){
+                    int k=random.nextInt(threads*perThread);
+                    Integer v=tree.get(k);
+                    if(v!=null&&v!=k){
+                        throw new AssertionError("wrong value "+v+" for "+k);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> writer:writers){
+            writer.get(60,TimeUnit.SECONDS);
+        }
+        done.set(true);
+        for(Future<?> reader:readers){
+            reader.get(60,TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        Assertions.assertEquals(threads*perThread,tree.size());
+        for(int k=0;k<threads*perThread;k++){
+            Assertions.assertEquals(Integer.valueOf(k),tree.get(k));
+        }
+        int[] expect={0};
+        tree.scan(null,null,(k,v)->Assertions.assertEquals(expect[0]++,k.intValue()));
+        Assertions.assertEquals(threads*perThread,expect[0]);
+    }
+
+    /**
+     * 删除不合并节点，同时有线程删除、插入和遍历，遍历的结果有序，不会漏掉一直存在的key
+     */
+    @Test
+    public void testConcurrentDeleteAndScan() throws Exception{
+        int n=100000;
+        ConcurrentBLinkTree<Integer,Integer> tree=new ConcurrentBLinkTree<>(6);
+        for(int k=0;k<n;k++){
+            tree.put(k,k);
+        }
+        ExecutorService executor=Executors.newFixedThreadPool(7);
+        CountDownLatch start=new CountDownLatch(1);
+        AtomicBoolean done=new AtomicBoolean(false);
+        List<Future<?>> writers=new ArrayList<>();
+        for(int t=0;t<2;t++){
+            int offset=t;
+            //删除奇数key
+            writers.add(executor.submit(()->{
+                start.await();
+                for(int k=offset*2+1;k<n;k+=4){
+                    Assertions.assertEquals(Integer.valueOf(k),tree.delete(k));
+                }
+                return null;
+            }));
+            //插入新的key，让节点继续分裂
+            writers.add(executor.submit(()->{
+                start.await();
+                for(int k=n+offset;k<2*n;k+=2){
+                    tree.put(k,k);
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> scanners=new ArrayList<>();
+        for(int t=0;t<3;t++){
+            scanners.add(executor.submit(()->{
+                start.await();
+                while(!done.get()){
+                    int[] last={-1};
+                    int[] evens={0};
+                    tree.scan(null,null,(k,v)->{
+                        if(k<=last[0]||!k.equals(v)){
+                            throw new AssertionError("unexpected "+k+"="+v+" after "+last[0]);
+                        }
+                        if(k<n&&(k&1)==0){
+                            if(k!=evens[0]*2){
+                                throw new AssertionError("missing "+evens[0]*2);
+                            }
+                            evens[0]++;
+                        }
+                        last[0]=k;
+                    });
+                    if(evens[0]!=n/2){
+                        throw new AssertionError("scanned "+evens[0]+" of "+n/2+" even keys");
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> writer:writers){
+            writer.get(60,TimeUnit.SECONDS);
+        }
+        done.set(true);
+        for(Future<?> scanner:scanners){
+            scanner.get(60,TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        Assertions.assertEquals(n/2+n,tree.size());
+        List<Integer> keys=new ArrayList<>();
+        tree.scan(null,null,(k,v)->keys.add(k));
+        List<Integer> expect=new ArrayList<>();
+        for(int k=0;k<2*n;k++){
+            if(k>=n||(k&1)==0){
+                expect.add(k);
+            }
+        }
+        Assertions.assertEquals(expect,keys);
+        for(int k=1;k<n;k+=2){
+            Assertions.assertNull(tree.get(k));
+        }
+    }
+}
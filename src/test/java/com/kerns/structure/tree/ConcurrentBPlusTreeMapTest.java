@@ -0,0 +1,82 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConcurrentBPlusTreeMapTest {
+
+    @Test
+    public void testRandom(){
+        for(int m=3;m<=8;m++){
+            BPlusTreeMapTest.assertSameAsTreeMap(new ConcurrentBPlusTreeMap<>(m),new Random(m));
+        }
+    }
+
+    @Test
+    public void testAtomic(){
+        ConcurrentBPlusTreeMap<Integer,String> map=new ConcurrentBPlusTreeMap<>(4);
+        Assertions.assertNull(map.putIfAbsent(1,"a"));
+        Assertions.assertEquals("a",map.putIfAbsent(1,"b"));
+        Assertions.assertFalse(map.replace(1,"b","c"));
+        Assertions.assertTrue(map.replace(1,"a","c"));
+        Assertions.assertEquals("c",map.replace(1,"d"));
+        Assertions.assertNull(map.replace(2,"d"));
+        Assertions.assertFalse(map.remove(1,"c"));
+        Assertions.assertTrue(map.remove(1,"d"));
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertEquals("x",map.computeIfAbsent(3,k->"x"));
+        Assertions.assertEquals("xy",map.merge(3,"y",String::concat));
+    }
+
+    /**
+     * 遍历的是创建迭代器时候的快照，遍历过程中的修改看不到
+     */
+    @Test
+    public void testSnapshotIterator(){
+        ConcurrentBPlusTreeMap<Integer,Integer> map=new ConcurrentBPlusTreeMap<>(4);
+        for(int i=0;i<100;i++){
+            map.put(i,i);
+        }
+        Iterator<Integer> iterator=map.keySet().iterator();
+        map.clear();
+        int count=0;
+        while(iterator.hasNext()){
+            Assertions.assertEquals(count++,iterator.next().intValue());
+        }
+        Assertions.assertEquals(100,count);
+        Assertions.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentMerge() throws InterruptedException {
+        ConcurrentBPlusTreeMap<Integer,Integer> map=new ConcurrentBPlusTreeMap<>(8);
+        AtomicInteger absent=new AtomicInteger();
+        List<Thread> threads=new ArrayList<>();
+        for(int t=0;t<8;t++){
+            Thread thread=new Thread(()->{
+                for(int i=0;i<1000;i++){
+                    map.merge(i%100,1,Integer::sum);
+                    if(map.putIfAbsent(1000+i,i)==null){
+                        absent.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread:threads){
+            thread.join();
+        }
+        for(int i=0;i<100;i++){
+            Assertions.assertEquals(80,map.get(i).intValue());
+        }
+        Assertions.assertEquals(1000,absent.get());
+        Assertions.assertEquals(1100,map.size());
+    }
+}
@@ -0,0 +1,72 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+class CopyOnWriteBPlugsTreeTest {
+
+    @Test
+    public void testRandom(){
+        Random random=new Random(9);
+        for(int m=3;m<=8;m++){
+            CopyOnWriteBPlugsTree<Integer,Integer> tree=new CopyOnWriteBPlugsTree<>(m);
+            TreeMap<Integer,Integer> expect=new TreeMap<>();
+            for(int i=0;i<5000;i++){
+                int k=random.nextInt(600);
+                if(random.nextInt(3)==0){
+                    Assertions.assertEquals(expect.remove(k),tree.delete(k));
+                }else{
+                    Assertions.assertEquals(expect.put(k,i),tree.put(k,i));
+                }
+            }
+            Assertions.assertEquals(expect.size(),tree.size());
+            for(int k=0;k<600;k++){
+                Assertions.assertEquals(expect.get(k),tree.get(k));
+            }
+            assertScan(expect,tree.snapshot().scan(null,true,null,true));
+            assertScan(expect.subMap(100,false,300,true),tree.snapshot().scan(100,false,300,true));
+        }
+    }
+
+    /**
+     * 快照之后的修改对快照不可见
+     */
+    @Test
+    public void testSnapshot(){
+        CopyOnWriteBPlugsTree<Integer,String> tree=new CopyOnWriteBPlugsTree<>(4);
+        for(int i=1;i<=20;i++){
+            tree.put(i,"test "+i);
+        }
+        CopyOnWriteBPlugsTree.Snapshot<Integer,String> snapshot=tree.snapshot();
+        for(int i=1;i<=10;i++){
+            tree.delete(i);
+        }
+        tree.put(5,"new 5");
+        tree.put(30,"test 30");
+        Assertions.assertEquals(12,tree.size());
+        Assertions.assertEquals("new 5",tree.get(5));
+        Assertions.assertEquals(20,snapshot.size());
+        Assertions.assertEquals("test 5",snapshot.get(5));
+        Assertions.assertNull(snapshot.get(30));
+        List<Integer> keys=new ArrayList<>();
+        CopyOnWriteBPlugsTree.Cursor<Integer,String> cursor=snapshot.scan(null,true,null,true);
+        while(cursor.hasNext()){
+            keys.add(cursor.next());
+        }
+        Assertions.assertEquals(20,keys.size());
+    }
+
+    private void assertScan(Map<Integer,Integer> expect,CopyOnWriteBPlugsTree.Cursor<Integer,Integer> cursor){
+        for(Map.Entry<Integer,Integer> entry:expect.entrySet()){
+            Assertions.assertEquals(entry.getKey(),cursor.next());
+            Assertions.assertEquals(entry.getValue(),cursor.getValue());
+        }
+        Assertions.assertFalse(cursor.hasNext());
+    }
+}
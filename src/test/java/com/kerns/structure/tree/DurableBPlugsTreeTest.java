@@ -0,0 +1,97 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+class DurableBPlugsTreeTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 没有检查点的时候只靠日志恢复，检查点之后的修改在检查点上重放
+     */
+    @Test
+    public void testRecover() throws IOException {
+        Random random=new Random(3);
+        TreeMap<Long,Long> expect=new TreeMap<>();
+        DurableBPlugsTree<Long,Long> tree=open();
+        for(int round=0;round<3;round++){
+            for(int i=0;i<3000;i++){
+                long k=random.nextInt(1000);
+                if(random.nextInt(3)==0){
+                    Assertions.assertEquals(expect.remove(k),tree.delete(k));
+                }else{
+                    expect.put(k,(long)i);
+                    tree.insert(k,(long)i);
+                }
+            }
+            if(round==1){
+                tree.checkpoint();
+            }
+            tree.close();
+            tree=open();
+            Assertions.assertEquals(expect.size(),tree.size());
+            for(long k=0;k<1000;k++){
+                Assertions.assertEquals(expect.get(k),tree.get(k));
+            }
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testConcurrentInsert() throws Exception {
+        DurableBPlugsTree<Long,Long> tree=open();
+        Thread[] threads=new Thread[8];
+        for(int t=0;t<threads.length;t++){
+            long base=t*10000L;
+            threads[t]=new Thread(()->{
+                for(long i=0;i<500;i++){
+                    tree.insert(base+i,i);
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread:threads){
+            thread.join();
+        }
+        tree.close();
+        DurableBPlugsTree<Long,Long> reopened=open();
+        Assertions.assertEquals(4000,reopened.size());
+        Assertions.assertEquals(499L,reopened.get(70499L).longValue());
+        reopened.close();
+    }
+
+    /**
+     * 日志写到/dev/full一定失败，失败的那次修改已经可见，之后的修改不会再改到树
+     */
+    @Test
+    public void testLogFailure() throws IOException {
+        Path full=Paths.get("/dev/full");
+        Assumptions.assumeTrue(Files.isWritable(full));
+        Files.createSymbolicLink(dir.resolve("tree.wal"),full);
+        DurableBPlugsTree<Long,Long> tree=open();
+        Assertions.assertThrows(UncheckedIOException.class,()->tree.insert(1L,1L));
+        Assertions.assertEquals(1L,tree.get(1L).longValue());
+        Assertions.assertThrows(UncheckedIOException.class,()->tree.insert(2L,2L));
+        Assertions.assertNull(tree.get(2L));
+        Assertions.assertThrows(UncheckedIOException.class,()->tree.delete(1L));
+        Assertions.assertEquals(1L,tree.get(1L).longValue());
+        Assertions.assertThrows(IOException.class,tree::close);
+    }
+
+    private DurableBPlugsTree<Long,Long> open() throws IOException {
+        return DurableBPlugsTree.open(dir,8,FixedCodec.LONG,FixedCodec.LONG,256,1,TimeUnit.MILLISECONDS);
+    }
+}
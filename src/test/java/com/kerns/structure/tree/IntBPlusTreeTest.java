@@ -0,0 +1,25 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IntBPlusTreeTest {
+
+    @Test
+    public void testInsertAndDelete(){
+        IntBPlusTree<String> tree=new IntBPlusTree<>(4);
+        for(int i=1;i<=100;i++){
+            tree.insert(i,"test "+i);
+        }
+        for(int i=1;i<=100;i+=2){
+            Assertions.assertEquals("test "+i,tree.delete(i));
+        }
+        Assertions.assertEquals(50,tree.size());
+        Assertions.assertNull(tree.get(1));
+        Assertions.assertEquals("test 100",tree.get(100));
+        for(int i=2;i<=100;i+=2){
+            tree.delete(i);
+        }
+        Assertions.assertTrue(tree.isEmpty());
+    }
+}
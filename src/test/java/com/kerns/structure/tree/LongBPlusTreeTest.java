@@ -0,0 +1,61 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+class LongBPlusTreeTest {
+
+    @Test
+    public void testInsertAndGet(){
+        LongBPlusTree<String> tree=new LongBPlusTree<>(4);
+        for(long i=1;i<=20;i++){
+            tree.insert(i,"test "+i);
+        }
+        Assertions.assertEquals(20,tree.size());
+        Assertions.assertEquals("test 20",tree.get(20));
+        Assertions.assertNull(tree.get(21));
+        tree.insert(20,"new 20");
+        Assertions.assertEquals(20,tree.size());
+        Assertions.assertEquals("new 20",tree.get(20));
+    }
+
+    @Test
+    public void testRandom(){
+        Random random=new Random(11);
+        for(int m=3;m<=9;m++){
+            LongBPlusTree<Long> tree=new LongBPlusTree<>(m);
+            TreeMap<Long,Long> expect=new TreeMap<>();
+            for(int i=0;i<5000;i++){
+                long k=random.nextInt(600)-300;
+                if(random.nextInt(3)==0){
+                    Assertions.assertEquals(expect.remove(k),tree.delete(k));
+                }else{
+                    tree.insert(k,(long)i);
+                    expect.put(k,(long)i);
+                }
+            }
+            Assertions.assertEquals(expect.size(),tree.size());
+            for(long k=-300;k<300;k++){
+                Assertions.assertEquals(expect.get(k),tree.get(k));
+            }
+        }
+    }
+
+    @Test
+    public void testRange(){
+        LongBPlusTree<String> tree=new LongBPlusTree<>(5);
+        for(long i=0;i<100;i+=2){
+            tree.insert(i,"test "+i);
+        }
+        List<Long> keys=new ArrayList<>();
+        tree.range(11,21,(k,v)->keys.add(k));
+        Assertions.assertEquals(5,keys.size());
+        Assertions.assertEquals(Long.valueOf(12),keys.get(0));
+        Assertions.assertEquals(Long.valueOf(20),keys.get(4));
+    }
+}
@@ -0,0 +1,98 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+class MultimapBPlugsTreeTest {
+
+    @Test
+    public void testRandom(){
+        Random random=new Random(24);
+        TreeMap<Integer,TreeSet<Long>> expect=new TreeMap<>();
+        MultimapBPlugsTree<Integer> tree=new MultimapBPlugsTree<>(4);
+        long size=0;
+        for(int i=0;i<50000;i++){
+            int k=random.nextInt(50);
+            long v=random.nextInt(2000);
+            int op=random.nextInt(20);
+            if(op<12){
+                boolean added=expect.computeIfAbsent(k,key->new TreeSet<>()).add(v);
+                Assertions.assertEquals(added,tree.put(k,v));
+                size+=added?1:0;
+            }else if(op<18){
+                TreeSet<Long> set=expect.get(k);
+                boolean removed=set!=null&&set.remove(v);
+                if(set!=null&&set.isEmpty()){
+                    expect.remove(k);
+                }
+                Assertions.assertEquals(removed,tree.remove(k,v));
+                size-=removed?1:0;
+            }else if(op<19){
+                long[] values=new long[random.nextInt(200)];
+                for(int j=0;j<values.length;j++){
+                    values[j]=random.nextInt(2000);
+                }
+                int added=0;
+                for(long value:values){
+                    if(expect.computeIfAbsent(k,key->new TreeSet<>()).add(value)){
+                        added++;
+                    }
+                }
+                if(expect.get(k).isEmpty()){
+                    expect.remove(k);
+                }
+                Assertions.assertEquals(added,tree.putAll(k,values));
+                size+=added;
+            }else if(random.nextInt(10)==0){
+                TreeSet<Long> set=expect.remove(k);
+                Assertions.assertEquals(set==null?0:set.size(),tree.removeAll(k));
+                size-=set==null?0:set.size();
+            }
+        }
+        Assertions.assertEquals(size,tree.size());
+        Assertions.assertEquals(expect.size(),tree.keyCount());
+        for(int k=-1;k<=50;k++){
+            TreeSet<Long> set=expect.get(k);
+            Assertions.assertEquals(set!=null,tree.containsKey(k));
+            Assertions.assertEquals(set==null?0:set.size(),tree.valueCount(k));
+            PrimitiveIterator.OfLong values=tree.values(k);
+            if(set!=null){
+                for(long v:set){
+                    Assertions.assertEquals(v,values.nextLong());
+                    Assertions.assertTrue(tree.containsEntry(k,v));
+                }
+            }
+            Assertions.assertFalse(values.hasNext());
+        }
+    }
+
+    /**
+     * 一个key有很多值的时候树里只有一条数据
+     */
+    @Test
+    public void testManyDuplicates(){
+        MultimapBPlugsTree<String> tree=new MultimapBPlugsTree<>(4);
+        for(long i=0;i<100000;i++){
+            tree.put("status="+(i%3),i);
+        }
+        Assertions.assertEquals(3,tree.keyCount());
+        Assertions.assertEquals(100000,tree.size());
+        Assertions.assertEquals(33334,tree.valueCount("status=0"));
+        for(long i=0;i<100000;i+=3){
+            Assertions.assertTrue(tree.remove("status=0",i));
+        }
+        Assertions.assertFalse(tree.containsKey("status=0"));
+        Assertions.assertEquals(2,tree.keyCount());
+        Assertions.assertFalse(tree.values("status=0").hasNext());
+        Assertions.assertEquals(0,tree.putAll("status=0"));
+        Assertions.assertEquals(0,tree.removeAll("status=0"));
+        Assertions.assertEquals(33333,tree.removeAll("status=1"));
+        Assertions.assertEquals(33333,tree.size());
+    }
+}
@@ -0,0 +1,129 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+class OffHeapBPlusTreeTest {
+
+    @Test
+    public void testRandom(){
+        for(int m=3;m<=8;m++){
+            Random random=new Random(m);
+            TreeMap<Long,Long> expect=new TreeMap<>();
+            OffHeapBPlusTree<Long,Long> tree=new OffHeapBPlusTree<>(m,FixedCodec.LONG,FixedCodec.LONG,4096);
+            for(int i=0;i<20000;i++){
+                long k=random.nextInt(3000)-1000;
+                if(random.nextInt(3)==0){
+                    Assertions.assertEquals(expect.remove(k),tree.delete(k));
+                }else{
+                    expect.put(k,(long)i);
+                    tree.insert(k,(long)i);
+                }
+            }
+            assertTree(expect,tree);
+            for(long k=-1000;k<2000;k+=2){
+                Assertions.assertEquals(expect.remove(k),tree.delete(k));
+            }
+            assertTree(expect,tree);
+        }
+    }
+
+    /**
+     * 字符串没有重写compare，走反序列化之后比较
+     */
+    @Test
+    public void testScan(){
+        OffHeapBPlusTree<String,Integer> tree=new OffHeapBPlusTree<>(4,FixedCodec.string(10),FixedCodec.INT);
+        for(int i=100;i<600;i++){
+            tree.insert("key "+i,i);
+        }
+        OffHeapBPlusTree.Cursor<String,Integer> cursor=tree.scan("key 200",false,"key 300",true);
+        int expect=201;
+        while(cursor.hasNext()){
+            Assertions.assertEquals("key "+expect,cursor.next());
+            Assertions.assertEquals(expect,cursor.getValue().intValue());
+            expect++;
+        }
+        Assertions.assertEquals(301,expect);
+        Assertions.assertFalse(tree.scan("key 600",true,null,true).hasNext());
+        //编码失败的时候树不变
+        Assertions.assertThrows(IllegalArgumentException.class,()->tree.insert("key 1000000",1));
+        Assertions.assertEquals(500,tree.size());
+        Assertions.assertNull(tree.get("key 1000000"));
+        Assertions.assertEquals(100,tree.get("key 100").intValue());
+    }
+
+    /**
+     * 合并掉的节点放回空闲链表，反复插入删除不会一直申请新的slab
+     */
+    @Test
+    public void testReuseNode(){
+        OffHeapBPlusTree<Long,Long> tree=new OffHeapBPlusTree<>(8,FixedCodec.LONG,FixedCodec.LONG,4096);
+        long offHeapBytes=0;
+        for(int round=0;round<5;round++){
+            for(long i=0;i<5000;i++){
+                tree.insert(i,i);
+            }
+            if(round==0){
+                offHeapBytes=tree.getOffHeapBytes();
+            }
+            Assertions.assertEquals(offHeapBytes,tree.getOffHeapBytes());
+            for(long i=0;i<5000;i++){
+                Assertions.assertEquals(i,tree.delete(i).longValue());
+            }
+            Assertions.assertTrue(tree.isEmpty());
+            Assertions.assertEquals(1,tree.getNodeCount());
+        }
+        tree.clear();
+        Assertions.assertEquals(4096,tree.getOffHeapBytes());
+    }
+
+    /**
+     * 数据都在堆外，插入的时候只有申请slab才会在堆上分配内存
+     */
+    @Test
+    public void testInsertWithoutAllocation(){
+        com.sun.management.ThreadMXBean bean=(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        int n=100000;
+        Long[] keys=new Long[n];
+        for(int i=0;i<n;i++){
+            keys[i]=(long)i*7919%n;
+        }
+        OffHeapBPlusTree<Long,Long> tree=new OffHeapBPlusTree<>(64,FixedCodec.LONG,FixedCodec.LONG);
+        long threadId=Thread.currentThread().getId();
+        long start=bean.getThreadAllocatedBytes(threadId);
+        for(int i=0;i<n;i++){
+            tree.insert(keys[i],keys[i]);
+        }
+        long allocated=bean.getThreadAllocatedBytes(threadId)-start;
+        Assertions.assertEquals(n,tree.size());
+        Assertions.assertTrue(allocated<n,"allocated "+allocated+" bytes");
+    }
+
+    private void assertTree(TreeMap<Long,Long> expect,OffHeapBPlusTree<Long,Long> tree){
+        Assertions.assertEquals(expect.size(),tree.size());
+        for(long k=-1000;k<2000;k++){
+            Assertions.assertEquals(expect.get(k),tree.get(k));
+        }
+        OffHeapBPlusTree.Cursor<Long,Long> cursor=tree.scan(null,true,null,true);
+        for(Map.Entry<Long,Long> entry:expect.entrySet()){
+            Assertions.assertTrue(cursor.hasNext());
+            Assertions.assertEquals(entry.getKey(),cursor.next());
+            Assertions.assertEquals(entry.getValue(),cursor.getValue());
+        }
+        Assertions.assertFalse(cursor.hasNext());
+        cursor=tree.scan(-10L,false,500L,false);
+        for(Map.Entry<Long,Long> entry:expect.subMap(-10L,false,500L,false).entrySet()){
+            Assertions.assertEquals(entry.getKey(),cursor.next());
+        }
+        Assertions.assertFalse(cursor.hasNext());
+    }
+}
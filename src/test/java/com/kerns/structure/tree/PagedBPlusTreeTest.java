@@ -0,0 +1,130 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+class PagedBPlusTreeTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRandom() throws IOException {
+        Random random=new Random(8);
+        Path file=dir.resolve("tree.db");
+        TreeMap<Long,Long> expect=new TreeMap<>();
+        PagedBPlusTree<Long,Long> tree=PagedBPlusTree.open(file,FixedCodec.LONG,FixedCodec.LONG,512,16*512);
+        for(int i=0;i<20000;i++){
+            long k=random.nextInt(3000);
+            if(random.nextInt(3)==0){
+                Assertions.assertEquals(expect.remove(k),tree.delete(k));
+            }else{
+                expect.put(k,(long)i);
+                tree.insert(k,(long)i);
+            }
+        }
+        assertTree(expect,tree);
+        tree.close();
+
+        //重新打开之后数据不变，并且可以继续修改
+        tree=PagedBPlusTree.open(file,FixedCodec.LONG,FixedCodec.LONG,512,16*512);
+        assertTree(expect,tree);
+        for(long k=0;k<3000;k+=2){
+            Assertions.assertEquals(expect.remove(k),tree.delete(k));
+        }
+        assertTree(expect,tree);
+        tree.close();
+    }
+
+    /**
+     * 编码不了的value在insert的时候就失败，不会留在缓冲池里等到写回的时候才失败
+     */
+    @Test
+    public void testValueTooLong() throws IOException {
+        Path file=dir.resolve("long.db");
+        PagedBPlusTree<Integer,String> tree=PagedBPlusTree.open(file,FixedCodec.INT,FixedCodec.string(8),512,16*512);
+        for(int i=0;i<100;i++){
+            tree.insert(i,"v"+i);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class,()->tree.insert(5,"value longer than 8 bytes"));
+        Assertions.assertThrows(IllegalArgumentException.class,()->tree.insert(1000,"value longer than 8 bytes"));
+        Assertions.assertEquals(100,tree.size());
+        Assertions.assertEquals("v5",tree.get(5));
+        Assertions.assertNull(tree.get(1000));
+        tree.close();
+        try(PagedBPlusTree<Integer,String> reopened=PagedBPlusTree.open(file,FixedCodec.INT,FixedCodec.string(8),512,16*512)){
+            Assertions.assertEquals(100,reopened.size());
+            for(int i=0;i<100;i++){
+                Assertions.assertEquals("v"+i,reopened.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        try(PagedBPlusTree<Integer,String> tree=PagedBPlusTree.open(dir.resolve("scan.db"),FixedCodec.INT,FixedCodec.string(20),512,16*512)){
+            for(int i=1;i<=500;i++){
+                tree.insert(i*2,"test "+i*2);
+            }
+            PagedBPlusTree.Cursor<Integer,String> cursor=tree.scan(100,false,200,true);
+            int expect=102;
+            while(cursor.hasNext()){
+                Assertions.assertEquals(expect,cursor.next().intValue());
+                Assertions.assertEquals("test "+expect,cursor.getValue());
+                expect+=2;
+            }
+            Assertions.assertEquals(202,expect);
+            Assertions.assertFalse(tree.scan(1001,true,null,true).hasNext());
+        }
+    }
+
+    /**
+     * 删除之后释放的页会被重新使用，文件不会一直变大
+     */
+    @Test
+    public void testReusePage() throws IOException {
+        Path file=dir.resolve("reuse.db");
+        try(PagedBPlusTree<Long,Long> tree=PagedBPlusTree.open(file,FixedCodec.LONG,FixedCodec.LONG,512,16*512)){
+            for(int round=0;round<5;round++){
+                for(long i=0;i<2000;i++){
+                    tree.insert(i,i);
+                }
+                for(long i=0;i<2000;i++){
+                    Assertions.assertEquals(i,tree.delete(i).longValue());
+                }
+                Assertions.assertTrue(tree.isEmpty());
+            }
+        }
+        try(PageFile pageFile=PageFile.open(file,512)){
+            Assertions.assertTrue(pageFile.getPageCount()<200);
+        }
+    }
+
+    @Test
+    public void testWidthMismatch() throws IOException {
+        Path file=dir.resolve("mismatch.db");
+        PagedBPlusTree.open(file,FixedCodec.LONG,FixedCodec.LONG,512,16*512).close();
+        Assertions.assertThrows(IOException.class,()->PagedBPlusTree.open(file,FixedCodec.INT,FixedCodec.LONG,512,16*512));
+    }
+
+    private void assertTree(TreeMap<Long,Long> expect,PagedBPlusTree<Long,Long> tree){
+        Assertions.assertEquals(expect.size(),tree.size());
+        for(long k=0;k<3000;k++){
+            Assertions.assertEquals(expect.get(k),tree.get(k));
+        }
+        PagedBPlusTree.Cursor<Long,Long> cursor=tree.scan(null,true,null,true);
+        for(Map.Entry<Long,Long> entry:expect.entrySet()){
+            Assertions.assertTrue(cursor.hasNext());
+            Assertions.assertEquals(entry.getKey(),cursor.next());
+            Assertions.assertEquals(entry.getValue(),cursor.getValue());
+        }
+        Assertions.assertFalse(cursor.hasNext());
+    }
+}
@@ -0,0 +1,118 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+class PostingListTest {
+
+    @Test
+    public void testRandom(){
+        for(int bound:new int[]{100,5000,1000000}){
+            Random random=new Random(bound);
+            TreeSet<Long> expect=new TreeSet<>();
+            PostingList list=new PostingList();
+            for(int i=0;i<20000;i++){
+                long v=random.nextInt(bound)-bound/2;
+                int op=random.nextInt(10);
+                if(op<5){
+                    Assertions.assertEquals(expect.add(v),list.add(v));
+                }else if(op<8){
+                    Assertions.assertEquals(expect.remove(v),list.remove(v));
+                }else if(op<9){
+                    long[] values=new long[random.nextInt(300)];
+                    int added=0;
+                    for(int j=0;j<values.length;j++){
+                        values[j]=random.nextInt(bound)-bound/2;
+                    }
+                    for(long value:values){
+                        if(expect.add(value)){
+                            added++;
+                        }
+                    }
+                    Assertions.assertEquals(added,list.addAll(values));
+                }else{
+                    Assertions.assertEquals(expect.contains(v),list.contains(v));
+                }
+            }
+            assertList(expect,list);
+        }
+    }
+
+    /**
+     * 差值按照无符号数编码，跨过0和long的两端都能还原
+     */
+    @Test
+    public void testExtremeValues(){
+        TreeSet<Long> expect=new TreeSet<>();
+        PostingList list=new PostingList();
+        for(int i=0;i<300;i++){
+            long v=i%2==0?Long.MIN_VALUE+i:Long.MAX_VALUE-i;
+            expect.add(v);
+            list.add(v);
+        }
+        assertList(expect,list);
+        Assertions.assertTrue(list.remove(Long.MIN_VALUE));
+        Assertions.assertTrue(list.remove(Long.MAX_VALUE-1));
+        Assertions.assertFalse(list.contains(Long.MIN_VALUE));
+        Assertions.assertTrue(list.contains(Long.MAX_VALUE-3));
+    }
+
+    /**
+     * 连续的行号一个值只占一个字节
+     */
+    @Test
+    public void testCompression(){
+        PostingList list=new PostingList();
+        long[] values=new long[100000];
+        for(int i=0;i<values.length;i++){
+            values[i]=1000000+i*3;
+        }
+        Assertions.assertEquals(values.length,list.addAll(values));
+        Assertions.assertEquals(0,list.addAll(values));
+        Assertions.assertTrue(list.getBytes()<values.length*2,"bytes "+list.getBytes());
+        //最后不足一个块的部分留在尾部数组
+        Assertions.assertEquals(values.length/PostingList.BLOCK_SIZE,list.blockCount());
+        //往中间插入之后块变大，超过上限拆开
+        for(int i=0;i<values.length;i+=2){
+            list.add(values[i]+1);
+        }
+        Assertions.assertEquals(150000,list.size());
+        PrimitiveIterator.OfLong iterator=list.iterator();
+        long last=Long.MIN_VALUE;
+        int count=0;
+        while(iterator.hasNext()){
+            long v=iterator.nextLong();
+            Assertions.assertTrue(v>last);
+            last=v;
+            count++;
+        }
+        Assertions.assertEquals(150000,count);
+    }
+
+    @Test
+    public void testConcurrentModification(){
+        PostingList list=new PostingList();
+        list.add(1);
+        list.add(2);
+        PrimitiveIterator.OfLong iterator=list.iterator();
+        Assertions.assertEquals(1,iterator.nextLong());
+        list.add(3);
+        Assertions.assertThrows(ConcurrentModificationException.class,iterator::nextLong);
+    }
+
+    private void assertList(TreeSet<Long> expect,PostingList list){
+        Assertions.assertEquals(expect.size(),list.size());
+        PrimitiveIterator.OfLong iterator=list.iterator();
+        for(long v:expect){
+            Assertions.assertTrue(iterator.hasNext());
+            Assertions.assertEquals(v,iterator.nextLong());
+            Assertions.assertTrue(list.contains(v));
+        }
+        Assertions.assertFalse(iterator.hasNext());
+    }
+}
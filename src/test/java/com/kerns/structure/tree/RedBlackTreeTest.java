@@ -1,7 +1,77 @@
 package com.kerns.structure.tree;
 
-import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 class RedBlackTreeTest {
 
-}
\ No newline at end of file
+    /**
+     * 插入的时候要挂到最后一个不为空的节点上，顺序插入会一直触发旋转
+     */
+    @Test
+    public void testInsert(){
+        RedBlackTree<Integer> tree=new RedBlackTree<>();
+        List<Integer> expect=new ArrayList<>();
+        for(int i=0;i<10000;i++){
+            tree.insert(i);
+            expect.add(i);
+        }
+        assertTree(expect,tree);
+        Random random=new Random(1);
+        RedBlackTree<Integer> randomTree=new RedBlackTree<>();
+        expect.clear();
+        for(int i=0;i<10000;i++){
+            int k=random.nextInt(5000);
+            randomTree.insert(k);
+            expect.add(k);
+        }
+        //重复的key挂在右边，也保留下来
+        Collections.sort(expect);
+        assertTree(expect,randomTree);
+    }
+
+    /**
+     * 中序遍历有序，根节点是黑色，红色节点没有红色子节点，每条路径的黑色节点个数相同
+     */
+    private void assertTree(List<Integer> expect,RedBlackTree<Integer> tree){
+        RedBlackTree.RBTreeNode<Integer> root=tree.getRoot();
+        Assertions.assertFalse(isRed(root));
+        Assertions.assertNull(root.parent);
+        List<Integer> keys=new ArrayList<>();
+        blackHeight(root,keys);
+        Assertions.assertEquals(expect,keys);
+    }
+
+    /**
+     * @return 子树每条路径上的黑色节点个数，空节点算一个
+     */
+    private int blackHeight(RedBlackTree.RBTreeNode<Integer> node,List<Integer> keys){
+        if(node==null){
+            return 1;
+        }
+        if(isRed(node)){
+            Assertions.assertFalse(isRed(node.left),"red node "+node.key+" has a red left child");
+            Assertions.assertFalse(isRed(node.right),"red node "+node.key+" has a red right child");
+        }
+        if(node.left!=null){
+            Assertions.assertSame(node,node.left.parent);
+        }
+        if(node.right!=null){
+            Assertions.assertSame(node,node.right.parent);
+        }
+        int left=blackHeight(node.left,keys);
+        keys.add(node.key);
+        int right=blackHeight(node.right,keys);
+        Assertions.assertEquals(left,right,"black height differs under "+node.key);
+        return left+(isRed(node)?0:1);
+    }
+
+    private boolean isRed(RedBlackTree.RBTreeNode<Integer> node){
+        return node!=null&&!node.color;
+    }
+}
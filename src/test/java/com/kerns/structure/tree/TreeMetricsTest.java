@@ -0,0 +1,159 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TreeMetricsTest {
+
+    @Test
+    public void testBPlugsTree2(){
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(4,null,metrics);
+        Assertions.assertEquals(1,metrics.getHeight());
+        Assertions.assertEquals(1,metrics.getNodeCount());
+        for(int i=0;i<10000;i++){
+            tree.insert(i,i);
+        }
+        Assertions.assertTrue(metrics.getLeafSplits()>0);
+        Assertions.assertTrue(metrics.getInnerSplits()>0);
+        Assertions.assertTrue(metrics.getHeight()>5);
+        Assertions.assertEquals(10000,metrics.getInsertLatency().getCount());
+        for(int i=0;i<10000;i++){
+            Assertions.assertEquals(i,tree.get(i).intValue());
+        }
+        Assertions.assertEquals(10000,metrics.getLookups());
+        //二分查找每一层最多比较log2(m)+1次
+        Assertions.assertTrue(metrics.getComparisonsPerLookup()>metrics.getHeight());
+        Assertions.assertTrue(metrics.getComparisonsPerLookup()<metrics.getHeight()*3);
+        Random random=new Random(15);
+        for(int i=0;i<10000;i++){
+            tree.delete(random.nextInt(10000));
+        }
+        for(int i=0;i<10000;i++){
+            tree.delete(i);
+        }
+        Assertions.assertEquals(0,tree.size().intValue());
+        Assertions.assertTrue(metrics.getLeafMerges()>0);
+        Assertions.assertTrue(metrics.getInnerMerges()>0);
+        Assertions.assertTrue(metrics.getBorrowsFromLeft()>0);
+        Assertions.assertTrue(metrics.getBorrowsFromRight()>0);
+        //全部删除之后只剩下根节点
+        Assertions.assertEquals(1,metrics.getHeight());
+        Assertions.assertEquals(1,metrics.getNodeCount());
+        Assertions.assertEquals(1,metrics.getLeafCount());
+        Assertions.assertEquals(20000,metrics.getDeleteLatency().getCount());
+
+        metrics.reset();
+        Assertions.assertEquals(0,metrics.getLeafSplits());
+        Assertions.assertEquals(0,metrics.getGetLatency().getCount());
+        Assertions.assertEquals(1,metrics.getHeight());
+    }
+
+    @Test
+    public void testBPlugsTree(){
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree<Integer,Integer> tree=new BPlugsTree<>(4,metrics);
+        for(int i=0;i<1000;i++){
+            tree.insert(i,i);
+        }
+        for(int i=0;i<1000;i++){
+            tree.get(i);
+        }
+        Assertions.assertTrue(metrics.getLeafSplits()>0);
+        Assertions.assertTrue(metrics.getHeight()>1);
+        Assertions.assertEquals(1000,metrics.getLookups());
+        Assertions.assertTrue(metrics.getKeyComparisons()>1000);
+    }
+
+    /**
+     * 打开统计之后并发读也要返回正确的值
+     */
+    @Test
+    public void testConcurrentGet() throws Exception {
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(8,null,metrics);
+        for(int i=0;i<10000;i++){
+            tree.insert(i,i);
+        }
+        Thread[] threads=new Thread[4];
+        AtomicInteger wrong=new AtomicInteger();
+        for(int t=0;t<threads.length;t++){
+            int seed=t;
+            threads[t]=new Thread(()->{
+                Random random=new Random(seed);
+                for(int i=0;i<100000;i++){
+                    int k=random.nextInt(10000);
+                    if(!Integer.valueOf(k).equals(tree.get(k))){
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread:threads){
+            thread.join();
+        }
+        Assertions.assertEquals(0,wrong.get());
+        Assertions.assertEquals(400000,metrics.getLookups());
+    }
+
+    @Test
+    public void testShared(){
+        TreeMetrics metrics=new TreeMetrics();
+        new BPlugsTree2<Integer,Integer>(4,null,metrics);
+        Assertions.assertThrows(IllegalArgumentException.class,()->new BPlugsTree2<Integer,Integer>(4,null,metrics));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        TreeMetrics metrics=new TreeMetrics();
+        BPlugsTree2<Integer,Integer> tree=new BPlugsTree2<>(8,null,metrics);
+        ObjectName name=metrics.register("test");
+        try{
+            for(int i=0;i<100;i++){
+                tree.insert(i,i);
+                tree.get(i);
+            }
+            MBeanServer server=ManagementFactory.getPlatformMBeanServer();
+            Assertions.assertEquals(metrics.getLeafSplits(),server.getAttribute(name,"LeafSplits"));
+            Assertions.assertEquals(metrics.getHeight(),server.getAttribute(name,"Height"));
+            CompositeData latency=(CompositeData)server.getAttribute(name,"GetLatency");
+            Assertions.assertEquals(100L,latency.get("count"));
+            Assertions.assertTrue((Long)latency.get("p50")<=(Long)latency.get("max"));
+        }finally{
+            metrics.unregister();
+        }
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void testHistogram(){
+        TreeMetrics.Histogram histogram=new TreeMetrics.Histogram();
+        int last=0;
+        for(long v=0;v<100000;v++){
+            int bucket=TreeMetrics.Histogram.bucket(v);
+            Assertions.assertTrue(bucket>=last);
+            Assertions.assertTrue(TreeMetrics.Histogram.upper(bucket)>=v);
+            //误差不超过25%
+            Assertions.assertTrue(TreeMetrics.Histogram.upper(bucket)<=v+(v>>2));
+            last=bucket;
+        }
+        Assertions.assertEquals(Long.MAX_VALUE,TreeMetrics.Histogram.upper(TreeMetrics.Histogram.bucket(Long.MAX_VALUE)));
+        for(long v=1;v<=1000;v++){
+            histogram.record(v*1000);
+        }
+        TreeMetricsMXBean.Latency latency=histogram.snapshot();
+        Assertions.assertEquals(1000,latency.getCount());
+        Assertions.assertEquals(500500,latency.getMean());
+        Assertions.assertTrue(latency.getP50()>=500000&&latency.getP50()<=500000*1.25);
+        Assertions.assertTrue(latency.getP99()>=990000&&latency.getP99()<=1000000);
+        Assertions.assertEquals(1000000,latency.getMax());
+    }
+}
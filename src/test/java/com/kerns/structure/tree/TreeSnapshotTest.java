@@ -0,0 +1,137 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+class TreeSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 块很小的时候数据分布在多个映射的块上
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        Random random=new Random(5);
+        TreeMap<Long,Long> expect=new TreeMap<>();
+        BPlugsTree2<Long,Long> tree=new BPlugsTree2<>(5);
+        for(int i=0;i<5000;i++){
+            long k=random.nextInt(20000)*2;
+            expect.put(k,(long)i);
+            tree.insert(k,(long)i);
+        }
+        Path file=dir.resolve("tree.snapshot");
+        tree.writeSnapshot(file,FixedCodec.LONG,FixedCodec.LONG);
+        Assertions.assertFalse(Files.exists(dir.resolve("tree.snapshot.tmp")));
+        for(int chunkBytes:new int[]{1024,1<<30}){
+            TreeSnapshot<Long,Long> snapshot=TreeSnapshot.open(file,FixedCodec.LONG,FixedCodec.LONG,chunkBytes);
+            snapshot.verify();
+            Assertions.assertEquals(expect.size(),snapshot.size());
+            for(long k=-2;k<40002;k++){
+                Assertions.assertEquals(expect.get(k),snapshot.get(k));
+            }
+            TreeSnapshot.Cursor<Long,Long> cursor=snapshot.scan(null,true,null,true);
+            for(Map.Entry<Long,Long> entry:expect.entrySet()){
+                Assertions.assertEquals(entry.getKey(),cursor.next());
+                Assertions.assertEquals(entry.getValue(),cursor.getValue());
+            }
+            Assertions.assertFalse(cursor.hasNext());
+            for(int i=0;i<100;i++){
+                long from=random.nextInt(40000);
+                long to=from+random.nextInt(2000);
+                boolean fromInclusive=random.nextBoolean();
+                boolean toInclusive=random.nextBoolean();
+                cursor=snapshot.scan(from,fromInclusive,to,toInclusive);
+                for(Long k:expect.subMap(from,fromInclusive,to,toInclusive).keySet()){
+                    Assertions.assertEquals(k,cursor.next());
+                }
+                Assertions.assertFalse(cursor.hasNext());
+            }
+            snapshot.close();
+        }
+        BPlugsTree2<Long,Long> copy=BPlugsTree2.openSnapshot(file,FixedCodec.LONG,FixedCodec.LONG).toTree(5);
+        copy.insert(-1L,-1L);
+        expect.put(-1L,-1L);
+        Assertions.assertEquals(expect.size(),copy.size().intValue());
+        BPlugsTree2.Cursor<Long,Long> cursor=copy.scan(null,true,null,true);
+        for(Map.Entry<Long,Long> entry:expect.entrySet()){
+            Assertions.assertEquals(entry.getKey(),cursor.next());
+            Assertions.assertEquals(entry.getValue(),cursor.getValue());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Path file=dir.resolve("empty.snapshot");
+        new BPlugsTree2<String,Integer>(4).writeSnapshot(file,FixedCodec.string(10),FixedCodec.INT);
+        TreeSnapshot<String,Integer> snapshot=BPlugsTree2.openSnapshot(file,FixedCodec.string(10),FixedCodec.INT);
+        Assertions.assertTrue(snapshot.isEmpty());
+        Assertions.assertNull(snapshot.get("a"));
+        Assertions.assertFalse(snapshot.scan(null,true,null,true).hasNext());
+        Assertions.assertEquals(0,snapshot.toTree(4).size().intValue());
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        BPlugsTree2<Long,Long> tree=new BPlugsTree2<>(4);
+        for(long i=0;i<1000;i++){
+            tree.insert(i,i);
+        }
+        Path file=dir.resolve("closed.snapshot");
+        tree.writeSnapshot(file,FixedCodec.LONG,FixedCodec.LONG);
+        TreeSnapshot<Long,Long> snapshot=BPlugsTree2.openSnapshot(file,FixedCodec.LONG,FixedCodec.LONG);
+        TreeSnapshot.Cursor<Long,Long> cursor=snapshot.scan(null,true,null,true);
+        Assertions.assertEquals(0L,cursor.next().longValue());
+        snapshot.close();
+        Assertions.assertEquals(1000,snapshot.size());
+        Assertions.assertThrows(IllegalStateException.class,()->snapshot.get(1L));
+        Assertions.assertThrows(IllegalStateException.class,()->snapshot.scan(null,true,null,true));
+        Assertions.assertThrows(IllegalStateException.class,()->snapshot.toTree(4));
+        Assertions.assertThrows(IllegalStateException.class,snapshot::verify);
+        Assertions.assertThrows(IllegalStateException.class,cursor::getValue);
+        Assertions.assertThrows(IllegalStateException.class,cursor::next);
+    }
+
+    /**
+     * 稀疏索引损坏打开的时候就能发现，数据块损坏调用verify()才能发现
+     */
+    @Test
+    public void testCorrupted() throws IOException {
+        BPlugsTree2<Long,Long> tree=new BPlugsTree2<>(4);
+        for(long i=0;i<1000;i++){
+            tree.insert(i,i);
+        }
+        Path file=dir.resolve("tree.snapshot");
+        tree.writeSnapshot(file,FixedCodec.LONG,FixedCodec.LONG);
+        Assertions.assertThrows(IOException.class,()->TreeSnapshot.open(file,FixedCodec.INT,FixedCodec.LONG));
+        long size=Files.size(file);
+        flip(file,size-1);
+        Assertions.assertThrows(IOException.class,()->TreeSnapshot.open(file,FixedCodec.LONG,FixedCodec.LONG));
+        flip(file,size-1);
+        flip(file,size/2);
+        TreeSnapshot<Long,Long> snapshot=TreeSnapshot.open(file,FixedCodec.LONG,FixedCodec.LONG);
+        Assertions.assertThrows(IOException.class,snapshot::verify);
+    }
+
+    private void flip(Path file,long position) throws IOException {
+        try(FileChannel channel=FileChannel.open(file,StandardOpenOption.READ,StandardOpenOption.WRITE)){
+            ByteBuffer buffer=ByteBuffer.allocate(1);
+            channel.read(buffer,position);
+            buffer.flip();
+            buffer.put(0,(byte)~buffer.get(0));
+            channel.write(buffer,position);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.kerns.structure.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReplay() throws IOException {
+        Path file=dir.resolve("test.wal");
+        try(WriteAheadLog log=WriteAheadLog.open(file,16,1,TimeUnit.MILLISECONDS,record->Assertions.fail())){
+            long seq=0;
+            for(int i=0;i<100;i++){
+                seq=log.append(ByteBuffer.allocate(8).putLong(0,i));
+            }
+            log.sync(seq);
+            Assertions.assertEquals(100,log.getDurableSeq());
+        }
+        List<Long> records=new ArrayList<>();
+        WriteAheadLog.open(file,16,1,TimeUnit.MILLISECONDS,record->records.add(record.getLong(0))).close();
+        Assertions.assertEquals(100,records.size());
+        Assertions.assertEquals(99L,records.get(99).longValue());
+    }
+
+    /**
+     * 最后一条记录没写完或者内容损坏的时候截掉，之前的记录正常重放
+     */
+    @Test
+    public void testTornTail() throws IOException {
+        Path file=dir.resolve("torn.wal");
+        try(WriteAheadLog log=WriteAheadLog.open(file,16,0,TimeUnit.MILLISECONDS,record->{})){
+            for(int i=0;i<10;i++){
+                log.append(ByteBuffer.allocate(8).putLong(0,i));
+            }
+            log.sync();
+        }
+        try(FileChannel channel=FileChannel.open(file,StandardOpenOption.WRITE)){
+            //第10条记录的内容被破坏
+            channel.write(ByteBuffer.wrap(new byte[]{1}),9*16+10);
+            //再追加半条记录
+            channel.write(ByteBuffer.allocate(6).putInt(0,8),channel.size());
+        }
+        List<Long> records=new ArrayList<>();
+        try(WriteAheadLog log=WriteAheadLog.open(file,16,0,TimeUnit.MILLISECONDS,record->records.add(record.getLong(0)))){
+            Assertions.assertEquals(9,records.size());
+            log.sync(log.append(ByteBuffer.allocate(8).putLong(0,100)));
+        }
+        records.clear();
+        WriteAheadLog.open(file,16,0,TimeUnit.MILLISECONDS,record->records.add(record.getLong(0))).close();
+        Assertions.assertEquals(10,records.size());
+        Assertions.assertEquals(100L,records.get(9).longValue());
+    }
+}